@@ -4,6 +4,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
@@ -12,6 +13,7 @@ import java.time.Duration;
 
 @Configuration
 @EnableScheduling // utile si tu ajoutes le scheduler plus bas
+@EnableAsync      // listeners @ApplicationModuleListener (auto-dispatch après soumission), pool spring.task.execution.*
 public class DispatcherConfig {
 
     @Bean
@@ -1,6 +1,7 @@
 // backend/src/main/java/com/a/portnet_back/Configuration/GlobalExceptionHandler.java
 package com.a.portnet_back.Configuration;
 
+import com.a.portnet_back.Services.DispatcherClient;
 import org.springframework.http.*;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
@@ -27,6 +28,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(err(ex.getMessage()));
     }
 
+    @ExceptionHandler(DispatcherClient.DispatcherUnavailableException.class)
+    public ResponseEntity<?> handleDispatcherUnavailable(DispatcherClient.DispatcherUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(err(ex.getMessage()));
+    }
+
+    @ExceptionHandler(DispatcherClient.DispatcherCallException.class)
+    public ResponseEntity<?> handleDispatcherCall(DispatcherClient.DispatcherCallException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(err(ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> handleGeneric(Exception ex) {
         ex.printStackTrace();
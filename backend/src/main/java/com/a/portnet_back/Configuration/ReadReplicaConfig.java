@@ -0,0 +1,82 @@
+package com.a.portnet_back.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lectures sur réplicas : actif seulement si portnet.datasource.replica.urls est renseigné
+ * (sinon la DataSource auto-configurée par Spring Boot reste seule en place).
+ * Profil “replica” + compose-replica.yaml pour tester en local avec deux instances PostgreSQL.
+ */
+@Configuration
+@ConditionalOnProperty(name = "portnet.datasource.replica.urls")
+public class ReadReplicaConfig {
+
+    /** Pool du primaire : propriétés spring.datasource.* et spring.datasource.hikari.* habituelles. */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("primary");
+        return ds;
+    }
+
+    @Bean
+    ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            @Value("${portnet.datasource.replica.urls}") String urls,
+            @Value("${portnet.datasource.replica.username:${spring.datasource.username}}") String username,
+            @Value("${portnet.datasource.replica.password:${spring.datasource.password}}") String password,
+            @Value("${portnet.datasource.replica.pool-size:10}") int poolSize,
+            @Value("${portnet.datasource.replica.connect-timeout-ms:1000}") long connectTimeoutMs,
+            @Value("${portnet.datasource.replica.pin-after-write-ms:5000}") long pinAfterWriteMs,
+            @Value("${portnet.datasource.replica.retry-after-ms:30000}") long retryAfterMs,
+            @Value("${portnet.datasource.replica.max-lag-ms:10000}") long maxLagMs) {
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        String[] jdbcUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(u -> !u.isEmpty()).toArray(String[]::new);
+        for (int i = 0; i < jdbcUrls.length; i++) {
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName("replica-" + (i + 1));
+            ds.setJdbcUrl(jdbcUrls[i]);
+            ds.setUsername(username);
+            ds.setPassword(password);
+            ds.setDriverClassName(properties.determineDriverClassName());
+            ds.setMaximumPoolSize(poolSize);
+            ds.setReadOnly(true);
+            // un réplica arrêté ne doit ni bloquer le démarrage ni faire attendre une requête 30 s
+            ds.setConnectionTimeout(Math.max(250, connectTimeoutMs));
+            ds.setInitializationFailTimeout(-1);
+            replicas.put(ds.getPoolName(), ds);
+        }
+
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, new ReplicaRoutingDataSource.Settings(
+                Duration.ofMillis(pinAfterWriteMs), Duration.ofMillis(retryAfterMs), Duration.ofMillis(maxLagMs)));
+    }
+
+    /** DataSource de l'application : la connexion réelle n'est prise qu'au premier ordre SQL, flag readOnly déjà posé. */
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        // évite d'ouvrir une connexion au démarrage juste pour lire ces valeurs par défaut
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+}
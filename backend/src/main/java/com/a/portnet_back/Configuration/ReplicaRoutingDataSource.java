@@ -0,0 +1,208 @@
+package com.a.portnet_back.Configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Aiguillage primaire / réplicas : les transactions readOnly vont sur un réplica (tourniquet), tout le reste
+ * sur le primaire. Toujours utilisé derrière un LazyConnectionDataSourceProxy (cf. ReadReplicaConfig) pour que
+ * la connexion soit demandée une fois la transaction (et son flag readOnly) en place.
+ * <ul>
+ *   <li>Lecture de ses propres écritures : après le commit d'une transaction d'écriture, les lectures du même
+ *       utilisateur (ou du même thread hors authentification) restent sur le primaire pendant pinAfterWrite.</li>
+ *   <li>Réplica injoignable : écarté pendant retryAfter, on essaie le suivant puis le primaire.</li>
+ *   <li>Réplica en retard de plus de maxLag (sonde périodique) : écarté jusqu'à la sonde suivante.</li>
+ * </ul>
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // 0 sur un primaire ou un réplica à jour ; sinon âge de la dernière transaction rejouée
+    private static final String LAG_QUERY = """
+            SELECT COALESCE(CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                                 ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END, 0)
+            """;
+
+    /** Paramètres (cf. portnet.datasource.replica.* dans application.properties). */
+    public record Settings(Duration pinAfterWrite, Duration retryAfter, Duration maxLag) {}
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Settings settings;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Map<String, Long> lastWriteByUser = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> lastWriteOnThread = new ThreadLocal<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Settings settings) {
+        this(primary, replicas, settings, System::nanoTime);
+    }
+
+    ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Settings settings,
+                             LongSupplier nanoClock) {
+        this.primary = primary;
+        replicas.forEach((name, ds) -> this.replicas.add(new Replica(name, ds)));
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(username, password);
+    }
+
+    private Connection connect(String username, String password) throws SQLException {
+        if (!routeToReplica()) {
+            rememberWriteOnCommit();
+            return open(primary, username, password);
+        }
+
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            Replica replica = nextAvailableReplica();
+            if (replica == null) break;
+            try {
+                return open(replica.dataSource, username, password);
+            } catch (SQLException e) {
+                replica.markDown(nanoClock.getAsLong() + settings.retryAfter().toNanos());
+                log.warn("Réplica {} injoignable, écarté {} s : {}", replica.name,
+                        settings.retryAfter().toSeconds(), e.getMessage());
+            }
+        }
+        return open(primary, username, password);
+    }
+
+    private static Connection open(DataSource ds, String username, String password) throws SQLException {
+        return username == null ? ds.getConnection() : ds.getConnection(username, password);
+    }
+
+    /** Vrai pour une transaction readOnly qui n'est pas épinglée au primaire par une écriture récente. */
+    boolean routeToReplica() {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return false;
+        }
+        return !pinnedToPrimary();
+    }
+
+    private boolean pinnedToPrimary() {
+        long now = nanoClock.getAsLong();
+        String user = currentUser();
+        Long lastWrite = user != null ? lastWriteByUser.get(user) : lastWriteOnThread.get();
+        return lastWrite != null && now - lastWrite < settings.pinAfterWrite().toNanos();
+    }
+
+    private void rememberWriteOnCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return;
+        }
+        // l'utilisateur est lu maintenant : afterCommit peut tourner hors du contexte de sécurité
+        String user = currentUser();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recordWrite(user);
+            }
+        });
+    }
+
+    void recordWrite(String user) {
+        long now = nanoClock.getAsLong();
+        if (user != null) {
+            lastWriteByUser.put(user, now);
+        } else {
+            lastWriteOnThread.set(now);
+        }
+    }
+
+    private Replica nextAvailableReplica() {
+        long now = nanoClock.getAsLong();
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isAvailable(now)) return replica;
+        }
+        return null;
+    }
+
+    private static String currentUser() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.isAuthenticated() ? auth.getName() : null;
+    }
+
+    /** Sonde les réplicas : remet en service ceux qui répondent, écarte ceux trop en retard ; purge les épinglages expirés. */
+    @Scheduled(fixedDelayString = "${portnet.datasource.replica.probe-interval-ms:5000}")
+    public void probe() {
+        long now = nanoClock.getAsLong();
+        long pinNanos = settings.pinAfterWrite().toNanos();
+        lastWriteByUser.values().removeIf(t -> now - t >= pinNanos);
+
+        for (Replica replica : replicas) {
+            try (Connection c = replica.dataSource.getConnection();
+                 Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery(LAG_QUERY)) {
+                double lagSeconds = rs.next() ? rs.getDouble(1) : 0;
+                boolean lagging = lagSeconds * 1000 > settings.maxLag().toMillis();
+                if (lagging != replica.lagging) {
+                    log.warn("Réplica {} : retard {} s → {}", replica.name, lagSeconds,
+                            lagging ? "écarté" : "remis en service");
+                }
+                replica.lagging = lagging;
+                replica.down = false;
+            } catch (SQLException e) {
+                replica.markDown(now + settings.retryAfter().toNanos());
+            }
+        }
+    }
+
+    private static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        volatile boolean down;
+        volatile long downUntil;
+        volatile boolean lagging;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        boolean isAvailable(long now) {
+            // nanoTime peut être négatif : comparaison par différence
+            return !lagging && (!down || now - downUntil >= 0);
+        }
+
+        void markDown(long until) {
+            downUntil = until;
+            down = true;
+        }
+    }
+}
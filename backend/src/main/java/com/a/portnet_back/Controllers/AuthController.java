@@ -7,6 +7,7 @@ import com.a.portnet_back.Models.AgentActivityLog;
 import com.a.portnet_back.Models.Importateur;
 import com.a.portnet_back.Models.User;
 import com.a.portnet_back.Repositories.AgentActivityLogRepository;
+import com.a.portnet_back.Services.AgentScoringIndex;
 import com.a.portnet_back.Services.AuthService;
 import com.a.portnet_back.Services.JwtService;
 import com.a.portnet_back.Enum.Role;
@@ -30,13 +31,16 @@ public class AuthController {
     private final JwtService jwtService;
     private final AuthService authService;
     private final AgentActivityLogRepository logRepository;
+    private final AgentScoringIndex scoringIndex;
 
     public AuthController(AuthenticationManager authManager, JwtService jwtService,
-                          AuthService authService, AgentActivityLogRepository logRepository) {
+                          AuthService authService, AgentActivityLogRepository logRepository,
+                          AgentScoringIndex scoringIndex) {
         this.authManager = authManager;
         this.jwtService = jwtService;
         this.authService = authService;
         this.logRepository = logRepository;
+        this.scoringIndex = scoringIndex;
     }
 
     @PostMapping("/login")
@@ -88,6 +92,7 @@ public class AuthController {
                     log.setBrowserInfo(UserAgentParser.extractBrowser(userAgent));
                     log.setDeviceInfo(UserAgentParser.extractDevice(userAgent));
                     logRepository.save(log);
+                    scoringIndex.activityLogged(agent.getId(), log.getTimestamp());
 
                     AgentResponse agentResponse = new AgentResponse(agent.getId(), agent.getNomComplet(), user.getEmail());
                     return ResponseEntity.ok(new AuthResponse(token, "AGENT", agentResponse, "Connexion réussie"));
@@ -112,6 +117,7 @@ public class AuthController {
                 log.setBrowserInfo(UserAgentParser.extractBrowser(userAgent));
                 log.setDeviceInfo(UserAgentParser.extractDevice(userAgent));
                 logRepository.save(log);
+                scoringIndex.activityLogged(agent.getId(), log.getTimestamp());
             }
             return ResponseEntity.status(401).body(new ErrorResponse("Email ou mot de passe incorrect"));
         } catch (Exception e) {
@@ -1,5 +1,7 @@
 package com.a.portnet_back.Controllers;
 
+import com.a.portnet_back.DTO.DemandeDetail;
+import com.a.portnet_back.DTO.DemandeStatistiques;
 import com.a.portnet_back.Enum.Categorie;
 import com.a.portnet_back.Enum.StatusDemande;
 import com.a.portnet_back.Models.*;
@@ -14,7 +16,10 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -29,107 +34,147 @@ public class DemandeController {
     private final ImportateurService importateurService;
     private final BureauDouanierService bureauDouanierService;
     private final DeviseService deviseService;
+    private final DemandeListingService demandeListingService;
+    private final DemandeSearchService demandeSearchService;
+    private final DemandeDetailAssembler demandeDetailAssembler;
+    private final DemandeExportService demandeExportService;
+    private final DemandeStatsService demandeStatsService;
+    private final DemandeRollupService demandeRollupService;
 
     public DemandeController(DemandeService demandeService, DocumentService documentService,
                              ExcelImportService excelImportService, ImportateurService importateurService,
-                             BureauDouanierService bureauDouanierService, DeviseService deviseService) {
+                             BureauDouanierService bureauDouanierService, DeviseService deviseService,
+                             DemandeListingService demandeListingService,
+                             DemandeSearchService demandeSearchService,
+                             DemandeDetailAssembler demandeDetailAssembler,
+                             DemandeExportService demandeExportService,
+                             DemandeStatsService demandeStatsService,
+                             DemandeRollupService demandeRollupService) {
         this.demandeService = demandeService;
         this.documentService = documentService;
         this.excelImportService = excelImportService;
         this.importateurService = importateurService;
         this.bureauDouanierService = bureauDouanierService;
         this.deviseService = deviseService;
+        this.demandeListingService = demandeListingService;
+        this.demandeSearchService = demandeSearchService;
+        this.demandeDetailAssembler = demandeDetailAssembler;
+        this.demandeExportService = demandeExportService;
+        this.demandeStatsService = demandeStatsService;
+        this.demandeRollupService = demandeRollupService;
     }
 
     /** ✅ Liste back-office pour AGENT / SUPERVISEUR (format DataGrid) */
     @GetMapping("")
     @PreAuthorize("hasAnyAuthority('ROLE_SUPERVISEUR','ROLE_AGENT')")
-    @Transactional(readOnly = true)
     public ResponseEntity<?> listDemandesBackOffice(
             @RequestParam(value = "q", required = false) String q,
             @RequestParam(value = "statut", required = false) String statut,
-            @RequestParam(value = "bureau", required = false) String bureau
+            @RequestParam(value = "bureau", required = false) String bureau,
+            @RequestParam(value = "montantMin", required = false) Double montantMin,
+            @RequestParam(value = "montantMax", required = false) Double montantMax
     ) {
-        var demandes = demandeService.getAllDemandesWithDetails();
-
-        var rows = demandes.stream().map(d -> {
-            var m = new HashMap<String, Object>();
-
-            // ID lisible + ID DB
-            m.put("id",   d.getNumeroEnregistrement());
-            m.put("idDb", d.getId());
-
-            // Catégorie
-            m.put("categorie", d.getCategorie() != null ? d.getCategorie().name() : "—");
-
-            // Bureau (fallback code si description absente)
-            String bureauLabel = "—";
-            if (d.getBureauDouanier() != null) {
-                String desc = d.getBureauDouanier().getDescription();
-                String code = d.getBureauDouanier().getCode();
-                bureauLabel = (desc != null && !desc.isBlank())
-                        ? desc
-                        : (code != null && !code.isBlank() ? code : "—");
-            }
-            m.put("bureau", bureauLabel);
-
-            // Statut → mapping UI
-            m.put("statut", mapStatutToUi(d.getStatut()));
-
-            // Dates (créé le)
-            m.put("createdAt", d.getDateCreation());
-
-            // Agent (placeholder si pas d’affectation)
-            m.put("agent", "-");
-
-            // Opérateur (prend ce qu’on peut)
-            String operateur = "—";
-            if (d.getSocieteImportateur() != null && !d.getSocieteImportateur().isBlank()) {
-                operateur = d.getSocieteImportateur();
-            } else if (d.getNomImportateur() != null && !d.getNomImportateur().isBlank()) {
-                operateur = d.getNomImportateur();
-            } else if (d.getImportateur() != null) {
-                // derniers filets de sécurité
-                String nom = d.getImportateur().getNomComplet();
-                String soc = d.getImportateur().getSociete();
-                operateur = (soc != null && !soc.isBlank()) ? soc
-                        : (nom != null && !nom.isBlank() ? nom : "—");
-            }
-            m.put("operateur", operateur);
+        var filter = DemandeListingService.Filter.of(q, statut, bureau, montantMin, montantMax);
+        return ResponseEntity.ok(demandeListingService.listAll(filter));
+    }
 
-            // ICE si disponible (sinon —)
-            String ice = "—";
-            if (d.getImportateur() != null && d.getImportateur().getIce() != null && !d.getImportateur().getIce().isBlank()) {
-                ice = d.getImportateur().getIce();
-            }
-            m.put("ice", ice);
+    /** ✅ Liste back-office paginée par curseur (dateCreation, id) — coût constant par page */
+    @GetMapping("/page")
+    @PreAuthorize("hasAnyAuthority('ROLE_SUPERVISEUR','ROLE_AGENT')")
+    public ResponseEntity<?> listDemandesBackOfficePage(
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "statut", required = false) String statut,
+            @RequestParam(value = "bureau", required = false) String bureau,
+            @RequestParam(value = "montantMin", required = false) Double montantMin,
+            @RequestParam(value = "montantMax", required = false) Double montantMax,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size
+    ) {
+        var filter = DemandeListingService.Filter.of(q, statut, bureau, montantMin, montantMax);
+        return ResponseEntity.ok(demandeListingService.listPage(filter, cursor, size));
+    }
 
-            // Montant / SLA
-            m.put("montant", d.getMontantTotal() != null ? d.getMontantTotal() : 0.0);
-            m.put("slaHours", 72);
+    /** 📤 Export du registre (csv | xlsx), mêmes filtres que la liste, écrit en streaming */
+    @GetMapping("/export")
+    @PreAuthorize("hasAuthority('ROLE_SUPERVISEUR')")
+    public ResponseEntity<StreamingResponseBody> exportDemandes(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "statut", required = false) String statut,
+            @RequestParam(value = "bureau", required = false) String bureau,
+            @RequestParam(value = "montantMin", required = false) Double montantMin,
+            @RequestParam(value = "montantMax", required = false) Double montantMax
+    ) {
+        // validé avant d'ouvrir le flux : une erreur de paramètre reste un 400 propre
+        var filter = DemandeListingService.Filter.of(q, statut, bureau, montantMin, montantMax);
+        boolean xlsx = switch (format.trim().toLowerCase()) {
+            case "csv" -> false;
+            case "xlsx" -> true;
+            default -> throw new IllegalArgumentException("Format d'export inconnu: " + format);
+        };
 
-            return m;
-        }).filter(m -> {
-            if (q != null && !q.isBlank()) {
-                var hay = (m.get("id")+" "+m.get("ice")+" "+m.get("operateur")+" "+m.get("agent")+" "+m.get("categorie")+" "+m.get("bureau")).toLowerCase();
-                if (!hay.contains(q.toLowerCase())) return false;
+        String filename = "demandes_" + LocalDate.now() + (xlsx ? ".xlsx" : ".csv");
+        StreamingResponseBody body = out -> {
+            if (xlsx) {
+                demandeExportService.exportXlsx(filter, out);
+            } else {
+                demandeExportService.exportCsv(filter, out);
             }
-            if (statut != null && !statut.isBlank() && !statut.equals(m.get("statut"))) return false;
-            if (bureau != null && !bureau.isBlank() && !bureau.equals(m.get("bureau"))) return false;
-            return true;
-        }).toList();
+        };
 
-        return ResponseEntity.ok(rows);
+        return ResponseEntity.ok()
+                .contentType(xlsx
+                        ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                        : new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
     }
 
-    private String mapStatutToUi(StatusDemande s) {
-        if (s == null) return "EN_ATTENTE";
-        return switch (s) {
-            case EN_ATTENTE -> "EN_ATTENTE";
-            case ACCEPTEE   -> "VALIDE";
-            case REFUSEE    -> "REJETE";
-            default -> s.name();
-        };
+    /** 📊 Compteurs par statut / catégorie : global, ou restreints à un importateur ou un bureau (cf. DemandeStatsService) */
+    @GetMapping("/stats")
+    @PreAuthorize("hasAnyAuthority('ROLE_SUPERVISEUR','ROLE_AGENT')")
+    public ResponseEntity<?> getStatistiques(
+            @RequestParam(value = "importateurId", required = false) Long importateurId,
+            @RequestParam(value = "bureauId", required = false) Long bureauId
+    ) {
+        if (importateurId != null && bureauId != null) {
+            throw new IllegalArgumentException("Préciser importateurId ou bureauId, pas les deux");
+        }
+        DemandeStatistiques stats = importateurId != null ? demandeStatsService.forImportateur(importateurId)
+                : bureauId != null ? demandeStatsService.forBureau(bureauId)
+                : demandeStatsService.global();
+        return ResponseEntity.ok(stats);
+    }
+
+    /** 📈 Tendance mensuelle (agrégat demande_monthly_rollup), éventuellement pour un bureau */
+    @GetMapping("/stats/mensuelles")
+    @PreAuthorize("hasAnyAuthority('ROLE_SUPERVISEUR','ROLE_AGENT')")
+    public ResponseEntity<?> getStatistiquesMensuelles(
+            @RequestParam(value = "mois", required = false) Integer mois,
+            @RequestParam(value = "bureauId", required = false) Long bureauId
+    ) {
+        return ResponseEntity.ok(demandeRollupService.monthlyTrend(mois, bureauId));
+    }
+
+    /** 🔄 Reconstruction complète de l'agrégat mensuel (backfill / contrôle) */
+    @PostMapping("/stats/mensuelles/rebuild")
+    @PreAuthorize("hasAuthority('ROLE_SUPERVISEUR')")
+    public ResponseEntity<?> rebuildStatistiquesMensuelles() {
+        int lignes = demandeRollupService.rebuild();
+        return ResponseEntity.ok(Map.of("success", true, "lignes", lignes));
+    }
+
+    /** 🔎 Recherche classée (numéro, ICE / société, bureau, code SH) — préfixes et sous-chaînes */
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyAuthority('ROLE_SUPERVISEUR','ROLE_AGENT')")
+    public ResponseEntity<?> searchDemandes(
+            @RequestParam("q") String q,
+            @RequestParam(value = "statut", required = false) String statut,
+            @RequestParam(value = "bureau", required = false) String bureau,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        var filter = DemandeListingService.Filter.of(null, statut, bureau);
+        return ResponseEntity.ok(demandeSearchService.search(q, filter, limit));
     }
 
     /** Créer une nouvelle demande (étape 1) */
@@ -195,9 +240,7 @@ public class DemandeController {
             }
 
             List<Marchandise> marchandises = excelImportService.importMarchandisesFromExcel(file);
-            for (Marchandise marchandise : marchandises) {
-                demandeService.addMarchandise(demandeId, marchandise);
-            }
+            demandeService.addMarchandises(demandeId, marchandises);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -305,7 +348,7 @@ public class DemandeController {
             }
 
             List<Map<String, Object>> demandesDetaillees = getDemandesDetailleesWithSeparateTransaction(importateur.getId());
-            Map<String, Object> statistiques = calculateStatistiquesSafely(demandesDetaillees);
+            DemandeStatistiques statistiques = demandeStatsService.forImportateur(importateur.getId());
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -341,17 +384,10 @@ public class DemandeController {
     private List<Map<String, Object>> getDemandesDetailleesWithSeparateTransaction(Long importateurId) {
         List<Map<String, Object>> demandesDetaillees = new ArrayList<>();
         try {
-            List<Demande> demandes = demandeService.getDemandesWithDetailsForImportateur(importateurId);
-            for (Demande demande : demandes) {
-                try {
-                    initializeCollectionsSafely(demande);
-                    Map<String, Object> demandeDetail = createDemandeCompleteResponseSafely(demande);
-                    demandesDetaillees.add(demandeDetail);
-                } catch (Exception e) {
-                    System.err.println("Erreur lors du traitement de la demande " + demande.getId() + ": " + e.getMessage());
-                    Map<String, Object> demandeMinimale = createDemandeResponseSafely(demande);
-                    demandesDetaillees.add(demandeMinimale);
-                }
+            // 3 requêtes au total (en-têtes, marchandises, documents), quel que soit le nombre de demandes
+            List<DemandeDetail> demandes = demandeDetailAssembler.findByImportateur(importateurId);
+            for (DemandeDetail demande : demandes) {
+                demandesDetaillees.add(createDemandeCompleteResponse(demande));
             }
         } catch (Exception e) {
             System.err.println("Erreur lors de la récupération des demandes: " + e.getMessage());
@@ -377,68 +413,17 @@ public class DemandeController {
         }
     }
 
-    private Map<String, Object> calculateStatistiquesSafely(List<Map<String, Object>> demandesDetaillees) {
-        try {
-            int totalDemandes = demandesDetaillees.size();
-            int demandesEnAttente = 0;
-            int demandesAcceptees = 0;
-            int demandesRefusees = 0;
-            double montantTotal = 0.0;
-
-            for (Map<String, Object> demande : demandesDetaillees) {
-                try {
-                    String statut = (String) demande.get("statut");
-                    if (statut != null) {
-                        switch (statut) {
-                            case "EN_ATTENTE" -> demandesEnAttente++;
-                            case "ACCEPTEE" -> demandesAcceptees++;
-                            case "REFUSEE" -> demandesRefusees++;
-                        }
-                    }
-                    Object statistiquesMarchandises = demande.get("statistiquesMarchandises");
-                    if (statistiquesMarchandises instanceof Map) {
-                        Object montant = ((Map<?, ?>) statistiquesMarchandises).get("montantTotal");
-                        if (montant instanceof Number) {
-                            montantTotal += ((Number) montant).doubleValue();
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Erreur lors du calcul des statistiques pour une demande: " + e.getMessage());
-                }
-            }
-
-            return Map.of(
-                    "totalDemandes", totalDemandes,
-                    "demandesEnAttente", demandesEnAttente,
-                    "demandesAcceptees", demandesAcceptees,
-                    "demandesRefusees", demandesRefusees,
-                    "montantTotal", montantTotal
-            );
-        } catch (Exception e) {
-            return Map.of(
-                    "totalDemandes", 0,
-                    "demandesEnAttente", 0,
-                    "demandesAcceptees", 0,
-                    "demandesRefusees", 0,
-                    "montantTotal", 0.0
-            );
-        }
-    }
-
     @GetMapping("/{demandeId}")
     @PreAuthorize("hasAnyAuthority('ROLE_IMPORTATEUR', 'ROLE_AGENT', 'ROLE_SUPERVISEUR')")
-    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
     public ResponseEntity<?> getDemandeDetail(@PathVariable Long demandeId) {
         try {
-            Demande demande = demandeService.getDemandeWithDetails(demandeId);
-            if (demande == null) {
+            Optional<DemandeDetail> demande = demandeDetailAssembler.findById(demandeId);
+            if (demande.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(createErrorResponse("Demande non trouvée"));
             }
 
-            initializeCollectionsSafely(demande);
-
-            Map<String, Object> response = createDemandeDetailResponseSafely(demande);
+            Map<String, Object> response = createDemandeDetailResponse(demande.get());
             response.put("success", true);
 
             return ResponseEntity.ok(response);
@@ -483,9 +468,7 @@ public class DemandeController {
 
             try {
                 List<Marchandise> marchandises = excelImportService.importMarchandisesFromExcel(excelFile);
-                for (Marchandise marchandise : marchandises) {
-                    demandeService.addMarchandise(demande.getId(), marchandise);
-                }
+                demandeService.addMarchandises(demande.getId(), marchandises);
             } catch (Exception e) {
                 demandeService.deleteDemande(demande.getId());
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -810,6 +793,109 @@ public class DemandeController {
         return createDemandeCompleteResponseSafely(demande);
     }
 
+    /* ---- Vues lecture (DemandeDetailAssembler) : mêmes clés JSON que les réponses construites sur l'entité ---- */
+
+    private Map<String, Object> createDemandeDetailResponse(DemandeDetail demande) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", demande.getId());
+        response.put("numeroEnregistrement", demande.getNumeroEnregistrement());
+        response.put("statut", demande.getStatut() != null ? demande.getStatut().name() : "INCONNU");
+        response.put("categorie", demande.getCategorie() != null ? demande.getCategorie().name() : "INCONNU");
+        response.put("dateCreation", demande.getDateCreation());
+        response.put("dateModification", demande.getDateModification());
+        response.put("importateur", demande.getImportateurNom());
+        response.put("nombreMarchandises", demande.getNombreMarchandises());
+        response.put("montantTotal", demande.getMontantTotal());
+
+        response.put("marchandises", demande.getMarchandises().stream().map(m -> {
+            Map<String, Object> line = new HashMap<>();
+            line.put("id", m.getId());
+            line.put("designation", m.getDesignation());
+            line.put("quantite", m.getQuantite());
+            line.put("montant", m.getMontant());
+            line.put("codeSh", m.getCodeSh());
+            line.put("uniteMesure", m.getUniteMesure());
+            line.put("poidsNet", m.getPoidsNet());
+            line.put("poidsBrut", m.getPoidsBrut());
+            line.put("description", m.getDescription());
+            if (m.getPays() != null) {
+                line.put("pays", refToMap(m.getPays()));
+            }
+            return line;
+        }).toList());
+
+        response.put("documents", demande.getDocuments().stream().map(doc -> {
+            Map<String, Object> line = new HashMap<>();
+            line.put("id", doc.getId());
+            line.put("nom", doc.getNom());
+            line.put("type", doc.getType());
+            line.put("taille", doc.getTaille());
+            line.put("tailleFormatee", doc.getTailleFormatee());
+            line.put("dateUpload", doc.getDateUpload());
+            line.put("extension", doc.getExtension());
+            return line;
+        }).toList());
+
+        if (demande.getBureauDouanier() != null) {
+            response.put("bureauDouanier", refToMap(demande.getBureauDouanier()));
+        }
+        if (demande.getDevise() != null) {
+            response.put("devise", refToMap(demande.getDevise()));
+        }
+        return response;
+    }
+
+    private Map<String, Object> createDemandeCompleteResponse(DemandeDetail demande) {
+        Map<String, Object> response = createDemandeDetailResponse(demande);
+
+        if (demande.getNombreMarchandises() > 0) {
+            response.put("statistiquesMarchandises", Map.of(
+                    "nombreMarchandises", demande.getNombreMarchandises(),
+                    "montantTotal", demande.getMontantTotal(),
+                    "quantiteTotale", demande.getQuantiteTotale(),
+                    "poidsNetTotal", demande.getPoidsNetTotal(),
+                    "poidsBrutTotal", demande.getPoidsBrutTotal()
+            ));
+        } else {
+            response.put("statistiquesMarchandises", createEmptyStatistiquesMarchandises());
+        }
+
+        if (!demande.getDocuments().isEmpty()) {
+            long tailleTotal = demande.getTailleDocumentsTotale();
+            Map<String, Long> typesDocuments = demande.getDocuments().stream()
+                    .collect(Collectors.groupingBy(DemandeDetail.DocumentLine::getExtension, Collectors.counting()));
+
+            response.put("statistiquesDocuments", Map.of(
+                    "nombreDocuments", demande.getDocuments().size(),
+                    "tailleTotale", tailleTotal,
+                    "tailleTotaleFormatee", formatFileSize(tailleTotal),
+                    "typesDocuments", typesDocuments
+            ));
+        } else {
+            response.put("statistiquesDocuments", createEmptyStatistiquesDocuments());
+        }
+
+        response.put("actions", Map.of(
+                "peutModifier", demande.isModifiable(),
+                "peutSupprimer", demande.isModifiable(),
+                "peutTelecharger", true,
+                "peutVoir", true
+        ));
+
+        if (demande.getCommentaire() != null && !demande.getCommentaire().trim().isEmpty()) {
+            response.put("commentaire", demande.getCommentaire());
+        }
+        return response;
+    }
+
+    private Map<String, Object> refToMap(DemandeDetail.Ref ref) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", ref.getId());
+        map.put("code", ref.getCode());
+        map.put("description", ref.getDescription());
+        return map;
+    }
+
     private Map<String, Object> createEmptyStatistiquesMarchandises() {
         return Map.of(
                 "nombreMarchandises", 0,
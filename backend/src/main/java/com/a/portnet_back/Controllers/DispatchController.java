@@ -1,20 +1,49 @@
 package com.a.portnet_back.Controllers;
 
+import com.a.portnet_back.Services.DispatchScheduler;
 import com.a.portnet_back.Services.DispatchService;
+import com.a.portnet_back.Services.WorkStealingRebalancer;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/dispatch")
 public class DispatchController {
     private final DispatchService service;
-    public DispatchController(DispatchService service) { this.service = service; }
+    private final DispatchScheduler scheduler;
+    private final WorkStealingRebalancer rebalancer;
+
+    public DispatchController(DispatchService service, DispatchScheduler scheduler, WorkStealingRebalancer rebalancer) {
+        this.service = service;
+        this.scheduler = scheduler;
+        this.rebalancer = rebalancer;
+    }
 
-    // DispatchController.java
+    /** Réponse asynchrone : le thread de requête est libéré pendant l'appel au dispatcher. */
     @PostMapping("/run")
-    public ResponseEntity<?> run(@RequestParam(name = "limit", required = false) Integer limit) {
-        return ResponseEntity.ok(service.runOnce(limit));
+    public Mono<ResponseEntity<Map<String, Object>>> run(@RequestParam(name = "limit", required = false) Integer limit,
+                                                         @RequestParam(name = "policy", required = false) String policy) {
+        return service.run(limit, policy).map(ResponseEntity::ok);
     }
 
-}
+    /** Rééquilibrage immédiat des affectations non commencées (sinon périodique, cf. dispatch.rebalance.*). */
+    @PostMapping("/rebalance")
+    public ResponseEntity<?> rebalance() {
+        return ResponseEntity.ok(WorkStealingRebalancer.toMap(rebalancer.rebalance()));
+    }
 
+    /** Compteurs par issue, latences et état du disjoncteur du client dispatcher. */
+    @GetMapping("/client/stats")
+    public ResponseEntity<?> clientStats() {
+        return ResponseEntity.ok(service.clientStats());
+    }
+
+    /** Leader, stock en attente, retard de dispatch (âge de la plus ancienne demande non affectée), intervalle. */
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<?> schedulerStats() {
+        return ResponseEntity.ok(scheduler.stats());
+    }
+}
@@ -6,6 +6,7 @@ import com.a.portnet_back.Models.AnomalyDetectionResult;
 import com.a.portnet_back.Repositories.AgentActivityLogRepository;
 import com.a.portnet_back.Repositories.AgentRepository;
 import com.a.portnet_back.Repositories.AnomalyDetectionResultRepository;
+import com.a.portnet_back.Services.AgentScoringIndex;
 import com.a.portnet_back.Services.AnomalyDetectionService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,15 +22,18 @@ public class LogMonitoringController {
     private final AgentActivityLogRepository logRepository;
     private final AnomalyDetectionResultRepository anomalyRepo;
     private final AnomalyDetectionService anomalyDetectionService;
+    private final AgentScoringIndex scoringIndex;
 
     public LogMonitoringController(AgentRepository agentRepository,
                                    AgentActivityLogRepository logRepository,
                                    AnomalyDetectionResultRepository anomalyRepo,
-                                   AnomalyDetectionService anomalyDetectionService) {
+                                   AnomalyDetectionService anomalyDetectionService,
+                                   AgentScoringIndex scoringIndex) {
         this.agentRepository = agentRepository;
         this.logRepository = logRepository;
         this.anomalyRepo = anomalyRepo;
         this.anomalyDetectionService = anomalyDetectionService;
+        this.scoringIndex = scoringIndex;
     }
 
     @GetMapping("/{agentId}")
@@ -76,6 +80,7 @@ public class LogMonitoringController {
                 anomaly.setDetectedAt(LocalDateTime.now());
 
                 anomalyRepo.save(anomaly);
+                scoringIndex.anomalyDetected(agentId, anomaly.getSeverity(), anomaly.getDetectedAt());
                 anomalies.add(anomaly);
             }
         }
@@ -3,7 +3,10 @@ package com.a.portnet_back.Controllers;
 import com.a.portnet_back.DTO.AgentWorkloadDTO;
 import com.a.portnet_back.DTO.BulkReassignRequest;
 import com.a.portnet_back.DTO.BulkReassignResponse;
+import com.a.portnet_back.DTO.CursorPage;
 import com.a.portnet_back.DTO.DispatchLogDTO;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Services.ProcessingTimeSketchService;
 import com.a.portnet_back.Services.WorkloadService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -19,9 +22,11 @@ import java.util.Map;
 public class WorkloadController {
 
     private final WorkloadService service;
+    private final ProcessingTimeSketchService sketches;
 
-    public WorkloadController(WorkloadService service) {
+    public WorkloadController(WorkloadService service, ProcessingTimeSketchService sketches) {
         this.service = service;
+        this.sketches = sketches;
     }
 
     @GetMapping("/agents/workload")
@@ -35,10 +40,24 @@ public class WorkloadController {
         return ResponseEntity.ok(service.computeAgentsWorkload(q, bureau, categorie, from, to));
     }
 
+    /** Durées de traitement (nombre, moyenne, p50 / p90 / p99 en minutes) des affectations terminées sur la période. */
+    @GetMapping("/agents/workload/durations")
+    public ResponseEntity<List<Map<String, Object>>> durations(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) Long agentId,
+            @RequestParam(required = false) Long bureauId,
+            @RequestParam(required = false) Categorie categorie
+    ) {
+        return ResponseEntity.ok(sketches.quantiles(from, to, ProcessingTimeSketchService.Axe.parse(groupBy),
+                agentId, bureauId, categorie));
+    }
+
+    /** Journal du dispatch, du plus récent au plus ancien, paginé par curseur (nextCursor à renvoyer en cursor). */
     @GetMapping("/dispatch/journal")
-    public ResponseEntity<Map<String, Object>> dispatchJournal(@RequestParam Map<String,String> params) {
-        List<DispatchLogDTO> items = service.getDispatchJournal(params);
-        return ResponseEntity.ok(Map.of("items", items, "total", items.size()));
+    public ResponseEntity<CursorPage<DispatchLogDTO>> dispatchJournal(@RequestParam Map<String,String> params) {
+        return ResponseEntity.ok(service.getDispatchJournal(params));
     }
 
     @PostMapping("/dossiers/bulk-reassign")
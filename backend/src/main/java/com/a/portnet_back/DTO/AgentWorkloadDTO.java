@@ -8,7 +8,7 @@ public class AgentWorkloadDTO {
     private int enCours;
     private int enRetard;
 
-    private int slaMedianMin;
+    private int slaMedianMin;    // affectations terminées dans la période (et non créées)
     private int tempsMoyenMin;
     private int productiviteJ;
 
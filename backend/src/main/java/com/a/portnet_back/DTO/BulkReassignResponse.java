@@ -5,10 +5,16 @@ import java.util.List;
 
 public class BulkReassignResponse {
     private int updated;
+    private int inserted;
+    private int chunks;
     private List<String> notFound = new ArrayList<>();
 
     public int getUpdated() { return updated; }
     public void setUpdated(int updated) { this.updated = updated; }
+    public int getInserted() { return inserted; }
+    public void setInserted(int inserted) { this.inserted = inserted; }
+    public int getChunks() { return chunks; }
+    public void setChunks(int chunks) { this.chunks = chunks; }
     public List<String> getNotFound() { return notFound; }
     public void setNotFound(List<String> notFound) { this.notFound = notFound; }
 }
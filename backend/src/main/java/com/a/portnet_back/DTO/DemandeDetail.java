@@ -0,0 +1,209 @@
+package com.a.portnet_back.DTO;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vue lecture d'une demande avec ses marchandises et documents.
+ * Assemblée par DemandeDetailAssembler à partir de projections scalaires : aucune entité gérée.
+ */
+public class DemandeDetail {
+
+    private Long id;
+    private String numeroEnregistrement;
+    private StatusDemande statut;
+    private Categorie categorie;
+    private LocalDateTime dateCreation;
+    private LocalDateTime dateModification;
+    private String commentaire;
+
+    private Ref bureauDouanier;
+    private Ref devise;
+
+    private Long importateurId;
+    private String importateurNom;
+    private String importateurSociete;
+    private String importateurIce;
+    private String importateurEmail;
+
+    private final List<MarchandiseLine> marchandises = new ArrayList<>();
+    private final List<DocumentLine> documents = new ArrayList<>();
+
+    public boolean isModifiable() {
+        return statut == StatusDemande.EN_ATTENTE;
+    }
+
+    public int getNombreMarchandises() {
+        return marchandises.size();
+    }
+
+    public double getMontantTotal() {
+        return marchandises.stream().mapToDouble(m -> m.getMontant() != null ? m.getMontant() : 0.0).sum();
+    }
+
+    public double getQuantiteTotale() {
+        return marchandises.stream().mapToDouble(m -> m.getQuantite() != null ? m.getQuantite() : 0.0).sum();
+    }
+
+    public double getPoidsNetTotal() {
+        return marchandises.stream().mapToDouble(m -> m.getPoidsNet() != null ? m.getPoidsNet() : 0.0).sum();
+    }
+
+    public double getPoidsBrutTotal() {
+        return marchandises.stream().mapToDouble(m -> m.getPoidsBrut() != null ? m.getPoidsBrut() : 0.0).sum();
+    }
+
+    public long getTailleDocumentsTotale() {
+        return documents.stream().mapToLong(d -> d.getTaille() != null ? d.getTaille() : 0L).sum();
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getNumeroEnregistrement() { return numeroEnregistrement; }
+    public void setNumeroEnregistrement(String numeroEnregistrement) { this.numeroEnregistrement = numeroEnregistrement; }
+
+    public StatusDemande getStatut() { return statut; }
+    public void setStatut(StatusDemande statut) { this.statut = statut; }
+
+    public Categorie getCategorie() { return categorie; }
+    public void setCategorie(Categorie categorie) { this.categorie = categorie; }
+
+    public LocalDateTime getDateCreation() { return dateCreation; }
+    public void setDateCreation(LocalDateTime dateCreation) { this.dateCreation = dateCreation; }
+
+    public LocalDateTime getDateModification() { return dateModification; }
+    public void setDateModification(LocalDateTime dateModification) { this.dateModification = dateModification; }
+
+    public String getCommentaire() { return commentaire; }
+    public void setCommentaire(String commentaire) { this.commentaire = commentaire; }
+
+    public Ref getBureauDouanier() { return bureauDouanier; }
+    public void setBureauDouanier(Ref bureauDouanier) { this.bureauDouanier = bureauDouanier; }
+
+    public Ref getDevise() { return devise; }
+    public void setDevise(Ref devise) { this.devise = devise; }
+
+    public Long getImportateurId() { return importateurId; }
+    public void setImportateurId(Long importateurId) { this.importateurId = importateurId; }
+
+    public String getImportateurNom() { return importateurNom; }
+    public void setImportateurNom(String importateurNom) { this.importateurNom = importateurNom; }
+
+    public String getImportateurSociete() { return importateurSociete; }
+    public void setImportateurSociete(String importateurSociete) { this.importateurSociete = importateurSociete; }
+
+    public String getImportateurIce() { return importateurIce; }
+    public void setImportateurIce(String importateurIce) { this.importateurIce = importateurIce; }
+
+    public String getImportateurEmail() { return importateurEmail; }
+    public void setImportateurEmail(String importateurEmail) { this.importateurEmail = importateurEmail; }
+
+    public List<MarchandiseLine> getMarchandises() { return marchandises; }
+    public List<DocumentLine> getDocuments() { return documents; }
+
+    /** Référentiel simple (bureau, devise, pays). */
+    public static class Ref {
+        private final Long id;
+        private final String code;
+        private final String description;
+
+        public Ref(Long id, String code, String description) {
+            this.id = id;
+            this.code = code;
+            this.description = description;
+        }
+
+        /** null si la jointure LEFT n'a rien trouvé. */
+        public static Ref of(Long id, String code, String description) {
+            return id == null ? null : new Ref(id, code, description);
+        }
+
+        public Long getId() { return id; }
+        public String getCode() { return code; }
+        public String getDescription() { return description; }
+    }
+
+    public static class MarchandiseLine {
+        private Long id;
+        private String designation;
+        private Double quantite;
+        private Double montant;
+        private String codeSh;
+        private String uniteMesure;
+        private Double poidsNet;
+        private Double poidsBrut;
+        private String description;
+        private Ref pays;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getDesignation() { return designation; }
+        public void setDesignation(String designation) { this.designation = designation; }
+
+        public Double getQuantite() { return quantite; }
+        public void setQuantite(Double quantite) { this.quantite = quantite; }
+
+        public Double getMontant() { return montant; }
+        public void setMontant(Double montant) { this.montant = montant; }
+
+        public String getCodeSh() { return codeSh; }
+        public void setCodeSh(String codeSh) { this.codeSh = codeSh; }
+
+        public String getUniteMesure() { return uniteMesure; }
+        public void setUniteMesure(String uniteMesure) { this.uniteMesure = uniteMesure; }
+
+        public Double getPoidsNet() { return poidsNet; }
+        public void setPoidsNet(Double poidsNet) { this.poidsNet = poidsNet; }
+
+        public Double getPoidsBrut() { return poidsBrut; }
+        public void setPoidsBrut(Double poidsBrut) { this.poidsBrut = poidsBrut; }
+
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+
+        public Ref getPays() { return pays; }
+        public void setPays(Ref pays) { this.pays = pays; }
+    }
+
+    public static class DocumentLine {
+        private Long id;
+        private String nom;
+        private String type;
+        private Long taille;
+        private LocalDateTime dateUpload;
+
+        public String getTailleFormatee() {
+            if (taille == null) return "N/A";
+
+            if (taille < 1024) return taille + " B";
+            if (taille < 1024 * 1024) return String.format("%.1f KB", taille / 1024.0);
+            return String.format("%.1f MB", taille / (1024.0 * 1024.0));
+        }
+
+        public String getExtension() {
+            if (nom == null || !nom.contains(".")) return "";
+            return nom.substring(nom.lastIndexOf(".") + 1).toLowerCase();
+        }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+
+        public String getNom() { return nom; }
+        public void setNom(String nom) { this.nom = nom; }
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+
+        public Long getTaille() { return taille; }
+        public void setTaille(Long taille) { this.taille = taille; }
+
+        public LocalDateTime getDateUpload() { return dateUpload; }
+        public void setDateUpload(LocalDateTime dateUpload) { this.dateUpload = dateUpload; }
+    }
+}
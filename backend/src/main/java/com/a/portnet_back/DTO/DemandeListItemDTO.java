@@ -0,0 +1,104 @@
+package com.a.portnet_back.DTO;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ligne “plate” de la grille back-office (AGENT / SUPERVISEUR).
+ * Construite directement par la requête JPQL (constructor expression) : aucune entité gérée.
+ */
+public class DemandeListItemDTO {
+    private String id;          // numéro d'enregistrement lisible
+    private Long idDb;
+    private String categorie;
+    private String bureau;
+    private String statut;      // statut mappé UI (EN_ATTENTE / VALIDE / REJETE)
+    private LocalDateTime createdAt;
+    private String agent;
+    private String operateur;
+    private String ice;
+    private double montant;
+    private int slaHours = 72;
+
+    public DemandeListItemDTO() {
+    }
+
+    public DemandeListItemDTO(Long idDb, String numeroEnregistrement, Categorie categorie, StatusDemande statut,
+                              LocalDateTime dateCreation, String bureauCode, String bureauDescription,
+                              String societe, String nomComplet, String ice, String agentNom, Number montant) {
+        this.id = numeroEnregistrement;
+        this.idDb = idDb;
+        this.categorie = categorie != null ? categorie.name() : "—";
+        // Bureau (fallback code si description absente)
+        this.bureau = firstNonBlank(bureauDescription, bureauCode);
+        this.statut = mapStatutToUi(statut);
+        this.createdAt = dateCreation;
+        this.agent = agentNom != null && !agentNom.isBlank() ? agentNom : "-";
+        this.operateur = firstNonBlank(societe, nomComplet);
+        this.ice = firstNonBlank(ice);
+        this.montant = montant != null ? montant.doubleValue() : 0.0;
+    }
+
+    /** Statut → mapping UI */
+    public static String mapStatutToUi(StatusDemande s) {
+        if (s == null) return "EN_ATTENTE";
+        return switch (s) {
+            case EN_ATTENTE -> "EN_ATTENTE";
+            case ACCEPTEE   -> "VALIDE";
+            case REFUSEE    -> "REJETE";
+        };
+    }
+
+    /** Mapping inverse (filtre “statut” envoyé par la grille) ; null si vide ou inconnu. */
+    public static StatusDemande mapUiToStatut(String s) {
+        if (s == null || s.isBlank()) return null;
+        return switch (s.trim().toUpperCase()) {
+            case "VALIDE", "ACCEPTEE" -> StatusDemande.ACCEPTEE;
+            case "REJETE", "REFUSEE"  -> StatusDemande.REFUSEE;
+            case "EN_ATTENTE"         -> StatusDemande.EN_ATTENTE;
+            default -> null;
+        };
+    }
+
+    private static String firstNonBlank(String... values) {
+        for (String v : values) {
+            if (v != null && !v.isBlank()) return v;
+        }
+        return "—";
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Long getIdDb() { return idDb; }
+    public void setIdDb(Long idDb) { this.idDb = idDb; }
+
+    public String getCategorie() { return categorie; }
+    public void setCategorie(String categorie) { this.categorie = categorie; }
+
+    public String getBureau() { return bureau; }
+    public void setBureau(String bureau) { this.bureau = bureau; }
+
+    public String getStatut() { return statut; }
+    public void setStatut(String statut) { this.statut = statut; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public String getAgent() { return agent; }
+    public void setAgent(String agent) { this.agent = agent; }
+
+    public String getOperateur() { return operateur; }
+    public void setOperateur(String operateur) { this.operateur = operateur; }
+
+    public String getIce() { return ice; }
+    public void setIce(String ice) { this.ice = ice; }
+
+    public double getMontant() { return montant; }
+    public void setMontant(double montant) { this.montant = montant; }
+
+    public int getSlaHours() { return slaHours; }
+    public void setSlaHours(int slaHours) { this.slaHours = slaHours; }
+}
@@ -0,0 +1,9 @@
+package com.a.portnet_back.DTO;
+
+import java.time.LocalDateTime;
+
+/**
+ * Événement publié à la soumission d'une demande. Persisté par Spring Modulith (table event_publication)
+ * dans la transaction de soumission, traité après commit et republié au redémarrage s'il n'a pas abouti.
+ */
+public record DemandeSoumiseEvent(Long demandeId, LocalDateTime soumiseLe) {}
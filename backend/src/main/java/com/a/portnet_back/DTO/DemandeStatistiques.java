@@ -0,0 +1,41 @@
+package com.a.portnet_back.DTO;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Compteurs de demandes par statut et par catégorie (+ montant total) pour un périmètre :
+ * global, un importateur ou un bureau. Rempli par DemandeStatsService avant d'être mis en cache : l'instance est
+ * alors partagée entre les requêtes, add() ne doit plus être appelé ensuite.
+ */
+public class DemandeStatistiques {
+
+    private final Map<StatusDemande, Long> parStatut = new EnumMap<>(StatusDemande.class);
+    private final Map<Categorie, Long> parCategorie = new EnumMap<>(Categorie.class);
+    private long totalDemandes;
+    private double montantTotal;
+
+    public DemandeStatistiques() {
+        for (StatusDemande s : StatusDemande.values()) parStatut.put(s, 0L);
+        for (Categorie c : Categorie.values()) parCategorie.put(c, 0L);
+    }
+
+    /** Ajoute une ligne du GROUP BY (statut, catégorie). */
+    public void add(StatusDemande statut, Categorie categorie, long count, double montant) {
+        if (statut != null) parStatut.merge(statut, count, Long::sum);
+        if (categorie != null) parCategorie.merge(categorie, count, Long::sum);
+        totalDemandes += count;
+        montantTotal += montant;
+    }
+
+    public long getTotalDemandes() { return totalDemandes; }
+    public long getDemandesEnAttente() { return parStatut.get(StatusDemande.EN_ATTENTE); }
+    public long getDemandesAcceptees() { return parStatut.get(StatusDemande.ACCEPTEE); }
+    public long getDemandesRefusees() { return parStatut.get(StatusDemande.REFUSEE); }
+    public long getImportations() { return parCategorie.get(Categorie.IMPORTATION); }
+    public long getExportations() { return parCategorie.get(Categorie.EXPORTATION); }
+    public double getMontantTotal() { return montantTotal; }
+}
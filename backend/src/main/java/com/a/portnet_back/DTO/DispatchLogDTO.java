@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 public class DispatchLogDTO {
     private Long id;
     private LocalDateTime date;
+    private String evenement;
     private String dossier;
     private String from;
     private String toAgent;
@@ -15,6 +16,8 @@ public class DispatchLogDTO {
     public void setId(Long id) { this.id = id; }
     public LocalDateTime getDate() { return date; }
     public void setDate(LocalDateTime date) { this.date = date; }
+    public String getEvenement() { return evenement; }
+    public void setEvenement(String evenement) { this.evenement = evenement; }
     public String getDossier() { return dossier; }
     public void setDossier(String dossier) { this.dossier = dossier; }
     public String getFrom() { return from; }
@@ -9,7 +9,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "demandes")
+@Table(name = "demandes",
+        indexes = {
+                // pagination keyset de la grille back-office : ORDER BY date_creation DESC, id DESC
+                @Index(name = "idx_demandes_creation_id", columnList = "date_creation DESC, id DESC"),
+                @Index(name = "idx_demandes_statut_creation", columnList = "statut, date_creation DESC, id DESC"),
+                @Index(name = "idx_demandes_bureau_creation", columnList = "bureau_douanier_id, date_creation DESC, id DESC"),
+                @Index(name = "idx_demandes_importateur", columnList = "importateur_id"),
+                @Index(name = "idx_demandes_montant_total", columnList = "montant_total")
+        })
 public class Demande {
 
     @Id
@@ -54,6 +62,27 @@ public class Demande {
     @JoinColumn(name = "importateur_id")
     private Importateur importateur;
 
+    // Texte de recherche (minuscules) maintenu par trigger PostgreSQL, cf. db/demande-search.sql
+    @Column(name = "search_text", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String searchText;
+
+    // Agrégats des marchandises / documents, maintenus par triggers (db/demande-agregats.sql).
+    // Jamais écrits par Hibernate ; add/removeMarchandise et add/removeDocument les reflètent en mémoire.
+    @Column(name = "montant_total", columnDefinition = "double precision not null default 0", insertable = false, updatable = false)
+    private double montantTotal;
+
+    @Column(name = "nombre_lignes", columnDefinition = "integer not null default 0", insertable = false, updatable = false)
+    private int nombreLignes;
+
+    @Column(name = "poids_net_total", columnDefinition = "double precision not null default 0", insertable = false, updatable = false)
+    private double poidsNetTotal;
+
+    @Column(name = "poids_brut_total", columnDefinition = "double precision not null default 0", insertable = false, updatable = false)
+    private double poidsBrutTotal;
+
+    @Column(name = "nombre_documents", columnDefinition = "integer not null default 0", insertable = false, updatable = false)
+    private int nombreDocuments;
+
 
     public Demande() {
     }
@@ -180,38 +209,77 @@ public class Demande {
     public void addDocument(Document document) {
         documents.add(document);
         document.setDemande(this);
+        documentAdded();
     }
 
     public void removeDocument(Document document) {
         documents.remove(document);
         document.setDemande(null);
+        documentRemoved();
+    }
+
+    /** Reflète en mémoire un document enregistré sans passer par la collection (cf. DocumentService). */
+    public void documentAdded() {
+        nombreDocuments++;
+    }
+
+    public void documentRemoved() {
+        nombreDocuments = Math.max(0, nombreDocuments - 1);
     }
 
 
     public void addMarchandise(Marchandise marchandise) {
         marchandises.add(marchandise);
         marchandise.setDemande(this);
+        applyAgregats(marchandise, 1);
+    }
+
+
+    /**
+     * Rattache une marchandise persistée directement (import en lot) sans initialiser la collection :
+     * seuls le lien et les agrégats en mémoire sont mis à jour.
+     */
+    public void attachImported(Marchandise marchandise) {
+        marchandise.setDemande(this);
+        applyAgregats(marchandise, 1);
     }
 
 
     public void removeMarchandise(Marchandise marchandise) {
         marchandises.remove(marchandise);
         marchandise.setDemande(null);
+        applyAgregats(marchandise, -1);
+    }
+
+    private void applyAgregats(Marchandise m, int signe) {
+        nombreLignes += signe;
+        montantTotal += signe * (m.getMontant() != null ? m.getMontant() : 0.0);
+        poidsNetTotal += signe * (m.getPoidsNet() != null ? m.getPoidsNet() : 0.0);
+        poidsBrutTotal += signe * (m.getPoidsBrut() != null ? m.getPoidsBrut() : 0.0);
     }
 
 
+    /** Colonne agrégée : ne charge pas les marchandises. */
     public int getNombreMarchandises() {
-        return marchandises != null ? marchandises.size() : 0;
+        return nombreLignes;
     }
 
 
+    /** Colonne agrégée : ne charge pas les marchandises. */
     public Double getMontantTotal() {
-        if (marchandises == null || marchandises.isEmpty()) {
-            return 0.0;
-        }
-        return marchandises.stream()
-                .mapToDouble(m -> m.getMontant() != null ? m.getMontant() : 0.0)
-                .sum();
+        return montantTotal;
+    }
+
+    public Double getPoidsNetTotal() {
+        return poidsNetTotal;
+    }
+
+    public Double getPoidsBrutTotal() {
+        return poidsBrutTotal;
+    }
+
+    public int getNombreDocuments() {
+        return nombreDocuments;
     }
 
 
@@ -255,7 +323,7 @@ public class Demande {
 
 
     public boolean isComplete() {
-        return marchandises != null && !marchandises.isEmpty() &&
+        return nombreLignes > 0 &&
                 importateur != null &&
                 categorie != null &&
                 numeroEnregistrement != null && !numeroEnregistrement.trim().isEmpty();
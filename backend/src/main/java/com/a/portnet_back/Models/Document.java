@@ -4,7 +4,8 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents",
+        indexes = @Index(name = "idx_documents_demande", columnList = "demande_id"))
 public class Document {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -3,11 +3,15 @@ package com.a.portnet_back.Models;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "marchandise")
+@Table(name = "marchandise",
+        indexes = @Index(name = "idx_marchandise_demande", columnList = "demande_id"))
 public class Marchandise {
 
+    // Séquence “pooled” (un nextval pour 50 ids) : permet à Hibernate de grouper les INSERT en batch JDBC.
+    // INCREMENT BY 50 et recalage sur max(id) : cf. db/marchandise-sequence.sql
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "marchandise_seq")
+    @SequenceGenerator(name = "marchandise_seq", sequenceName = "marchandise_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "designation", nullable = false)
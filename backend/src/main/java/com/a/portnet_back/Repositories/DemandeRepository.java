@@ -95,18 +95,17 @@ public interface DemandeRepository extends JpaRepository<Demande, Long> {
     List<Demande> findOldestPendingDemandes();
 
 
-    @Query("SELECT EXTRACT(YEAR FROM d.dateCreation) as year, " +
-            "EXTRACT(MONTH FROM d.dateCreation) as month, " +
-            "COUNT(d) as count " +
-            "FROM Demande d " +
-            "GROUP BY EXTRACT(YEAR FROM d.dateCreation), EXTRACT(MONTH FROM d.dateCreation) " +
-            "ORDER BY year DESC, month DESC")
+    // lu dans l'agrégat demande_monthly_rollup (db/demande-rollup.sql), pas dans demandes
+    @Query(value = "SELECT r.annee AS year, r.mois AS month, SUM(r.nombre) AS count " +
+            "FROM demande_monthly_rollup r " +
+            "GROUP BY r.annee, r.mois " +
+            "HAVING SUM(r.nombre) > 0 " +
+            "ORDER BY year DESC, month DESC", nativeQuery = true)
     List<Object[]> getDemandesStatsByMonth();
 
 
-    @Query("SELECT d FROM Demande d WHERE " +
-            "(SELECT SUM(m.montant) FROM Marchandise m WHERE m.demande = d) >= :montantMin " +
-            "ORDER BY d.dateCreation DESC")
+    // colonne agrégée montant_total (db/demande-agregats.sql), indexée
+    @Query("SELECT d FROM Demande d WHERE d.montantTotal >= :montantMin ORDER BY d.dateCreation DESC")
     List<Demande> findByMontantTotalGreaterThan(@Param("montantMin") Double montantMin);
 
     boolean existsByNumeroEnregistrement(String numeroEnregistrement);
@@ -0,0 +1,372 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * Affinités agents ↔ demandes, lues dans le champ libre Agent.departement : codes de bureau douanier
+ * (« CASA, TANGER MED ») et catégories (IMP / IMPORTATION, EXP / EXPORTATION). Aucun jeton reconnu
+ * = généraliste ; un axe sans jeton reconnu (bureau ou catégorie) n'est pas restreint.
+ * <ul>
+ *   <li>Agents et bureaux numérotés en positions denses : compétences en BitSet, un ensemble d'agents
+ *       par bureau et par catégorie ; les spécialistes d'une demande = intersection des deux.</li>
+ *   <li>Instantané immuable remplacé d'un bloc (reconstruction au démarrage puis périodique, mise à jour
+ *       d'un agent) : les lectures ne prennent aucun verrou et ne font aucune requête.</li>
+ *   <li>Une même règle d'éligibilité agent ↔ demande pour le dispatch poussé ({@link #tiers}) et les
+ *       réclamations ({@link #eligibilite}).</li>
+ * </ul>
+ */
+@Component
+public class AgentAffinityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentAffinityIndex.class);
+
+    private static final LongPredicate NONE = id -> false;
+    private static final LongPredicate ANY = id -> true;
+
+    /** Que faire quand aucun spécialiste de la demande n'est libre. */
+    public enum Fallback {
+        /** agents sans spécialité, puis attente (les spécialistes d'autres bureaux restent aux leurs) */
+        GENERALISTES,
+        /** généralistes, puis le meilleur agent quel qu'il soit (comportement sans affinité) */
+        TOUS,
+        /** la demande attend un spécialiste (généralistes seulement si personne n'a cette spécialité) */
+        ATTENTE
+    }
+
+    /** Compétences d'un agent ; null sur un axe = pas de restriction. */
+    record Skills(BitSet bureaux, EnumMap<Categorie, Boolean> categories) {
+        boolean generaliste() {
+            return bureaux == null && categories == null;
+        }
+    }
+
+    /** Instantané complet, jamais modifié après publication. */
+    private record Snapshot(Map<String, Integer> bureauParCode,
+                            Map<Long, Integer> bureauBit,
+                            Map<Long, Integer> agentSlot,
+                            Map<Long, Skills> skills,
+                            BitSet[] parBureau,                    // bit de bureau → agents qui le traitent
+                            BitSet sansBureau,                     // agents non restreints sur le bureau
+                            EnumMap<Categorie, BitSet> parCategorie, // agents qui acceptent la catégorie
+                            BitSet generalistes) {
+
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), Map.of(), Map.of(), new BitSet[0],
+                new BitSet(), new EnumMap<>(Categorie.class), new BitSet());
+    }
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // mises à jour d'agents reçues pendant la reconstruction en cours (sous this) ; null hors reconstruction
+    private Map<Long, String> sinceLoad;
+    private final ReentrantLock rebuilding = new ReentrantLock();
+
+    private final boolean enabled;
+    private final Fallback fallback;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public AgentAffinityIndex(@Value("${dispatch.affinity.enabled:true}") boolean enabled,
+                              @Value("${dispatch.affinity.fallback:generalistes}") String fallback) {
+        this.enabled = enabled;
+        try {
+            this.fallback = Fallback.valueOf(fallback.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("dispatch.affinity.fallback inconnu : " + fallback
+                    + " (attendu generalistes, tous ou attente)");
+        }
+    }
+
+    public Fallback fallback() {
+        return fallback;
+    }
+
+    /* =======================
+       Côté demande : quels agents ?
+       ======================= */
+
+    /**
+     * Paliers d'agents pour une demande, du plus adapté au moins adapté, selon le repli configuré.
+     * Chaque palier est un filtre sur l'id d'agent (test de bit, O(1)). Liste vide : pas d'affinité
+     * (désactivée ou index pas encore chargé).
+     */
+    public List<LongPredicate> tiers(Long bureauId, Categorie categorie) {
+        Snapshot s = snapshot;
+        if (!enabled || s.agentSlot().isEmpty()) return List.of();
+
+        BitSet specialistes = specialistes(s, bureauId, categorie);
+        LongPredicate spec = specialistes.isEmpty() ? NONE : member(s, specialistes);
+        LongPredicate gen = member(s, s.generalistes());
+        return switch (fallback) {
+            case GENERALISTES, TOUS -> List.of(spec, gen);
+            case ATTENTE -> specialistes.isEmpty() ? List.of(gen) : List.of(spec);
+        };
+    }
+
+    /**
+     * Paliers de {@link #tiers} pour le dispatch en lot (cf. DispatchEngine), même repli que le dispatch unitaire :
+     * avec « tous », un dernier palier accepte n'importe quel agent.
+     */
+    public DispatchPolicy.Affinity affinity() {
+        return demande -> {
+            List<LongPredicate> tiers = tiers(demande.bureauId(), demande.categorie());
+            if (tiers.isEmpty() || fallback != Fallback.TOUS) return tiers;
+            List<LongPredicate> all = new ArrayList<>(tiers);
+            all.add(ANY);
+            return all;
+        };
+    }
+
+    /** Agents dont les compétences couvrent explicitement la demande (généralistes exclus). */
+    private static BitSet specialistes(Snapshot s, Long bureauId, Categorie categorie) {
+        BitSet out = new BitSet();
+        Integer b = bureauId == null ? null : s.bureauBit().get(bureauId);
+        if (b != null) out.or(s.parBureau()[b]);
+        out.or(s.sansBureau());
+        BitSet cat = categorie == null ? null : s.parCategorie().get(categorie);
+        if (cat != null) out.and(cat);
+        out.andNot(s.generalistes());
+        return out;
+    }
+
+    private static LongPredicate member(Snapshot s, BitSet agents) {
+        return id -> {
+            Integer slot = s.agentSlot().get(id);
+            return slot != null && agents.get(slot);
+        };
+    }
+
+    /* =======================
+       Côté agent : quelles demandes ?
+       ======================= */
+
+    /**
+     * Couples (bureau, catégorie) qu'un agent peut prendre, énumérés pour être filtrés aussi en SQL.
+     * Bureau hors index (ou absent) noté {@link #AUTRE_BUREAU}, catégorie absente notée "".
+     */
+    public record Eligibilite(Set<Long> bureauxConnus, Set<Couple> couples) implements BiPredicate<Long, Categorie> {
+
+        public static final long AUTRE_BUREAU = -1L;
+
+        public record Couple(long bureauId, String categorie) {}
+
+        @Override
+        public boolean test(Long bureauId, Categorie categorie) {
+            long b = bureauId != null && bureauxConnus.contains(bureauId) ? bureauId : AUTRE_BUREAU;
+            return couples.contains(new Couple(b, categorie == null ? "" : categorie.name()));
+        }
+    }
+
+    /**
+     * Demandes que l'agent peut prendre lui-même, selon la règle du dispatch poussé : l'agent figure dans un
+     * des paliers de {@link #tiers} pour la demande. Un agent absent de l'index compte comme généraliste.
+     * null : aucune restriction (affinité désactivée, index vide, repli « tous »).
+     */
+    public Eligibilite eligibilite(Long agentId) {
+        Snapshot s = snapshot;
+        if (!enabled || s.agentSlot().isEmpty() || fallback == Fallback.TOUS) return null;
+        Integer slot = s.agentSlot().get(agentId);
+        boolean generaliste = slot == null || s.generalistes().get(slot);
+
+        List<Long> bureaux = new ArrayList<>(s.bureauBit().keySet());
+        bureaux.add(null);
+        List<Categorie> categories = new ArrayList<>(List.of(Categorie.values()));
+        categories.add(null);
+        Set<Eligibilite.Couple> couples = new HashSet<>();
+        for (Long bureauId : bureaux) {
+            for (Categorie categorie : categories) {
+                BitSet specialistes = specialistes(s, bureauId, categorie);
+                boolean ok = generaliste
+                        ? fallback == Fallback.GENERALISTES || specialistes.isEmpty()
+                        : specialistes.get(slot);
+                if (ok) couples.add(new Eligibilite.Couple(bureauId == null ? Eligibilite.AUTRE_BUREAU : bureauId,
+                        categorie == null ? "" : categorie.name()));
+            }
+        }
+        return new Eligibilite(Set.copyOf(s.bureauBit().keySet()), Set.copyOf(couples));
+    }
+
+    /** Filtre (bureauId, catégorie) des demandes de la spécialité de l'agent ; null pour un généraliste. */
+    public BiPredicate<Long, Categorie> specialite(Long agentId) {
+        Snapshot s = snapshot;
+        Skills k = enabled ? s.skills().get(agentId) : null;
+        if (k == null || k.generaliste()) return null;
+        return (bureauId, categorie) -> {
+            if (k.bureaux() != null) {
+                Integer b = bureauId == null ? null : s.bureauBit().get(bureauId);
+                if (b == null || !k.bureaux().get(b)) return false;
+            }
+            return k.categories() == null || (categorie != null && k.categories().containsKey(categorie));
+        };
+    }
+
+    /* =======================
+       Mises à jour
+       ======================= */
+
+    /**
+     * Agent activé ou département modifié : recalcule ses compétences (bureaux déjà connus).
+     * À appeler après commit (cf. AgentService), pour que la reconstruction en cours le rejoue.
+     */
+    public void agentUpdated(Long agentId, String departement) {
+        if (agentId == null) return;
+        synchronized (this) {
+            Map<Long, String> departements = new HashMap<>();
+            Snapshot s = snapshot;
+            s.agentSlot().keySet().forEach(id -> departements.put(id, null));
+            departements.put(agentId, departement == null ? "" : departement);
+            // départements des autres agents : déjà résolus, on repart de leurs compétences
+            snapshot = build(s.bureauParCode(), s.bureauBit(), departements, s.skills());
+            if (sinceLoad != null) sinceLoad.put(agentId, departement == null ? "" : departement);
+        }
+    }
+
+    /**
+     * Recharge l'index depuis le primaire (pas de réplique en retard). Les mises à jour reçues après commit
+     * pendant la lecture sont rejouées sur le nouvel instantané : elles viennent de transactions validées
+     * après (ou juste avant) la lecture des agents. Une seule reconstruction à la fois.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${dispatch.affinity.resync-ms:300000}",
+            initialDelayString = "${dispatch.affinity.resync-ms:300000}")
+    @Transactional
+    public void rebuild() {
+        if (!rebuilding.tryLock()) return;
+        try {
+            synchronized (this) {
+                sinceLoad = new HashMap<>();
+            }
+            read();
+        } finally {
+            synchronized (this) {
+                sinceLoad = null;
+            }
+            rebuilding.unlock();
+        }
+    }
+
+    private void read() {
+        Map<Long, String> bureaux = new LinkedHashMap<>();
+        for (Object[] row : entityManager.createQuery(
+                "SELECT b.id, b.code FROM BureauDouanier b ORDER BY b.id", Object[].class).getResultList()) {
+            bureaux.put((Long) row[0], (String) row[1]);
+        }
+        Map<Long, String> departements = new HashMap<>();
+        for (Object[] row : entityManager.createQuery(
+                "SELECT a.id, a.departement FROM Agent a WHERE a.isActivated = true", Object[].class).getResultList()) {
+            departements.put((Long) row[0], (String) row[1]);
+        }
+        load(bureaux, departements);
+    }
+
+    /** Remplace l'instantané : bureaux (id → code) et départements des agents activés. */
+    void load(Map<Long, String> bureaux, Map<Long, String> departements) {
+        Map<String, Integer> parCode = new HashMap<>();
+        Map<Long, Integer> bureauBit = new HashMap<>();
+        bureaux.forEach((id, code) -> {
+            int bit = bureauBit.size();
+            bureauBit.put(id, bit);
+            if (code != null) parCode.put(normalize(code), bit);
+        });
+
+        Snapshot fresh;
+        synchronized (this) {
+            if (sinceLoad != null && !sinceLoad.isEmpty()) {
+                departements = new HashMap<>(departements);
+                departements.putAll(sinceLoad);
+            }
+            fresh = build(parCode, bureauBit, departements, Map.of());
+            snapshot = fresh;
+        }
+        log.debug("Index d'affinité reconstruit : {} agents, {} spécialistes, {} bureaux",
+                fresh.agentSlot().size(), fresh.agentSlot().size() - fresh.generalistes().cardinality(), bureauBit.size());
+    }
+
+    /** Construit un instantané ; {@code known} fournit les compétences des agents dont le département vaut null. */
+    private static Snapshot build(Map<String, Integer> parCode, Map<Long, Integer> bureauBit,
+                                  Map<Long, String> departements, Map<Long, Skills> known) {
+        int nbBureaux = bureauBit.size();
+        BitSet[] parBureau = new BitSet[nbBureaux];
+        for (int i = 0; i < nbBureaux; i++) parBureau[i] = new BitSet();
+        BitSet sansBureau = new BitSet();
+        EnumMap<Categorie, BitSet> parCategorie = new EnumMap<>(Categorie.class);
+        for (Categorie c : Categorie.values()) parCategorie.put(c, new BitSet());
+        BitSet generalistes = new BitSet();
+
+        Map<Long, Integer> slots = new HashMap<>();
+        Map<Long, Skills> skills = new HashMap<>();
+        for (Map.Entry<Long, String> e : departements.entrySet()) {
+            Long agentId = e.getKey();
+            Skills k = e.getValue() == null && known.containsKey(agentId)
+                    ? known.get(agentId)
+                    : parse(e.getValue(), parCode);
+            int slot = slots.size();
+            slots.put(agentId, slot);
+            skills.put(agentId, k);
+
+            if (k.bureaux() == null) sansBureau.set(slot);
+            else k.bureaux().stream().forEach(b -> parBureau[b].set(slot));
+            for (Categorie c : Categorie.values()) {
+                if (k.categories() == null || k.categories().containsKey(c)) parCategorie.get(c).set(slot);
+            }
+            if (k.generaliste()) generalistes.set(slot);
+        }
+        return new Snapshot(Map.copyOf(parCode), Map.copyOf(bureauBit), slots, skills,
+                parBureau, sansBureau, parCategorie, generalistes);
+    }
+
+    /** "CASA / IMP, Tanger Med" → bureaux {CASA, TANGER MED}, catégories {IMPORTATION} */
+    static Skills parse(String departement, Map<String, Integer> bureauParCode) {
+        if (departement == null || departement.isBlank()) return new Skills(null, null);
+        BitSet bureaux = new BitSet();
+        EnumMap<Categorie, Boolean> categories = new EnumMap<>(Categorie.class);
+        for (String raw : departement.split("[,;/|]")) {
+            String token = normalize(raw);
+            if (token.isEmpty()) continue;
+            Categorie c = categorie(token);
+            if (c != null) {
+                categories.put(c, Boolean.TRUE);
+                continue;
+            }
+            Integer b = bureauParCode.get(token);
+            if (b != null) bureaux.set(b);
+            // jeton inconnu (intitulé de service libre) : ignoré
+        }
+        return new Skills(bureaux.isEmpty() ? null : bureaux, categories.isEmpty() ? null : categories);
+    }
+
+    private static Categorie categorie(String token) {
+        return switch (token) {
+            case "IMP", "IMPORT", "IMPORTATION" -> Categorie.IMPORTATION;
+            case "EXP", "EXPORT", "EXPORTATION" -> Categorie.EXPORTATION;
+            default -> null;
+        };
+    }
+
+    private static String normalize(String s) {
+        return s.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+}
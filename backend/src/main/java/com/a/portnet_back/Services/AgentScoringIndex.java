@@ -0,0 +1,506 @@
+package com.a.portnet_back.Services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Index mémoire des agents activés pour le dispatcher : tâches actives, dernière activité, pénalité d'anomalies
+ * (décroissance exponentielle). Score = disponibilité (10 - tâches actives) + 2 si actif dans l'heure - pénalité.
+ * <ul>
+ *   <li>Alimenté par les affectations, logs et anomalies (appels explicites des services / contrôleurs).</li>
+ *   <li>Reconstruit depuis la base au démarrage puis périodiquement (écritures hors application, SQL
+ *       manuel...), en 4 requêtes groupées sur le primaire ; les événements validés après l'instantané et ceux
+ *       des transactions encore ouvertes sont rejoués sur l'état relu (cf. {@link #rebuild()}).</li>
+ *   <li>Meilleur agent : tête d'un ensemble trié par score, O(log n), sans requête.</li>
+ * </ul>
+ */
+@Component
+public class AgentScoringIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentScoringIndex.class);
+
+    private static final double MAX_AVAILABILITY = 10.0;
+    private static final double RECENCY_BONUS = 2.0;
+
+    /** Attente maximale de rebuild() entre deux commits ; au-delà, la reconstruction est remise au passage suivant. */
+    private static final long GATE_WAIT_MS = 5_000;
+    private static final long GATE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** État d'un agent ; modifié uniquement sous le verrou de l'index. */
+    private static final class AgentState {
+        final Long agentId;
+        long activeTasks;
+        LocalDateTime lastActivity;
+        double penalty;              // valeur à l'instant penaltyAt, décroît ensuite
+        LocalDateTime penaltyAt;
+        LocalDateTime lastCritical;
+
+        AgentState(Long agentId) {
+            this.agentId = agentId;
+        }
+    }
+
+    /** Événement appliqué à un agent ; create = l'agent entre dans l'index s'il n'y est pas. */
+    private record Event(Long agentId, boolean create, Consumer<AgentState> change) {}
+
+    /** Entrée de l'ensemble trié : score figé au moment de l'insertion. */
+    private record Ranked(Long agentId, double score) {}
+
+    private static final Comparator<Ranked> BEST_FIRST = Comparator
+            .comparingDouble(Ranked::score).reversed()
+            .thenComparing(Ranked::agentId);
+
+    private final Object lock = new Object();
+    private Map<Long, AgentState> states = new HashMap<>();
+    private final Map<Long, Ranked> ranked = new HashMap<>();
+    private final TreeSet<Ranked> ranking = new TreeSet<>(BEST_FIRST);
+
+    /** Transactions ouvertes qui ont touché l'index (sous lock). */
+    private final Set<Pending> inflight = new HashSet<>();
+    /** Événements validés depuis l'instantané de la reconstruction en cours, null hors reconstruction (sous lock). */
+    private List<Event> sinceSnapshot;
+    /**
+     * Tenu en lecture pendant chaque commit, en écriture pendant la prise d'instantané de rebuild(). Le côté
+     * écriture n'est pris que par tryLock() sans attente : rebuild() ne se met jamais en file, donc un commit
+     * n'attend jamais derrière lui pendant qu'un autre commit (qui tient le côté lecture) attend un verrou de
+     * ligne en base.
+     */
+    private final ReentrantReadWriteLock commitGate = new ReentrantReadWriteLock();
+    private final ReentrantLock rebuilding = new ReentrantLock();
+
+    private final Duration recencyWindow;
+    private final Duration penaltyHalfLife;
+    private final Duration criticalWindow;
+    private final Supplier<LocalDateTime> clock;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public AgentScoringIndex(@Value("${dispatch.scoring.recency-window-minutes:60}") long recencyWindowMinutes,
+                             @Value("${dispatch.scoring.penalty-half-life-minutes:60}") long penaltyHalfLifeMinutes,
+                             @Value("${dispatch.scoring.critical-window-minutes:180}") long criticalWindowMinutes) {
+        this(Duration.ofMinutes(recencyWindowMinutes), Duration.ofMinutes(penaltyHalfLifeMinutes),
+                Duration.ofMinutes(criticalWindowMinutes), LocalDateTime::now);
+    }
+
+    AgentScoringIndex(Duration recencyWindow, Duration penaltyHalfLife, Duration criticalWindow,
+                      Supplier<LocalDateTime> clock) {
+        this.recencyWindow = recencyWindow;
+        this.penaltyHalfLife = penaltyHalfLife;
+        this.criticalWindow = criticalWindow;
+        this.clock = clock;
+    }
+
+    /* =======================
+       Lecture
+       ======================= */
+
+    /** Agent activé au meilleur score, sans requête. */
+    public Optional<Long> bestAgentId() {
+        LocalDateTime now = clock.get();
+        synchronized (lock) {
+            // un bonus d'activité expiré fait baisser un score : tête recalculée tant qu'elle a baissé
+            // (la décroissance des pénalités ne fait que monter les scores, rattrapée par refreshScores)
+            for (int i = 0, n = ranking.size(); i < n; i++) {
+                Ranked head = ranking.first();
+                if (score(states.get(head.agentId()), now) >= head.score() - 1e-9) return Optional.of(head.agentId());
+                rerank(states.get(head.agentId()), now);
+            }
+            return ranking.isEmpty() ? Optional.empty() : Optional.of(ranking.first().agentId());
+        }
+    }
+
+    /**
+     * Meilleur agent libre (moins de 10 tâches actives, sans anomalie critique récente) parmi ceux acceptés
+     * par le filtre : parcours de l'ensemble trié jusqu'au premier admis, sans requête.
+     */
+    public Optional<Long> bestAgentId(LongPredicate allowed) {
+        LocalDateTime criticalSince = clock.get().minus(criticalWindow);
+        synchronized (lock) {
+            for (Ranked r : ranking) {
+                if (!allowed.test(r.agentId())) continue;
+                AgentState s = states.get(r.agentId());
+                if (s.activeTasks >= MAX_AVAILABILITY) continue;
+                if (s.lastCritical != null && s.lastCritical.isAfter(criticalSince)) continue;
+                return Optional.of(r.agentId());
+            }
+            return Optional.empty();
+        }
+    }
+
+    public boolean hasRecentCriticalAnomaly(Long agentId) {
+        LocalDateTime since = clock.get().minus(criticalWindow);
+        synchronized (lock) {
+            AgentState s = states.get(agentId);
+            return s != null && s.lastCritical != null && s.lastCritical.isAfter(since);
+        }
+    }
+
+    /** Agents activés sans anomalie critique récente, avec leur charge et leur score courants. */
+    public List<DispatchPolicy.AgentLoad> eligibleAgents() {
+        LocalDateTime now = clock.get();
+        LocalDateTime criticalSince = now.minus(criticalWindow);
+        synchronized (lock) {
+            List<DispatchPolicy.AgentLoad> out = new ArrayList<>(states.size());
+            for (AgentState s : states.values()) {
+                if (s.lastCritical != null && s.lastCritical.isAfter(criticalSince)) continue;
+                out.add(new DispatchPolicy.AgentLoad(s.agentId, s.activeTasks, score(s, now)));
+            }
+            return out;
+        }
+    }
+
+    /** Charge d'un agent activé vue par le rééquilibrage. */
+    public record Load(Long agentId, long activeTasks, boolean recentlyActive, boolean criticalAnomaly) {}
+
+    public List<Load> loads() {
+        LocalDateTime now = clock.get();
+        LocalDateTime activeSince = now.minus(recencyWindow);
+        LocalDateTime criticalSince = now.minus(criticalWindow);
+        synchronized (lock) {
+            List<Load> out = new ArrayList<>(states.size());
+            for (AgentState s : states.values()) {
+                out.add(new Load(s.agentId, s.activeTasks,
+                        s.lastActivity != null && s.lastActivity.isAfter(activeSince),
+                        s.lastCritical != null && s.lastCritical.isAfter(criticalSince)));
+            }
+            return out;
+        }
+    }
+
+    public double scoreOf(Long agentId) {
+        synchronized (lock) {
+            AgentState s = states.get(agentId);
+            return s == null ? Double.NaN : score(s, clock.get());
+        }
+    }
+
+    /* =======================
+       Événements
+       ======================= */
+
+    /** Nouvelle affectation active ; annulée si la transaction en cours est annulée. */
+    public void taskAssigned(Long agentId) {
+        adjustActiveTasks(agentId, +1);
+    }
+
+    /** Affectation terminée / annulée. */
+    public void taskReleased(Long agentId) {
+        adjustActiveTasks(agentId, -1);
+    }
+
+    /** Affectation active passée d'un agent à un autre. */
+    public void taskMoved(Long fromAgentId, Long toAgentId) {
+        if (fromAgentId != null && fromAgentId.equals(toAgentId)) return;
+        if (fromAgentId != null) taskReleased(fromAgentId);
+        taskAssigned(toAgentId);
+    }
+
+    public void activityLogged(Long agentId, LocalDateTime at) {
+        if (agentId == null || at == null) return;
+        record(new Event(agentId, false, s -> {
+            if (s.lastActivity == null || at.isAfter(s.lastActivity)) s.lastActivity = at;
+        }), null);
+    }
+
+    public void anomalyDetected(Long agentId, String severity, LocalDateTime at) {
+        if (agentId == null) return;
+        LocalDateTime when = at != null ? at : clock.get();
+        record(new Event(agentId, false, s -> addAnomaly(s, severity, when)), null);
+    }
+
+    /** Agent qui vient d'activer son compte : entre dans le classement. */
+    public void agentActivated(Long agentId) {
+        if (agentId == null) return;
+        record(new Event(agentId, true, s -> {}), null);
+    }
+
+    /* =======================
+       Reconstruction
+       ======================= */
+
+    /**
+     * Relit l'état depuis la base et remplace l'index d'un bloc, sans perdre les événements reçus pendant la lecture.
+     * <ul>
+     *   <li>Sur le primaire (pas readOnly) : un réplica en retard ramènerait un état antérieur.</li>
+     *   <li>REPEATABLE READ : les 4 requêtes voient l'instantané pris par la première, lancée pendant qu'aucune
+     *       transaction qui a touché l'index ne valide (commitGate).</li>
+     *   <li>Sur l'état relu sont rejoués les événements validés après l'instantané, puis ceux des transactions
+     *       encore ouvertes (déjà appliqués à l'index courant, annulés plus tard si elles échouent).</li>
+     * </ul>
+     * Un événement signalé hors transaction a déjà été écrit : s'il l'a été avant l'instantané, il est compté
+     * deux fois jusqu'à la reconstruction suivante.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${dispatch.scoring.resync-ms:300000}",
+            initialDelayString = "${dispatch.scoring.resync-ms:300000}")
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public void rebuild() {
+        // démarrage et planification peuvent se chevaucher : une seule reconstruction à la fois
+        if (!rebuilding.tryLock()) return;
+        try {
+            load();
+        } finally {
+            synchronized (lock) {
+                sinceSnapshot = null;
+            }
+            rebuilding.unlock();
+        }
+    }
+
+    private void load() {
+        LocalDateTime now = clock.get();
+        Map<Long, AgentState> fresh = new HashMap<>();
+
+        List<Long> agentIds;
+        if (!acquireCommitGate()) {
+            log.warn("Index de scoring non reconstruit : commits ininterrompus pendant {} ms", GATE_WAIT_MS);
+            return;
+        }
+        try {
+            agentIds = entityManager.createQuery(
+                    "SELECT a.id FROM Agent a WHERE a.isActivated = true", Long.class).getResultList();
+            synchronized (lock) {
+                sinceSnapshot = new ArrayList<>();
+            }
+        } finally {
+            commitGate.writeLock().unlock();
+        }
+        for (Long id : agentIds) fresh.put(id, new AgentState(id));
+
+        for (Object[] row : entityManager.createQuery("""
+                SELECT t.agent.id, COUNT(t) FROM TaskAssignment t
+                WHERE t.status IN (com.a.portnet_back.Models.TaskAssignment.Status.ASSIGNED,
+                                   com.a.portnet_back.Models.TaskAssignment.Status.IN_PROGRESS)
+                GROUP BY t.agent.id
+                """, Object[].class).getResultList()) {
+            AgentState s = fresh.get((Long) row[0]);
+            if (s != null) s.activeTasks = (Long) row[1];
+        }
+
+        for (Object[] row : entityManager.createQuery("""
+                SELECT l.agent.id, MAX(l.timestamp) FROM AgentActivityLog l
+                WHERE l.timestamp > :since
+                GROUP BY l.agent.id
+                """, Object[].class)
+                .setParameter("since", now.minus(recencyWindow))
+                .getResultList()) {
+            AgentState s = fresh.get((Long) row[0]);
+            if (s != null) s.lastActivity = (LocalDateTime) row[1];
+        }
+
+        // au-delà de 6 demi-vies la contribution d'une anomalie est < 2 %
+        LocalDateTime anomaliesSince = now.minus(max(penaltyHalfLife.multipliedBy(6), criticalWindow));
+        for (Object[] row : entityManager.createQuery("""
+                SELECT r.agent.id, r.severity, r.detectedAt FROM AnomalyDetectionResult r
+                WHERE r.detectedAt > :since
+                ORDER BY r.detectedAt
+                """, Object[].class)
+                .setParameter("since", anomaliesSince)
+                .getResultList()) {
+            AgentState s = fresh.get((Long) row[0]);
+            if (s != null) addAnomaly(s, (String) row[1], (LocalDateTime) row[2]);
+        }
+
+        synchronized (lock) {
+            for (Event e : sinceSnapshot) apply(fresh, e);
+            for (Pending p : inflight) {
+                for (Event e : p.events) apply(fresh, e);
+            }
+            states = fresh;
+            ranked.clear();
+            ranking.clear();
+            for (AgentState s : fresh.values()) rerank(s, now);
+        }
+        log.debug("Index de scoring reconstruit : {} agents activés", fresh.size());
+    }
+
+    /**
+     * Côté écriture de commitGate, par tryLock() répétés : contrairement à lock() ou tryLock(timeout), un échec
+     * ne laisse aucun écrivain en file, donc les commits suivants prennent le côté lecture sans attendre.
+     */
+    private boolean acquireCommitGate() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GATE_WAIT_MS);
+        while (!commitGate.writeLock().tryLock()) {
+            if (System.nanoTime() - deadline > 0) return false;
+            LockSupport.parkNanos(GATE_RETRY_NANOS);
+        }
+        return true;
+    }
+
+    /** Recalcule tous les scores (expiration des bonus, décroissance des pénalités), sans requête. */
+    @Scheduled(fixedDelayString = "${dispatch.scoring.refresh-ms:60000}")
+    public void refreshScores() {
+        LocalDateTime now = clock.get();
+        synchronized (lock) {
+            for (AgentState s : states.values()) rerank(s, now);
+        }
+    }
+
+    /* =======================
+       Interne
+       ======================= */
+
+    private void adjustActiveTasks(Long agentId, int delta) {
+        if (agentId == null) return;
+        record(new Event(agentId, false, s -> s.activeTasks = Math.max(0, s.activeTasks + delta)),
+                new Event(agentId, false, s -> s.activeTasks = Math.max(0, s.activeTasks - delta)));
+    }
+
+    /**
+     * Applique l'événement à l'index tout de suite. Dans une transaction, il est rattaché à celle-ci : rejoué par
+     * une reconstruction tant qu'elle est ouverte, compté comme postérieur à l'instantané s'il est validé après,
+     * compensé (undo) si elle est annulée.
+     */
+    private void record(Event event, Event undo) {
+        LocalDateTime now = clock.get();
+        Pending pending = TransactionSynchronizationManager.isSynchronizationActive() ? pending() : null;
+        synchronized (lock) {
+            applyAndRerank(event, now);
+            if (pending != null) {
+                pending.events.add(event);
+                if (undo != null) pending.undo.add(undo);
+                inflight.add(pending);
+            } else if (sinceSnapshot != null) {
+                sinceSnapshot.add(event);
+            }
+        }
+    }
+
+    /** Pending de la transaction courante (une transaction suspendue garde le sien). */
+    private Pending pending() {
+        for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+            if (sync instanceof Pending p && p.index() == this) return p;
+        }
+        Pending p = new Pending();
+        TransactionSynchronizationManager.registerSynchronization(p);
+        return p;
+    }
+
+    private void applyAndRerank(Event e, LocalDateTime now) {
+        AgentState s = apply(states, e);
+        if (s != null) rerank(s, now);
+    }
+
+    private static AgentState apply(Map<Long, AgentState> target, Event e) {
+        // agent absent de l'index = non activé : rien à suivre
+        AgentState s = e.create() ? target.computeIfAbsent(e.agentId(), AgentState::new) : target.get(e.agentId());
+        if (s != null) e.change().accept(s);
+        return s;
+    }
+
+    /**
+     * Événements d'une transaction ouverte ; le verrou de lecture de commitGate est tenu pendant son commit
+     * et ne peut attendre qu'une prise d'instantané déjà commencée (jamais une reconstruction en file).
+     */
+    private final class Pending implements TransactionSynchronization {
+        final List<Event> events = new ArrayList<>();
+        final List<Event> undo = new ArrayList<>();
+        private boolean gateHeld;
+
+        AgentScoringIndex index() {
+            return AgentScoringIndex.this;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            commitGate.readLock().lock();
+            gateHeld = true;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            try {
+                LocalDateTime now = clock.get();
+                synchronized (lock) {
+                    inflight.remove(this);
+                    if (status == STATUS_COMMITTED) {
+                        if (sinceSnapshot != null) sinceSnapshot.addAll(events);
+                    } else if (status == STATUS_ROLLED_BACK) {
+                        for (Event e : undo) applyAndRerank(e, now);
+                    }
+                }
+            } finally {
+                if (gateHeld) commitGate.readLock().unlock();
+            }
+        }
+    }
+
+    private void rerank(AgentState s, LocalDateTime now) {
+        Ranked old = ranked.get(s.agentId);
+        if (old != null) ranking.remove(old);
+        Ranked fresh = new Ranked(s.agentId, score(s, now));
+        ranked.put(s.agentId, fresh);
+        ranking.add(fresh);
+    }
+
+    private double score(AgentState s, LocalDateTime now) {
+        double availability = MAX_AVAILABILITY - Math.min(MAX_AVAILABILITY, s.activeTasks);
+        boolean activeRecently = s.lastActivity != null && s.lastActivity.isAfter(now.minus(recencyWindow));
+        return availability + (activeRecently ? RECENCY_BONUS : 0.0) - decayedPenalty(s, now);
+    }
+
+    private void addAnomaly(AgentState s, String severity, LocalDateTime at) {
+        String sev = String.valueOf(severity).toUpperCase();
+        double weight = switch (sev) {
+            case "CRITICAL" -> 3.0;
+            case "HIGH"     -> 2.0;
+            case "MEDIUM"   -> 1.0;
+            default         -> 0.5;
+        };
+        if (s.penaltyAt == null || !at.isBefore(s.penaltyAt)) {
+            s.penalty = decayedPenalty(s, at) + weight;
+            s.penaltyAt = at;
+        } else {
+            // anomalie arrivée en retard : ramenée à l'instant de référence
+            s.penalty += weight * decay(Duration.between(at, s.penaltyAt));
+        }
+        if ("CRITICAL".equals(sev) && (s.lastCritical == null || at.isAfter(s.lastCritical))) {
+            s.lastCritical = at;
+        }
+    }
+
+    private double decayedPenalty(AgentState s, LocalDateTime now) {
+        if (s.penaltyAt == null || s.penalty == 0.0) return 0.0;
+        Duration elapsed = Duration.between(s.penaltyAt, now);
+        return elapsed.isNegative() ? s.penalty : s.penalty * decay(elapsed);
+    }
+
+    private double decay(Duration elapsed) {
+        return Math.pow(0.5, (double) elapsed.toMillis() / penaltyHalfLife.toMillis());
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
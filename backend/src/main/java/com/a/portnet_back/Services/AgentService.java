@@ -13,6 +13,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
@@ -24,6 +26,8 @@ public class AgentService {
     @Autowired private AgentRepository agentRepository;
     @Autowired private UserRepository userRepository;
     @Autowired private PasswordEncoder passwordEncoder;
+    @Autowired private AgentScoringIndex scoringIndex;
+    @Autowired private AgentAffinityIndex affinityIndex;
 
     private final RestTemplate restTemplate = new RestTemplate();
 
@@ -80,6 +84,8 @@ public class AgentService {
         agent.setActivated(true);
         agent.setActivationToken(null);
         agentRepository.save(agent);
+        scoringIndex.agentActivated(agent.getId());
+        affinityUpdatedAfterCommit(agent);
         return true;
     }
 
@@ -130,7 +136,11 @@ public class AgentService {
     /** NOUVEAU : helpers utilisés par /api/agents/me  */
     public Optional<Agent> findByUserId(Long userId) { return agentRepository.findByUserId(userId); }
     public Optional<Agent> findByEmail(String email) { return agentRepository.findByEmail(email); }
-    public Agent save(Agent a) { return agentRepository.save(a); }
+    public Agent save(Agent a) {
+        Agent saved = agentRepository.save(a);
+        if (saved.isActivated()) affinityUpdatedAfterCommit(saved);
+        return saved;
+    }
 
     /** Supprime l’agent ET le user associé */
     @Transactional
@@ -147,4 +157,20 @@ public class AgentService {
         }
         agentRepository.delete(agent);
     }
+
+    /** L'index d'affinité ne voit que des départements validés (sinon la reconstruction en cours les perdrait). */
+    private void affinityUpdatedAfterCommit(Agent agent) {
+        Long id = agent.getId();
+        String departement = agent.getDepartement();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            affinityIndex.agentUpdated(id, departement);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                affinityIndex.agentUpdated(id, departement);
+            }
+        });
+    }
 }
@@ -0,0 +1,365 @@
+package com.a.portnet_back.Services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Compteurs horaires de charge par agent (table agent_workload_hourly, cf. db/agent-workload.sql), tenus à jour
+ * par trigger à chaque création / début / fin / annulation / réaffectation d'une affectation.
+ * <ul>
+ *   <li>Tiers chaud : les hot-hours dernières heures sont gardées en mémoire, synchronisées de façon
+ *       incrémentale (lignes écrites par une transaction non encore vue au passage précédent, via txid).</li>
+ *   <li>Une période quelconque = somme des seaux : mémoire pour la partie récente, un SUM groupé sur la table
+ *       pour le reste.</li>
+ *   <li>Réconciliation périodique (leader seulement) des reconcile-hours dernières heures contre
+ *       task_assignments : répare toute dérive (trigger désactivé, restauration partielle...). Sans verrou de
+ *       table : les écarts sont lus dans un seul instantané puis ajoutés en deltas (cf. reconcile()).</li>
+ * </ul>
+ */
+@Component
+public class AgentWorkloadRollup {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentWorkloadRollup.class);
+
+    private static final LocalDateTime ORIGINE = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String COLUMNS = "total, en_cours, non_termines, termines, duree_somme, duree_nombre";
+
+    /** Compteurs attendus, recalculés depuis task_assignments pour les heures >= ? (deux fois le paramètre). */
+    private static final String EXPECTED = """
+            SELECT x.agent_id, x.heure,
+                   sum(x.total) AS total, sum(x.en_cours) AS en_cours, sum(x.non_termines) AS non_termines,
+                   sum(x.termines) AS termines, sum(x.duree_somme) AS duree_somme, sum(x.duree_nombre) AS duree_nombre
+            FROM (
+                SELECT ta.agent_id, date_trunc('hour', ta.created_at) AS heure, 1 AS total,
+                       CASE WHEN ta.status IN ('ASSIGNED', 'IN_PROGRESS') THEN 1 ELSE 0 END AS en_cours,
+                       CASE WHEN ta.status <> 'DONE' THEN 1 ELSE 0 END AS non_termines,
+                       0 AS termines,
+                       coalesce(trunc(EXTRACT(EPOCH FROM ta.finished_at
+                                               - coalesce(ta.started_at, ta.created_at)) / 60)::bigint, 0) AS duree_somme,
+                       CASE WHEN ta.finished_at IS NULL THEN 0 ELSE 1 END AS duree_nombre
+                FROM task_assignments ta
+                WHERE ta.agent_id IS NOT NULL AND ta.created_at >= ?
+                UNION ALL
+                SELECT ta.agent_id, date_trunc('hour', ta.finished_at), 0, 0, 0, 1, 0, 0
+                FROM task_assignments ta
+                WHERE ta.agent_id IS NOT NULL AND ta.created_at IS NOT NULL
+                  AND ta.status = 'DONE' AND ta.finished_at >= ?
+            ) x
+            GROUP BY x.agent_id, x.heure
+            """;
+
+    /**
+     * Écarts attendu − actuel par seau, lus dans un seul instantané (trois fois le paramètre « depuis »).
+     * Toute transaction validée après cet instantané a modifié affectations et seaux du même delta (trigger) :
+     * ajouter l'écart à la valeur courante du seau, à quelque moment qu'on l'applique, donne donc la bonne valeur.
+     */
+    private static final String ECARTS = """
+            WITH attendu AS (%s),
+            actuel AS (
+                SELECT * FROM agent_workload_hourly WHERE heure >= ?
+            )
+            SELECT coalesce(a.agent_id, r.agent_id), coalesce(a.heure, r.heure),
+                   coalesce(a.total, 0) - coalesce(r.total, 0), coalesce(a.en_cours, 0) - coalesce(r.en_cours, 0),
+                   coalesce(a.non_termines, 0) - coalesce(r.non_termines, 0),
+                   coalesce(a.termines, 0) - coalesce(r.termines, 0),
+                   coalesce(a.duree_somme, 0) - coalesce(r.duree_somme, 0),
+                   coalesce(a.duree_nombre, 0) - coalesce(r.duree_nombre, 0)
+            FROM attendu a
+            FULL JOIN actuel r ON r.agent_id = a.agent_id AND r.heure = a.heure
+            WHERE (coalesce(a.total, 0), coalesce(a.en_cours, 0), coalesce(a.non_termines, 0),
+                   coalesce(a.termines, 0), coalesce(a.duree_somme, 0), coalesce(a.duree_nombre, 0))
+                  IS DISTINCT FROM
+                  (coalesce(r.total, 0), coalesce(r.en_cours, 0), coalesce(r.non_termines, 0),
+                   coalesce(r.termines, 0), coalesce(r.duree_somme, 0), coalesce(r.duree_nombre, 0))
+            """.formatted(EXPECTED);
+
+    /** Ajoute un écart à un seau (créé au besoin), comme le trigger. */
+    private static final String ADD_ECART = """
+            INSERT INTO agent_workload_hourly AS h (agent_id, heure, total, en_cours, non_termines, termines,
+                                                    duree_somme, duree_nombre)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (agent_id, heure) DO UPDATE
+                SET total = h.total + EXCLUDED.total, en_cours = h.en_cours + EXCLUDED.en_cours,
+                    non_termines = h.non_termines + EXCLUDED.non_termines, termines = h.termines + EXCLUDED.termines,
+                    duree_somme = h.duree_somme + EXCLUDED.duree_somme,
+                    duree_nombre = h.duree_nombre + EXCLUDED.duree_nombre, txid = txid_current()
+            """;
+
+    private static final String BACKFILL = "agent_workload_hourly";
+
+    private static final String SUM_RANGE = "SELECT agent_id, sum(total), sum(en_cours), sum(non_termines), "
+            + "sum(termines), sum(duree_somme), sum(duree_nombre) FROM agent_workload_hourly "
+            + "WHERE heure >= ? AND heure < ? GROUP BY agent_id";
+
+    private static final String SELECT_CHANGED = "SELECT agent_id, heure, " + COLUMNS
+            + " FROM agent_workload_hourly WHERE txid >= ? AND heure >= ?";
+
+    private static final String SNAPSHOT_XMIN = "SELECT txid_snapshot_xmin(txid_current_snapshot())";
+
+    /** Compteurs d'un seau, ou somme de seaux. */
+    public record Counters(long total, long enCours, long nonTermines, long termines,
+                           long dureeSommeMin, long dureeNombre) {
+
+        public static final Counters ZERO = new Counters(0, 0, 0, 0, 0, 0);
+
+        public Counters plus(Counters o) {
+            return new Counters(total + o.total, enCours + o.enCours, nonTermines + o.nonTermines,
+                    termines + o.termines, dureeSommeMin + o.dureeSommeMin, dureeNombre + o.dureeNombre);
+        }
+
+        /** Durée moyenne (minutes) des affectations terminées, 0 sans donnée. */
+        public double dureeMoyenneMin() {
+            return dureeNombre == 0 ? 0 : (double) dureeSommeMin / dureeNombre;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DispatchLeaderElection leader;
+    private final boolean enabled;
+    private final long hotHours;
+    private final long reconcileHours;
+    private final Supplier<LocalDateTime> clock;
+
+    private final Object lock = new Object();
+    private final ReentrantLock repairing = new ReentrantLock();
+    // agent → heure (heures depuis l'époque) → compteurs ; heures >= hotFrom seulement
+    private final Map<Long, TreeMap<Long, Counters>> hot = new HashMap<>();
+    private long hotFrom;
+    private boolean hotLoaded;
+    private long syncXmin;
+
+    public AgentWorkloadRollup(JdbcTemplate jdbcTemplate,
+                               DispatchLeaderElection leader,
+                               @Value("${workload.rollup.enabled:true}") boolean enabled,
+                               @Value("${workload.rollup.hot-hours:192}") long hotHours,
+                               @Value("${workload.rollup.reconcile-hours:48}") long reconcileHours) {
+        this(jdbcTemplate, leader, enabled, hotHours, reconcileHours, LocalDateTime::now);
+    }
+
+    AgentWorkloadRollup(JdbcTemplate jdbcTemplate, DispatchLeaderElection leader, boolean enabled,
+                        long hotHours, long reconcileHours, Supplier<LocalDateTime> clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.leader = leader;
+        this.enabled = enabled;
+        this.hotHours = Math.max(0, hotHours);
+        this.reconcileHours = Math.max(1, reconcileHours);
+        this.clock = clock;
+    }
+
+    /* =======================
+       Lecture
+       ======================= */
+
+    /**
+     * Somme des seaux de [from, to) par agent ; bornes arrondies à l'heure inférieure.
+     * Un agent sans seau sur la période est absent.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Counters> sum(LocalDateTime from, LocalDateTime to) {
+        long fromHour = hour(from);
+        long toHour = hour(to);
+        Map<Long, Counters> out = new HashMap<>();
+        if (fromHour >= toHour) return out;
+
+        long split;
+        synchronized (lock) {
+            split = hotLoaded ? Math.max(fromHour, Math.min(toHour, hotFrom)) : toHour;
+            if (split < toHour) sumHot(split, toHour, out);
+        }
+        if (fromHour < split) {
+            jdbcTemplate.query(SUM_RANGE, (RowCallbackHandler) rs -> out.merge(rs.getLong(1),
+                            new Counters(rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5),
+                                    rs.getLong(6), rs.getLong(7)), Counters::plus),
+                    Timestamp.valueOf(time(fromHour)), Timestamp.valueOf(time(split)));
+        }
+        return out;
+    }
+
+    /** Partie mémoire ; appelé sous le verrou. */
+    private void sumHot(long fromHour, long toHour, Map<Long, Counters> out) {
+        for (Map.Entry<Long, TreeMap<Long, Counters>> e : hot.entrySet()) {
+            Counters total = null;
+            for (Counters c : e.getValue().subMap(fromHour, toHour).values()) {
+                total = total == null ? c : total.plus(c);
+            }
+            if (total != null) out.merge(e.getKey(), total, Counters::plus);
+        }
+    }
+
+    /* =======================
+       Tiers chaud
+       ======================= */
+
+    /**
+     * Premier remplissage de la table (trigger nouvellement installé), une seule fois pour tout le cluster
+     * (marqueur + verrou consultatif, cf. db/backfill.sql), puis chargement du tiers chaud.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void start() {
+        if (!enabled) return;
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT backfill_a_faire(?)", Boolean.class, BACKFILL))) {
+            rebuild();
+            jdbcTemplate.update("INSERT INTO backfill_marker (nom) VALUES (?)", BACKFILL);
+        }
+        reloadHot();
+    }
+
+    /** Recharge entièrement le tiers chaud depuis la table. */
+    public void reloadHot() {
+        long xmin = jdbcTemplate.queryForObject(SNAPSHOT_XMIN, Long.class);
+        long from = hour(clock.get()) - hotHours;
+        Map<Long, TreeMap<Long, Counters>> fresh = new HashMap<>();
+        jdbcTemplate.query(SELECT_CHANGED, (RowCallbackHandler) rs -> put(fresh, rs), 0L, Timestamp.valueOf(time(from)));
+        replaceHot(fresh, from, xmin);
+    }
+
+    void replaceHot(Map<Long, TreeMap<Long, Counters>> fresh, long from, long xmin) {
+        synchronized (lock) {
+            hot.clear();
+            hot.putAll(fresh);
+            hotFrom = from;
+            syncXmin = xmin;
+            hotLoaded = true;
+        }
+    }
+
+    /**
+     * Rattrape les lignes écrites depuis le passage précédent : toute transaction encore invisible alors a un
+     * txid >= le xmin relevé avant la lecture. Les seaux sortis de la fenêtre chaude sont libérés.
+     */
+    @Scheduled(fixedDelayString = "${workload.rollup.sync-ms:5000}", initialDelayString = "${workload.rollup.sync-ms:5000}")
+    public void sync() {
+        if (!enabled) return;
+        long since;
+        synchronized (lock) {
+            if (!hotLoaded) return;
+            since = syncXmin;
+        }
+        long xmin = jdbcTemplate.queryForObject(SNAPSHOT_XMIN, Long.class);
+        long from = hour(clock.get()) - hotHours;
+        Map<Long, TreeMap<Long, Counters>> changed = new HashMap<>();
+        jdbcTemplate.query(SELECT_CHANGED, (RowCallbackHandler) rs -> put(changed, rs),
+                since, Timestamp.valueOf(time(from)));
+        apply(changed, from, xmin);
+    }
+
+    /** Lignes relues : valeurs absolues, rejouer une ligne est sans effet. */
+    void apply(Map<Long, TreeMap<Long, Counters>> changed, long from, long xmin) {
+        synchronized (lock) {
+            for (Map.Entry<Long, TreeMap<Long, Counters>> e : changed.entrySet()) {
+                hot.computeIfAbsent(e.getKey(), k -> new TreeMap<>()).putAll(e.getValue());
+            }
+            hotFrom = from;
+            Iterator<TreeMap<Long, Counters>> it = hot.values().iterator();
+            while (it.hasNext()) {
+                TreeMap<Long, Counters> buckets = it.next();
+                buckets.headMap(from).clear();
+                if (buckets.isEmpty()) it.remove();
+            }
+            syncXmin = xmin;
+        }
+    }
+
+    private static void put(Map<Long, TreeMap<Long, Counters>> target, ResultSet rs) throws SQLException {
+        Counters c = new Counters(rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getLong(6), rs.getLong(7), rs.getLong(8));
+        target.computeIfAbsent(rs.getLong(1), k -> new TreeMap<>())
+                .put(hour(rs.getTimestamp(2).toLocalDateTime()), c);
+    }
+
+    /* =======================
+       Réconciliation
+       ======================= */
+
+    @Scheduled(fixedDelayString = "${workload.rollup.reconcile-ms:3600000}",
+            initialDelayString = "${workload.rollup.reconcile-ms:3600000}")
+    public void scheduledReconcile() {
+        if (!enabled || !leader.isLeader()) return;
+        int repaired = reconcile();
+        if (repaired > 0) {
+            log.warn("Compteurs de charge : {} seau(x) horaire(s) réparé(s) sur les {} dernières heures",
+                    repaired, reconcileHours);
+        }
+    }
+
+    /**
+     * Recalcule les reconcile-hours dernières heures et corrige les seaux divergents. Retourne leur nombre.
+     * Aucun verrou de table : écarts lus dans un instantané, puis ajoutés seau par seau, chacun dans sa propre
+     * instruction hors transaction (un seul verrou de ligne à la fois, les écritures d'affectations ne sont
+     * jamais bloquées plus d'un seau). Un écart ne doit être appliqué qu'une fois : une réparation à la fois
+     * par nœud, et le leader seul en planifie.
+     */
+    public int reconcile() {
+        return repair(Timestamp.valueOf(time(hour(clock.get()) - reconcileHours)), false);
+    }
+
+    /**
+     * Reconstruit toute la table depuis task_assignments, par le même calcul d'écarts depuis l'origine (aucune
+     * suppression, aucun verrou de table). Dans la transaction appelante le cas échéant (cf. start()), écarts
+     * envoyés par lots. Retourne le nombre de seaux corrigés.
+     */
+    public int rebuild() {
+        int rows = repair(Timestamp.valueOf(ORIGINE), true);
+        log.info("Compteurs horaires de charge reconstruits : {} seaux corrigés", rows);
+        return rows;
+    }
+
+    private int repair(Timestamp since, boolean batch) {
+        repairing.lock();
+        try {
+            List<Object[]> ecarts = new ArrayList<>();
+            jdbcTemplate.query(ECARTS, (RowCallbackHandler) rs -> ecarts.add(new Object[]{rs.getLong(1),
+                    rs.getTimestamp(2), rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getLong(6), rs.getLong(7),
+                    rs.getLong(8)}), since, since, since);
+            if (batch) {
+                jdbcTemplate.batchUpdate(ADD_ECART, ecarts);
+            } else {
+                for (Object[] ecart : ecarts) jdbcTemplate.update(ADD_ECART, ecart);
+            }
+            return ecarts.size();
+        } finally {
+            repairing.unlock();
+        }
+    }
+
+    /* =======================
+       Utilitaires
+       ======================= */
+
+    static long hour(LocalDateTime t) {
+        return Math.floorDiv(t.toEpochSecond(ZoneOffset.UTC), 3600);
+    }
+
+    static LocalDateTime time(long hour) {
+        return LocalDateTime.ofEpochSecond(hour * 3600, 0, ZoneOffset.UTC);
+    }
+
+    /** Début de l'heure contenant t. */
+    public static LocalDateTime truncate(LocalDateTime t) {
+        return t.truncatedTo(ChronoUnit.HOURS);
+    }
+}
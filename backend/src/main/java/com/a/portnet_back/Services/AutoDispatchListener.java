@@ -0,0 +1,35 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeSoumiseEvent;
+import com.a.portnet_back.Repositories.DemandeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.modulith.events.ApplicationModuleListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Auto-dispatch d'une demande soumise : après commit de la soumission, en asynchrone, dans sa propre
+ * transaction (@ApplicationModuleListener). La soumission ne paie donc plus le coût du dispatch.
+ * Rejouable sans risque : une demande déjà affectée ou plus en attente est ignorée (cf. TaskClaimQueue).
+ */
+@Component
+public class AutoDispatchListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AutoDispatchListener.class);
+
+    private final DemandeRepository demandeRepository;
+    private final TaskDispatcherService taskDispatcherService;
+
+    public AutoDispatchListener(DemandeRepository demandeRepository, TaskDispatcherService taskDispatcherService) {
+        this.demandeRepository = demandeRepository;
+        this.taskDispatcherService = taskDispatcherService;
+    }
+
+    @ApplicationModuleListener
+    public void on(DemandeSoumiseEvent event) {
+        // une exception laisse la publication incomplète : elle sera republiée au redémarrage
+        demandeRepository.findById(event.demandeId()).ifPresentOrElse(
+                taskDispatcherService::tryAutoAssignOnSubmit,
+                () -> log.debug("Demande {} supprimée avant l'auto-dispatch", event.demandeId()));
+    }
+}
@@ -0,0 +1,141 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeDetail;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lecture des demandes “détaillées” sans JOIN FETCH cartésien :
+ * 1 requête d'en-têtes (relations ManyToOne seulement) + 1 requête marchandises + 1 requête documents,
+ * ces deux dernières par lots d'ids (IN). Uniquement des projections scalaires, rien dans le contexte de persistance.
+ */
+@Service
+public class DemandeDetailAssembler {
+
+    /** Taille max d'une liste IN (reste loin des limites de paramètres JDBC). */
+    static final int IN_BATCH_SIZE = 1000;
+
+    private static final String SELECT_HEADERS = """
+            SELECT d.id, d.numeroEnregistrement, d.statut, d.categorie, d.dateCreation, d.dateModification, d.commentaire,
+                   bd.id, bd.code, bd.description,
+                   dev.id, dev.code, dev.description,
+                   imp.id, imp.nomComplet, imp.societe, imp.ice, u.email
+            FROM Demande d
+            LEFT JOIN d.bureauDouanier bd
+            LEFT JOIN d.devise dev
+            LEFT JOIN d.importateur imp
+            LEFT JOIN imp.user u
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public Optional<DemandeDetail> findById(Long demandeId) {
+        List<DemandeDetail> found = load(" WHERE d.id = :demandeId", Map.of("demandeId", demandeId));
+        return found.stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public List<DemandeDetail> findByImportateur(Long importateurId) {
+        return load(" WHERE imp.id = :importateurId", Map.of("importateurId", importateurId));
+    }
+
+    private List<DemandeDetail> load(String where, Map<String, Object> params) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                SELECT_HEADERS + where + " ORDER BY d.dateCreation DESC, d.id DESC", Object[].class);
+        params.forEach(query::setParameter);
+
+        Map<Long, DemandeDetail> byId = new LinkedHashMap<>();
+        for (Object[] r : query.getResultList()) {
+            DemandeDetail d = new DemandeDetail();
+            d.setId((Long) r[0]);
+            d.setNumeroEnregistrement((String) r[1]);
+            d.setStatut((StatusDemande) r[2]);
+            d.setCategorie((Categorie) r[3]);
+            d.setDateCreation((LocalDateTime) r[4]);
+            d.setDateModification((LocalDateTime) r[5]);
+            d.setCommentaire((String) r[6]);
+            d.setBureauDouanier(DemandeDetail.Ref.of((Long) r[7], (String) r[8], (String) r[9]));
+            d.setDevise(DemandeDetail.Ref.of((Long) r[10], (String) r[11], (String) r[12]));
+            d.setImportateurId((Long) r[13]);
+            d.setImportateurNom((String) r[14]);
+            d.setImportateurSociete((String) r[15]);
+            d.setImportateurIce((String) r[16]);
+            d.setImportateurEmail((String) r[17]);
+            byId.put(d.getId(), d);
+        }
+
+        if (!byId.isEmpty()) {
+            List<Long> ids = new ArrayList<>(byId.keySet());
+            for (int from = 0; from < ids.size(); from += IN_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + IN_BATCH_SIZE, ids.size()));
+                loadMarchandises(batch, byId);
+                loadDocuments(batch, byId);
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    private void loadMarchandises(List<Long> demandeIds, Map<Long, DemandeDetail> byId) {
+        List<Object[]> rows = entityManager.createQuery("""
+                SELECT m.demande.id, m.id, m.designation, m.quantite, m.montant, m.codeSh, m.uniteMesure,
+                       m.poidsNet, m.poidsBrut, m.description,
+                       p.id, p.code, p.description
+                FROM Marchandise m
+                LEFT JOIN m.pays p
+                WHERE m.demande.id IN :ids
+                ORDER BY m.id
+                """, Object[].class)
+                .setParameter("ids", demandeIds)
+                .getResultList();
+
+        for (Object[] r : rows) {
+            DemandeDetail.MarchandiseLine m = new DemandeDetail.MarchandiseLine();
+            m.setId((Long) r[1]);
+            m.setDesignation((String) r[2]);
+            m.setQuantite((Double) r[3]);
+            m.setMontant((Double) r[4]);
+            m.setCodeSh((String) r[5]);
+            m.setUniteMesure((String) r[6]);
+            m.setPoidsNet((Double) r[7]);
+            m.setPoidsBrut((Double) r[8]);
+            m.setDescription((String) r[9]);
+            m.setPays(DemandeDetail.Ref.of((Long) r[10], (String) r[11], (String) r[12]));
+            byId.get((Long) r[0]).getMarchandises().add(m);
+        }
+    }
+
+    private void loadDocuments(List<Long> demandeIds, Map<Long, DemandeDetail> byId) {
+        List<Object[]> rows = entityManager.createQuery("""
+                SELECT doc.demande.id, doc.id, doc.nom, doc.type, doc.taille, doc.dateUpload
+                FROM Document doc
+                WHERE doc.demande.id IN :ids
+                ORDER BY doc.dateUpload DESC
+                """, Object[].class)
+                .setParameter("ids", demandeIds)
+                .getResultList();
+
+        for (Object[] r : rows) {
+            DemandeDetail.DocumentLine doc = new DemandeDetail.DocumentLine();
+            doc.setId((Long) r[1]);
+            doc.setNom((String) r[2]);
+            doc.setType((String) r[3]);
+            doc.setTaille((Long) r[4]);
+            doc.setDateUpload((LocalDateTime) r[5]);
+            byId.get((Long) r[0]).getDocuments().add(doc);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeListItemDTO;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Export du registre des demandes (audits superviseur), mêmes filtres que la grille back-office.
+ * Les lignes sont écrites au fil du curseur JDBC : mémoire constante, que l'export fasse 10 ou 10 millions de lignes.
+ * Les champs saisis (numéro, bureau, agent, opérateur, ICE) sont neutralisés contre l'injection de formules.
+ */
+@Service
+public class DemandeExportService {
+
+    /** Lignes gardées en mémoire par SXSSF, les précédentes partent dans un fichier temporaire compressé. */
+    static final int XLSX_WINDOW = 200;
+    /** Limite d'une feuille Excel (1 048 576 lignes, en-tête compris) : on ouvre une nouvelle feuille au-delà. */
+    static final int XLSX_MAX_ROWS_PER_SHEET = 1_048_575;
+
+    static final String[] HEADERS = {
+            "Numéro", "Catégorie", "Bureau", "Statut", "Date création",
+            "Agent", "Opérateur", "ICE", "Montant"
+    };
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final DemandeListingService listingService;
+
+    public DemandeExportService(DemandeListingService listingService) {
+        this.listingService = listingService;
+    }
+
+    /** CSV UTF-8 (avec BOM pour Excel), séparateur ';'. */
+    public void exportCsv(DemandeListingService.Filter filter, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write('\uFEFF');
+        writeCsvLine(writer, HEADERS);
+        try {
+            listingService.forEachRow(filter, row -> {
+                try {
+                    writeCsvLine(writer, values(row));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    public void exportXlsx(DemandeListingService.Filter filter, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(XLSX_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font font = workbook.createFont();
+            font.setBold(true);
+            headerStyle.setFont(font);
+
+            XlsxWriter xlsx = new XlsxWriter(workbook, headerStyle);
+            listingService.forEachRow(filter, xlsx::append);
+
+            workbook.write(out);
+            out.flush();
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static String[] values(DemandeListItemDTO row) {
+        return new String[] {
+                neutralize(row.getId()),
+                row.getCategorie(),
+                neutralize(row.getBureau()),
+                row.getStatut(),
+                row.getCreatedAt() != null ? row.getCreatedAt().format(DATE) : "",
+                neutralize(row.getAgent()),
+                neutralize(row.getOperateur()),
+                neutralize(row.getIce()),
+                String.valueOf(row.getMontant())
+        };
+    }
+
+    private static void writeCsvLine(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writer.write(';');
+            writer.write(escapeCsv(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Texte qu'un tableur prendrait pour une formule (=, +, -, @, tabulation ou retour chariot en tête) : préfixé
+     * par une apostrophe. Un caractère seul (tiret « aucun agent ») n'est pas une formule et reste tel quel.
+     */
+    static String neutralize(String value) {
+        if (value == null || value.length() < 2) return value;
+        return switch (value.charAt(0)) {
+            case '=', '+', '-', '@', '\t', '\r' -> "'" + value;
+            default -> value;
+        };
+    }
+
+    static String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(';') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /** Remplit les feuilles ligne à ligne (nouvelle feuille quand la précédente est pleine). */
+    private static final class XlsxWriter {
+        private final SXSSFWorkbook workbook;
+        private final CellStyle headerStyle;
+        private Sheet sheet;
+        private int rowIndex;
+
+        XlsxWriter(SXSSFWorkbook workbook, CellStyle headerStyle) {
+            this.workbook = workbook;
+            this.headerStyle = headerStyle;
+            newSheet();
+        }
+
+        void append(DemandeListItemDTO item) {
+            if (rowIndex > XLSX_MAX_ROWS_PER_SHEET) {
+                newSheet();
+            }
+            Row row = sheet.createRow(rowIndex++);
+            String[] values = values(item);
+            for (int i = 0; i < values.length - 1; i++) {
+                row.createCell(i).setCellValue(values[i]);
+            }
+            row.createCell(values.length - 1).setCellValue(item.getMontant());
+        }
+
+        private void newSheet() {
+            sheet = workbook.createSheet("Demandes" + (workbook.getNumberOfSheets() == 0 ? "" : " " + (workbook.getNumberOfSheets() + 1)));
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < HEADERS.length; i++) {
+                Cell cell = header.createCell(i);
+                cell.setCellValue(HEADERS[i]);
+                cell.setCellStyle(headerStyle);
+            }
+            rowIndex = 1;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.CursorPage;
+import com.a.portnet_back.DTO.DemandeListItemDTO;
+import com.a.portnet_back.Enum.StatusDemande;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Liste back-office des demandes : filtres appliqués en SQL, projection DTO,
+ * pagination “keyset” sur (dateCreation DESC, id DESC) → coût constant par page.
+ */
+@Service
+public class DemandeListingService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    /** Lignes ramenées par aller-retour JDBC lors d'un parcours complet (export). */
+    public static final int STREAM_FETCH_SIZE = 1000;
+
+    private static final String SELECT_ROWS = """
+            SELECT new com.a.portnet_back.DTO.DemandeListItemDTO(
+                d.id, d.numeroEnregistrement, d.categorie, d.statut, d.dateCreation,
+                bd.code, bd.description,
+                imp.societe, imp.nomComplet, imp.ice,
+                ag.nomComplet,
+                d.montantTotal
+            )
+            FROM Demande d
+            LEFT JOIN d.bureauDouanier bd
+            LEFT JOIN d.importateur imp
+            LEFT JOIN TaskAssignment ta ON ta.demande = d
+            LEFT JOIN ta.agent ag
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Une page de la grille, à partir du curseur renvoyé par la page précédente (null = première page). */
+    @Transactional(readOnly = true)
+    public CursorPage<DemandeListItemDTO> listPage(Filter filter, String cursor, Integer size) {
+        int limit = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // on lit une ligne de plus pour savoir s'il reste une page
+        List<DemandeListItemDTO> rows = query(filter, Cursor.decode(cursor), limit + 1);
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+        String next = hasMore ? Cursor.encode(rows.get(rows.size() - 1)) : null;
+        return new CursorPage<>(rows, next, hasMore);
+    }
+
+    /** Liste complète filtrée (ancien endpoint non paginé), toujours sans charger d'entités. */
+    @Transactional(readOnly = true)
+    public List<DemandeListItemDTO> listAll(Filter filter) {
+        return query(filter, null, null);
+    }
+
+    /** Lignes de grille pour des ids donnés, dans l'ordre des ids (ex. résultats classés de la recherche). */
+    @Transactional(readOnly = true)
+    public List<DemandeListItemDTO> listByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) return List.of();
+
+        String jpql = SELECT_ROWS + " WHERE d.id IN :ids";
+        List<DemandeListItemDTO> rows = entityManager.createQuery(jpql, DemandeListItemDTO.class)
+                .setParameter("ids", ids)
+                .getResultList();
+
+        Map<Long, DemandeListItemDTO> byId = new HashMap<>();
+        for (DemandeListItemDTO row : rows) {
+            byId.put(row.getIdDb(), row);
+        }
+        List<DemandeListItemDTO> ordered = new ArrayList<>(rows.size());
+        for (Long id : ids) {
+            DemandeListItemDTO row = byId.get(id);
+            if (row != null) ordered.add(row);
+        }
+        return ordered;
+    }
+
+    /**
+     * Parcourt toutes les lignes filtrées via un curseur JDBC “forward-only” (fetch size {@link #STREAM_FETCH_SIZE}) :
+     * seule la fenêtre courante est en mémoire, quel que soit le nombre de demandes (export).
+     */
+    @Transactional(readOnly = true)
+    public void forEachRow(Filter filter, Consumer<DemandeListItemDTO> consumer) {
+        TypedQuery<DemandeListItemDTO> query = buildQuery(filter, null);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        try (Stream<DemandeListItemDTO> rows = query.getResultStream()) {
+            rows.forEach(consumer);
+        }
+    }
+
+    private List<DemandeListItemDTO> query(Filter filter, Cursor cursor, Integer maxResults) {
+        TypedQuery<DemandeListItemDTO> query = buildQuery(filter, cursor);
+        if (maxResults != null) {
+            query.setMaxResults(maxResults);
+        }
+        return query.getResultList();
+    }
+
+    private TypedQuery<DemandeListItemDTO> buildQuery(Filter filter, Cursor cursor) {
+        StringBuilder jpql = new StringBuilder(SELECT_ROWS).append(" WHERE 1=1");
+        Map<String, Object> params = new HashMap<>();
+
+        appendFilters(jpql, params, filter);
+
+        if (cursor != null) {
+            jpql.append(" AND (d.dateCreation < :cursorDate OR (d.dateCreation = :cursorDate AND d.id < :cursorId))");
+            params.put("cursorDate", cursor.dateCreation());
+            params.put("cursorId", cursor.id());
+        }
+
+        jpql.append(" ORDER BY d.dateCreation DESC, d.id DESC");
+
+        TypedQuery<DemandeListItemDTO> query = entityManager.createQuery(jpql.toString(), DemandeListItemDTO.class);
+        params.forEach(query::setParameter);
+        return query;
+    }
+
+    private void appendFilters(StringBuilder jpql, Map<String, Object> params, Filter filter) {
+        if (filter == null) return;
+
+        if (filter.q() != null && !filter.q().isBlank()) {
+            // search_text : numéro, ICE / société / nom de l'importateur, code et libellé du bureau, catégorie et
+            // codes SH, déjà en minuscules et indexé en trigrammes (LIKE '%x%' sans scan séquentiel)
+            jpql.append(" AND d.searchText LIKE :q");
+            params.put("q", DemandeSearchService.containsPattern(filter.q()));
+        }
+        if (filter.statutInconnu()) {
+            jpql.append(" AND 1=0");
+        } else if (filter.statut() != null) {
+            jpql.append(" AND d.statut = :statut");
+            params.put("statut", filter.statut());
+        }
+        if (filter.bureau() != null && !filter.bureau().isBlank()) {
+            jpql.append(" AND (bd.description = :bureau OR bd.code = :bureau)");
+            params.put("bureau", filter.bureau().trim());
+        }
+        // colonne agrégée indexée (idx_demandes_montant_total) : aucune lecture des marchandises
+        if (filter.montantMin() != null) {
+            jpql.append(" AND d.montantTotal >= :montantMin");
+            params.put("montantMin", filter.montantMin());
+        }
+        if (filter.montantMax() != null) {
+            jpql.append(" AND d.montantTotal <= :montantMax");
+            params.put("montantMax", filter.montantMax());
+        }
+    }
+
+    /**
+     * Filtres de la grille (mêmes paramètres que GET /api/demandes). Un statut inconnu ne retient aucune ligne,
+     * comme l'ancienne liste, plutôt qu'une erreur.
+     */
+    public record Filter(String q, StatusDemande statut, boolean statutInconnu, String bureau, Double montantMin,
+                         Double montantMax) {
+
+        /** Construit le filtre depuis les paramètres HTTP (statut au format UI). */
+        public static Filter of(String q, String statutUi, String bureau) {
+            return of(q, statutUi, bureau, null, null);
+        }
+
+        public static Filter of(String q, String statutUi, String bureau, Double montantMin, Double montantMax) {
+            if (montantMin != null && montantMax != null && montantMin > montantMax) {
+                throw new IllegalArgumentException("montantMin doit être inférieur ou égal à montantMax");
+            }
+            StatusDemande statut = DemandeListItemDTO.mapUiToStatut(statutUi);
+            boolean inconnu = statut == null && statutUi != null && !statutUi.isBlank();
+            return new Filter(q, statut, inconnu, bureau, montantMin, montantMax);
+        }
+    }
+
+    /** Position dans la liste : dernière ligne vue (dateCreation, id), encodée en base64 url-safe. */
+    record Cursor(LocalDateTime dateCreation, Long id) {
+
+        static String encode(DemandeListItemDTO last) {
+            String raw = last.getCreatedAt() + "|" + last.getIdDb();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Curseur de pagination invalide");
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.a.portnet_back.Services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture et reconstruction de l'agrégat mensuel demande_monthly_rollup (cf. db/demande-rollup.sql).
+ * La mise à jour courante est faite par trigger, dans la transaction de la demande ;
+ * ce service ne sert qu'à lire les tendances et à (re)remplir la table depuis l'historique.
+ */
+@Service
+public class DemandeRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(DemandeRollupService.class);
+
+    public static final int DEFAULT_MONTHS = 12;
+    public static final int MAX_MONTHS = 120;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Reconstruit entièrement l'agrégat depuis la table demandes. Retourne le nombre de lignes produites. */
+    @Transactional
+    public int rebuild() {
+        // bloque les écritures sur demandes le temps du recalcul : aucun delta du trigger ne peut se perdre
+        entityManager.createNativeQuery("LOCK TABLE demandes IN SHARE MODE").executeUpdate();
+        entityManager.createNativeQuery("DELETE FROM demande_monthly_rollup").executeUpdate();
+        int rows = entityManager.createNativeQuery("""
+                INSERT INTO demande_monthly_rollup (annee, mois, bureau_douanier_id, categorie, statut, nombre)
+                SELECT EXTRACT(YEAR FROM coalesce(d.date_creation, now()))::integer,
+                       EXTRACT(MONTH FROM coalesce(d.date_creation, now()))::integer,
+                       coalesce(d.bureau_douanier_id, 0), coalesce(d.categorie, ''), coalesce(d.statut, ''),
+                       COUNT(*)
+                FROM demandes d
+                GROUP BY 1, 2, 3, 4, 5
+                """).executeUpdate();
+        log.info("Agrégat mensuel des demandes reconstruit : {} lignes", rows);
+        return rows;
+    }
+
+    /** Nom du rattrapage dans backfill_marker (cf. db/backfill.sql). */
+    static final String BACKFILL = "demande_monthly_rollup";
+
+    /**
+     * Backfill au premier démarrage avec le trigger : l'historique existant n'est pas encore compté.
+     * Fait une seule fois, marqué dans backfill_marker ; la table peut déjà contenir les deltas du trigger,
+     * rebuild() repart de zéro sous verrou.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillOnce() {
+        boolean aFaire = Boolean.TRUE.equals(entityManager.createNativeQuery("SELECT backfill_a_faire(:nom)")
+                .setParameter("nom", BACKFILL).getSingleResult());
+        if (aFaire) {
+            rebuild();
+            entityManager.createNativeQuery("INSERT INTO backfill_marker (nom) VALUES (:nom)")
+                    .setParameter("nom", BACKFILL).executeUpdate();
+        }
+    }
+
+    /** Tendance des N derniers mois (mois courant inclus), éventuellement pour un seul bureau. */
+    @Transactional(readOnly = true)
+    public List<MonthlyCount> monthlyTrend(Integer months, Long bureauId) {
+        int n = months == null ? DEFAULT_MONTHS : Math.max(1, Math.min(months, MAX_MONTHS));
+        LocalDate from = LocalDate.now().withDayOfMonth(1).minusMonths(n - 1L);
+
+        StringBuilder sql = new StringBuilder("""
+                SELECT r.annee, r.mois,
+                       SUM(r.nombre),
+                       SUM(r.nombre) FILTER (WHERE r.statut = 'EN_ATTENTE'),
+                       SUM(r.nombre) FILTER (WHERE r.statut = 'ACCEPTEE'),
+                       SUM(r.nombre) FILTER (WHERE r.statut = 'REFUSEE'),
+                       SUM(r.nombre) FILTER (WHERE r.categorie = 'IMPORTATION'),
+                       SUM(r.nombre) FILTER (WHERE r.categorie = 'EXPORTATION')
+                FROM demande_monthly_rollup r
+                WHERE (r.annee, r.mois) >= (:fromYear, :fromMonth)
+                """);
+        if (bureauId != null) {
+            sql.append(" AND r.bureau_douanier_id = :bureauId");
+        }
+        sql.append(" GROUP BY r.annee, r.mois ORDER BY r.annee, r.mois");
+
+        Query query = entityManager.createNativeQuery(sql.toString())
+                .setParameter("fromYear", from.getYear())
+                .setParameter("fromMonth", from.getMonthValue());
+        if (bureauId != null) {
+            query.setParameter("bureauId", bureauId);
+        }
+
+        List<?> rows = query.getResultList();
+        List<MonthlyCount> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            result.add(new MonthlyCount(
+                    ((Number) r[0]).intValue(), ((Number) r[1]).intValue(),
+                    asLong(r[2]), asLong(r[3]), asLong(r[4]), asLong(r[5]), asLong(r[6]), asLong(r[7])));
+        }
+        return result;
+    }
+
+    private static long asLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+    public record MonthlyCount(int annee, int mois, long total, long enAttente, long acceptees, long refusees,
+                               long importations, long exportations) {}
+}
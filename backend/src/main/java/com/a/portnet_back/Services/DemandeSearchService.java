@@ -0,0 +1,105 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeListItemDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Recherche “barre de recherche” des agents : tsvector (préfixes, classement) + trigrammes (sous-chaînes).
+ * Les colonnes search_vector / search_text et leurs index GIN sont maintenus par db/demande-search.sql.
+ */
+@Service
+public class DemandeSearchService {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private final DemandeListingService listingService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DemandeSearchService(DemandeListingService listingService) {
+        this.listingService = listingService;
+    }
+
+    /** Demandes correspondant au texte saisi, les plus pertinentes d'abord. */
+    @Transactional(readOnly = true)
+    public List<DemandeListItemDTO> search(String text, DemandeListingService.Filter filter, Integer limit) {
+        List<Long> ids = searchIds(text, filter, limit);
+        return listingService.listByIds(ids);
+    }
+
+    @Transactional(readOnly = true)
+    public List<Long> searchIds(String text, DemandeListingService.Filter filter, Integer limit) {
+        String tsQuery = toPrefixTsQuery(text);
+        if (tsQuery.isEmpty() || filter != null && filter.statutInconnu()) return List.of();
+
+        int max = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        // Les deux prédicats sont servis par un index GIN (BitmapOr), jamais par un scan séquentiel
+        StringBuilder sql = new StringBuilder("""
+            SELECT d.id
+            FROM demandes d
+            LEFT JOIN bureau_douanier bd ON bd.id = d.bureau_douanier_id
+            WHERE (d.search_vector @@ to_tsquery('simple', :tsq)
+                   OR d.search_text LIKE :pattern)
+            """);
+        if (filter != null && filter.statut() != null) {
+            sql.append(" AND d.statut = :statut");
+        }
+        if (filter != null && filter.bureau() != null && !filter.bureau().isBlank()) {
+            sql.append(" AND (bd.description = :bureau OR bd.code = :bureau)");
+        }
+        sql.append("""
+             ORDER BY ts_rank_cd(d.search_vector, to_tsquery('simple', :tsq)) DESC,
+                      word_similarity(:raw, d.search_text) DESC,
+                      d.date_creation DESC, d.id DESC
+            """);
+
+        Query query = entityManager.createNativeQuery(sql.toString())
+                .setParameter("tsq", tsQuery)
+                .setParameter("pattern", containsPattern(text))
+                .setParameter("raw", text.trim().toLowerCase())
+                .setMaxResults(max);
+        if (filter != null && filter.statut() != null) {
+            query.setParameter("statut", filter.statut().name());
+        }
+        if (filter != null && filter.bureau() != null && !filter.bureau().isBlank()) {
+            query.setParameter("bureau", filter.bureau().trim());
+        }
+
+        List<?> rows = query.getResultList();
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            ids.add(((Number) row).longValue());
+        }
+        return ids;
+    }
+
+    /** "imp 2025 casa" → "imp:* & 2025:* & casa:*" (seuls lettres et chiffres sont conservés). */
+    static String toPrefixTsQuery(String text) {
+        if (text == null) return "";
+        return Arrays.stream(text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+                .filter(t -> !t.isEmpty())
+                .map(t -> t + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+
+    /** Motif LIKE '%x%' en minuscules, avec % et _ échappés. */
+    static String containsPattern(String text) {
+        String escaped = text.trim().toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
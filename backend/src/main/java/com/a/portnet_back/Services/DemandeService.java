@@ -1,17 +1,20 @@
 package com.a.portnet_back.Services;
 
+import com.a.portnet_back.DTO.DemandeSoumiseEvent;
+import com.a.portnet_back.DTO.DemandeStatistiques;
 import com.a.portnet_back.Enum.Categorie;
 import com.a.portnet_back.Enum.StatusDemande;
 import com.a.portnet_back.Models.*;
 import com.a.portnet_back.Repositories.DemandeRepository;
 import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -20,16 +23,31 @@ import java.util.HashSet;
 @Service
 public class DemandeService {
 
+    /** Taille des batch JDBC pour les imports de marchandises. */
+    static final int BULK_BATCH_SIZE = 500;
+
+    /** Tirages de numéro par création quand le numéro tiré est déjà pris (cf. NumeroEnregistrementAllocator). */
+    static final int NUMERO_ATTEMPTS = 3;
+
     private final DemandeRepository demandeRepository;
-    private final TaskDispatcherService taskDispatcherService;
+    private final ApplicationEventPublisher events;
+    private final NumeroEnregistrementAllocator numeroAllocator;
+    private final DemandeStatsService demandeStatsService;
+    private final SlaDispatchQueue slaQueue;
 
     @PersistenceContext
     private EntityManager entityManager;
 
     public DemandeService(DemandeRepository demandeRepository,
-                          TaskDispatcherService taskDispatcherService) {
+                          ApplicationEventPublisher events,
+                          NumeroEnregistrementAllocator numeroAllocator,
+                          DemandeStatsService demandeStatsService,
+                          SlaDispatchQueue slaQueue) {
         this.demandeRepository = demandeRepository;
-        this.taskDispatcherService = taskDispatcherService;
+        this.events = events;
+        this.numeroAllocator = numeroAllocator;
+        this.demandeStatsService = demandeStatsService;
+        this.slaQueue = slaQueue;
     }
 
     @Transactional
@@ -43,7 +61,10 @@ public class DemandeService {
         demande.setDevise(devise);
         demande.setStatut(StatusDemande.EN_ATTENTE);
 
-        return demandeRepository.save(demande);
+        Demande saved = demandeRepository.save(demande);
+        slaQueue.enqueue(saved);
+        demandeStatsService.invalidate();
+        return saved;
     }
 
     public Demande getDemandeById(Long id) {
@@ -150,88 +171,10 @@ public class DemandeService {
         return demandeRepository.findAllByOrderByDateCreationDesc();
     }
 
-    @Transactional(readOnly = true)
-    public List<Demande> getAllDemandesWithDetails() {
-        String jpql1 = """
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.marchandises m
-            LEFT JOIN FETCH m.pays
-            LEFT JOIN FETCH d.bureauDouanier bd
-            LEFT JOIN FETCH d.devise dev
-            LEFT JOIN FETCH d.importateur imp
-            LEFT JOIN FETCH imp.user u
-            ORDER BY d.dateCreation DESC
-            """;
-
-        List<Demande> demandes = entityManager.createQuery(jpql1, Demande.class)
-                .getResultList();
-
-        if (demandes.isEmpty()) {
-            return demandes;
-        }
-
-        Set<Long> demandeIds = new HashSet<>();
-        for (Demande d : demandes) {
-            demandeIds.add(d.getId());
-        }
-
-        String jpql2 = """
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.documents doc
-            WHERE d.id IN :demandeIds
-            """;
-
-        entityManager.createQuery(jpql2, Demande.class)
-                .setParameter("demandeIds", demandeIds)
-                .getResultList();
-
-        return demandes;
-    }
-
     public List<Demande> getDemandesByStatut(StatusDemande statut) {
         return demandeRepository.findByStatutOrderByDateCreationDesc(statut);
     }
 
-    @Transactional(readOnly = true)
-    public List<Demande> getDemandesByStatutWithDetails(StatusDemande statut) {
-        String jpql1 = """
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.marchandises m
-            LEFT JOIN FETCH m.pays
-            LEFT JOIN FETCH d.bureauDouanier bd
-            LEFT JOIN FETCH d.devise dev
-            LEFT JOIN FETCH d.importateur imp
-            LEFT JOIN FETCH imp.user u
-            WHERE d.statut = :statut
-            ORDER BY d.dateCreation DESC
-            """;
-
-        List<Demande> demandes = entityManager.createQuery(jpql1, Demande.class)
-                .setParameter("statut", statut)
-                .getResultList();
-
-        if (demandes.isEmpty()) {
-            return demandes;
-        }
-
-        Set<Long> demandeIds = new HashSet<>();
-        for (Demande d : demandes) {
-            demandeIds.add(d.getId());
-        }
-
-        String jpql2 = """
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.documents doc
-            WHERE d.id IN :demandeIds
-            """;
-
-        entityManager.createQuery(jpql2, Demande.class)
-                .setParameter("demandeIds", demandeIds)
-                .getResultList();
-
-        return demandes;
-    }
-
     @Transactional
     public Demande updateStatut(Long demandeId, StatusDemande nouveauStatut, String commentaire) {
         Demande demande = getDemandeById(demandeId);
@@ -239,11 +182,18 @@ public class DemandeService {
             throw new RuntimeException("Demande non trouvée");
         }
 
+        StatusDemande ancienStatut = demande.getStatut();
         demande.setStatut(nouveauStatut);
         demande.setCommentaire(commentaire);
         demande.markAsModified();
 
-        return demandeRepository.save(demande);
+        Demande saved = demandeRepository.save(demande);
+        if (ancienStatut != nouveauStatut) {
+            demandeStatsService.invalidate();
+            if (nouveauStatut == StatusDemande.EN_ATTENTE) slaQueue.enqueue(saved);
+            else slaQueue.remove(demandeId);
+        }
+        return saved;
     }
 
     @Transactional
@@ -260,7 +210,41 @@ public class DemandeService {
         demande.addMarchandise(marchandise);
         demande.markAsModified();
 
-        return demandeRepository.save(demande);
+        Demande saved = demandeRepository.save(demande);
+        demandeStatsService.invalidate(); // montant total
+        return saved;
+    }
+
+    /**
+     * Ajout en lot (import Excel) : une seule lecture de la demande, INSERT groupés en batch JDBC
+     * (ids de séquence pooled), sans charger ni parcourir la collection des marchandises.
+     */
+    @Transactional
+    public int addMarchandises(Long demandeId, List<Marchandise> marchandises) {
+        Demande demande = getDemandeById(demandeId);
+        if (demande == null) {
+            throw new RuntimeException("Demande non trouvée");
+        }
+
+        if (!demande.isModifiable()) {
+            throw new RuntimeException("Cette demande ne peut plus être modifiée");
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        Integer batchSizeAvant = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(BULK_BATCH_SIZE);
+        try {
+            for (Marchandise marchandise : marchandises) {
+                demande.attachImported(marchandise);
+                entityManager.persist(marchandise);
+            }
+            demande.markAsModified();
+            entityManager.flush();
+        } finally {
+            session.setJdbcBatchSize(batchSizeAvant);
+        }
+        demandeStatsService.invalidate(); // montant total
+        return marchandises.size();
     }
 
     @Transactional
@@ -274,9 +258,11 @@ public class DemandeService {
         }
 
         demande = demandeRepository.save(demande);
+        // échéance SLA figée ici, montant total connu
+        slaQueue.enqueue(demande);
 
-        // 🚀 Appel du dispatcher pour affecter automatiquement la demande à un agent
-        taskDispatcherService.tryAutoAssignOnSubmit(demande);
+        // 🚀 Auto-dispatch après commit, hors de cette transaction (cf. AutoDispatchListener)
+        events.publishEvent(new DemandeSoumiseEvent(demande.getId(), LocalDateTime.now()));
 
         return demande;
     }
@@ -293,6 +279,8 @@ public class DemandeService {
         }
 
         demandeRepository.delete(demande);
+        slaQueue.removeAfterCommit(List.of(demandeId)); // ligne dispatch_queue : ON DELETE CASCADE
+        demandeStatsService.invalidate();
     }
 
     public List<Demande> searchDemandes(String numeroEnregistrement, StatusDemande statut,
@@ -300,118 +288,29 @@ public class DemandeService {
         return demandeRepository.findAll();
     }
 
-    @Transactional(readOnly = true)
-    public List<Demande> searchDemandesWithDetails(String numeroEnregistrement, StatusDemande statut,
-                                                   Categorie categorie, Long importateurId) {
-        StringBuilder jpql1 = new StringBuilder("""
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.marchandises m
-            LEFT JOIN FETCH m.pays
-            LEFT JOIN FETCH d.bureauDouanier bd
-            LEFT JOIN FETCH d.devise dev
-            LEFT JOIN FETCH d.importateur imp
-            LEFT JOIN FETCH imp.user u
-            WHERE 1=1
-            """);
-
-        if (numeroEnregistrement != null && !numeroEnregistrement.trim().isEmpty()) {
-            jpql1.append(" AND d.numeroEnregistrement LIKE :numeroEnregistrement");
-        }
-        if (statut != null) {
-            jpql1.append(" AND d.statut = :statut");
-        }
-        if (categorie != null) {
-            jpql1.append(" AND d.categorie = :categorie");
-        }
-        if (importateurId != null) {
-            jpql1.append(" AND d.importateur.id = :importateurId");
-        }
-
-        jpql1.append(" ORDER BY d.dateCreation DESC");
-
-        var query1 = entityManager.createQuery(jpql1.toString(), Demande.class);
-
-        if (numeroEnregistrement != null && !numeroEnregistrement.trim().isEmpty()) {
-            query1.setParameter("numeroEnregistrement", "%" + numeroEnregistrement.trim() + "%");
-        }
-        if (statut != null) {
-            query1.setParameter("statut", statut);
-        }
-        if (categorie != null) {
-            query1.setParameter("categorie", categorie);
-        }
-        if (importateurId != null) {
-            query1.setParameter("importateurId", importateurId);
-        }
-
-        List<Demande> demandes = query1.getResultList();
-
-        if (demandes.isEmpty()) {
-            return demandes;
-        }
-
-        Set<Long> demandeIds = new HashSet<>();
-        for (Demande d : demandes) {
-            demandeIds.add(d.getId());
-        }
-
-        String jpql2 = """
-            SELECT DISTINCT d FROM Demande d
-            LEFT JOIN FETCH d.documents doc
-            WHERE d.id IN :demandeIds
-            """;
-
-        entityManager.createQuery(jpql2, Demande.class)
-                .setParameter("demandeIds", demandeIds)
-                .getResultList();
-
-        return demandes;
-    }
-
+    /** Compteurs globaux : une requête GROUP BY, servie depuis le cache mémoire de DemandeStatsService. */
     public DemandeStats getStats() {
-        long totalDemandes = demandeRepository.count();
-        long demandesEnAttente = demandeRepository.countByStatut(StatusDemande.EN_ATTENTE);
-        long demandesAcceptees = demandeRepository.countByStatut(StatusDemande.ACCEPTEE);
-        long demandesRefusees = demandeRepository.countByStatut(StatusDemande.REFUSEE);
-
-        return new DemandeStats(totalDemandes, demandesEnAttente, demandesAcceptees, demandesRefusees);
+        return DemandeStats.of(demandeStatsService.global());
     }
 
-    @Transactional(readOnly = true)
     public DemandeStats getStatsForImportateur(Long importateurId) {
-        String jpql = """
-            SELECT 
-                COUNT(d),
-                COUNT(CASE WHEN d.statut = :enAttente THEN 1 END),
-                COUNT(CASE WHEN d.statut = :acceptee THEN 1 END),
-                COUNT(CASE WHEN d.statut = :refusee THEN 1 END)
-            FROM Demande d 
-            WHERE d.importateur.id = :importateurId
-            """;
-
-        Object[] result = (Object[]) entityManager.createQuery(jpql)
-                .setParameter("importateurId", importateurId)
-                .setParameter("enAttente", StatusDemande.EN_ATTENTE)
-                .setParameter("acceptee", StatusDemande.ACCEPTEE)
-                .setParameter("refusee", StatusDemande.REFUSEE)
-                .getSingleResult();
-
-        return new DemandeStats(
-                ((Number) result[0]).longValue(),
-                ((Number) result[1]).longValue(),
-                ((Number) result[2]).longValue(),
-                ((Number) result[3]).longValue()
-        );
+        return DemandeStats.of(demandeStatsService.forImportateur(importateurId));
     }
 
+    /**
+     * Séquence PostgreSQL + blocs en mémoire, sans COUNT. Au-delà de la limite de NumeroEnregistrementAllocator,
+     * un numéro tiré peut exister déjà : le bloc est alors abandonné et on retire, au plus NUMERO_ATTEMPTS fois
+     * (une lecture par l'index unique). Une collision avec une création pas encore validée reste rejetée par la
+     * contrainte unique sur numero_enregistrement.
+     */
     private String generateNumeroEnregistrement(Categorie categorie) {
-        String prefix = categorie == Categorie.IMPORTATION ? "IMP" : "EXP";
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-
-        long count = demandeRepository.countByNumeroEnregistrementStartingWith(prefix + timestamp);
-        String suffix = String.format("%03d", count + 1);
-
-        return prefix + timestamp + suffix;
+        String numero = numeroAllocator.next(categorie);
+        int attempt = 1;
+        while (attempt++ < NUMERO_ATTEMPTS && demandeRepository.existsByNumeroEnregistrement(numero)) {
+            numeroAllocator.abandonBlock(categorie);
+            numero = numeroAllocator.next(categorie);
+        }
+        return numero;
     }
 
     public static class DemandeStats {
@@ -427,6 +326,11 @@ public class DemandeService {
             this.refusees = refusees;
         }
 
+        static DemandeStats of(DemandeStatistiques stats) {
+            return new DemandeStats(stats.getTotalDemandes(), stats.getDemandesEnAttente(),
+                    stats.getDemandesAcceptees(), stats.getDemandesRefusees());
+        }
+
         public long getTotal() { return total; }
         public long getEnAttente() { return enAttente; }
         public long getAcceptees() { return acceptees; }
@@ -0,0 +1,140 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeStatistiques;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Statistiques de demandes (statuts, catégories, montant) en une seule requête GROUP BY par périmètre,
+ * gardées en mémoire et invalidées après commit d'une création, d'un changement de statut, d'une suppression
+ * ou d'un ajout de marchandises (le montant total en dépend).
+ * <p>
+ * Chaque entrée porte la génération lue avant son calcul, et la génération n'avance qu'après commit :
+ * une lecture commencée avant un commit ne peut donc servir ses chiffres qu'à elle-même. Le TTL borne le retard
+ * sur ce que ce nœud ne voit pas (écritures d'un autre nœud, SQL direct, lecture sur un réplica en retard) ;
+ * au plus maxEntries périmètres sont gardés (les moins récemment lus sortent en premier).
+ */
+@Service
+public class DemandeStatsService {
+
+    private static final String SELECT_GROUPED = """
+            SELECT d.statut, d.categorie, COUNT(d), COALESCE(SUM(d.montantTotal), 0.0)
+            FROM Demande d
+            """;
+
+    private record Entry(long generation, long computedAt, DemandeStatistiques stats) {}
+
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, Entry> entries;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DemandeStatsService(@Value("${demande.stats.ttl-ms:60000}") long ttlMs,
+                               @Value("${demande.stats.max-entries:1000}") int maxEntries) {
+        this(ttlMs, maxEntries, System::nanoTime);
+    }
+
+    DemandeStatsService(long ttlMs, int maxEntries, LongSupplier nanoClock) {
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Transactional(readOnly = true)
+    public DemandeStatistiques global() {
+        return cached("global", () -> compute("", null));
+    }
+
+    @Transactional(readOnly = true)
+    public DemandeStatistiques forImportateur(Long importateurId) {
+        return cached("importateur:" + importateurId, () -> compute(" WHERE d.importateur.id = :scopeId", importateurId));
+    }
+
+    @Transactional(readOnly = true)
+    public DemandeStatistiques forBureau(Long bureauId) {
+        return cached("bureau:" + bureauId, () -> compute(" WHERE d.bureauDouanier.id = :scopeId", bureauId));
+    }
+
+    /**
+     * À appeler quand une demande est créée, supprimée, change de statut ou reçoit des marchandises.
+     * La génération avance après le commit : les entrées calculées avant deviennent toutes périmées.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    nextGeneration();
+                }
+            });
+        } else {
+            nextGeneration();
+        }
+    }
+
+    /** Nombre de périmètres en mémoire. */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    DemandeStatistiques cached(String key, Supplier<DemandeStatistiques> loader) {
+        long gen = generation.get();
+        long now = nanoClock.getAsLong();
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && e.generation() == gen && now - e.computedAt() < ttlNanos) return e.stats();
+        }
+        DemandeStatistiques stats = loader.get();
+        synchronized (this) {
+            // une invalidation pendant le calcul : résultat rendu à l'appelant mais pas gardé
+            if (generation.get() == gen) entries.put(key, new Entry(gen, now, stats));
+        }
+        return stats;
+    }
+
+    private void nextGeneration() {
+        generation.incrementAndGet();
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    private DemandeStatistiques compute(String where, Long scopeId) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                SELECT_GROUPED + where + " GROUP BY d.statut, d.categorie", Object[].class);
+        if (!where.isEmpty()) {
+            query.setParameter("scopeId", scopeId);
+        }
+
+        List<Object[]> rows = query.getResultList();
+        DemandeStatistiques stats = new DemandeStatistiques();
+        for (Object[] r : rows) {
+            stats.add((StatusDemande) r[0], (Categorie) r[1],
+                    ((Number) r[2]).longValue(), ((Number) r[3]).doubleValue());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,179 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Moteur de dispatch en lot, dans le processus (remplace l'appel HTTP au dispatcher Python) :
+ * <ol>
+ *   <li>réserve jusqu'à {@code limit} demandes en attente non affectées (FOR UPDATE SKIP LOCKED),
+ *       par priorité SLA (dispatch_queue) ;</li>
+ *   <li>lit charge et score des agents éligibles dans l'index mémoire (aucune requête) ;</li>
+ *   <li>calcule tout le lot avec la politique choisie, chaque demande restreinte aux agents de son bureau /
+ *       sa catégorie selon l'index d'affinité et son repli ;</li>
+ *   <li>écrit toutes les affectations en un seul INSERT ... SELECT FROM unnest(...), qui sort aussi
+ *       les demandes affectées de la file SLA.</li>
+ * </ol>
+ */
+@Service
+public class DispatchEngine {
+
+    public static final int MAX_LIMIT = 5000;
+
+    private static final String SELECT_BATCH = """
+            SELECT d.id, d.date_creation, d.bureau_douanier_id, d.categorie
+            FROM demandes d
+            LEFT JOIN dispatch_queue q ON q.demande_id = d.id
+            WHERE d.statut = 'EN_ATTENTE'
+              AND NOT EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = d.id)
+            ORDER BY q.priorite NULLS LAST, d.date_creation, d.id
+            LIMIT ?
+            FOR UPDATE OF d SKIP LOCKED
+            """;
+
+    private static final String INSERT_BATCH = """
+            WITH inserted AS (
+                INSERT INTO task_assignments (agent_id, demande_id, status, created_at)
+                SELECT x.agent_id, x.demande_id, 'ASSIGNED', now()
+                FROM unnest(?::bigint[], ?::bigint[]) AS x(agent_id, demande_id)
+                ON CONFLICT (demande_id) DO NOTHING
+                RETURNING demande_id, agent_id
+            ),
+            dequeued AS (
+                DELETE FROM dispatch_queue q USING inserted i WHERE q.demande_id = i.demande_id
+            )
+            SELECT demande_id, agent_id FROM inserted
+            """;
+
+    /** Résultat d'un passage (exposé tel quel par /api/dispatch/run). */
+    public record Report(String policy, int candidates, int eligibleAgents, int assigned,
+                         int unassigned, int conflicts, long durationMs, List<DispatchPolicy.Assignment> details) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AgentScoringIndex scoringIndex;
+    private final AgentAffinityIndex affinityIndex;
+    private final SlaDispatchQueue slaQueue;
+    private final DispatchJournal journal;
+    private final Map<String, DispatchPolicy> policies;
+    private final String defaultPolicy;
+    private final int defaultLimit;
+
+    public DispatchEngine(JdbcTemplate jdbcTemplate,
+                          AgentScoringIndex scoringIndex,
+                          AgentAffinityIndex affinityIndex,
+                          SlaDispatchQueue slaQueue,
+                          DispatchJournal journal,
+                          List<DispatchPolicy> policies,
+                          @Value("${dispatch.engine.policy:" + LeastLoadedDispatchPolicy.NAME + "}") String defaultPolicy,
+                          @Value("${dispatch.engine.batch-size:50}") int defaultLimit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.scoringIndex = scoringIndex;
+        this.affinityIndex = affinityIndex;
+        this.slaQueue = slaQueue;
+        this.journal = journal;
+        this.policies = policies.stream().collect(Collectors.toMap(DispatchPolicy::name, Function.identity()));
+        this.defaultPolicy = defaultPolicy;
+        this.defaultLimit = defaultLimit;
+        policy(defaultPolicy); // échoue au démarrage si la politique configurée n'existe pas
+    }
+
+    /** Un passage : policyName et limit facultatifs (valeurs de configuration sinon). */
+    @Transactional
+    public Report run(Integer limit, String policyName) {
+        long t0 = System.nanoTime();
+        DispatchPolicy policy = policy(policyName == null || policyName.isBlank() ? defaultPolicy : policyName);
+        int batch = limit == null ? defaultLimit : limit;
+        if (batch < 1 || batch > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit doit être compris entre 1 et " + MAX_LIMIT);
+        }
+
+        List<DispatchPolicy.AgentLoad> agents = scoringIndex.eligibleAgents();
+        // sans agent, inutile de verrouiller des demandes
+        List<DispatchPolicy.PendingDemande> pending = agents.isEmpty() ? List.of() : lockBatch(batch);
+
+        List<DispatchPolicy.Assignment> planned = policy.plan(pending, agents, affinityIndex.affinity());
+        List<DispatchPolicy.Assignment> written = insert(planned);
+        for (DispatchPolicy.Assignment a : written) scoringIndex.taskAssigned(a.agentId());
+        slaQueue.removeAfterCommit(written.stream().map(DispatchPolicy.Assignment::demandeId).toList());
+        journal.record(DispatchJournal.Evenement.AFFECTATION, "dispatch " + policy.name(), written.stream()
+                .map(a -> new DispatchJournal.Mouvement(a.demandeId(), null, a.agentId())).toList());
+
+        return new Report(policy.name(), pending.size(), agents.size(), written.size(),
+                pending.size() - planned.size(), planned.size() - written.size(),
+                (System.nanoTime() - t0) / 1_000_000, written);
+    }
+
+    public List<String> policyNames() {
+        return policies.keySet().stream().sorted().toList();
+    }
+
+    private DispatchPolicy policy(String name) {
+        DispatchPolicy policy = policies.get(name);
+        if (policy == null) {
+            throw new IllegalArgumentException("Politique de dispatch inconnue : " + name + " (disponibles : " + policyNames() + ")");
+        }
+        return policy;
+    }
+
+    private List<DispatchPolicy.PendingDemande> lockBatch(int limit) {
+        return jdbcTemplate.query(SELECT_BATCH, (rs, i) -> {
+            Timestamp created = rs.getTimestamp(2);
+            Long bureauId = rs.getObject(3, Long.class);
+            String categorie = rs.getString(4);
+            return new DispatchPolicy.PendingDemande(
+                    rs.getLong(1),
+                    created == null ? null : created.toLocalDateTime(),
+                    bureauId,
+                    categorie == null ? null : Categorie.valueOf(categorie));
+        }, limit);
+    }
+
+    private List<DispatchPolicy.Assignment> insert(List<DispatchPolicy.Assignment> planned) {
+        if (planned.isEmpty()) return List.of();
+        Long[] agentIds = new Long[planned.size()];
+        Long[] demandeIds = new Long[planned.size()];
+        for (int i = 0; i < planned.size(); i++) {
+            agentIds[i] = planned.get(i).agentId();
+            demandeIds[i] = planned.get(i).demandeId();
+        }
+        return jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(INSERT_BATCH);
+            Array agents = con.createArrayOf("bigint", agentIds);
+            Array demandes = con.createArrayOf("bigint", demandeIds);
+            ps.setArray(1, agents);
+            ps.setArray(2, demandes);
+            return ps;
+        }, (rs, i) -> new DispatchPolicy.Assignment(rs.getLong(1), rs.getLong(2)));
+    }
+
+    /** Vue Map du rapport, même forme de réponse que l'ancien dispatcher (message + details). */
+    public static Map<String, Object> toMap(Report r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("message", r.assigned() + " demande(s) assignée(s) avec succès.");
+        m.put("policy", r.policy());
+        m.put("candidates", r.candidates());
+        m.put("eligibleAgents", r.eligibleAgents());
+        m.put("assigned", r.assigned());
+        m.put("unassigned", r.unassigned());
+        m.put("conflicts", r.conflicts());
+        m.put("durationMs", r.durationMs());
+        List<Map<String, Long>> details = new ArrayList<>(r.details().size());
+        for (DispatchPolicy.Assignment a : r.details()) {
+            details.add(Map.of("demande_id", a.demandeId(), "agent_id", a.agentId()));
+        }
+        m.put("details", details);
+        return m;
+    }
+}
@@ -0,0 +1,293 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.CursorPage;
+import com.a.portnet_back.DTO.DispatchLogDTO;
+import com.a.portnet_back.Enum.Categorie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Journal du dispatch, en ajout seul (table dispatch_journal, cf. db/dispatch-journal.sql).
+ * <p>
+ * Écrit dans la transaction qui produit les mouvements : ils sont cumulés pendant la transaction puis insérés
+ * juste avant sa validation, en un seul INSERT ... FROM unnest(...). Journal et dispatch sont validés ou
+ * annulés ensemble ; hors transaction, l'insertion est immédiate. La date est celle de la base (localtimestamp,
+ * comme les annulations, écrites par trigger) : une seule horloge pour le tri et le curseur. motif et par sont
+ * tronqués à la taille des colonnes.
+ * <p>
+ * Lecture paginée par curseur (date, id) décroissant, avec filtres période / agent / demande / événement.
+ */
+@Component
+public class DispatchJournal {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // tailles des colonnes par / motif
+    static final int MAX_PAR = 255;
+    static final int MAX_MOTIF = 500;
+
+    public enum Evenement { AFFECTATION, REAFFECTATION, PRISE, ANNULATION }
+
+    /** Un mouvement de demande : ancien agent (null pour une première affectation) vers nouvel agent. */
+    public record Mouvement(long demandeId, Long ancienAgentId, Long agentId) {}
+
+    record Entry(Evenement evenement, long demandeId, Long ancienAgentId, Long agentId, String par, String motif) {}
+
+    /** Filtres de lecture, tous facultatifs ; agentId couvre l'agent qui reçoit et celui qui cède. */
+    public record Filter(LocalDate from, LocalDate to, Long agentId, Long demandeId, Evenement evenement,
+                         Categorie categorie, String q) {}
+
+    private static final String INSERT = """
+            INSERT INTO dispatch_journal (date_evenement, evenement, demande_id, ancien_agent_id, agent_id, par, motif)
+            SELECT localtimestamp, e.* FROM unnest(?::varchar[], ?::bigint[], ?::bigint[], ?::bigint[],
+                                                   ?::varchar[], ?::varchar[]) AS e
+            """;
+
+    // conditions ajoutées selon les filtres présents (cf. page) : chaque combinaison a son propre plan
+    private static final String SELECT_PAGE = """
+            SELECT j.id, j.date_evenement, j.evenement, coalesce(d.numero_enregistrement, j.demande_id::text),
+                   a0.nom_complet, a1.nom_complet, j.par, j.motif
+            FROM dispatch_journal j
+            LEFT JOIN demandes d ON d.id = j.demande_id
+            LEFT JOIN agents a0 ON a0.id = j.ancien_agent_id
+            LEFT JOIN agents a1 ON a1.id = j.agent_id
+            WHERE true
+            """;
+
+    private static final String ORDER_LIMIT = " ORDER BY j.date_evenement DESC, j.id DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    public DispatchJournal(JdbcTemplate jdbcTemplate,
+                           @Value("${dispatch.journal.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    /** Journalise des mouvements avec la transaction courante (immédiatement hors transaction). */
+    public void record(Evenement evenement, String motif, Collection<Mouvement> mouvements) {
+        if (!enabled || mouvements.isEmpty()) return;
+        String par = truncate(currentUser(), MAX_PAR);
+        String m = truncate(motif, MAX_MOTIF);
+        List<Entry> entries = new ArrayList<>(mouvements.size());
+        for (Mouvement mv : mouvements) {
+            entries.add(new Entry(evenement, mv.demandeId(), mv.ancienAgentId(), mv.agentId(), par, m));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending().addAll(entries);
+        } else {
+            insert(entries);
+        }
+    }
+
+    public void record(Evenement evenement, String motif, Mouvement mouvement) {
+        record(evenement, motif, List.of(mouvement));
+    }
+
+    /**
+     * Mouvements de la transaction courante, liés à celle-ci ; le premier appel enregistre leur insertion avant
+     * validation (suspendue avec la transaction, cf. REQUIRES_NEW).
+     */
+    @SuppressWarnings("unchecked")
+    private List<Entry> pending() {
+        List<Entry> pending = (List<Entry>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) return pending;
+        List<Entry> created = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(DispatchJournal.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(DispatchJournal.this, created);
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (!created.isEmpty()) insert(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(DispatchJournal.this);
+            }
+        });
+        return created;
+    }
+
+    private void insert(List<Entry> batch) {
+        int n = batch.size();
+        String[] evenements = new String[n];
+        Long[] demandes = new Long[n];
+        Long[] anciens = new Long[n];
+        Long[] agents = new Long[n];
+        String[] pars = new String[n];
+        String[] motifs = new String[n];
+        for (int i = 0; i < n; i++) {
+            Entry e = batch.get(i);
+            evenements[i] = e.evenement().name();
+            demandes[i] = e.demandeId();
+            anciens[i] = e.ancienAgentId();
+            agents[i] = e.agentId();
+            pars[i] = e.par();
+            motifs[i] = e.motif();
+        }
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(INSERT);
+            Array a = con.createArrayOf("varchar", evenements);
+            Array b = con.createArrayOf("bigint", demandes);
+            Array c = con.createArrayOf("bigint", anciens);
+            Array d = con.createArrayOf("bigint", agents);
+            Array f = con.createArrayOf("varchar", pars);
+            Array g = con.createArrayOf("varchar", motifs);
+            ps.setArray(1, a);
+            ps.setArray(2, b);
+            ps.setArray(3, c);
+            ps.setArray(4, d);
+            ps.setArray(5, f);
+            ps.setArray(6, g);
+            return ps;
+        });
+    }
+
+    static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+
+    /**
+     * Une page du journal, du plus récent au plus ancien, à partir du curseur de la page précédente (null = début).
+     * Avec un agent, les deux rôles (reçoit / cède) sont lus séparément, chacun dans l'ordre de son index et
+     * limité à la page, puis fusionnés : pas de OR entre les deux colonnes, donc pas de tri de tout l'historique.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<DispatchLogDTO> page(Filter filter, String cursor, Integer size) {
+        int limit = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Cursor c = Cursor.decode(cursor);
+
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        if (filter.from() != null) {
+            where.append(" AND j.date_evenement >= ?");
+            params.add(Timestamp.valueOf(filter.from().atStartOfDay()));
+        }
+        if (filter.to() != null) {
+            where.append(" AND j.date_evenement < ?");
+            params.add(Timestamp.valueOf(filter.to().plusDays(1).atStartOfDay()));
+        }
+        if (filter.demandeId() != null) {
+            where.append(" AND j.demande_id = ?");
+            params.add(filter.demandeId());
+        }
+        if (filter.evenement() != null) {
+            where.append(" AND j.evenement = ?");
+            params.add(filter.evenement().name());
+        }
+        if (filter.categorie() != null) {
+            where.append(" AND d.categorie = ?");
+            params.add(filter.categorie().name());
+        }
+        if (filter.q() != null && !filter.q().isBlank()) {
+            // numéro de dossier ou nom d'un des deux agents
+            String q = filter.q().trim().toLowerCase(Locale.ROOT);
+            where.append(" AND (strpos(lower(d.numero_enregistrement), ?) > 0"
+                    + " OR strpos(lower(a0.nom_complet), ?) > 0 OR strpos(lower(a1.nom_complet), ?) > 0)");
+            params.add(q);
+            params.add(q);
+            params.add(q);
+        }
+        if (c != null) {
+            where.append(" AND (j.date_evenement, j.id) < (?, ?)");
+            params.add(Timestamp.valueOf(c.date()));
+            params.add(c.id());
+        }
+
+        // on lit une ligne de plus pour savoir s'il reste une page
+        String sql;
+        List<Object> args = new ArrayList<>();
+        if (filter.agentId() == null) {
+            sql = SELECT_PAGE + where + ORDER_LIMIT;
+            args.addAll(params);
+        } else {
+            // une ligne où l'agent reçoit et cède à la fois n'est lue que par la première branche
+            sql = "SELECT * FROM ((" + SELECT_PAGE + where + " AND j.agent_id = ?" + ORDER_LIMIT + ")"
+                    + " UNION ALL (" + SELECT_PAGE + where
+                    + " AND j.ancien_agent_id = ? AND j.agent_id IS DISTINCT FROM ?" + ORDER_LIMIT + ")) p"
+                    + " ORDER BY 2 DESC, 1 DESC LIMIT ?";
+            args.addAll(params);
+            args.add(filter.agentId());
+            args.add(limit + 1);
+            args.addAll(params);
+            args.add(filter.agentId());
+            args.add(filter.agentId());
+            args.add(limit + 1);
+        }
+        args.add(limit + 1);
+
+        List<DispatchLogDTO> rows = jdbcTemplate.query(sql, (rs, i) -> {
+            DispatchLogDTO dto = new DispatchLogDTO();
+            dto.setId(rs.getLong(1));
+            dto.setDate(rs.getTimestamp(2).toLocalDateTime());
+            dto.setEvenement(rs.getString(3));
+            dto.setDossier(rs.getString(4));
+            dto.setFrom(rs.getString(5));
+            dto.setToAgent(rs.getString(6));
+            dto.setBy(rs.getString(7));
+            dto.setMotif(rs.getString(8));
+            return dto;
+        }, args.toArray());
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+        String next = hasMore ? Cursor.encode(rows.get(rows.size() - 1)) : null;
+        return new CursorPage<>(rows, next, hasMore);
+    }
+
+    private static String currentUser() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.isAuthenticated() ? auth.getName() : "système";
+    }
+
+    /** Position dans le journal : dernière ligne vue (date, id), encodée en base64 url-safe. */
+    record Cursor(LocalDateTime date, Long id) {
+
+        static String encode(DispatchLogDTO last) {
+            String raw = last.getDate() + "|" + last.getId();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Curseur de pagination invalide");
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.a.portnet_back.Services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Élection du nœud qui lance les passages de dispatch, par verrou consultatif PostgreSQL de session.
+ * <p>
+ * Le leader garde une connexion dédiée (hors transactions, donc sur le primaire) qui tient
+ * pg_advisory_lock(clé) : si le nœud s'arrête ou perd sa connexion, PostgreSQL libère le verrou et un autre
+ * nœud le prend à sa prochaine tentative. Les autres nœuds retentent pg_try_advisory_lock, sans attendre.
+ */
+@Component
+public class DispatchLeaderElection {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchLeaderElection.class);
+
+    private final DataSource dataSource;
+    private final long lockKey;
+
+    // connexion qui tient le verrou ; null tant que ce nœud n'est pas leader
+    private Connection held;
+
+    public DispatchLeaderElection(DataSource dataSource,
+                                  @Value("${dispatch.scheduler.lock-key:7351029}") long lockKey) {
+        this.dataSource = dataSource;
+        this.lockKey = lockKey;
+    }
+
+    /** Vrai si ce nœud tient (ou vient de prendre) le verrou ; ne bloque jamais sur un autre nœud. */
+    public synchronized boolean isLeader() {
+        if (held != null) {
+            if (stillValid(held)) return true;
+            log.warn("Dispatch : connexion du verrou de leader perdue, leadership abandonné");
+            closeQuietly(held);
+            held = null;
+        }
+        Connection c = null;
+        try {
+            c = dataSource.getConnection();
+            c.setAutoCommit(true);
+            if (tryLock(c)) {
+                held = c;
+                log.info("Dispatch : ce nœud devient leader (verrou {})", lockKey);
+                return true;
+            }
+        } catch (SQLException e) {
+            log.warn("Dispatch : élection impossible ({})", e.getMessage());
+        }
+        closeQuietly(c);
+        return false;
+    }
+
+    public synchronized boolean holdsLock() {
+        return held != null;
+    }
+
+    @PreDestroy
+    public synchronized void release() {
+        if (held == null) return;
+        try (PreparedStatement ps = held.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            ps.setLong(1, lockKey);
+            ps.execute();
+        } catch (SQLException e) {
+            log.debug("Dispatch : libération du verrou en échec ({}), fermeture de la session", e.getMessage());
+        }
+        closeQuietly(held);
+        held = null;
+    }
+
+    private boolean tryLock(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, lockKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static boolean stillValid(Connection c) {
+        try {
+            return c.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Politique de répartition d'un lot de demandes en attente entre agents, calculée entièrement en mémoire
+ * (aucun accès base) : réutilisable par le moteur de dispatch comme par une simulation.
+ * Les implémentations sont des beans, choisies par {@link #name()} (cf. dispatch.engine.policy).
+ */
+public interface DispatchPolicy {
+
+    String name();
+
+    /**
+     * Affecte les demandes, dans l'ordre reçu (plus anciennes d'abord), aux agents disponibles que l'affinité
+     * autorise pour chacune. Une demande sans agent convenable est simplement absente du résultat.
+     */
+    List<Assignment> plan(List<PendingDemande> demandes, List<AgentLoad> agents, Affinity affinity);
+
+    /** Sans affinité : tout agent convient à toute demande. */
+    default List<Assignment> plan(List<PendingDemande> demandes, List<AgentLoad> agents) {
+        return plan(demandes, agents, Affinity.NONE);
+    }
+
+    /** Demande à affecter. */
+    record PendingDemande(Long id, LocalDateTime dateCreation, Long bureauId, Categorie categorie) {}
+
+    /** Agent éligible : tâches actives et score courant (cf. AgentScoringIndex). */
+    record AgentLoad(Long agentId, long activeTasks, double score) {}
+
+    record Assignment(Long demandeId, Long agentId) {}
+
+    /**
+     * Agents acceptables pour une demande, en paliers du plus adapté au moins adapté (cf. AgentAffinityIndex).
+     * Liste vide : pas de restriction.
+     */
+    @FunctionalInterface
+    interface Affinity {
+
+        Affinity NONE = demande -> List.of();
+
+        List<LongPredicate> tiers(PendingDemande demande);
+
+        /**
+         * Retire du tas le meilleur agent du premier palier qui en contient un ; les agents écartés y sont remis.
+         * null si aucun palier n'a d'agent dans le tas.
+         */
+        default <T> T poll(PriorityQueue<T> heap, PendingDemande demande, ToLongFunction<T> agentId) {
+            List<LongPredicate> tiers = tiers(demande);
+            if (tiers.isEmpty()) return heap.poll();
+            List<T> skipped = new ArrayList<>();
+            try {
+                for (LongPredicate tier : tiers) {
+                    for (T head = heap.poll(); head != null; head = heap.poll()) {
+                        if (tier.test(agentId.applyAsLong(head))) return head;
+                        skipped.add(head);
+                    }
+                    heap.addAll(skipped);
+                    skipped.clear();
+                }
+                return null;
+            } finally {
+                heap.addAll(skipped);
+            }
+        }
+    }
+}
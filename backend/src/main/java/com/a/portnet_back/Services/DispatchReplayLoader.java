@@ -0,0 +1,122 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reconstitue une charge historique pour DispatchSimulator, en lecture seule :
+ * <ul>
+ *   <li>arrivées : demandes créées sur la période (date_creation, bureau, catégorie) ;</li>
+ *   <li>durée de traitement : started_at → finished_at de l'affectation terminée, sinon la médiane observée
+ *       sur la période (sinon dispatch.replay.default-service-minutes) ;</li>
+ *   <li>présence des agents : chaque activité réussie ouvre une fenêtre de duration_seconds, ou de la fenêtre
+ *       de récence de l'index de scoring quand la durée n'est pas connue.</li>
+ * </ul>
+ */
+@Component
+public class DispatchReplayLoader {
+
+    private static final String SELECT_ARRIVALS = """
+            SELECT d.id, d.date_creation, d.bureau_douanier_id, d.categorie,
+                   EXTRACT(EPOCH FROM (ta.finished_at - ta.started_at))
+            FROM demandes d
+            LEFT JOIN task_assignments ta
+                   ON ta.demande_id = d.id
+                  AND ta.status = 'DONE'
+                  AND ta.started_at IS NOT NULL
+                  AND ta.finished_at > ta.started_at
+            WHERE d.date_creation >= ? AND d.date_creation < ?
+            ORDER BY d.date_creation, d.id
+            """;
+
+    private static final String SELECT_AGENTS = """
+            SELECT DISTINCT a.id
+            FROM agents a
+            WHERE a.is_activated = true
+               OR a.id IN (SELECT ta.agent_id
+                           FROM task_assignments ta
+                           JOIN demandes d ON d.id = ta.demande_id
+                           WHERE d.date_creation >= ? AND d.date_creation < ?)
+            ORDER BY a.id
+            """;
+
+    private static final String SELECT_PRESENCES = """
+            SELECT l.agent_id, l.timestamp, l.duration_seconds
+            FROM agent_activity_logs l
+            WHERE l.success = true
+              AND l.timestamp >= ? AND l.timestamp < ?
+            ORDER BY l.agent_id, l.timestamp
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration recencyWindow;
+    private final Duration defaultService;
+
+    public DispatchReplayLoader(JdbcTemplate jdbcTemplate,
+                                @Value("${dispatch.scoring.recency-window-minutes:60}") long recencyWindowMinutes,
+                                @Value("${dispatch.replay.default-service-minutes:30}") long defaultServiceMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recencyWindow = Duration.ofMinutes(recencyWindowMinutes);
+        this.defaultService = Duration.ofMinutes(defaultServiceMinutes);
+    }
+
+    /** Charge de la période [from, to) ; les présences commencées juste avant from sont reprises. */
+    @Transactional(readOnly = true)
+    public DispatchSimulator.Workload load(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Période de rejeu invalide");
+        }
+
+        List<Long> demandeIds = new ArrayList<>();
+        List<LocalDateTime> dates = new ArrayList<>();
+        List<Long> bureaux = new ArrayList<>();
+        List<Categorie> categories = new ArrayList<>();
+        List<Double> observed = new ArrayList<>();
+        jdbcTemplate.query(SELECT_ARRIVALS, (RowCallbackHandler) rs -> {
+            demandeIds.add(rs.getLong(1));
+            dates.add(rs.getTimestamp(2).toLocalDateTime());
+            bureaux.add(rs.getObject(3, Long.class));
+            String categorie = rs.getString(4);
+            categories.add(categorie == null ? null : Categorie.valueOf(categorie));
+            double seconds = rs.getDouble(5);
+            observed.add(rs.wasNull() ? null : seconds);
+        }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+
+        Duration fallback = median(observed);
+        List<DispatchSimulator.Arrival> arrivals = new ArrayList<>(demandeIds.size());
+        for (int i = 0; i < demandeIds.size(); i++) {
+            Double s = observed.get(i);
+            arrivals.add(new DispatchSimulator.Arrival(demandeIds.get(i), dates.get(i), bureaux.get(i),
+                    categories.get(i), s == null ? fallback : Duration.ofMillis(Math.round(s * 1000))));
+        }
+
+        List<Long> agentIds = jdbcTemplate.queryForList(SELECT_AGENTS, Long.class,
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+
+        List<DispatchSimulator.Presence> presences = new ArrayList<>();
+        jdbcTemplate.query(SELECT_PRESENCES, (RowCallbackHandler) rs -> {
+            LocalDateTime at = rs.getTimestamp(2).toLocalDateTime();
+            int seconds = rs.getInt(3);
+            Duration length = rs.wasNull() || seconds <= 0 ? recencyWindow : Duration.ofSeconds(seconds);
+            presences.add(new DispatchSimulator.Presence(rs.getLong(1), at, at.plus(length)));
+        }, Timestamp.valueOf(from.minus(recencyWindow)), Timestamp.valueOf(to));
+
+        return new DispatchSimulator.Workload(agentIds, arrivals, presences);
+    }
+
+    private Duration median(List<Double> observed) {
+        double[] values = observed.stream().filter(v -> v != null).mapToDouble(Double::doubleValue).sorted().toArray();
+        if (values.length == 0) return defaultService;
+        return Duration.ofMillis(Math.round(DispatchSimulator.percentile(values, 0.50) * 1000));
+    }
+}
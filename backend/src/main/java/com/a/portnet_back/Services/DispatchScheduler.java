@@ -2,24 +2,176 @@ package com.a.portnet_back.Services;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passages périodiques de dispatch, un seul nœud à la fois (cf. DispatchLeaderElection), intervalle adapté au
+ * stock de demandes en attente :
+ * <ul>
+ *   <li>file vide : prochaine vérification après idle-interval-ms ;</li>
+ *   <li>dernier passage sans affectation (aucun agent libre) : base-interval-ms ;</li>
+ *   <li>sinon base × lot / stock, borné à [min-interval-ms, base-interval-ms] : quasi continu sur une file
+ *       profonde.</li>
+ * </ul>
+ * Le déclencheur tourne toutes les tick-ms sur chaque nœud mais ne fait rien avant l'échéance calculée.
+ * Retard de dispatch mesuré à chaque vérification : âge de la plus ancienne demande non affectée.
+ */
 @Component
 public class DispatchScheduler {
     private static final Logger log = LoggerFactory.getLogger(DispatchScheduler.class);
 
+    private static final String BACKLOG = """
+            SELECT count(*), min(d.date_creation)
+            FROM dispatch_queue q
+            JOIN demandes d ON d.id = q.demande_id
+            """;
+
     private final DispatchService service;
-    public DispatchScheduler(DispatchService service) { this.service = service; }
+    private final DispatchLeaderElection leader;
+    private final JdbcTemplate jdbcTemplate;
+    private final long minIntervalMs;
+    private final long baseIntervalMs;
+    private final long idleIntervalMs;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long nextRunAt;
+    private volatile long lastAssigned = -1;
+
+    // métriques (exposées par /api/dispatch/scheduler/stats)
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skippedNotLeader = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long backlog;
+    private volatile long lagMs;
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private volatile long lastRunAt;
+    private volatile long lastRunMs;
+    private volatile long intervalMs;
+
+    public DispatchScheduler(DispatchService service,
+                             DispatchLeaderElection leader,
+                             JdbcTemplate jdbcTemplate,
+                             @Value("${dispatch.scheduler.min-interval-ms:1000}") long minIntervalMs,
+                             @Value("${dispatch.scheduler.base-interval-ms:30000}") long baseIntervalMs,
+                             @Value("${dispatch.scheduler.idle-interval-ms:60000}") long idleIntervalMs,
+                             @Value("${dispatch.engine.batch-size:50}") int batchSize) {
+        this.service = service;
+        this.leader = leader;
+        this.jdbcTemplate = jdbcTemplate;
+        this.minIntervalMs = minIntervalMs;
+        this.baseIntervalMs = Math.max(minIntervalMs, baseIntervalMs);
+        this.idleIntervalMs = idleIntervalMs;
+        this.batchSize = batchSize;
+    }
 
-    // toutes les 5 minutes
-    @Scheduled(cron = "0 */5 * * * *")
-    public void scheduledRun() {
+    @Scheduled(fixedDelayString = "${dispatch.scheduler.tick-ms:1000}")
+    public void tick() {
+        long now = System.currentTimeMillis();
+        if (now < nextRunAt || !running.compareAndSet(false, true)) return;
+
+        boolean async = false;
         try {
-            var res = service.runOnce();
-            log.info("Dispatch périodique: {}", res);
+            if (!leader.isLeader()) {
+                skippedNotLeader.incrementAndGet();
+                schedule(now, idleIntervalMs);
+                return;
+            }
+
+            measureBacklog(now);
+            if (backlog == 0) {
+                schedule(now, idleIntervalMs);
+                return;
+            }
+
+            long t0 = System.nanoTime();
+            // en mode remote la réponse arrive sur un autre thread : le drapeau est rendu à la fin du passage
+            async = true;
+            service.run()
+                    .doFinally(signal -> running.set(false))
+                    .subscribe(res -> {
+                        completed(res, t0);
+                        log.info("Dispatch périodique: {}", res);
+                    }, e -> {
+                        failures.incrementAndGet();
+                        lastRunMs = (System.nanoTime() - t0) / 1_000_000;
+                        schedule(System.currentTimeMillis(), baseIntervalMs);
+                        log.error("Dispatch périodique en erreur", e);
+                    });
         } catch (Exception e) {
+            failures.incrementAndGet();
+            schedule(now, baseIntervalMs);
             log.error("Dispatch périodique en erreur", e);
+        } finally {
+            if (!async) running.set(false);
         }
     }
+
+    private void measureBacklog(long now) {
+        jdbcTemplate.query(BACKLOG, (RowCallbackHandler) rs -> {
+            backlog = rs.getLong(1);
+            Timestamp oldest = rs.getTimestamp(2);
+            lagMs = oldest == null ? 0 : Math.max(0, now - oldest.getTime());
+        });
+        maxLagMs.accumulateAndGet(lagMs, Math::max);
+    }
+
+    private void completed(Map<String, Object> res, long t0) {
+        runs.incrementAndGet();
+        lastRunAt = System.currentTimeMillis();
+        lastRunMs = (System.nanoTime() - t0) / 1_000_000;
+        lastAssigned = assigned(res);
+        long remaining = Math.max(0, backlog - Math.max(0, lastAssigned));
+        schedule(lastRunAt, nextInterval(remaining, lastAssigned));
+    }
+
+    /** Intervalle avant le prochain passage, selon le stock restant et le résultat du passage. */
+    long nextInterval(long remaining, long assigned) {
+        if (remaining == 0) return idleIntervalMs;
+        if (assigned == 0) return baseIntervalMs;
+        long adaptive = baseIntervalMs * batchSize / remaining;
+        return Math.max(minIntervalMs, Math.min(baseIntervalMs, adaptive));
+    }
+
+    /** Nombre d'affectations d'un passage : moteur natif (assigned) ou dispatcher distant (details). */
+    static long assigned(Map<String, Object> res) {
+        if (res == null) return -1;
+        if (res.get("assigned") instanceof Number n) return n.longValue();
+        if (res.get("details") instanceof List<?> details) return details.size();
+        return -1;
+    }
+
+    private void schedule(long from, long interval) {
+        intervalMs = interval;
+        nextRunAt = from + interval;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("leader", leader.holdsLock());
+        m.put("enAttente", backlog);
+        m.put("retardMs", lagMs);
+        m.put("retardMaxMs", maxLagMs.get());
+        m.put("intervalleMs", intervalMs);
+        m.put("prochainPassage", nextRunAt == 0 ? null : Instant.ofEpochMilli(nextRunAt).toString());
+        m.put("dernierPassage", lastRunAt == 0 ? null : Instant.ofEpochMilli(lastRunAt).toString());
+        m.put("dureeDernierPassageMs", lastRunMs);
+        m.put("affectationsDernierPassage", lastAssigned);
+        m.put("passages", runs.get());
+        m.put("ignoresNonLeader", skippedNotLeader.get());
+        m.put("echecs", failures.get());
+        return m;
+    }
 }
@@ -1,39 +1,43 @@
 package com.a.portnet_back.Services;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 
+/**
+ * Point d'entrée d'un passage de dispatch (planificateur, /api/dispatch/run), sans blocage de l'appelant.
+ * dispatcher.mode=native (défaut) : moteur Java en processus ; remote : service HTTP Python via DispatcherClient.
+ */
 @Service
 public class DispatchService {
-    private final WebClient client;
-    private final String path;
+    private final DispatcherClient client;
+    private final DispatchEngine engine;
+    private final boolean remote;
 
-    public DispatchService(WebClient dispatcherWebClient,
-                           @Value("${dispatcher.path}") String path) {
-        this.client = dispatcherWebClient;
-        this.path = path;
+    public DispatchService(DispatcherClient client,
+                           @Value("${dispatcher.mode:native}") String mode,
+                           DispatchEngine engine) {
+        this.client = client;
+        this.engine = engine;
+        this.remote = "remote".equalsIgnoreCase(mode);
     }
 
-    // DispatchService.java
-    public Map<String, Object> runOnce(Integer limit) {
-        return client.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path(path)               // path = "/dispatcher"
-                        .queryParam("limit", limit == null ? 50 : limit) // défaut 50
-                        .build())
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, r -> r.bodyToMono(String.class)
-                        .map(msg -> new RuntimeException("Dispatcher error: " + msg)))
-                .bodyToMono(new ParameterizedTypeReference<Map<String,Object>>() {})
-                .block();
+    public Mono<Map<String, Object>> run(Integer limit, String policy) {
+        if (!remote) {
+            // moteur natif : transaction JDBC sur le thread qui souscrit
+            return Mono.fromCallable(() -> DispatchEngine.toMap(engine.run(limit, policy)));
+        }
+        return client.run(limit == null ? 50 : limit); // défaut 50
     }
 
-
     // pratique si tu ne passes pas de limit
-    public Map<String, Object> runOnce() { return runOnce(null); }
+    public Mono<Map<String, Object>> run() { return run(null, null); }
+
+    public Map<String, Object> clientStats() {
+        Map<String, Object> stats = client.stats();
+        stats.put("mode", remote ? "remote" : "native");
+        return stats;
+    }
 }
@@ -0,0 +1,343 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Simulation hors ligne du dispatch, en processus et sans base : rejoue des arrivées de demandes (historiques,
+ * cf. DispatchReplayLoader, ou synthétiques) à travers une DispatchPolicy et une fonction de score, puis mesure
+ * <ul>
+ *   <li>l'attente des demandes (arrivée → début de traitement) et le délai d'affectation, en percentiles ;</li>
+ *   <li>la répartition de la charge entre agents (moyenne, variance, coefficient de variation) ;</li>
+ *   <li>le coût CPU du dispatch (temps CPU passé dans DispatchPolicy.plan).</li>
+ * </ul>
+ * Modèle : chaque agent traite ses affectations une à une, dans l'ordre, seulement lorsqu'il est présent
+ * (fenêtres de présence reconstituées depuis agent_activity_logs) ; une tâche commencée est terminée.
+ * Un agent n'est proposé à la politique que s'il est présent et sous la capacité.
+ */
+public class DispatchSimulator {
+
+    /** Demande à dispatcher : arrivée et durée de traitement (observée ou tirée). */
+    public record Arrival(long demandeId, LocalDateTime at, Long bureauId, Categorie categorie, Duration service) {}
+
+    /** Fenêtre pendant laquelle un agent travaille. */
+    public record Presence(long agentId, LocalDateTime from, LocalDateTime to) {}
+
+    /** Charge de travail complète ; presences vide = agents toujours présents. */
+    public record Workload(List<Long> agentIds, List<Arrival> arrivals, List<Presence> presences) {}
+
+    /** Score proposé à la politique pour un agent (mêmes entrées que l'index de scoring). */
+    @FunctionalInterface
+    public interface ScoreFunction {
+        double score(long activeTasks, boolean recentlyActive);
+
+        /** Formule d'AgentScoringIndex, sans pénalité d'anomalies (non rejouées). */
+        ScoreFunction INDEX = (active, recent) -> 10.0 - Math.min(10, active) + (recent ? 2.0 : 0.0);
+    }
+
+    /**
+     * @param dispatchInterval null : un passage après chaque événement (auto-dispatch à la soumission) ;
+     *                         sinon passages périodiques (planificateur)
+     * @param capacity         tâches actives au-delà desquelles un agent n'est plus proposé
+     * @param batchSize        demandes au plus par passage
+     */
+    public record Settings(Duration dispatchInterval, int capacity, int batchSize, Duration recencyWindow) {
+        public static Settings defaults() {
+            return new Settings(null, 10, 50, Duration.ofMinutes(60));
+        }
+    }
+
+    public record Result(String policy, int demandes, int started, int neverStarted,
+                         double waitP50Min, double waitP90Min, double waitP99Min, double waitMaxMin,
+                         double assignP50Min, double assignP99Min,
+                         double loadMean, double loadVariance, double loadCv, Map<Long, Integer> tasksPerAgent,
+                         int dispatchCalls, long dispatchCpuNanos) {
+
+        public double cpuMicrosPerDemande() {
+            return demandes == 0 ? 0 : dispatchCpuNanos / 1_000.0 / demandes;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final DispatchPolicy policy;
+    private final ScoreFunction scoreFunction;
+    private final Settings settings;
+
+    public DispatchSimulator(DispatchPolicy policy, ScoreFunction scoreFunction, Settings settings) {
+        this.policy = policy;
+        this.scoreFunction = scoreFunction;
+        this.settings = settings;
+    }
+
+    /* =======================
+       Simulation
+       ======================= */
+
+    private enum Kind { COMPLETE, PRESENCE, ARRIVAL, DISPATCH }
+
+    // à instant égal : fins de tâche, puis arrivées de présence, puis demandes, puis passage de dispatch
+    private record Event(long at, Kind kind, long ref) {}
+
+    private static final class Job {
+        final Arrival arrival;
+        final long arrivedAt;
+        long assignedAt = -1;
+        long startedAt = -1;
+
+        Job(Arrival arrival) {
+            this.arrival = arrival;
+            this.arrivedAt = seconds(arrival.at());
+        }
+    }
+
+    private final class AgentSim {
+        final long id;
+        final ArrayDeque<Job> queue = new ArrayDeque<>();
+        final TreeMap<Long, Long> presence = new TreeMap<>(); // début → fin (s), fenêtres fusionnées
+        Job current;
+        int done;
+        long lastPresenceStart = Long.MIN_VALUE;
+
+        AgentSim(long id) {
+            this.id = id;
+        }
+
+        long activeTasks() {
+            return queue.size() + (current != null ? 1 : 0);
+        }
+
+        boolean present(long t) {
+            if (alwaysPresent) return true;
+            Map.Entry<Long, Long> w = presence.floorEntry(t);
+            return w != null && t < w.getValue();
+        }
+
+        boolean recentlyActive(long t) {
+            if (alwaysPresent) return true;
+            Map.Entry<Long, Long> w = presence.floorEntry(t);
+            return w != null && t - w.getKey() < settings.recencyWindow().toSeconds();
+        }
+    }
+
+    // état d'un run (un simulateur ne sert qu'à un run à la fois)
+    private boolean alwaysPresent;
+    private int calls;
+    private long cpuNanos;
+
+    public Result run(Workload workload) {
+        alwaysPresent = workload.presences().isEmpty();
+        calls = 0;
+        cpuNanos = 0;
+        Map<Long, AgentSim> agents = new LinkedHashMap<>();
+        for (Long id : workload.agentIds()) agents.put(id, new AgentSim(id));
+        for (Presence p : workload.presences()) {
+            AgentSim a = agents.get(p.agentId());
+            if (a != null) addWindow(a.presence, seconds(p.from()), seconds(p.to()));
+        }
+
+        PriorityQueue<Event> events = new PriorityQueue<>(Comparator.comparingLong(Event::at)
+                .thenComparing(Event::kind).thenComparingLong(Event::ref));
+        List<Job> jobs = new ArrayList<>(workload.arrivals().size());
+        for (Arrival a : workload.arrivals()) {
+            jobs.add(new Job(a));
+            events.add(new Event(jobs.get(jobs.size() - 1).arrivedAt, Kind.ARRIVAL, jobs.size() - 1));
+        }
+        for (AgentSim a : agents.values()) {
+            for (Long start : a.presence.keySet()) events.add(new Event(start, Kind.PRESENCE, a.id));
+        }
+        long interval = settings.dispatchInterval() == null ? 0 : Math.max(1, settings.dispatchInterval().toSeconds());
+        long lastArrival = jobs.stream().mapToLong(j -> j.arrivedAt).max().orElse(0);
+        if (interval > 0 && !jobs.isEmpty()) {
+            long first = jobs.stream().mapToLong(j -> j.arrivedAt).min().orElse(0);
+            events.add(new Event(first, Kind.DISPATCH, 0));
+        }
+
+        // demandes en attente d'affectation, ordre d'arrivée
+        Map<Long, Job> pending = new LinkedHashMap<>();
+
+        while (!events.isEmpty()) {
+            Event e = events.poll();
+            long t = e.at();
+            switch (e.kind()) {
+                case ARRIVAL -> {
+                    Job j = jobs.get((int) e.ref());
+                    pending.put(j.arrival.demandeId(), j);
+                }
+                case COMPLETE -> {
+                    AgentSim a = agents.get(e.ref());
+                    a.current = null;
+                    a.done++;
+                    startNext(a, t, events);
+                }
+                case PRESENCE -> startNext(agents.get(e.ref()), t, events);
+                case DISPATCH -> { }
+            }
+
+            boolean dispatchNow = interval == 0 ? e.kind() != Kind.DISPATCH : e.kind() == Kind.DISPATCH;
+            if (dispatchNow && !pending.isEmpty()) dispatch(pending, agents, t, events);
+            // passages périodiques tant qu'il reste des arrivées, ou des demandes qu'un agent pourra encore prendre
+            if (e.kind() == Kind.DISPATCH
+                    && (t < lastArrival || (!pending.isEmpty() && workAhead(agents.values(), t)))) {
+                events.add(new Event(t + interval, Kind.DISPATCH, 0));
+            }
+        }
+
+        return result(jobs, agents);
+    }
+
+    /** Un passage : seul l'appel à la politique est compté dans le coût CPU. */
+    private void dispatch(Map<Long, Job> pending, Map<Long, AgentSim> agents, long t, PriorityQueue<Event> events) {
+        List<DispatchPolicy.AgentLoad> loads = new ArrayList<>();
+        for (AgentSim a : agents.values()) {
+            if (!a.present(t) || a.activeTasks() >= settings.capacity()) continue;
+            loads.add(new DispatchPolicy.AgentLoad(a.id, a.activeTasks(),
+                    scoreFunction.score(a.activeTasks(), a.recentlyActive(t))));
+        }
+        if (loads.isEmpty()) return;
+
+        List<DispatchPolicy.PendingDemande> batch = new ArrayList<>(Math.min(pending.size(), settings.batchSize()));
+        for (Job j : pending.values()) {
+            if (batch.size() >= settings.batchSize()) break;
+            batch.add(new DispatchPolicy.PendingDemande(j.arrival.demandeId(), j.arrival.at(),
+                    j.arrival.bureauId(), j.arrival.categorie()));
+        }
+
+        long c0 = cpuNow();
+        List<DispatchPolicy.Assignment> plan = policy.plan(batch, loads);
+        cpuNanos += cpuNow() - c0;
+        calls++;
+
+        for (DispatchPolicy.Assignment a : plan) {
+            AgentSim agent = agents.get(a.agentId());
+            Job j = pending.remove(a.demandeId());
+            if (agent == null || j == null) continue;
+            j.assignedAt = t;
+            agent.queue.add(j);
+            startNext(agent, t, events);
+        }
+    }
+
+    private void startNext(AgentSim a, long t, PriorityQueue<Event> events) {
+        if (a.current != null || a.queue.isEmpty() || !a.present(t)) return;
+        Job j = a.queue.poll();
+        j.startedAt = t;
+        a.current = j;
+        events.add(new Event(t + Math.max(1, j.arrival.service().toSeconds()), Kind.COMPLETE, a.id));
+    }
+
+    /** Une tâche en cours ou une présence à venir : un passage ultérieur peut encore affecter. */
+    private static boolean workAhead(Iterable<AgentSim> agents, long t) {
+        for (AgentSim a : agents) {
+            if (a.current != null || a.presence.higherKey(t) != null) return true;
+        }
+        return false;
+    }
+
+    private Result result(List<Job> jobs, Map<Long, AgentSim> agents) {
+        double[] waits = jobs.stream().filter(j -> j.startedAt >= 0)
+                .mapToDouble(j -> (j.startedAt - j.arrivedAt) / 60.0).sorted().toArray();
+        double[] assigns = jobs.stream().filter(j -> j.assignedAt >= 0)
+                .mapToDouble(j -> (j.assignedAt - j.arrivedAt) / 60.0).sorted().toArray();
+
+        Map<Long, Integer> perAgent = new LinkedHashMap<>();
+        for (AgentSim a : agents.values()) perAgent.put(a.id, a.done + (int) a.activeTasks());
+        double mean = perAgent.values().stream().mapToInt(Integer::intValue).average().orElse(0);
+        double variance = perAgent.values().stream().mapToDouble(v -> (v - mean) * (v - mean)).average().orElse(0);
+
+        return new Result(policy.name(), jobs.size(), waits.length, jobs.size() - waits.length,
+                percentile(waits, 0.50), percentile(waits, 0.90), percentile(waits, 0.99),
+                waits.length == 0 ? 0 : waits[waits.length - 1],
+                percentile(assigns, 0.50), percentile(assigns, 0.99),
+                mean, variance, mean == 0 ? 0 : Math.sqrt(variance) / mean, perAgent, calls, cpuNanos);
+    }
+
+    /* =======================
+       Charges synthétiques
+       ======================= */
+
+    /**
+     * Arrivées de Poisson (ratePerHour), durées exponentielles (moyenne meanService), bureaux et catégories
+     * tirés uniformément ; agents toujours présents.
+     */
+    public static Workload synthetic(long seed, int demandes, int agents, double ratePerHour,
+                                     Duration meanService, int bureaux) {
+        Random random = new Random(seed);
+        LocalDateTime t = LocalDateTime.of(2025, 1, 6, 8, 0);
+        List<Arrival> arrivals = new ArrayList<>(demandes);
+        for (int i = 1; i <= demandes; i++) {
+            t = t.plusSeconds(Math.round(exponential(random, 3600.0 / ratePerHour)));
+            long service = Math.max(60, Math.round(exponential(random, meanService.toSeconds())));
+            arrivals.add(new Arrival(i, t, 1L + random.nextInt(bureaux),
+                    random.nextBoolean() ? Categorie.IMPORTATION : Categorie.EXPORTATION, Duration.ofSeconds(service)));
+        }
+        List<Long> agentIds = new ArrayList<>(agents);
+        for (long a = 1; a <= agents; a++) agentIds.add(a);
+        return new Workload(agentIds, arrivals, List.of());
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    /* =======================
+       Utilitaires
+       ======================= */
+
+    /** Fusionne [from, to) dans des fenêtres disjointes triées. */
+    private static void addWindow(TreeMap<Long, Long> windows, long from, long to) {
+        if (to <= from) return;
+        Map.Entry<Long, Long> before = windows.floorEntry(from);
+        if (before != null && before.getValue() >= from) {
+            from = before.getKey();
+            to = Math.max(to, before.getValue());
+            windows.remove(before.getKey());
+        }
+        Map.Entry<Long, Long> next;
+        while ((next = windows.ceilingEntry(from)) != null && next.getKey() <= to) {
+            to = Math.max(to, next.getValue());
+            windows.remove(next.getKey());
+        }
+        windows.put(from, to);
+    }
+
+    static double percentile(double[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static long seconds(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long cpuNow() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /** Tableau de résultats aligné, pour comparer des politiques côte à côte. */
+    public static String table(List<Result> results) {
+        StringBuilder sb = new StringBuilder(String.format("%-14s %8s %8s %8s %8s %8s %9s %8s %10s%n",
+                "politique", "démarrées", "p50 min", "p90 min", "p99 min", "max min", "var charge", "cv", "µs CPU/dem"));
+        for (Result r : results) {
+            sb.append(String.format("%-14s %8d %8.1f %8.1f %8.1f %8.1f %9.2f %8.3f %10.2f%n",
+                    r.policy(), r.started(), r.waitP50Min(), r.waitP90Min(), r.waitP99Min(), r.waitMaxMin(),
+                    r.loadVariance(), r.loadCv(), r.cpuMicrosPerDemande()));
+        }
+        return sb.toString();
+    }
+}
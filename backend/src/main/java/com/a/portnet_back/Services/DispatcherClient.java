@@ -0,0 +1,298 @@
+package com.a.portnet_back.Services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Client non bloquant du dispatcher HTTP (dispatcher.mode=remote), protections dans cet ordre :
+ * <ol>
+ *   <li>disjoncteur : après {@code failure-threshold} échecs transitoires consécutifs, les appels sont refusés
+ *       sans toucher le réseau pendant {@code open-ms}, puis un seul appel d'essai décide de la réouverture ;</li>
+ *   <li>bulkhead : au plus {@code max-concurrent} appels en vol, les suivants sont refusés immédiatement ;</li>
+ *   <li>reprises : uniquement sur erreurs transitoires (connexion, délai, 5xx, 429), au plus {@code max-retries},
+ *       attente exponentielle avec gigue ; chaque tentative est bornée par dispatcher.timeout-ms.</li>
+ * </ol>
+ * Chaque appel alimente les compteurs par issue et l'histogramme de latence (cf. {@link #stats()}).
+ */
+@Component
+public class DispatcherClient {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatcherClient.class);
+
+    /** Appel refusé sans être tenté (disjoncteur ouvert, bulkhead plein) : 503 côté API. */
+    public static class DispatcherUnavailableException extends RuntimeException {
+        public DispatcherUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /** Réponse en erreur du dispatcher. */
+    public static class DispatcherCallException extends RuntimeException {
+        private final int status;
+
+        public DispatcherCallException(int status, String body) {
+            super("Dispatcher error (" + status + "): " + body);
+            this.status = status;
+        }
+
+        public int getStatus() { return status; }
+
+        boolean isTransient() {
+            return status >= 500 || status == 429;
+        }
+    }
+
+    public enum Outcome { SUCCES, ERREUR_TRANSITOIRE, ERREUR_CLIENT, REFUS_DISJONCTEUR, REFUS_BULKHEAD }
+
+    private final WebClient client;
+    private final String path;
+    private final Duration attemptTimeout;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker breaker;
+    private final Stats stats = new Stats();
+
+    public DispatcherClient(WebClient dispatcherWebClient,
+                            @Value("${dispatcher.path}") String path,
+                            @Value("${dispatcher.timeout-ms}") long timeoutMs,
+                            @Value("${dispatcher.retry.max-retries:2}") int maxRetries,
+                            @Value("${dispatcher.retry.backoff-ms:200}") long backoffMs,
+                            @Value("${dispatcher.bulkhead.max-concurrent:2}") int maxConcurrent,
+                            @Value("${dispatcher.breaker.failure-threshold:5}") int failureThreshold,
+                            @Value("${dispatcher.breaker.open-ms:30000}") long openMs) {
+        this(dispatcherWebClient, path, Duration.ofMillis(timeoutMs), maxRetries, Duration.ofMillis(backoffMs),
+                maxConcurrent, new CircuitBreaker(failureThreshold, openMs, System::currentTimeMillis));
+    }
+
+    DispatcherClient(WebClient client, String path, Duration attemptTimeout, int maxRetries, Duration backoff,
+                     int maxConcurrent, CircuitBreaker breaker) {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("dispatcher.bulkhead.max-concurrent doit être >= 1");
+        this.client = client;
+        this.path = path;
+        this.attemptTimeout = attemptTimeout;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoff = backoff;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.breaker = breaker;
+    }
+
+    /** Un passage du dispatcher distant ; rien n'est émis avant la souscription. */
+    public Mono<Map<String, Object>> run(int limit) {
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                stats.record(Outcome.REFUS_DISJONCTEUR, 0);
+                return Mono.error(new DispatcherUnavailableException("Dispatcher indisponible (disjoncteur ouvert)"));
+            }
+            if (!bulkhead.tryAcquire()) {
+                breaker.release();
+                stats.record(Outcome.REFUS_BULKHEAD, 0);
+                return Mono.error(new DispatcherUnavailableException("Dispatcher saturé (appels simultanés au maximum)"));
+            }
+            long t0 = System.nanoTime();
+            return attempt(limit)
+                    .retryWhen(Retry.backoff(maxRetries, backoff)
+                            .jitter(0.5)
+                            .filter(DispatcherClient::isTransient)
+                            .doBeforeRetry(s -> {
+                                stats.retries.increment();
+                                log.debug("Dispatcher : nouvelle tentative {} après {}", s.totalRetries() + 1,
+                                        s.failure().toString());
+                            })
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                    .doOnSuccess(r -> {
+                        breaker.onSuccess();
+                        stats.record(Outcome.SUCCES, System.nanoTime() - t0);
+                    })
+                    .doOnError(e -> {
+                        boolean transitoire = isTransient(e);
+                        // une erreur 4xx ne dit rien de la santé du dispatcher
+                        if (transitoire) breaker.onFailure();
+                        else breaker.onSuccess();
+                        stats.record(transitoire ? Outcome.ERREUR_TRANSITOIRE : Outcome.ERREUR_CLIENT,
+                                System.nanoTime() - t0);
+                    })
+                    .doOnCancel(breaker::release)
+                    .doFinally(signal -> bulkhead.release());
+        });
+    }
+
+    private Mono<Map<String, Object>> attempt(int limit) {
+        return client.get()
+                .uri(uriBuilder -> uriBuilder.path(path).queryParam("limit", limit).build())
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, r -> r.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(msg -> new DispatcherCallException(r.statusCode().value(), msg)))
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .timeout(attemptTimeout);
+    }
+
+    static boolean isTransient(Throwable e) {
+        if (e instanceof DispatcherCallException call) return call.isTransient();
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+
+    /** Vue des compteurs, de l'histogramme et de l'état du disjoncteur (exposée par /api/dispatch/client/stats). */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = stats.toMap();
+        m.put("circuit", breaker.state().name());
+        m.put("placesLibres", bulkhead.availablePermits());
+        return m;
+    }
+
+    /* =======================
+       Disjoncteur
+       ======================= */
+
+    /**
+     * FERME → OUVERT après N échecs consécutifs ; OUVERT → MI_OUVERT après le délai ; en MI_OUVERT un seul
+     * appel d'essai, dont l'issue referme ou rouvre.
+     */
+    static final class CircuitBreaker {
+        enum State { FERME, OUVERT, MI_OUVERT }
+
+        private final int failureThreshold;
+        private final long openMs;
+        private final LongSupplier clock;
+
+        private State state = State.FERME;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int failureThreshold, long openMs, LongSupplier clock) {
+            if (failureThreshold < 1) throw new IllegalArgumentException("dispatcher.breaker.failure-threshold doit être >= 1");
+            this.failureThreshold = failureThreshold;
+            this.openMs = openMs;
+            this.clock = clock;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OUVERT && clock.getAsLong() - openedAt >= openMs) state = State.MI_OUVERT;
+            return switch (state) {
+                case FERME -> true;
+                case OUVERT -> false;
+                case MI_OUVERT -> {
+                    if (trialInFlight) yield false;
+                    trialInFlight = true;
+                    yield true;
+                }
+            };
+        }
+
+        /** Appel autorisé mais non effectué (bulkhead, annulation) : libère l'essai éventuel. */
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            state = State.FERME;
+        }
+
+        synchronized void onFailure() {
+            trialInFlight = false;
+            if (state == State.MI_OUVERT || ++consecutiveFailures >= failureThreshold) {
+                state = State.OUVERT;
+                openedAt = clock.getAsLong();
+                log.warn("Dispatcher : disjoncteur ouvert pour {} ms", openMs);
+            }
+        }
+
+        synchronized State state() {
+            if (state == State.OUVERT && clock.getAsLong() - openedAt >= openMs) return State.MI_OUVERT;
+            return state;
+        }
+    }
+
+    /* =======================
+       Métriques
+       ======================= */
+
+    /** Compteurs par issue + histogramme de latence à bornes fixes (ms), sans verrou. */
+    static final class Stats {
+        private static final long[] BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+        private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder retries = new LongAdder();
+
+        Stats() {
+            for (Outcome o : Outcome.values()) outcomes.put(o, new LongAdder());
+        }
+
+        void record(Outcome outcome, long nanos) {
+            outcomes.get(outcome).increment();
+            if (outcome == Outcome.REFUS_DISJONCTEUR || outcome == Outcome.REFUS_BULKHEAD) return;
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long ms = nanos / 1_000_000;
+            int i = 0;
+            while (i < BOUNDS_MS.length && ms > BOUNDS_MS[i]) i++;
+            buckets.incrementAndGet(i);
+        }
+
+        long count(Outcome outcome) {
+            return outcomes.get(outcome).sum();
+        }
+
+        /** Borne haute du seuil contenant le quantile q (-1 au-delà de la dernière borne, 0 sans appel). */
+        long percentileMs(double q) {
+            long n = 0;
+            for (int i = 0; i < buckets.length(); i++) n += buckets.get(i);
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS_MS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return BOUNDS_MS[i];
+            }
+            return -1;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            Map<String, Long> byOutcome = new LinkedHashMap<>();
+            outcomes.forEach((o, c) -> byOutcome.put(o.name(), c.sum()));
+            m.put("issues", byOutcome);
+            m.put("reprises", retries.sum());
+            long n = calls.sum();
+            m.put("appels", n);
+            m.put("latenceMoyenneMs", n == 0 ? 0 : totalNanos.sum() / n / 1_000_000);
+            m.put("latenceMaxMs", maxNanos.get() / 1_000_000);
+            m.put("latenceP50Ms", percentileMs(0.50));
+            m.put("latenceP95Ms", percentileMs(0.95));
+            m.put("latenceP99Ms", percentileMs(0.99));
+            return m;
+        }
+    }
+
+    Stats metrics() {
+        return stats;
+    }
+}
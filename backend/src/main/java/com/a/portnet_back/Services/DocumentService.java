@@ -67,6 +67,7 @@ public class DocumentService {
             Document savedDocument = documentRepository.save(document);
 
 
+            demande.documentAdded();
             demande.markAsModified();
 
             return savedDocument;
@@ -131,6 +132,7 @@ public class DocumentService {
         documentRepository.delete(document);
 
 
+        document.getDemande().documentRemoved();
         document.getDemande().markAsModified();
     }
 
@@ -0,0 +1,76 @@
+package com.a.portnet_back.Services;
+
+import java.util.Arrays;
+
+/**
+ * Esquisse de quantiles fusionnable pour des durées en secondes (seaux logarithmiques, à la DDSketch) :
+ * seau 0 = 0 s, seau i >= 1 = ]γ^(i-2), γ^(i-1)] avec γ = (1 + α) / (1 - α). Tout quantile est restitué à α près
+ * (erreur relative), en mémoire bornée (≈ 400 seaux pour 60 jours) ; fusionner = additionner les compteurs.
+ * Même découpage que la fonction SQL duree_sketch_index (cf. db/duree-sketch.sql, tableaux indexés à partir de 1).
+ */
+public final class DureeSketch {
+
+    public static final double ALPHA = 0.02;
+    static final double GAMMA = (1 + ALPHA) / (1 - ALPHA);
+    private static final double LN_GAMMA = Math.log(GAMMA);
+
+    private long[] counts = new long[0];
+    private long count;
+    private long sumSeconds;
+
+    /** Seau d'une durée (secondes). */
+    static int index(long seconds) {
+        return seconds <= 0 ? 0 : 1 + (int) Math.ceil(Math.log(seconds) / LN_GAMMA);
+    }
+
+    /** Valeur représentative d'un seau : à α près de toute durée qu'il contient. */
+    static double value(int index) {
+        return index == 0 ? 0 : 2 * Math.pow(GAMMA, index - 1) / (GAMMA + 1);
+    }
+
+    public void add(long seconds) {
+        addBucket(index(seconds), 1);
+        count++;
+        sumSeconds += Math.max(0, seconds);
+    }
+
+    /** Ajoute des seaux lus tels quels (nombre et somme exacts fournis à part). */
+    public void addBucket(int index, long n) {
+        if (n == 0) return;
+        if (index >= counts.length) counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        counts[index] += n;
+    }
+
+    public void addTotals(long n, long sumSeconds) {
+        this.count += n;
+        this.sumSeconds += sumSeconds;
+    }
+
+    public DureeSketch merge(DureeSketch other) {
+        for (int i = other.counts.length - 1; i >= 0; i--) addBucket(i, other.counts[i]);
+        addTotals(other.count, other.sumSeconds);
+        return this;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double meanSeconds() {
+        return count == 0 ? 0 : (double) sumSeconds / count;
+    }
+
+    /** Quantile q ∈ [0, 1] en secondes ; 0 pour une esquisse vide. */
+    public double quantile(double q) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, q)) * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return value(i);
+        }
+        return value(counts.length - 1);
+    }
+}
@@ -11,8 +11,11 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class ExcelImportService {
@@ -29,6 +32,8 @@ public class ExcelImportService {
 
         Workbook workbook = createWorkbook(file);
         List<Marchandise> marchandises = new ArrayList<>();
+        // un seul SELECT par code pays sur tout le fichier
+        Map<String, Optional<Pays>> paysParCode = new HashMap<>();
 
         try {
             Sheet sheet = workbook.getSheetAt(0);
@@ -44,7 +49,7 @@ public class ExcelImportService {
                 rowNumber++;
 
                 try {
-                    Marchandise marchandise = parseMarchandiseFromRow(row, rowNumber);
+                    Marchandise marchandise = parseMarchandiseFromRow(row, rowNumber, paysParCode);
                     if (marchandise != null) {
                         marchandises.add(marchandise);
                     }
@@ -64,7 +69,7 @@ public class ExcelImportService {
         return marchandises;
     }
 
-    private Marchandise parseMarchandiseFromRow(Row row, int rowNumber) {
+    private Marchandise parseMarchandiseFromRow(Row row, int rowNumber, Map<String, Optional<Pays>> paysParCode) {
 
         if (isRowEmpty(row)) {
             return null;
@@ -119,7 +124,7 @@ public class ExcelImportService {
 
             String codePays = getCellValueAsString(row.getCell(8));
             if (codePays != null && !codePays.trim().isEmpty()) {
-                Pays pays = paysRepository.findByCode(codePays.trim().toUpperCase())
+                Pays pays = paysParCode.computeIfAbsent(codePays.trim().toUpperCase(), paysRepository::findByCode)
                         .orElse(null);
                 marchandise.setPays(pays);
             }
@@ -0,0 +1,43 @@
+package com.a.portnet_back.Services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Chaque demande va à l'agent qui a le moins de tâches actives (comportement de l'ancien dispatcher Python),
+ * parmi ceux du premier palier d'affinité qui en a un de libre.
+ */
+@Component
+public class LeastLoadedDispatchPolicy implements DispatchPolicy {
+
+    public static final String NAME = "least-loaded";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Assignment> plan(List<PendingDemande> demandes, List<AgentLoad> agents, Affinity affinity) {
+        List<Assignment> out = new ArrayList<>(demandes.size());
+        if (agents.isEmpty()) return out;
+
+        // [charge, agentId] : tas min, égalité départagée par id pour un résultat déterministe
+        PriorityQueue<long[]> heap = new PriorityQueue<>(agents.size(),
+                Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+        for (AgentLoad a : agents) heap.add(new long[]{a.activeTasks(), a.agentId()});
+
+        for (PendingDemande d : demandes) {
+            long[] least = affinity.poll(heap, d, e -> e[1]);
+            if (least == null) continue;
+            out.add(new Assignment(d.id(), least[1]));
+            least[0]++;
+            heap.add(least);
+        }
+        return out;
+    }
+}
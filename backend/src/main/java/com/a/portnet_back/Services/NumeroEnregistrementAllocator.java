@@ -0,0 +1,98 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Attribution des numéros d'enregistrement IMP/EXP sans requête COUNT.
+ * <p>
+ * Format inchangé : préfixe + yyyyMMddHHmmss + suffixe sur 3 chiffres.
+ * Le suffixe vient d'une séquence PostgreSQL par préfixe (cf. db/demande-numero.sql) dont l'incrément
+ * vaut {@link #BLOCK_SIZE} : un seul nextval réserve un bloc de numéros servis ensuite en mémoire.
+ * Un bloc n'est utilisé que pendant la seconde où il a été réservé (le reste est abandonné — les trous
+ * sont acceptés) : deux numéros d'une même seconde viennent donc de valeurs de séquence distinctes.
+ * <p>
+ * Limite : le suffixe est la valeur modulo 1000, et chaque nextval consomme {@link #BLOCK_SIZE} valeurs, bloc
+ * entamé ou non. L'unicité n'est donc garantie que sous 1000 / BLOCK_SIZE = 50 blocs réservés par préfixe et par
+ * seconde sur le cluster (au plus 1000 numéros, moins si plusieurs nœuds entament chacun un bloc), horloges des
+ * nœuds synchronisées. Au-delà, deux numéros peuvent coïncider : DemandeService écarte un numéro déjà enregistré
+ * en passant à un nouveau bloc, et la contrainte unique sur numero_enregistrement rejette le reste.
+ */
+@Component
+public class NumeroEnregistrementAllocator {
+
+    /** Doit rester égal à l'INCREMENT BY des séquences demande_numero_*_seq. */
+    public static final int BLOCK_SIZE = 20;
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /** Source des débuts de bloc (nextval en production, compteur en mémoire dans les tests). */
+    interface BlockSource {
+        long nextBlockStart(String prefix);
+    }
+
+    private final BlockSource blockSource;
+    private final Clock clock;
+    private final int blockSize;
+    private final Map<String, Block> blocks = Map.of("IMP", new Block(), "EXP", new Block());
+
+    @Autowired
+    public NumeroEnregistrementAllocator(JdbcTemplate jdbcTemplate) {
+        this(prefix -> jdbcTemplate.queryForObject(
+                        "SELECT nextval('demande_numero_" + prefix.toLowerCase() + "_seq')", Long.class),
+                Clock.systemDefaultZone(), BLOCK_SIZE);
+    }
+
+    NumeroEnregistrementAllocator(BlockSource blockSource, Clock clock, int blockSize) {
+        this.blockSource = blockSource;
+        this.clock = clock;
+        this.blockSize = blockSize;
+    }
+
+    public String next(Categorie categorie) {
+        String prefix = categorie == Categorie.IMPORTATION ? "IMP" : "EXP";
+        return blocks.get(prefix).next(prefix);
+    }
+
+    /**
+     * Abandonne le bloc courant après une collision : tout le bloc coïncide alors modulo 1000 avec celui d'un
+     * autre nœud, le numéro suivant vient donc d'un nouveau nextval.
+     */
+    public void abandonBlock(Categorie categorie) {
+        blocks.get(categorie == Categorie.IMPORTATION ? "IMP" : "EXP").abandon();
+    }
+
+    /** Bloc courant d'un préfixe : [next, end) réservé pendant la seconde epochSecond. */
+    private final class Block {
+        private long epochSecond = Long.MIN_VALUE;
+        private long next;
+        private long end;
+
+        synchronized String next(String prefix) {
+            Instant now = clock.instant();
+            if (now.getEpochSecond() != epochSecond || next >= end) {
+                long start = blockSource.nextBlockStart(prefix);
+                epochSecond = now.getEpochSecond();
+                next = start;
+                end = start + blockSize;
+            }
+            long value = next++;
+
+            String timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), clock.getZone())
+                    .format(TIMESTAMP);
+            return prefix + timestamp + String.format("%03d", value % 1000);
+        }
+
+        synchronized void abandon() {
+            end = next;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Durées de traitement par quantiles, depuis les esquisses journalières duree_sketch_daily (cf. db/duree-sketch.sql,
+ * tenues à jour par trigger à la fin de chaque affectation) : une période quelconque est la fusion, en base, des
+ * esquisses de ses jours, sans relire les affectations.
+ */
+@Service
+public class ProcessingTimeSketchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessingTimeSketchService.class);
+
+    /** Axe de regroupement ; la colonne est fixe (jamais issue de la requête HTTP). */
+    public enum Axe {
+        AGENT("s.agent_id::text"),
+        BUREAU("s.bureau_douanier_id::text"),
+        CATEGORIE("s.categorie"),
+        JOUR("s.jour::text"),
+        TOUT("''");
+
+        private final String column;
+
+        Axe(String column) {
+            this.column = column;
+        }
+
+        public static Axe parse(String value) {
+            if (value == null || value.isBlank()) return TOUT;
+            try {
+                return Axe.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("groupBy invalide : " + value + " (agent, bureau, categorie, jour, tout)");
+            }
+        }
+    }
+
+    // seaux fusionnés puis totaux exacts, par clé ; les tableaux SQL commencent à 1
+    private static final String MERGE = """
+            WITH s AS (
+                SELECT %1$s AS cle, s.nombre, s.somme_secondes, s.compteurs
+                FROM duree_sketch_daily s
+                WHERE s.jour BETWEEN ? AND ?
+                  AND (CAST(? AS bigint) IS NULL OR s.agent_id = ?)
+                  AND (CAST(? AS bigint) IS NULL OR s.bureau_douanier_id = ?)
+                  AND (CAST(? AS text) IS NULL OR s.categorie = ?)
+            )
+            SELECT s.cle, u.p - 1, sum(u.n), NULL::bigint
+            FROM s, unnest(s.compteurs) WITH ORDINALITY AS u(n, p)
+            WHERE u.n <> 0
+            GROUP BY s.cle, u.p
+            UNION ALL
+            SELECT s.cle, -1, sum(s.nombre), sum(s.somme_secondes)
+            FROM s
+            GROUP BY s.cle
+            """;
+
+    private static final String REBUILD = """
+            WITH d AS (
+                SELECT ta.finished_at::date AS jour, ta.agent_id,
+                       coalesce(ta.duree_bureau_id, 0) AS bureau_douanier_id,
+                       coalesce(ta.duree_categorie, '') AS categorie,
+                       greatest(0, floor(EXTRACT(EPOCH FROM ta.finished_at
+                                                  - coalesce(ta.started_at, ta.created_at)))::bigint) AS secondes
+                FROM task_assignments ta
+                WHERE ta.status = 'DONE' AND ta.finished_at IS NOT NULL AND ta.agent_id IS NOT NULL
+            ),
+            b AS (
+                SELECT jour, agent_id, bureau_douanier_id, categorie, duree_sketch_index(secondes) AS p,
+                       count(*) AS n, sum(secondes) AS somme
+                FROM d
+                GROUP BY 1, 2, 3, 4, 5
+            ),
+            k AS (
+                SELECT jour, agent_id, bureau_douanier_id, categorie, max(p) AS max_p, sum(n) AS n, sum(somme) AS somme
+                FROM b
+                GROUP BY 1, 2, 3, 4
+            )
+            INSERT INTO duree_sketch_daily (jour, agent_id, bureau_douanier_id, categorie, nombre, somme_secondes,
+                                            compteurs)
+            SELECT k.jour, k.agent_id, k.bureau_douanier_id, k.categorie, k.n, k.somme,
+                   ARRAY(SELECT coalesce(b.n, 0)::integer
+                         FROM generate_series(1, k.max_p) g
+                         LEFT JOIN b ON b.jour = k.jour AND b.agent_id = k.agent_id
+                                    AND b.bureau_douanier_id = k.bureau_douanier_id
+                                    AND b.categorie = k.categorie AND b.p = g
+                         ORDER BY g)
+            FROM k
+            """;
+
+    // clés d'esquisse des affectations terminées avant le trigger qui les fige (n'active pas les triggers d'UPDATE OF)
+    private static final String FIGER_CLES = """
+            UPDATE task_assignments ta
+            SET duree_bureau_id = coalesce(dm.bureau_douanier_id, 0), duree_categorie = coalesce(dm.categorie, '')
+            FROM demandes dm
+            WHERE dm.id = ta.demande_id AND ta.status = 'DONE' AND ta.duree_categorie IS NULL
+            """;
+
+    private static final String BACKFILL = "duree_sketch_daily";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProcessingTimeSketchService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Esquisses fusionnées des affectations terminées entre from et to (jours inclus), par clé de l'axe
+     * (identifiant, code catégorie, date ISO ; "" pour TOUT). Filtres optionnels.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, DureeSketch> merged(LocalDate from, LocalDate to, Axe axe,
+                                           Long agentId, Long bureauId, Categorie categorie) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException("Période invalide");
+        }
+        String cat = categorie == null ? null : categorie.name();
+        Map<String, DureeSketch> out = new LinkedHashMap<>();
+        jdbcTemplate.query(MERGE.formatted(axe.column), (RowCallbackHandler) rs -> {
+            DureeSketch sketch = out.computeIfAbsent(rs.getString(1), k -> new DureeSketch());
+            int bucket = rs.getInt(2);
+            if (bucket < 0) sketch.addTotals(rs.getLong(3), rs.getLong(4));
+            else sketch.addBucket(bucket, rs.getLong(3));
+        }, Date.valueOf(from), Date.valueOf(to), agentId, agentId, bureauId, bureauId, cat, cat);
+        return out;
+    }
+
+    /** Nombre, moyenne et p50 / p90 / p99 (minutes) par clé, pour l'API. */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> quantiles(LocalDate from, LocalDate to, Axe axe,
+                                               Long agentId, Long bureauId, Categorie categorie) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map.Entry<String, DureeSketch> e : merged(from, to, axe, agentId, bureauId, categorie).entrySet()) {
+            DureeSketch s = e.getValue();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("cle", e.getKey());
+            m.put("nombre", s.count());
+            m.put("moyenneMin", minutes(s.meanSeconds()));
+            m.put("p50Min", minutes(s.quantile(0.50)));
+            m.put("p90Min", minutes(s.quantile(0.90)));
+            m.put("p99Min", minutes(s.quantile(0.99)));
+            out.add(m);
+        }
+        return out;
+    }
+
+    private static double minutes(double seconds) {
+        return Math.round(seconds / 6.0) / 10.0;
+    }
+
+    /**
+     * Reconstruit toutes les esquisses depuis task_assignments, sur les clés (bureau, catégorie) figées à la fin de
+     * chaque affectation, celles que le trigger retirera. Retourne le nombre de lignes produites.
+     */
+    @Transactional
+    public int rebuild() {
+        jdbcTemplate.update(FIGER_CLES);
+        // bloque les écritures d'affectations le temps du recalcul : aucun delta du trigger ne peut se perdre
+        jdbcTemplate.execute("LOCK TABLE task_assignments IN SHARE MODE");
+        jdbcTemplate.update("DELETE FROM duree_sketch_daily");
+        int rows = jdbcTemplate.update(REBUILD);
+        log.info("Esquisses de durées reconstruites : {} lignes", rows);
+        return rows;
+    }
+
+    /**
+     * Backfill de l'historique, une seule fois (cf. db/backfill.sql) : la table peut déjà contenir les
+     * affectations terminées depuis l'installation du trigger, elle ne dit pas si l'historique est compté.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillOnce() {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT backfill_a_faire(?)", Boolean.class, BACKFILL))) {
+            rebuild();
+            jdbcTemplate.update("INSERT INTO backfill_marker (nom) VALUES (?)", BACKFILL);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.a.portnet_back.Services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Chaque demande va à l'agent au meilleur score de l'index (disponibilité + activité récente - anomalies),
+ * score diminué d'un point de disponibilité à chaque affectation du lot, comme le ferait l'index.
+ * Les agents candidats sont ceux du premier palier d'affinité de la demande qui en a un.
+ */
+@Component
+public class ScoreDispatchPolicy implements DispatchPolicy {
+
+    public static final String NAME = "score";
+
+    private static final long MAX_AVAILABILITY = 10;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Assignment> plan(List<PendingDemande> demandes, List<AgentLoad> agents, Affinity affinity) {
+        List<Assignment> out = new ArrayList<>(demandes.size());
+        if (agents.isEmpty()) return out;
+
+        PriorityQueue<Slot> heap = new PriorityQueue<>(agents.size(),
+                Comparator.comparingDouble((Slot s) -> s.score).reversed().thenComparingLong(s -> s.agentId));
+        for (AgentLoad a : agents) heap.add(new Slot(a.agentId(), a.activeTasks(), a.score()));
+
+        for (PendingDemande d : demandes) {
+            Slot best = affinity.poll(heap, d, s -> s.agentId);
+            if (best == null) continue;
+            out.add(new Assignment(d.id(), best.agentId));
+            // la disponibilité est plafonnée à 10 tâches : au-delà le score ne baisse plus
+            if (best.activeTasks < MAX_AVAILABILITY) best.score -= 1.0;
+            best.activeTasks++;
+            heap.add(best);
+        }
+        return out;
+    }
+
+    private static final class Slot {
+        final long agentId;
+        long activeTasks;
+        double score;
+
+        Slot(long agentId, long activeTasks, double score) {
+            this.agentId = agentId;
+            this.activeTasks = activeTasks;
+            this.score = score;
+        }
+    }
+}
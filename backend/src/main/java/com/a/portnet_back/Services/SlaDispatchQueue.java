@@ -0,0 +1,285 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Demande;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+
+/**
+ * File de dispatch ordonnée par priorité SLA (cf. SlaPolicy), en mémoire et persistée dans dispatch_queue.
+ * La table fait foi : les réclamations y reprennent l'ordre (cf. TaskClaimQueue), la mémoire ne sert qu'à
+ * présélectionner des candidates sans parcourir la table.
+ * <ul>
+ *   <li>Entrée à la création, priorité recalculée (puis figée) à la soumission, une fois le montant connu.</li>
+ *   <li>Sortie à l'affectation (les réclamations suppriment la ligne dans la même instruction), au changement
+ *       de statut et à la suppression (ON DELETE CASCADE).</li>
+ *   <li>Mémoire : ensemble trié (priorité, id), tête / retrait en O(log n). Les mises à jour mémoire sont
+ *       appliquées après commit ; la reconstruction (démarrage + périodique) rattrape le reste.</li>
+ *   <li>Reconstruction : les entrées et sorties appliquées pendant la lecture de la table sont rejouées sur
+ *       l'état rechargé, qui ne ressuscite donc pas une demande réclamée entre-temps.</li>
+ * </ul>
+ */
+@Component
+public class SlaDispatchQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(SlaDispatchQueue.class);
+
+    private static final String UPSERT = """
+            INSERT INTO dispatch_queue (demande_id, echeance, priorite) VALUES (?, ?, ?)
+            ON CONFLICT (demande_id) DO UPDATE SET echeance = EXCLUDED.echeance, priorite = EXCLUDED.priorite
+            """;
+
+    // demandes en attente non affectées absentes de la file (créées hors application, file vidée...)
+    private static final String SELECT_MISSING = """
+            SELECT d.id, d.date_creation, d.categorie, d.bureau_douanier_id, d.montant_total
+            FROM demandes d
+            WHERE d.statut = 'EN_ATTENTE'
+              AND NOT EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = d.id)
+              AND NOT EXISTS (SELECT 1 FROM dispatch_queue q WHERE q.demande_id = d.id)
+            """;
+
+    private static final String DELETE_STALE = """
+            DELETE FROM dispatch_queue q
+            USING demandes d
+            WHERE d.id = q.demande_id
+              AND (d.statut <> 'EN_ATTENTE'
+                   OR EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = q.demande_id))
+            """;
+
+    private static final String SELECT_QUEUE = """
+            SELECT q.demande_id, q.priorite, d.bureau_douanier_id, d.categorie
+            FROM dispatch_queue q
+            JOIN demandes d ON d.id = q.demande_id
+            """;
+
+    // parcours maximal d'un peek filtré (spécialité d'un agent) : au-delà, la file commune prend le relais
+    private static final int MAX_FILTERED_SCAN = 10_000;
+
+    /** Bureau et catégorie portés pour le filtrage par spécialité ; l'ordre ne dépend que de (priorité, id). */
+    private record Entry(long priorite, long demandeId, Long bureauId, Categorie categorie) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry o) {
+            int c = Long.compare(priorite, o.priorite);
+            return c != 0 ? c : Long.compare(demandeId, o.demandeId);
+        }
+    }
+
+    private final Object lock = new Object();
+    private final TreeSet<Entry> ordered = new TreeSet<>();
+    private final Map<Long, Entry> byId = new HashMap<>();
+    // mouvements mémoire depuis le début de la reconstruction en cours (null : sortie), sous lock ; null hors reconstruction
+    private Map<Long, Entry> sinceLoad;
+    private final ReentrantLock rebuilding = new ReentrantLock();
+
+    private final SlaPolicy slaPolicy;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SlaDispatchQueue(SlaPolicy slaPolicy, JdbcTemplate jdbcTemplate) {
+        this.slaPolicy = slaPolicy;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** File purement mémoire (benchmarks, simulation). */
+    SlaDispatchQueue(SlaPolicy slaPolicy) {
+        this(slaPolicy, null);
+    }
+
+    /* =======================
+       Écritures (transaction appelante)
+       ======================= */
+
+    /** Entre (ou repositionne) une demande en attente ; visible en mémoire après commit. */
+    public void enqueue(Demande d) {
+        if (d.getId() == null || d.getDateCreation() == null) return;
+        Long bureauId = d.getBureauDouanier() != null ? d.getBureauDouanier().getId() : null;
+        double montant = d.getMontantTotal() != null ? d.getMontantTotal() : 0.0;
+        LocalDateTime echeance = slaPolicy.echeance(d.getDateCreation(), d.getCategorie(), bureauId, montant);
+        LocalDateTime priorite = slaPolicy.priorite(d.getDateCreation(), echeance);
+        jdbcTemplate.update(UPSERT, d.getId(), Timestamp.valueOf(echeance), Timestamp.valueOf(priorite));
+        afterCommit(() -> offer(d.getId(), priorite, bureauId, d.getCategorie()));
+    }
+
+    /** Sort une demande de la file (statut changé, suppression). */
+    public void remove(Long demandeId) {
+        jdbcTemplate.update("DELETE FROM dispatch_queue WHERE demande_id = ?", demandeId);
+        removeAfterCommit(List.of(demandeId));
+    }
+
+    /** Retrait mémoire seul, pour des lignes déjà supprimées en base par l'appelant (réclamations). */
+    public void removeAfterCommit(Collection<Long> demandeIds) {
+        if (demandeIds.isEmpty()) return;
+        List<Long> ids = List.copyOf(demandeIds);
+        afterCommit(() -> {
+            synchronized (lock) {
+                for (Long id : ids) forget(id);
+            }
+        });
+    }
+
+    /* =======================
+       Lecture / défilement mémoire
+       ======================= */
+
+    /** Les n demandes les plus prioritaires, sans les retirer (candidates d'une réclamation). */
+    public List<Long> peek(int n) {
+        synchronized (lock) {
+            List<Long> out = new ArrayList<>(Math.min(n, ordered.size()));
+            Iterator<Entry> it = ordered.iterator();
+            while (out.size() < n && it.hasNext()) out.add(it.next().demandeId());
+            return out;
+        }
+    }
+
+    /** Les n plus prioritaires parmi celles acceptées par le filtre (bureauId, catégorie), parcours borné. */
+    public List<Long> peek(int n, BiPredicate<Long, Categorie> filtre) {
+        synchronized (lock) {
+            List<Long> out = new ArrayList<>(Math.min(n, 64));
+            Iterator<Entry> it = ordered.iterator();
+            for (int scanned = 0; out.size() < n && scanned < MAX_FILTERED_SCAN && it.hasNext(); scanned++) {
+                Entry e = it.next();
+                if (filtre.test(e.bureauId(), e.categorie())) out.add(e.demandeId());
+            }
+            return out;
+        }
+    }
+
+    public Optional<Long> poll() {
+        synchronized (lock) {
+            if (ordered.isEmpty()) return Optional.empty();
+            Long head = ordered.first().demandeId();
+            forget(head);
+            return Optional.of(head);
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return ordered.size();
+        }
+    }
+
+    void offer(Long demandeId, LocalDateTime priorite) {
+        offer(demandeId, priorite, null, null);
+    }
+
+    void offer(Long demandeId, LocalDateTime priorite, Long bureauId, Categorie categorie) {
+        Entry e = new Entry(priorite.toInstant(ZoneOffset.UTC).toEpochMilli(), demandeId, bureauId, categorie);
+        synchronized (lock) {
+            drop(demandeId);
+            ordered.add(e);
+            byId.put(demandeId, e);
+            if (sinceLoad != null) sinceLoad.put(demandeId, e);
+        }
+    }
+
+    /* =======================
+       Reconstruction
+       ======================= */
+
+    /**
+     * Complète la table avec les demandes en attente qui n'y sont pas, en retire celles qui ne le sont plus,
+     * puis recharge la mémoire depuis la table (les échéances déjà persistées sont conservées telles quelles).
+     * Les mouvements appliqués après commit pendant la lecture sont rejoués sur l'état rechargé : ils viennent
+     * de transactions validées après (ou juste avant) la lecture de la table. Une seule reconstruction à la fois.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${dispatch.sla.resync-ms:300000}", initialDelayString = "${dispatch.sla.resync-ms:300000}")
+    @Transactional
+    public void rebuild() {
+        if (!rebuilding.tryLock()) return;
+        try {
+            synchronized (lock) {
+                sinceLoad = new HashMap<>();
+            }
+            load();
+        } finally {
+            synchronized (lock) {
+                sinceLoad = null;
+            }
+            rebuilding.unlock();
+        }
+    }
+
+    private void load() {
+        List<Object[]> missing = jdbcTemplate.query(SELECT_MISSING, (rs, i) -> {
+            LocalDateTime created = rs.getTimestamp(2).toLocalDateTime();
+            String categorie = rs.getString(3);
+            Long bureauId = rs.getObject(4, Long.class);
+            LocalDateTime echeance = slaPolicy.echeance(created,
+                    categorie == null ? null : Categorie.valueOf(categorie), bureauId, rs.getDouble(5));
+            return new Object[]{rs.getLong(1), Timestamp.valueOf(echeance),
+                    Timestamp.valueOf(slaPolicy.priorite(created, echeance))};
+        });
+        if (!missing.isEmpty()) jdbcTemplate.batchUpdate(UPSERT, missing);
+        int stale = jdbcTemplate.update(DELETE_STALE);
+
+        Map<Long, Entry> fresh = new HashMap<>();
+        jdbcTemplate.query(SELECT_QUEUE, (RowCallbackHandler) rs -> {
+            long id = rs.getLong(1);
+            String categorie = rs.getString(4);
+            fresh.put(id, new Entry(rs.getTimestamp(2).toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli(), id,
+                    rs.getObject(3, Long.class), categorie == null ? null : Categorie.valueOf(categorie)));
+        });
+
+        synchronized (lock) {
+            sinceLoad.forEach((id, e) -> {
+                if (e == null) fresh.remove(id);
+                else fresh.put(id, e);
+            });
+            ordered.clear();
+            byId.clear();
+            ordered.addAll(fresh.values());
+            byId.putAll(fresh);
+        }
+        log.debug("File SLA reconstruite : {} demandes ({} ajoutées, {} retirées)", fresh.size(), missing.size(), stale);
+    }
+
+    /** Sortie notée pour la reconstruction en cours, sous lock. */
+    private void forget(Long demandeId) {
+        drop(demandeId);
+        if (sinceLoad != null) sinceLoad.put(demandeId, null);
+    }
+
+    private void drop(Long demandeId) {
+        Entry old = byId.remove(demandeId);
+        if (old != null) ordered.remove(old);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Délai de traitement (SLA) d'une demande et clé de priorité de dispatch, selon dispatch.sla.* :
+ * <pre>
+ *   sla      = base × facteur(catégorie) × facteur(bureau) × (montant ≥ seuil ? facteur(montant) : 1)
+ *   échéance = date de création + sla
+ *   priorité = création + (1 - vieillissement) × sla      (plus tôt = servie d'abord)
+ * </pre>
+ * vieillissement = 0 : échéance la plus proche d'abord ; 1 : plus ancienne d'abord (ancien comportement).
+ */
+@Component
+public class SlaPolicy {
+
+    private final double baseHours;
+    private final Map<Categorie, Double> categorieFactors = new EnumMap<>(Categorie.class);
+    private final Map<Long, Double> bureauFactors;
+    private final double montantSeuil;
+    private final double montantFactor;
+    private final double aging;
+
+    public SlaPolicy(@Value("${dispatch.sla.base-hours:72}") double baseHours,
+                     @Value("${dispatch.sla.facteur.importation:1.0}") double importation,
+                     @Value("${dispatch.sla.facteur.exportation:1.0}") double exportation,
+                     @Value("${dispatch.sla.facteur.bureaux:}") String bureaux,
+                     @Value("${dispatch.sla.montant-seuil:0}") double montantSeuil,
+                     @Value("${dispatch.sla.facteur.montant:1.0}") double montantFactor,
+                     @Value("${dispatch.sla.vieillissement:0.0}") double aging) {
+        if (baseHours <= 0) throw new IllegalArgumentException("dispatch.sla.base-hours doit être > 0");
+        if (aging < 0 || aging > 1) throw new IllegalArgumentException("dispatch.sla.vieillissement doit être dans [0, 1]");
+        this.baseHours = baseHours;
+        this.categorieFactors.put(Categorie.IMPORTATION, importation);
+        this.categorieFactors.put(Categorie.EXPORTATION, exportation);
+        this.bureauFactors = parseBureaux(bureaux);
+        this.montantSeuil = montantSeuil;
+        this.montantFactor = montantFactor;
+        this.aging = aging;
+    }
+
+    public double slaHours(Categorie categorie, Long bureauId, double montant) {
+        double hours = baseHours * categorieFactors.getOrDefault(categorie, 1.0);
+        if (bureauId != null) hours *= bureauFactors.getOrDefault(bureauId, 1.0);
+        if (montantSeuil > 0 && montant >= montantSeuil) hours *= montantFactor;
+        return hours;
+    }
+
+    public LocalDateTime echeance(LocalDateTime dateCreation, Categorie categorie, Long bureauId, double montant) {
+        return dateCreation.plus(hours(slaHours(categorie, bureauId, montant)));
+    }
+
+    /** Clé d'ordre du dispatch, à partir d'une échéance déjà calculée (ou relue en base). */
+    public LocalDateTime priorite(LocalDateTime dateCreation, LocalDateTime echeance) {
+        Duration sla = Duration.between(dateCreation, echeance);
+        return dateCreation.plus(Duration.ofMillis(Math.round(sla.toMillis() * (1.0 - aging))));
+    }
+
+    private static Duration hours(double hours) {
+        return Duration.ofMillis(Math.round(hours * 3_600_000));
+    }
+
+    /** "12:0.5, 15:0.75" → {12=0.5, 15=0.75} */
+    private static Map<Long, Double> parseBureaux(String spec) {
+        Map<Long, Double> out = new HashMap<>();
+        if (spec == null || spec.isBlank()) return out;
+        for (String entry : spec.split(",")) {
+            String[] kv = entry.trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("dispatch.sla.facteur.bureaux : entrée invalide « " + entry.trim() + " » (attendu id:facteur)");
+            }
+            out.put(Long.valueOf(kv[0].trim()), Double.valueOf(kv[1].trim()));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,216 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * File de réclamation des demandes en attente non affectées, directement en base.
+ * <p>
+ * Une seule instruction : sélection des plus prioritaires avec FOR UPDATE SKIP LOCKED (les lignes déjà prises
+ * par une autre transaction sont sautées, pas attendues), insertion des affectations et sortie de dispatch_queue.
+ * Le ON CONFLICT couvre le seul cas restant : une affectation validée par une autre transaction après le début
+ * de la nôtre (invisible pour le NOT EXISTS) — la ligne est alors simplement ignorée au lieu de violer l'unicité.
+ * <p>
+ * Ordre : toujours celui de dispatch_queue en base (priorité, puis date de création pour les demandes absentes
+ * de la table). La file SLA en mémoire ne fait que présélectionner les candidates passées en tableau, d'abord
+ * restreintes à la spécialité de l'agent (cf. AgentAffinityIndex) : une entrée périmée ou mal placée en mémoire
+ * peut faire manquer une candidate, jamais inverser l'ordre. Si aucune ne reste (file pas encore chargée,
+ * entrées périmées), la réclamation parcourt la table entière.
+ * <p>
+ * Éligibilité : chaque chemin (mémoire comme table) ne retient que les demandes que l'agent peut prendre
+ * selon la règle du dispatch poussé (cf. AgentAffinityIndex.eligibilite), appliquée en mémoire et en SQL.
+ */
+@Component
+public class TaskClaimQueue {
+
+    // suite commune des réclamations : insertion des affectations + sortie de la file SLA
+    private static final String INSERT_AND_DEQUEUE = """
+            inserted AS (
+                INSERT INTO task_assignments (agent_id, demande_id, status, created_at)
+                SELECT :agentId, c.id, 'ASSIGNED', now() FROM candidates c
+                ON CONFLICT (demande_id) DO NOTHING
+                RETURNING id, demande_id
+            ),
+            dequeued AS (
+                DELETE FROM dispatch_queue q USING inserted i WHERE q.demande_id = i.demande_id
+            )
+            SELECT id, demande_id FROM inserted
+            """;
+
+    // couples (bureau, catégorie) autorisés pour l'agent ; :libre = aucune restriction
+    private static final String ELIGIBLE = """
+                  AND (CAST(:libre AS boolean)
+                       OR (CASE WHEN d.bureau_douanier_id = ANY (CAST(:bureauxConnus AS bigint[]))
+                                THEN d.bureau_douanier_id ELSE -1 END, COALESCE(d.categorie, ''))
+                          IN (SELECT e.b, e.c FROM unnest(CAST(:bureaux AS bigint[]), CAST(:categories AS text[])) AS e(b, c)))
+            """;
+
+    private static final String CLAIM_RANKED = """
+            WITH candidates AS (
+                SELECT d.id
+                FROM demandes d
+                LEFT JOIN dispatch_queue q ON q.demande_id = d.id
+                WHERE d.id = ANY (CAST(:ids AS bigint[]))
+                  AND d.statut = 'EN_ATTENTE'
+                  AND NOT EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = d.id)
+            """ + ELIGIBLE + """
+                ORDER BY q.priorite NULLS LAST, d.date_creation, d.id
+                LIMIT :limit
+                FOR UPDATE OF d SKIP LOCKED
+            ),
+            """ + INSERT_AND_DEQUEUE;
+
+    private static final String CLAIM_NEXT = """
+            WITH candidates AS (
+                SELECT d.id
+                FROM demandes d
+                LEFT JOIN dispatch_queue q ON q.demande_id = d.id
+                WHERE d.statut = 'EN_ATTENTE'
+                  AND NOT EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = d.id)
+            """ + ELIGIBLE + """
+                ORDER BY q.priorite NULLS LAST, d.date_creation, d.id
+                LIMIT :limit
+                FOR UPDATE OF d SKIP LOCKED
+            ),
+            """ + INSERT_AND_DEQUEUE;
+
+    private static final String HAS_ELIGIBLE_PENDING = """
+            SELECT 1 FROM demandes d
+            WHERE d.statut = 'EN_ATTENTE'
+              AND NOT EXISTS (SELECT 1 FROM task_assignments ta WHERE ta.demande_id = d.id)
+            """ + ELIGIBLE + """
+            LIMIT 1
+            """;
+
+    private static final String CLAIM_ONE = """
+            WITH candidates AS (
+                SELECT d.id FROM demandes d WHERE d.id = :demandeId AND d.statut = 'EN_ATTENTE'
+            ),
+            """ + INSERT_AND_DEQUEUE;
+
+    // une course perdue (ON CONFLICT) rend 0 ligne alors qu'il restait du travail : on retente
+    private static final int MAX_ATTEMPTS = 3;
+    // candidates lues en mémoire en plus de limit, pour absorber celles prises ailleurs entre-temps
+    private static final int CANDIDATE_SLACK = 32;
+
+    private final SlaDispatchQueue slaQueue;
+    private final AgentAffinityIndex affinityIndex;
+    private final DispatchJournal journal;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public TaskClaimQueue(SlaDispatchQueue slaQueue, AgentAffinityIndex affinityIndex, DispatchJournal journal) {
+        this.slaQueue = slaQueue;
+        this.affinityIndex = affinityIndex;
+        this.journal = journal;
+    }
+
+    /**
+     * Affecte à l'agent jusqu'à {@code limit} demandes en attente, par priorité SLA, de sa spécialité d'abord.
+     * Renvoie les ids des affectations créées (éventuellement moins que limit, voire aucune).
+     * Seules les demandes que le dispatch poussé pourrait lui confier sont prises (cf. repli configuré).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Long> claimNext(Long agentId, int limit) {
+        int candidates = limit * 2 + CANDIDATE_SLACK;
+        List<Claimed> claimed = List.of();
+        AgentAffinityIndex.Eligibilite eligibilite = affinityIndex.eligibilite(agentId);
+        BiPredicate<Long, Categorie> specialite = affinityIndex.specialite(agentId);
+        if (specialite != null) {
+            claimed = claimRanked(agentId, slaQueue.peek(candidates, specialite), limit, eligibilite);
+        }
+        if (claimed.isEmpty()) {
+            claimed = claimRanked(agentId, eligibilite == null
+                    ? slaQueue.peek(candidates)
+                    : slaQueue.peek(candidates, eligibilite), limit, eligibilite);
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && claimed.isEmpty(); attempt++) {
+            claimed = run(eligible(entityManager.createNativeQuery(CLAIM_NEXT), eligibilite)
+                    .setParameter("agentId", agentId)
+                    .setParameter("limit", limit)
+                    .getResultList());
+            if (claimed.isEmpty() && !hasEligiblePending(eligibilite)) break;
+        }
+        return dequeued(agentId, DispatchJournal.Evenement.PRISE, claimed);
+    }
+
+    public Optional<Long> claimNext(Long agentId) {
+        return claimNext(agentId, 1).stream().findFirst();
+    }
+
+    /** Affecte une demande précise si elle est encore en attente et libre ; vide sinon. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Optional<Long> claim(Long agentId, Long demandeId) {
+        return dequeued(agentId, DispatchJournal.Evenement.AFFECTATION, run(entityManager.createNativeQuery(CLAIM_ONE)
+                .setParameter("agentId", agentId)
+                .setParameter("demandeId", demandeId)
+                .getResultList())).stream().findFirst();
+    }
+
+    /** Réclame parmi les candidates présélectionnées en mémoire, dans l'ordre de la table. */
+    private List<Claimed> claimRanked(Long agentId, List<Long> candidates, int limit,
+                                      AgentAffinityIndex.Eligibilite eligibilite) {
+        if (candidates.isEmpty()) return List.of();
+        return run(eligible(entityManager.createNativeQuery(CLAIM_RANKED), eligibilite)
+                .setParameter("ids", toArrayLiteral(candidates))
+                .setParameter("agentId", agentId)
+                .setParameter("limit", limit)
+                .getResultList());
+    }
+
+    private boolean hasEligiblePending(AgentAffinityIndex.Eligibilite eligibilite) {
+        return !eligible(entityManager.createNativeQuery(HAS_ELIGIBLE_PENDING), eligibilite).getResultList().isEmpty();
+    }
+
+    /** Paramètres du filtre ELIGIBLE ; sans restriction, les tableaux sont vides et :libre vaut true. */
+    private static Query eligible(Query query, AgentAffinityIndex.Eligibilite eligibilite) {
+        List<AgentAffinityIndex.Eligibilite.Couple> couples = eligibilite == null
+                ? List.of()
+                : List.copyOf(eligibilite.couples());
+        return query
+                .setParameter("libre", eligibilite == null)
+                .setParameter("bureauxConnus", toArrayLiteral(eligibilite == null
+                        ? List.of()
+                        : List.copyOf(eligibilite.bureauxConnus())))
+                .setParameter("bureaux", toArrayLiteral(couples.stream()
+                        .map(AgentAffinityIndex.Eligibilite.Couple::bureauId).toList()))
+                .setParameter("categories", couples.stream()
+                        .map(c -> '"' + c.categorie() + '"')
+                        .collect(Collectors.joining(",", "{", "}")));
+    }
+
+    private List<Long> dequeued(Long agentId, DispatchJournal.Evenement evenement, List<Claimed> claimed) {
+        slaQueue.removeAfterCommit(claimed.stream().map(Claimed::demandeId).toList());
+        journal.record(evenement, null, claimed.stream()
+                .map(c -> new DispatchJournal.Mouvement(c.demandeId(), null, agentId)).toList());
+        return claimed.stream().map(Claimed::assignmentId).toList();
+    }
+
+    private record Claimed(Long assignmentId, Long demandeId) {}
+
+    private static List<Claimed> run(List<?> rows) {
+        List<Claimed> out = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] cols = (Object[]) row;
+            out.add(new Claimed(((Number) cols[0]).longValue(), ((Number) cols[1]).longValue()));
+        }
+        return out;
+    }
+
+    /** Tableau PostgreSQL en texte ("{1,2,3}"), converti par CAST(... AS bigint[]). */
+    static String toArrayLiteral(List<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+    }
+}
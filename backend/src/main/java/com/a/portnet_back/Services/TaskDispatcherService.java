@@ -1,61 +1,52 @@
 package com.a.portnet_back.Services;
 
+import com.a.portnet_back.Enum.Categorie;
 import com.a.portnet_back.Enum.StatusDemande;
 import com.a.portnet_back.Models.Agent;
 import com.a.portnet_back.Models.Demande;
 import com.a.portnet_back.Models.TaskAssignment;
-import com.a.portnet_back.Repositories.AgentActivityLogRepository;
 import com.a.portnet_back.Repositories.AgentRepository;
-import com.a.portnet_back.Repositories.AnomalyDetectionResultRepository;
-import com.a.portnet_back.Repositories.DemandeRepository;
 import com.a.portnet_back.Repositories.TaskAssignmentRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongPredicate;
 
 @Service
 public class TaskDispatcherService {
 
-    private final DemandeRepository demandeRepo;
     private final AgentRepository agentRepo;
     private final TaskAssignmentRepository assignmentRepo;
-    private final AgentActivityLogRepository logRepo;
-    private final AnomalyDetectionResultRepository anomalyRepo;
+    private final AgentScoringIndex scoringIndex;
+    private final TaskClaimQueue claimQueue;
+    private final AgentAffinityIndex affinityIndex;
 
-    public TaskDispatcherService(DemandeRepository d,
-                                 AgentRepository a,
+    public TaskDispatcherService(AgentRepository a,
                                  TaskAssignmentRepository ta,
-                                 AgentActivityLogRepository logs,
-                                 AnomalyDetectionResultRepository anomalies) {
-        this.demandeRepo = d;
+                                 AgentScoringIndex scoringIndex,
+                                 TaskClaimQueue claimQueue,
+                                 AgentAffinityIndex affinityIndex) {
         this.agentRepo = a;
         this.assignmentRepo = ta;
-        this.logRepo = logs;
-        this.anomalyRepo = anomalies;
+        this.scoringIndex = scoringIndex;
+        this.claimQueue = claimQueue;
+        this.affinityIndex = affinityIndex;
     }
 
     /** Appelé automatiquement à la soumission ou à la demande (“donne-moi la prochaine tâche”). */
     @Transactional
     public Optional<TaskAssignment> assignNextPendingToBestAgent() {
-        List<Demande> candidates = demandeRepo.findOldestPendingDemandes();
-        for (Demande d : candidates) {
-            if (assignmentRepo.findByDemandeId(d.getId()).isEmpty()) {
-                Optional<Agent> best = pickBestAgent();
-                if (best.isPresent()) {
-                    TaskAssignment ta = new TaskAssignment();
-                    ta.setAgent(best.get());
-                    ta.setDemande(d);
-                    ta.setStatus(TaskAssignment.Status.ASSIGNED);
-                    TaskAssignment saved = assignmentRepo.save(ta);
-                    // ✅ recharger en EAGER
-                    return assignmentRepo.findByIdEager(saved.getId());
-                }
-            }
-        }
-        return Optional.empty();
+        Optional<Agent> best = pickBestAgent();
+        if (best.isEmpty()) return Optional.empty();
+
+        Long agentId = best.get().getId();
+        return claimQueue.claimNext(agentId).flatMap(id -> {
+            scoringIndex.taskAssigned(agentId);
+            // ✅ recharger en EAGER
+            return assignmentRepo.findByIdEager(id);
+        });
     }
 
     /** Pour un agent connecté : renvoie une tâche déjà à lui, sinon lui assigne la plus vieille. */
@@ -69,91 +60,48 @@ public class TaskDispatcherService {
                 );
         if (!mine.isEmpty()) return Optional.of(mine.get(0));
 
-        if (hasRecentCriticalAnomaly(agentId)) return Optional.empty();
+        if (scoringIndex.hasRecentCriticalAnomaly(agentId)) return Optional.empty();
 
-        List<Demande> pending = demandeRepo.findOldestPendingDemandes();
-        for (Demande d : pending) {
-            if (assignmentRepo.findByDemandeId(d.getId()).isEmpty()) {
-                TaskAssignment ta = new TaskAssignment();
-                Agent agent = agentRepo.findById(agentId).orElseThrow();
-                ta.setAgent(agent);
-                ta.setDemande(d);
-                ta.setStatus(TaskAssignment.Status.ASSIGNED);
-
-                TaskAssignment saved = assignmentRepo.save(ta);
-                // ✅ recharger en EAGER avant de retourner
-                return assignmentRepo.findByIdEager(saved.getId());
-            }
-        }
-        return Optional.empty();
+        // réclamation atomique : plusieurs agents en parallèle ne se disputent jamais la même demande
+        return claimQueue.claimNext(agentId).flatMap(id -> {
+            scoringIndex.taskAssigned(agentId);
+            // ✅ recharger en EAGER avant de retourner
+            return assignmentRepo.findByIdEager(id);
+        });
     }
 
     /** Hook pratique si tu veux auto-dispatcher à la soumission. */
     @Transactional
     public void tryAutoAssignOnSubmit(Demande d) {
-        if (d.getStatut() == StatusDemande.EN_ATTENTE
-                && assignmentRepo.findByDemandeId(d.getId()).isEmpty()) {
-            pickBestAgent().ifPresent(agent -> {
-                TaskAssignment ta = new TaskAssignment();
-                ta.setAgent(agent);
-                ta.setDemande(d);
-                ta.setStatus(TaskAssignment.Status.ASSIGNED);
-                assignmentRepo.save(ta);
-            });
-        }
+        if (d.getStatut() != StatusDemande.EN_ATTENTE) return;
+        Long bureauId = d.getBureauDouanier() != null ? d.getBureauDouanier().getId() : null;
+        pickBestAgent(bureauId, d.getCategorie()).ifPresent(agent -> claimQueue.claim(agent.getId(), d.getId())
+                .ifPresent(id -> scoringIndex.taskAssigned(agent.getId())));
     }
 
     /* =======================
        Méthodes internes (pas @Transactional)
        ======================= */
 
-    /** Renvoie l’agent « le plus sûr et le plus disponible ». */
+    /**
+     * Renvoie l’agent « le plus sûr et le plus disponible » : tête de l'index de scoring,
+     * sans requête (référence JPA non initialisée, suffisante pour l'affectation).
+     */
     private Optional<Agent> pickBestAgent() {
-        List<Agent> active = agentRepo.findByIsActivatedTrue();
-        if (active.isEmpty()) return Optional.empty();
-
-        Agent best = null;
-        double bestScore = Double.NEGATIVE_INFINITY;
-
-        for (Agent a : active) {
-            double score = computeScore(a);
-            if (score > bestScore) {
-                bestScore = score;
-                best = a;
-            }
-        }
-        return Optional.ofNullable(best);
+        return scoringIndex.bestAgentId().map(agentRepo::getReferenceById);
     }
 
-    /** Calcule un score de priorité pour l’agent. */
-    private double computeScore(Agent a) {
-        long activeTasks = assignmentRepo.countActiveForAgent(a.getId());
-        double availability = 10.0 - Math.min(10, activeTasks);
-
-        LocalDateTime since = LocalDateTime.now().minusMinutes(60);
-        boolean activeRecently = logRepo.existsByAgentIdAndTimestampAfter(a.getId(), since);
-        double recencyBonus = activeRecently ? 2.0 : 0.0;
-
-        double penalty = 0.0;
-        var recent = anomalyRepo.findByAgentIdAndDetectedAtAfter(
-                a.getId(), LocalDateTime.now().minusHours(3)
-        );
-        for (var r : recent) {
-            String sev = String.valueOf(r.getSeverity()).toUpperCase();
-            penalty += switch (sev) {
-                case "CRITICAL" -> 3.0;
-                case "HIGH"     -> 2.0;
-                case "MEDIUM"   -> 1.0;
-                default         -> 0.5;
-            };
+    /**
+     * Meilleur agent pour une demande donnée : spécialistes libres de son bureau / sa catégorie d'abord,
+     * puis selon le repli configuré (cf. AgentAffinityIndex). Tests de bits en mémoire, sans requête.
+     */
+    private Optional<Agent> pickBestAgent(Long bureauId, Categorie categorie) {
+        List<LongPredicate> tiers = affinityIndex.tiers(bureauId, categorie);
+        for (LongPredicate tier : tiers) {
+            Optional<Long> agentId = scoringIndex.bestAgentId(tier);
+            if (agentId.isPresent()) return agentId.map(agentRepo::getReferenceById);
         }
-        return availability + recencyBonus - penalty;
-    }
-
-    private boolean hasRecentCriticalAnomaly(Long agentId) {
-        return anomalyRepo
-                .findByAgentIdAndDetectedAtAfter(agentId, LocalDateTime.now().minusHours(3))
-                .stream()
-                .anyMatch(a -> "CRITICAL".equalsIgnoreCase(a.getSeverity()));
+        if (tiers.isEmpty() || affinityIndex.fallback() == AgentAffinityIndex.Fallback.TOUS) return pickBestAgent();
+        return Optional.empty();
     }
 }
@@ -0,0 +1,263 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.LongPredicate;
+
+/**
+ * Rééquilibrage périodique des affectations pas encore commencées (ASSIGNED) et attribuées à leur agent depuis
+ * plus de grace-ms (assigned_at, remis à l'heure à chaque changement d'agent, cf. db/task-assigned-at.sql) :
+ * aucune transition « commencée » n'étant posée par l'application, ce délai protège le dossier que l'agent
+ * vient de recevoir, par création comme par réaffectation, et a peut-être déjà ouvert.
+ * <ul>
+ *   <li>donneurs : agents au-delà de overload-threshold tâches actives, ou hors ligne (aucune activité dans la
+ *       fenêtre de récence) / en anomalie critique récente — ceux-là cèdent tout ce qui n'est pas commencé ;</li>
+ *   <li>receveurs : agents actifs récemment, sans anomalie critique, sous spare-threshold tâches ;</li>
+ *   <li>les plus anciennes affectations partent d'abord, vers le receveur le moins chargé du meilleur palier
+ *       d'affinité (cf. AgentAffinityIndex) : jamais vers le spécialiste d'un autre bureau.</li>
+ * </ul>
+ * Plan calculé en mémoire (charges de l'index de scoring, une lecture des candidates), appliqué en un seul
+ * UPDATE ... FROM unnest(...) ; une affectation commencée ou déplacée entre-temps est simplement ignorée.
+ * Seul le leader du dispatch (cf. DispatchLeaderElection) rééquilibre.
+ */
+@Component
+public class WorkStealingRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkStealingRebalancer.class);
+
+    private static final String SELECT_CANDIDATES = """
+            SELECT ta.id, ta.agent_id, d.bureau_douanier_id, d.categorie
+            FROM task_assignments ta
+            JOIN demandes d ON d.id = ta.demande_id
+            WHERE ta.status = 'ASSIGNED'
+              AND ta.agent_id = ANY (?)
+              AND coalesce(ta.assigned_at, ta.created_at) < localtimestamp - make_interval(secs => ?)
+            ORDER BY ta.created_at, ta.id
+            """;
+
+    private static final String MOVE = """
+            UPDATE task_assignments ta
+            SET agent_id = m.to_agent
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[]) AS m(id, from_agent, to_agent)
+            WHERE ta.id = m.id
+              AND ta.agent_id = m.from_agent
+              AND ta.status = 'ASSIGNED'
+              AND coalesce(ta.assigned_at, ta.created_at) < localtimestamp - make_interval(secs => ?)
+            RETURNING ta.id, m.from_agent, m.to_agent, ta.demande_id
+            """;
+
+    /** Affectation déplaçable. */
+    record Candidate(long assignmentId, long agentId, Long bureauId, Categorie categorie) {}
+
+    public record Move(long assignmentId, long fromAgentId, long toAgentId) {}
+
+    public record Report(int donors, int receivers, int candidates, int planned, int moved, long durationMs,
+                         List<Move> moves) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AgentScoringIndex scoringIndex;
+    private final AgentAffinityIndex affinityIndex;
+    private final DispatchLeaderElection leader;
+    private final DispatchJournal journal;
+    private final boolean enabled;
+    private final long overloadThreshold;
+    private final long spareThreshold;
+    private final boolean includeOffline;
+    private final int maxMoves;
+    private final double graceSeconds;
+
+    public WorkStealingRebalancer(JdbcTemplate jdbcTemplate,
+                                  AgentScoringIndex scoringIndex,
+                                  AgentAffinityIndex affinityIndex,
+                                  DispatchLeaderElection leader,
+                                  DispatchJournal journal,
+                                  @Value("${dispatch.rebalance.enabled:true}") boolean enabled,
+                                  @Value("${dispatch.rebalance.overload-threshold:8}") long overloadThreshold,
+                                  @Value("${dispatch.rebalance.spare-threshold:3}") long spareThreshold,
+                                  @Value("${dispatch.rebalance.include-offline:true}") boolean includeOffline,
+                                  @Value("${dispatch.rebalance.max-moves:200}") int maxMoves,
+                                  @Value("${dispatch.rebalance.grace-ms:900000}") long graceMs) {
+        if (spareThreshold > overloadThreshold) {
+            throw new IllegalArgumentException("dispatch.rebalance.spare-threshold doit être <= overload-threshold");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.scoringIndex = scoringIndex;
+        this.affinityIndex = affinityIndex;
+        this.leader = leader;
+        this.journal = journal;
+        this.enabled = enabled;
+        this.overloadThreshold = overloadThreshold;
+        this.spareThreshold = spareThreshold;
+        this.includeOffline = includeOffline;
+        this.maxMoves = maxMoves;
+        this.graceSeconds = graceMs / 1000.0;
+    }
+
+    @Scheduled(fixedDelayString = "${dispatch.rebalance.interval-ms:60000}",
+            initialDelayString = "${dispatch.rebalance.interval-ms:60000}")
+    @Transactional
+    public void scheduledRun() {
+        if (!enabled || !leader.isLeader()) return;
+        Report r = rebalance();
+        if (r.moved() > 0) {
+            log.info("Rééquilibrage : {} affectation(s) déplacée(s) ({} donneurs, {} receveurs)",
+                    r.moved(), r.donors(), r.receivers());
+        }
+    }
+
+    /** Un passage (planificateur ou /api/dispatch/rebalance). */
+    @Transactional
+    public Report rebalance() {
+        long t0 = System.nanoTime();
+        List<AgentScoringIndex.Load> loads = scoringIndex.loads();
+
+        Map<Long, Long> surplus = new HashMap<>();
+        List<AgentScoringIndex.Load> receivers = new ArrayList<>();
+        for (AgentScoringIndex.Load l : loads) {
+            boolean unavailable = includeOffline && (!l.recentlyActive() || l.criticalAnomaly());
+            if (unavailable && l.activeTasks() > 0) surplus.put(l.agentId(), l.activeTasks());
+            else if (l.activeTasks() > overloadThreshold) surplus.put(l.agentId(), l.activeTasks() - overloadThreshold);
+            else if (l.recentlyActive() && !l.criticalAnomaly() && l.activeTasks() < spareThreshold) {
+                receivers.add(l);
+            }
+        }
+        if (surplus.isEmpty() || receivers.isEmpty()) {
+            return new Report(surplus.size(), receivers.size(), 0, 0, 0, (System.nanoTime() - t0) / 1_000_000, List.of());
+        }
+
+        List<Candidate> candidates = candidates(surplus.keySet());
+        List<Move> planned = plan(candidates, surplus, receivers, spareThreshold, maxMoves, affinityIndex::tiers);
+        List<Move> moved = apply(planned);
+        for (Move m : moved) scoringIndex.taskMoved(m.fromAgentId(), m.toAgentId());
+
+        return new Report(surplus.size(), receivers.size(), candidates.size(), planned.size(), moved.size(),
+                (System.nanoTime() - t0) / 1_000_000, moved);
+    }
+
+    /**
+     * Plan glouton : candidates dans l'ordre (plus anciennes d'abord), tant que le donneur a un surplus, vers le
+     * receveur le moins chargé du premier palier d'affinité qui en a un sous le seuil. Sans palier (affinité
+     * désactivée), n'importe quel receveur.
+     */
+    static List<Move> plan(List<Candidate> candidates, Map<Long, Long> surplus,
+                           List<AgentScoringIndex.Load> receivers, long spareThreshold, int maxMoves,
+                           BiFunction<Long, Categorie, List<LongPredicate>> tiers) {
+        Map<Long, Long> remaining = new HashMap<>(surplus);
+        Map<Long, Long> load = new LinkedHashMap<>();
+        for (AgentScoringIndex.Load r : receivers) load.put(r.agentId(), r.activeTasks());
+
+        List<Move> moves = new ArrayList<>();
+        for (Candidate c : candidates) {
+            if (moves.size() >= maxMoves) break;
+            if (remaining.getOrDefault(c.agentId(), 0L) <= 0) continue;
+
+            List<LongPredicate> paliers = tiers.apply(c.bureauId(), c.categorie());
+            Long target = null;
+            if (paliers.isEmpty()) {
+                target = leastLoaded(load, id -> true, c.agentId(), spareThreshold);
+            } else {
+                for (LongPredicate palier : paliers) {
+                    target = leastLoaded(load, palier, c.agentId(), spareThreshold);
+                    if (target != null) break;
+                }
+            }
+            if (target == null) continue;
+
+            moves.add(new Move(c.assignmentId(), c.agentId(), target));
+            remaining.merge(c.agentId(), -1L, Long::sum);
+            load.merge(target, 1L, Long::sum);
+        }
+        return moves;
+    }
+
+    private static Long leastLoaded(Map<Long, Long> load, LongPredicate allowed, long donor, long spareThreshold) {
+        Long best = null;
+        long bestLoad = Long.MAX_VALUE;
+        for (Map.Entry<Long, Long> e : load.entrySet()) {
+            long id = e.getKey();
+            if (id == donor || e.getValue() >= spareThreshold || !allowed.test(id)) continue;
+            if (e.getValue() < bestLoad) {
+                best = id;
+                bestLoad = e.getValue();
+            }
+        }
+        return best;
+    }
+
+    List<Candidate> candidates(Set<Long> donors) {
+        Long[] ids = donors.toArray(Long[]::new);
+        return jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(SELECT_CANDIDATES);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            ps.setDouble(2, graceSeconds);
+            return ps;
+        }, (rs, i) -> {
+            String categorie = rs.getString(4);
+            return new Candidate(rs.getLong(1), rs.getLong(2), rs.getObject(3, Long.class),
+                    categorie == null ? null : Categorie.valueOf(categorie));
+        });
+    }
+
+    private List<Move> apply(List<Move> planned) {
+        if (planned.isEmpty()) return List.of();
+        Long[] ids = new Long[planned.size()];
+        Long[] from = new Long[planned.size()];
+        Long[] to = new Long[planned.size()];
+        for (int i = 0; i < planned.size(); i++) {
+            ids[i] = planned.get(i).assignmentId();
+            from[i] = planned.get(i).fromAgentId();
+            to[i] = planned.get(i).toAgentId();
+        }
+        List<DispatchJournal.Mouvement> mouvements = new ArrayList<>(planned.size());
+        List<Move> moved = jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(MOVE);
+            Array a = con.createArrayOf("bigint", ids);
+            Array b = con.createArrayOf("bigint", from);
+            Array c = con.createArrayOf("bigint", to);
+            ps.setArray(1, a);
+            ps.setArray(2, b);
+            ps.setArray(3, c);
+            ps.setDouble(4, graceSeconds);
+            return ps;
+        }, (rs, i) -> {
+            Move m = new Move(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+            mouvements.add(new DispatchJournal.Mouvement(rs.getLong(4), m.fromAgentId(), m.toAgentId()));
+            return m;
+        });
+        journal.record(DispatchJournal.Evenement.REAFFECTATION, "rééquilibrage", mouvements);
+        return moved;
+    }
+
+    /** Vue Map du rapport pour l'API. */
+    public static Map<String, Object> toMap(Report r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("donors", r.donors());
+        m.put("receivers", r.receivers());
+        m.put("candidates", r.candidates());
+        m.put("planned", r.planned());
+        m.put("moved", r.moved());
+        m.put("durationMs", r.durationMs());
+        List<Map<String, Long>> details = new ArrayList<>(r.moves().size());
+        for (Move mv : r.moves()) {
+            details.add(Map.of("assignment_id", mv.assignmentId(), "from_agent_id", mv.fromAgentId(),
+                    "to_agent_id", mv.toAgentId()));
+        }
+        m.put("details", details);
+        return m;
+    }
+}
@@ -3,37 +3,143 @@ package com.a.portnet_back.Services;
 import com.a.portnet_back.DTO.AgentWorkloadDTO;
 import com.a.portnet_back.DTO.BulkReassignRequest;
 import com.a.portnet_back.DTO.BulkReassignResponse;
+import com.a.portnet_back.DTO.CursorPage;
 import com.a.portnet_back.DTO.DispatchLogDTO;
-import com.a.portnet_back.Models.Agent;
-import com.a.portnet_back.Models.Demande;
-import com.a.portnet_back.Models.TaskAssignment;
-import com.a.portnet_back.Repositories.AgentRepository;
-import com.a.portnet_back.Repositories.DemandeRepository;
-import com.a.portnet_back.Repositories.TaskAssignmentRepository;
+import com.a.portnet_back.Enum.Categorie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.Duration;
+import java.sql.Array;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class WorkloadService {
 
-    private final AgentRepository agentRepo;
-    private final TaskAssignmentRepository taRepo;
-    private final DemandeRepository demandeRepo;
+    private static final Logger log = LoggerFactory.getLogger(WorkloadService.class);
 
-    public WorkloadService(AgentRepository agentRepo,
-                           TaskAssignmentRepository taRepo,
-                           DemandeRepository demandeRepo) {
-        this.agentRepo = agentRepo;
-        this.taRepo = taRepo;
-        this.demandeRepo = demandeRepo;
+    private static final String SELECT_AGENTS = """
+            SELECT a.id, a.nom_complet
+            FROM agents a
+            WHERE CAST(? AS text) IS NULL
+               OR strpos(lower(a.nom_complet), ?) > 0
+               OR strpos(lower(a.email), ?) > 0
+            ORDER BY a.id
+            """;
+
+    /**
+     * Un lot de réaffectation en une requête : M = affectation déplacée (ancien agent, statut), I = affectation
+     * créée, C = affectation créée par une autre transaction après notre lecture (conflit à l'insertion, à
+     * déplacer par DEPLACER_CONCURRENTES), N = identifiant sans demande (anti-jointure).
+     */
+    private static final String BULK_REASSIGN = """
+            WITH demandes_lot AS (
+                SELECT DISTINCT r.id FROM unnest(?::bigint[]) AS r(id)
+            ),
+            trouvees AS (
+                SELECT d.id FROM demandes d JOIN demandes_lot l ON l.id = d.id
+            ),
+            existantes AS (
+                SELECT ta.id, ta.demande_id, ta.agent_id, ta.status
+                FROM task_assignments ta
+                JOIN trouvees t ON t.id = ta.demande_id
+                FOR UPDATE OF ta
+            ),
+            deplacees AS (
+                UPDATE task_assignments ta
+                SET agent_id = ?
+                FROM existantes e
+                WHERE ta.id = e.id
+                RETURNING ta.demande_id, e.agent_id AS ancien_agent_id, e.status
+            ),
+            creees AS (
+                INSERT INTO task_assignments (agent_id, demande_id, status, created_at)
+                SELECT ?, t.id, 'ASSIGNED', now()
+                FROM trouvees t
+                WHERE NOT EXISTS (SELECT 1 FROM existantes e WHERE e.demande_id = t.id)
+                ON CONFLICT (demande_id) DO NOTHING
+                RETURNING demande_id
+            ),
+            retirees AS (
+                DELETE FROM dispatch_queue q USING creees c WHERE q.demande_id = c.demande_id
+            )
+            SELECT 'M', demande_id, ancien_agent_id, status FROM deplacees
+            UNION ALL
+            SELECT 'I', demande_id, NULL, 'ASSIGNED' FROM creees
+            UNION ALL
+            SELECT 'C', t.id, NULL, NULL
+            FROM trouvees t
+            WHERE NOT EXISTS (SELECT 1 FROM existantes e WHERE e.demande_id = t.id)
+              AND NOT EXISTS (SELECT 1 FROM creees c WHERE c.demande_id = t.id)
+            UNION ALL
+            SELECT 'N', l.id, NULL, NULL
+            FROM demandes_lot l
+            WHERE NOT EXISTS (SELECT 1 FROM trouvees t WHERE t.id = l.id)
+            """;
+
+    // instruction suivante, donc nouvel instantané : l'affectation concurrente, validée, y est visible
+    private static final String DEPLACER_CONCURRENTES = """
+            WITH existantes AS (
+                SELECT ta.id, ta.agent_id, ta.status
+                FROM task_assignments ta
+                WHERE ta.demande_id = ANY (?::bigint[])
+                FOR UPDATE OF ta
+            )
+            UPDATE task_assignments ta
+            SET agent_id = ?
+            FROM existantes e
+            WHERE ta.id = e.id
+            RETURNING ta.demande_id, e.agent_id, e.status
+            """;
+
+    private final AgentScoringIndex scoringIndex;
+    private final AgentWorkloadRollup rollup;
+    private final ProcessingTimeSketchService sketches;
+    private final SlaDispatchQueue slaQueue;
+    private final DispatchJournal journal;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int bulkChunkSize;
+
+    public WorkloadService(AgentScoringIndex scoringIndex,
+                           AgentWorkloadRollup rollup,
+                           ProcessingTimeSketchService sketches,
+                           SlaDispatchQueue slaQueue,
+                           DispatchJournal journal,
+                           JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${workload.bulk-reassign.chunk-size:500}") int bulkChunkSize) {
+        this.scoringIndex = scoringIndex;
+        this.rollup = rollup;
+        this.sketches = sketches;
+        this.slaQueue = slaQueue;
+        this.journal = journal;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.bulkChunkSize = Math.max(1, bulkChunkSize);
     }
 
+    /**
+     * Charge par agent sur la période [from, to] (jours entiers), par somme des compteurs horaires
+     * (cf. AgentWorkloadRollup) : total, en cours et durée moyenne sur les affectations créées dans la période,
+     * productivité = affectations terminées dans la période, retard = non terminées créées dans la période
+     * depuis plus de deux jours (à l'heure près). slaMedianMin porte sur les affectations terminées dans la
+     * période, quelle que soit leur date de création (les esquisses sont indexées par jour de fin) : ce n'est
+     * pas la médiane des mêmes dossiers que tempsMoyenMin. Fusion des esquisses journalières
+     * (cf. ProcessingTimeSketchService, à 2 % près).
+     * Les agents sans affectation sur la période figurent avec des compteurs à zéro.
+     */
+    @Transactional(readOnly = true)
     public List<AgentWorkloadDTO> computeAgentsWorkload(String q,
                                                         String bureau,     // conservés pour compat front (non utilisés ici)
                                                         String categorie,  // idem
@@ -41,135 +147,179 @@ public class WorkloadService {
                                                         LocalDate to) {
 
         LocalDateTime start = (from == null ? LocalDate.now() : from).atStartOfDay();
-        LocalDateTime end   = (to   == null ? LocalDate.now() : to).atTime(23, 59, 59);
+        LocalDateTime end   = (to   == null ? LocalDate.now() : to).plusDays(1).atStartOfDay();
+        // seaux entièrement antérieurs à maintenant - 2 jours
+        LocalDateTime retard = AgentWorkloadRollup.truncate(LocalDateTime.now().minusDays(2));
+        String search = (q == null || q.isBlank()) ? null : q.toLowerCase();
 
-        // 1) Liste des agents
-        List<Agent> agents = agentRepo.findAll();
+        Map<Long, AgentWorkloadRollup.Counters> periode = rollup.sum(start, end);
+        Map<Long, AgentWorkloadRollup.Counters> enRetard = retard.isAfter(start)
+                ? rollup.sum(start, retard.isBefore(end) ? retard : end)
+                : Map.of();
+        Map<String, DureeSketch> durees = start.isBefore(end)
+                ? sketches.merged(start.toLocalDate(), end.toLocalDate().minusDays(1),
+                        ProcessingTimeSketchService.Axe.AGENT, null, null, null)
+                : Map.of();
 
-        if (q != null && !q.isBlank()) {
-            String s = q.toLowerCase();
-            agents = agents.stream().filter(a ->
-                    (a.getNomComplet() != null && a.getNomComplet().toLowerCase().contains(s)) ||
-                            (a.getEmail() != null && a.getEmail().toLowerCase().contains(s))
-            ).collect(Collectors.toList());
-        }
+        return jdbcTemplate.query(SELECT_AGENTS, (rs, i) -> {
+            long agentId = rs.getLong(1);
+            AgentWorkloadRollup.Counters c = periode.getOrDefault(agentId, AgentWorkloadRollup.Counters.ZERO);
 
-        // Statuts à récupérer via la méthode EAGER existante
-        List<TaskAssignment.Status> allStatuses = Arrays.asList(
-                TaskAssignment.Status.ASSIGNED,
-                TaskAssignment.Status.IN_PROGRESS,
-                TaskAssignment.Status.DONE,
-                TaskAssignment.Status.CANCELLED
-        );
-
-        List<AgentWorkloadDTO> out = new ArrayList<>();
-
-        for (Agent a : agents) {
-            // 2) Récupère toutes les affectations (EAGER) puis filtre par période en Java
-            List<TaskAssignment> all = taRepo.findEagerByAgentIdAndStatusInOrderByCreatedAtAsc(a.getId(), allStatuses);
-            List<TaskAssignment> tas = all.stream()
-                    .filter(ta -> !ta.getCreatedAt().isBefore(start) && !ta.getCreatedAt().isAfter(end))
-                    .collect(Collectors.toList());
-
-            int total = tas.size();
-            int enCours = (int) tas.stream().filter(ta ->
-                    ta.getStatus() == TaskAssignment.Status.ASSIGNED ||
-                            ta.getStatus() == TaskAssignment.Status.IN_PROGRESS
-            ).count();
-
-            int enRetard = (int) tas.stream().filter(ta ->
-                    ta.getStatus() != TaskAssignment.Status.DONE &&
-                            ta.getCreatedAt().isBefore(LocalDateTime.now().minusDays(2))
-            ).count();
-
-            // Durées pour moyenne / médiane (en minutes)
-            List<Long> durations = tas.stream()
-                    .filter(ta -> ta.getFinishedAt() != null)
-                    .map(ta -> {
-                        LocalDateTime sAt = ta.getStartedAt() != null ? ta.getStartedAt() : ta.getCreatedAt();
-                        return Duration.between(sAt, ta.getFinishedAt()).toMinutes();
-                    })
-                    .collect(Collectors.toList());
-
-            int avgMin = durations.isEmpty() ? 0 :
-                    (int) Math.round(durations.stream().mapToLong(Long::longValue).average().orElse(0));
-
-            int medianMin = 0;
-            if (!durations.isEmpty()) {
-                Collections.sort(durations);
-                int m = durations.size();
-                medianMin = (m % 2 == 1)
-                        ? durations.get(m / 2).intValue()
-                        : (int) Math.round((durations.get(m / 2 - 1) + durations.get(m / 2)) / 2.0);
-            }
+            AgentWorkloadDTO dto = new AgentWorkloadDTO();
+            dto.setAgentId(agentId);
+            dto.setAgent(rs.getString(2));
+            dto.setDossiersTotal((int) c.total());
+            dto.setEnCours((int) c.enCours());
+            dto.setEnRetard((int) enRetard.getOrDefault(agentId, AgentWorkloadRollup.Counters.ZERO).nonTermines());
+            dto.setTempsMoyenMin((int) Math.round(c.dureeMoyenneMin()));
+            DureeSketch d = durees.get(Long.toString(agentId));
+            dto.setSlaMedianMin(d == null ? 0 : (int) Math.round(d.quantile(0.50) / 60));
+            dto.setProductiviteJ((int) c.termines());
+            return dto;
+        }, search, search, search);
+    }
 
-            // Productivité du jour (DONE pendant la période)
-            int prodJ = (int) tas.stream().filter(ta ->
-                    ta.getStatus() == TaskAssignment.Status.DONE &&
-                            ta.getFinishedAt() != null &&
-                            !ta.getFinishedAt().isBefore(start) &&
-                            !ta.getFinishedAt().isAfter(end)
-            ).count();
+    /**
+     * Journal du dispatch, page par page (cf. DispatchJournal) : from / to (dates ISO, jours inclus), agentId,
+     * demandeId, evenement, categorie, q, cursor, size ; bureau est conservé pour compat front (non utilisé ici).
+     */
+    public CursorPage<DispatchLogDTO> getDispatchJournal(Map<String, String> params) {
+        DispatchJournal.Filter filter = new DispatchJournal.Filter(
+                param(params, "from", LocalDate::parse),
+                param(params, "to", LocalDate::parse),
+                param(params, "agentId", Long::valueOf),
+                param(params, "demandeId", Long::valueOf),
+                param(params, "evenement", v -> DispatchJournal.Evenement.valueOf(v.toUpperCase(Locale.ROOT))),
+                param(params, "categorie", Categorie::valueOf),
+                params.get("q"));
+        return journal.page(filter, params.get("cursor"), param(params, "size", Integer::valueOf));
+    }
 
-            AgentWorkloadDTO dto = new AgentWorkloadDTO();
-            dto.setAgentId(a.getId());
-            dto.setAgent(a.getNomComplet());
-            dto.setDossiersTotal(total);
-            dto.setEnCours(enCours);
-            dto.setEnRetard(enRetard);
-            dto.setTempsMoyenMin(avgMin);
-            dto.setSlaMedianMin(medianMin);
-            dto.setProductiviteJ(prodJ);
-
-            out.add(dto);
+    private static <T> T param(Map<String, String> params, String name, Function<String, T> parse) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) return null;
+        try {
+            return parse.apply(value.trim());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Paramètre " + name + " invalide : " + value);
         }
-        return out;
     }
 
-    // Journal : placeholder (renvoie pour l’instant une liste vide)
-    public List<DispatchLogDTO> getDispatchJournal(Map<String, String> params) {
-        return Collections.emptyList();
-    }
+    /** Avancement d'une réaffectation en masse, après chaque lot validé. */
+    public record ReassignProgress(int lot, int lots, int traites, int total, int reaffectes, int crees,
+                                   int introuvables) {}
 
-    // Réaffectation en masse — utilise TON findByDemandeId(...)
-    @Transactional
     public BulkReassignResponse bulkReassign(BulkReassignRequest req) {
+        return bulkReassign(req, p -> {});
+    }
+
+    /**
+     * Réaffectation en masse vers un agent, par lots de bulk-reassign.chunk-size identifiants, une transaction
+     * et une requête par lot : affectations existantes déplacées (un UPDATE, statut conservé), manquantes créées
+     * (INSERT ... ON CONFLICT DO NOTHING, retirées de la file de dispatch ; une affectation créée entre-temps par
+     * une autre transaction est déplacée à son tour), identifiants sans demande relevés par anti-jointure.
+     * Les lots déjà validés le restent si un lot suivant échoue ; relancer la même demande est sans effet de bord.
+     */
+    public BulkReassignResponse bulkReassign(BulkReassignRequest req, Consumer<ReassignProgress> progress) {
         BulkReassignResponse res = new BulkReassignResponse();
         if (req == null || req.getDossierIds() == null || req.getTargetAgentId() == null) return res;
 
-        Optional<Agent> targetOpt = agentRepo.findById(req.getTargetAgentId());
-        if (targetOpt.isEmpty()) {
-            res.getNotFound().add("agent:" + req.getTargetAgentId());
+        Long targetId = req.getTargetAgentId();
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM agents WHERE id = ?)", Boolean.class, targetId))) {
+            res.getNotFound().add("agent:" + targetId);
             return res;
         }
-        Agent target = targetOpt.get();
 
-        int updated = 0;
+        // ici on suppose que le champ reçu est un ID numérique de Demande ; plusieurs libellés peuvent désigner le même
+        Map<Long, List<String>> libelles = new LinkedHashMap<>();
         List<String> notFound = new ArrayList<>();
-
         for (String raw : req.getDossierIds()) {
-            try {
-                // ici on suppose que le champ reçu est un ID numérique de Demande
-                Long demandeId = Long.valueOf(raw.replaceAll("[^0-9]", ""));
-                Optional<Demande> dOpt = demandeRepo.findById(demandeId);
-                if (dOpt.isEmpty()) { notFound.add(raw); continue; }
-
-                Demande d = dOpt.get();
-                TaskAssignment ta = taRepo.findByDemandeId(d.getId()).orElseGet(() -> {
-                    TaskAssignment x = new TaskAssignment();
-                    x.setDemande(d);
-                    x.setStatus(TaskAssignment.Status.ASSIGNED);
-                    return x;
-                });
-                ta.setAgent(target);
-                taRepo.save(ta);
-                updated++;
-            } catch (Exception e) {
-                notFound.add(raw);
-            }
+            Long demandeId = parseDemandeId(raw);
+            if (demandeId == null) notFound.add(raw);
+            else libelles.computeIfAbsent(demandeId, k -> new ArrayList<>()).add(raw);
+        }
+
+        List<Long> ids = new ArrayList<>(libelles.keySet());
+        int lots = (ids.size() + bulkChunkSize - 1) / bulkChunkSize;
+        int updated = 0;
+        int inserted = 0;
+        for (int lot = 0; lot < lots; lot++) {
+            List<Long> chunk = ids.subList(lot * bulkChunkSize, Math.min(ids.size(), (lot + 1) * bulkChunkSize));
+            ReassignChunk r = transactionTemplate.execute(status -> reassignChunk(chunk, targetId, req.getReason()));
+            updated += r.moved() + r.inserted();
+            inserted += r.inserted();
+            for (Long id : r.missing()) notFound.addAll(libelles.get(id));
+
+            ReassignProgress p = new ReassignProgress(lot + 1, lots, lot * bulkChunkSize + chunk.size(), ids.size(),
+                    updated, inserted, notFound.size());
+            log.info("Réaffectation vers l'agent {} : lot {}/{}, {}/{} dossiers, {} réaffecté(s) dont {} créé(s)",
+                    targetId, p.lot(), p.lots(), p.traites(), p.total(), p.reaffectes(), p.crees());
+            progress.accept(p);
         }
         res.setUpdated(updated);
+        res.setInserted(inserted);
+        res.setChunks(lots);
         res.setNotFound(notFound);
         return res;
     }
+
+    private record ReassignChunk(int moved, int inserted, List<Long> missing) {}
+
+    /** Un lot, dans la transaction courante. */
+    private ReassignChunk reassignChunk(List<Long> chunk, Long targetId, String motif) {
+        Long[] ids = chunk.toArray(Long[]::new);
+        List<DispatchJournal.Mouvement> moved = new ArrayList<>();
+        List<Long> created = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        List<Long> concurrentes = new ArrayList<>();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(BULK_REASSIGN);
+            Array a = con.createArrayOf("bigint", ids);
+            ps.setArray(1, a);
+            ps.setLong(2, targetId);
+            ps.setLong(3, targetId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            long demandeId = rs.getLong(2);
+            switch (rs.getString(1)) {
+                case "M" -> moved.add(moved(demandeId, rs.getObject(3, Long.class), rs.getString(4), targetId));
+                case "I" -> {
+                    created.add(demandeId);
+                    scoringIndex.taskAssigned(targetId);
+                }
+                case "C" -> concurrentes.add(demandeId);
+                default -> missing.add(demandeId);
+            }
+        });
+        if (!concurrentes.isEmpty()) {
+            jdbcTemplate.query(con -> {
+                var ps = con.prepareStatement(DEPLACER_CONCURRENTES);
+                ps.setArray(1, con.createArrayOf("bigint", concurrentes.toArray(Long[]::new)));
+                ps.setLong(2, targetId);
+                return ps;
+            }, (RowCallbackHandler) rs -> moved.add(
+                    moved(rs.getLong(1), rs.getObject(2, Long.class), rs.getString(3), targetId)));
+        }
+        slaQueue.removeAfterCommit(created);
+        journal.record(DispatchJournal.Evenement.REAFFECTATION, motif, moved);
+        journal.record(DispatchJournal.Evenement.AFFECTATION, motif, created.stream()
+                .map(id -> new DispatchJournal.Mouvement(id, null, targetId)).toList());
+        return new ReassignChunk(moved.size(), created.size(), missing);
+    }
+
+    /** Affectation déplacée vers targetId : la charge suit si elle était encore ouverte. */
+    private DispatchJournal.Mouvement moved(long demandeId, Long ancien, String status, Long targetId) {
+        if ("ASSIGNED".equals(status) || "IN_PROGRESS".equals(status)) {
+            scoringIndex.taskMoved(ancien, targetId);
+        }
+        return new DispatchJournal.Mouvement(demandeId, ancien, targetId);
+    }
+
+    private static Long parseDemandeId(String raw) {
+        if (raw == null) return null;
+        String digits = raw.replaceAll("[^0-9]", "");
+        if (digits.isEmpty() || digits.length() > 18) return null;
+        return Long.valueOf(digits);
+    }
 }
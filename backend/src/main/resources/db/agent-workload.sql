@@ -0,0 +1,95 @@
+-- Charge des agents (cf. WorkloadService.computeAgentsWorkload / AgentWorkloadRollup).
+-- La médiane filtre task_assignments sur created_at : index couvrant pour un parcours de plage.
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+CREATE INDEX IF NOT EXISTS idx_task_assignments_created_agent
+    ON task_assignments (created_at, agent_id) INCLUDE (status, started_at, finished_at)^;
+
+-- réconciliation des compteurs : affectations terminées depuis un instant donné
+CREATE INDEX IF NOT EXISTS idx_task_assignments_finished_done
+    ON task_assignments (finished_at) WHERE status = 'DONE'^;
+
+-- Compteurs horaires par agent (cf. AgentWorkloadRollup) : une ligne par (agent, heure).
+-- Colonnes indexées sur l'heure de création de l'affectation (total, en_cours, non_termines, durées), sauf
+-- termines, compté à l'heure de fin. Tenus à jour par trigger dans la transaction de l'affectation ;
+-- txid = transaction de la dernière écriture, pour la synchronisation incrémentale du tiers mémoire.
+-- Réparation de dérive / reconstruction : AgentWorkloadRollup.reconcile() / rebuild().
+
+CREATE TABLE IF NOT EXISTS agent_workload_hourly (
+    agent_id       bigint    NOT NULL,
+    heure          timestamp NOT NULL,
+    total          integer   NOT NULL DEFAULT 0,
+    en_cours       integer   NOT NULL DEFAULT 0,
+    non_termines   integer   NOT NULL DEFAULT 0,
+    termines       integer   NOT NULL DEFAULT 0,
+    duree_somme    bigint    NOT NULL DEFAULT 0,   -- minutes entières, affectations terminées
+    duree_nombre   integer   NOT NULL DEFAULT 0,
+    txid           bigint    NOT NULL DEFAULT txid_current(),
+    PRIMARY KEY (agent_id, heure)
+)^;
+
+CREATE INDEX IF NOT EXISTS idx_agent_workload_hourly_heure ON agent_workload_hourly (heure)^;
+CREATE INDEX IF NOT EXISTS idx_agent_workload_hourly_txid ON agent_workload_hourly (txid)^;
+
+CREATE OR REPLACE FUNCTION agent_workload_add(p_agent bigint, p_created timestamp, p_status varchar,
+                                              p_started timestamp, p_finished timestamp,
+                                              p_delta integer) RETURNS void AS $$
+DECLARE
+    v_minutes bigint;
+BEGIN
+    IF p_agent IS NULL OR p_created IS NULL THEN
+        RETURN;
+    END IF;
+    v_minutes := CASE WHEN p_finished IS NULL THEN NULL
+                      ELSE trunc(EXTRACT(EPOCH FROM p_finished - coalesce(p_started, p_created)) / 60)::bigint END;
+
+    INSERT INTO agent_workload_hourly AS h (agent_id, heure, total, en_cours, non_termines, duree_somme, duree_nombre)
+    VALUES (p_agent, date_trunc('hour', p_created), p_delta,
+            CASE WHEN p_status IN ('ASSIGNED', 'IN_PROGRESS') THEN p_delta ELSE 0 END,
+            CASE WHEN p_status <> 'DONE' THEN p_delta ELSE 0 END,
+            coalesce(v_minutes, 0) * p_delta,
+            CASE WHEN v_minutes IS NULL THEN 0 ELSE p_delta END)
+    ON CONFLICT (agent_id, heure) DO UPDATE
+        SET total        = h.total + EXCLUDED.total,
+            en_cours     = h.en_cours + EXCLUDED.en_cours,
+            non_termines = h.non_termines + EXCLUDED.non_termines,
+            duree_somme  = h.duree_somme + EXCLUDED.duree_somme,
+            duree_nombre = h.duree_nombre + EXCLUDED.duree_nombre,
+            txid         = txid_current();
+
+    IF p_status = 'DONE' AND p_finished IS NOT NULL THEN
+        INSERT INTO agent_workload_hourly AS h (agent_id, heure, termines)
+        VALUES (p_agent, date_trunc('hour', p_finished), p_delta)
+        ON CONFLICT (agent_id, heure) DO UPDATE
+            SET termines = h.termines + EXCLUDED.termines,
+                txid     = txid_current();
+    END IF;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION task_assignments_workload_maintain() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM agent_workload_add(OLD.agent_id, OLD.created_at, OLD.status, OLD.started_at, OLD.finished_at, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM agent_workload_add(NEW.agent_id, NEW.created_at, NEW.status, NEW.started_at, NEW.finished_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_workload_ins_del
+    AFTER INSERT OR DELETE ON task_assignments
+    FOR EACH ROW EXECUTE FUNCTION task_assignments_workload_maintain()^;
+
+-- création, début, fin, annulation, réaffectation ; les autres mises à jour ne touchent pas les compteurs
+CREATE OR REPLACE TRIGGER trg_task_assignments_workload_upd
+    AFTER UPDATE OF agent_id, status, created_at, started_at, finished_at ON task_assignments
+    FOR EACH ROW
+    WHEN (OLD.agent_id IS DISTINCT FROM NEW.agent_id
+          OR OLD.status IS DISTINCT FROM NEW.status
+          OR OLD.created_at IS DISTINCT FROM NEW.created_at
+          OR OLD.started_at IS DISTINCT FROM NEW.started_at
+          OR OLD.finished_at IS DISTINCT FROM NEW.finished_at)
+    EXECUTE FUNCTION task_assignments_workload_maintain()^;
@@ -0,0 +1,19 @@
+-- Rattrapages à faire une seule fois sur l'historique (DemandeRollupService, AgentWorkloadRollup,
+-- ProcessingTimeSketchService) : une ligne par rattrapage terminé, posée dans la transaction du rattrapage. Le
+-- contenu des tables agrégées ne suffit pas à le savoir : les triggers peuvent y écrire avant le rattrapage.
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+CREATE TABLE IF NOT EXISTS backfill_marker (
+    nom     varchar(100) PRIMARY KEY,
+    fait_le timestamp    NOT NULL DEFAULT localtimestamp
+)^;
+
+-- Prend le verrou consultatif du rattrapage jusqu'à la fin de la transaction (deux nœuds qui démarrent ensemble
+-- passent l'un après l'autre), puis dit s'il reste à faire : la lecture suit le verrou, elle voit le marqueur posé
+-- par le premier.
+CREATE OR REPLACE FUNCTION backfill_a_faire(p_nom text) RETURNS boolean AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('backfill_marker'), hashtext(p_nom));
+    RETURN NOT EXISTS (SELECT 1 FROM backfill_marker WHERE nom = p_nom);
+END
+$$ LANGUAGE plpgsql^;
@@ -0,0 +1,146 @@
+-- Agrégats dénormalisés sur demandes : montant total, nombre de lignes, poids net / brut, nombre de documents.
+-- Tenus à jour par deltas dans la transaction qui touche marchandise / documents (triggers d'instruction,
+-- tables de transition) : une seule mise à jour de demandes par instruction, même pour un import de 10 000 lignes.
+-- Les deltas (col = col + x) restent justes sous concurrence : l'UPDATE relit la dernière version de la ligne.
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_attribute
+                   WHERE attrelid = 'demandes'::regclass AND attname = 'nombre_documents' AND NOT attisdropped) THEN
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS montant_total double precision NOT NULL DEFAULT 0;
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS nombre_lignes integer NOT NULL DEFAULT 0;
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS poids_net_total double precision NOT NULL DEFAULT 0;
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS poids_brut_total double precision NOT NULL DEFAULT 0;
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS nombre_documents integer NOT NULL DEFAULT 0;
+    END IF;
+END
+$$^;
+
+-- new_rows / old_rows n'existent que pour les opérations qui les déclarent : une fonction par opération
+CREATE OR REPLACE FUNCTION marchandise_agregats_ins() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d
+    SET montant_total    = d.montant_total + s.montant,
+        nombre_lignes    = d.nombre_lignes + s.lignes,
+        poids_net_total  = d.poids_net_total + s.poids_net,
+        poids_brut_total = d.poids_brut_total + s.poids_brut
+    FROM (SELECT n.demande_id, coalesce(sum(n.montant), 0) AS montant, count(*) AS lignes,
+                 coalesce(sum(n.poids_net), 0) AS poids_net, coalesce(sum(n.poids_brut), 0) AS poids_brut
+          FROM new_rows n WHERE n.demande_id IS NOT NULL GROUP BY n.demande_id) s
+    WHERE d.id = s.demande_id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION marchandise_agregats_del() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d
+    SET montant_total    = d.montant_total - s.montant,
+        nombre_lignes    = d.nombre_lignes - s.lignes,
+        poids_net_total  = d.poids_net_total - s.poids_net,
+        poids_brut_total = d.poids_brut_total - s.poids_brut
+    FROM (SELECT o.demande_id, coalesce(sum(o.montant), 0) AS montant, count(*) AS lignes,
+                 coalesce(sum(o.poids_net), 0) AS poids_net, coalesce(sum(o.poids_brut), 0) AS poids_brut
+          FROM old_rows o WHERE o.demande_id IS NOT NULL GROUP BY o.demande_id) s
+    WHERE d.id = s.demande_id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION marchandise_agregats_upd() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d
+    SET montant_total    = d.montant_total + s.montant,
+        nombre_lignes    = d.nombre_lignes + s.lignes,
+        poids_net_total  = d.poids_net_total + s.poids_net,
+        poids_brut_total = d.poids_brut_total + s.poids_brut
+    FROM (SELECT x.demande_id,
+                 sum(x.signe * coalesce(x.montant, 0))    AS montant,
+                 sum(x.signe)                             AS lignes,
+                 sum(x.signe * coalesce(x.poids_net, 0))  AS poids_net,
+                 sum(x.signe * coalesce(x.poids_brut, 0)) AS poids_brut
+          FROM (SELECT n.demande_id, n.montant, n.poids_net, n.poids_brut, 1 AS signe FROM new_rows n
+                UNION ALL
+                SELECT o.demande_id, o.montant, o.poids_net, o.poids_brut, -1 AS signe FROM old_rows o) x
+          WHERE x.demande_id IS NOT NULL
+          GROUP BY x.demande_id) s
+    WHERE d.id = s.demande_id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION documents_agregats_ins() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d SET nombre_documents = d.nombre_documents + s.nb
+    FROM (SELECT n.demande_id, count(*) AS nb FROM new_rows n
+          WHERE n.demande_id IS NOT NULL GROUP BY n.demande_id) s
+    WHERE d.id = s.demande_id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION documents_agregats_del() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d SET nombre_documents = d.nombre_documents - s.nb
+    FROM (SELECT o.demande_id, count(*) AS nb FROM old_rows o
+          WHERE o.demande_id IS NOT NULL GROUP BY o.demande_id) s
+    WHERE d.id = s.demande_id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+-- Rattrapage et triggers dans une seule transaction (un seul bloc DO). Au premier passage, le verrou pris avant le
+-- rattrapage fait attendre les écritures sur marchandise / documents jusqu'au commit : aucune ne tombe entre le
+-- rattrapage et la pose des triggers. Aux démarrages suivants, seul CREATE OR REPLACE TRIGGER est rejoué.
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'trg_marchandise_agregats_ins') THEN
+        LOCK TABLE marchandise, documents IN SHARE ROW EXCLUSIVE MODE;
+
+        UPDATE demandes d
+        SET montant_total    = s.montant,
+            nombre_lignes    = s.lignes,
+            poids_net_total  = s.poids_net,
+            poids_brut_total = s.poids_brut
+        FROM (SELECT m.demande_id,
+                     coalesce(sum(m.montant), 0)    AS montant,
+                     count(*)                       AS lignes,
+                     coalesce(sum(m.poids_net), 0)  AS poids_net,
+                     coalesce(sum(m.poids_brut), 0) AS poids_brut
+              FROM marchandise m
+              GROUP BY m.demande_id) s
+        WHERE d.id = s.demande_id;
+
+        UPDATE demandes d
+        SET nombre_documents = s.nb
+        FROM (SELECT doc.demande_id, count(*) AS nb FROM documents doc GROUP BY doc.demande_id) s
+        WHERE d.id = s.demande_id;
+    END IF;
+
+    CREATE OR REPLACE TRIGGER trg_marchandise_agregats_ins
+        AFTER INSERT ON marchandise
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION marchandise_agregats_ins();
+
+    CREATE OR REPLACE TRIGGER trg_marchandise_agregats_upd
+        AFTER UPDATE ON marchandise
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION marchandise_agregats_upd();
+
+    CREATE OR REPLACE TRIGGER trg_marchandise_agregats_del
+        AFTER DELETE ON marchandise
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION marchandise_agregats_del();
+
+    CREATE OR REPLACE TRIGGER trg_documents_agregats_ins
+        AFTER INSERT ON documents
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION documents_agregats_ins();
+
+    CREATE OR REPLACE TRIGGER trg_documents_agregats_del
+        AFTER DELETE ON documents
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION documents_agregats_del();
+END
+$$^;
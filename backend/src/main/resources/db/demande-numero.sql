@@ -0,0 +1,5 @@
+-- Séquences des numéros d'enregistrement (NumeroEnregistrementAllocator).
+-- INCREMENT BY = taille de bloc réservée en mémoire par nextval (NumeroEnregistrementAllocator.BLOCK_SIZE).
+
+CREATE SEQUENCE IF NOT EXISTS demande_numero_imp_seq START WITH 1 INCREMENT BY 20^;
+CREATE SEQUENCE IF NOT EXISTS demande_numero_exp_seq START WITH 1 INCREMENT BY 20^;
@@ -0,0 +1,51 @@
+-- Agrégat mensuel des demandes (tendances du tableau de bord) : quelques centaines de lignes au lieu de tout l'historique.
+-- Tenu à jour dans la transaction qui crée / modifie / supprime la demande (trigger ci-dessous).
+-- Idempotent, séparateur ^; (cf. demande-search.sql). Reconstruction complète : DemandeRollupService.rebuild().
+
+CREATE TABLE IF NOT EXISTS demande_monthly_rollup (
+    annee               integer      NOT NULL,
+    mois                integer      NOT NULL,
+    bureau_douanier_id  bigint       NOT NULL DEFAULT 0,   -- 0 = sans bureau
+    categorie           varchar(32)  NOT NULL DEFAULT '',
+    statut              varchar(32)  NOT NULL DEFAULT '',
+    nombre              bigint       NOT NULL DEFAULT 0,
+    PRIMARY KEY (annee, mois, bureau_douanier_id, categorie, statut)
+)^;
+
+CREATE OR REPLACE FUNCTION demande_rollup_add(p_date timestamp, p_bureau bigint, p_categorie varchar,
+                                              p_statut varchar, p_delta integer) RETURNS void AS $$
+BEGIN
+    INSERT INTO demande_monthly_rollup (annee, mois, bureau_douanier_id, categorie, statut, nombre)
+    VALUES (EXTRACT(YEAR FROM coalesce(p_date, now()))::integer,
+            EXTRACT(MONTH FROM coalesce(p_date, now()))::integer,
+            coalesce(p_bureau, 0), coalesce(p_categorie, ''), coalesce(p_statut, ''), p_delta)
+    ON CONFLICT (annee, mois, bureau_douanier_id, categorie, statut)
+        DO UPDATE SET nombre = demande_monthly_rollup.nombre + EXCLUDED.nombre;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE FUNCTION demandes_rollup_maintain() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM demande_rollup_add(OLD.date_creation, OLD.bureau_douanier_id, OLD.categorie, OLD.statut, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM demande_rollup_add(NEW.date_creation, NEW.bureau_douanier_id, NEW.categorie, NEW.statut, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_demandes_rollup_ins_del
+    AFTER INSERT OR DELETE ON demandes
+    FOR EACH ROW EXECUTE FUNCTION demandes_rollup_maintain()^;
+
+-- Seules les colonnes de la clé comptent : les autres mises à jour ne touchent pas l'agrégat
+CREATE OR REPLACE TRIGGER trg_demandes_rollup_upd
+    AFTER UPDATE OF statut, categorie, bureau_douanier_id, date_creation ON demandes
+    FOR EACH ROW
+    WHEN (OLD.statut IS DISTINCT FROM NEW.statut
+          OR OLD.categorie IS DISTINCT FROM NEW.categorie
+          OR OLD.bureau_douanier_id IS DISTINCT FROM NEW.bureau_douanier_id
+          OR date_trunc('month', OLD.date_creation) IS DISTINCT FROM date_trunc('month', NEW.date_creation))
+    EXECUTE FUNCTION demandes_rollup_maintain()^;
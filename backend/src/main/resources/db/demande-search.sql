@@ -0,0 +1,116 @@
+-- Recherche plein texte + trigrammes sur les demandes.
+-- Exécuté à chaque démarrage après Hibernate (spring.jpa.defer-datasource-initialization) : tout est idempotent.
+-- Séparateur d'instructions : ^; (les corps plpgsql contiennent des ;)
+-- Triggers posés par CREATE OR REPLACE TRIGGER (PostgreSQL 14+), jamais DROP puis CREATE : un autre nœud qui écrit
+-- pendant le démarrage ne tombe jamais entre les deux, et aucun verrou ACCESS EXCLUSIVE n'est pris sur la table.
+-- Les colonnes ne sont ajoutées (ALTER TABLE, verrou exclusif) que si elles manquent.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm^;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_attribute
+                   WHERE attrelid = 'demandes'::regclass AND attname = 'search_text' AND NOT attisdropped) THEN
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS search_vector tsvector;
+        ALTER TABLE demandes ADD COLUMN IF NOT EXISTS search_text text;
+    END IF;
+END
+$$^;
+
+-- Document de recherche d'une demande : numéro, importateur (ICE / société / nom), bureau, catégorie, codes SH
+CREATE OR REPLACE FUNCTION demandes_search_refresh() RETURNS trigger AS $$
+DECLARE
+    imp_ice     text;
+    imp_societe text;
+    imp_nom     text;
+    bd_code     text;
+    bd_desc     text;
+    codes       text;
+BEGIN
+    SELECT i.ice, i.societe, i.nom_complet INTO imp_ice, imp_societe, imp_nom
+    FROM importateur i WHERE i.id = NEW.importateur_id;
+
+    SELECT b.code, b.description INTO bd_code, bd_desc
+    FROM bureau_douanier b WHERE b.id = NEW.bureau_douanier_id;
+
+    SELECT string_agg(DISTINCT m.code_sh, ' ') INTO codes
+    FROM marchandise m WHERE m.demande_id = NEW.id;
+
+    NEW.search_text := lower(concat_ws(' ', NEW.numero_enregistrement, imp_ice, imp_societe, imp_nom,
+                                       bd_code, bd_desc, NEW.categorie, codes));
+    NEW.search_vector :=
+            setweight(to_tsvector('simple', coalesce(NEW.numero_enregistrement, '')), 'A') ||
+            setweight(to_tsvector('simple', concat_ws(' ', imp_ice, imp_societe, imp_nom)), 'B') ||
+            setweight(to_tsvector('simple', concat_ws(' ', bd_code, bd_desc)), 'C') ||
+            setweight(to_tsvector('simple', coalesce(codes, '')), 'D');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql^;
+
+-- UPDATE OF : les mises à jour des agrégats (db/demande-agregats.sql) ne recalculent pas le document
+CREATE OR REPLACE TRIGGER trg_demandes_search
+    BEFORE INSERT OR UPDATE OF numero_enregistrement, importateur_id, bureau_douanier_id, categorie, search_text
+    ON demandes
+    FOR EACH ROW EXECUTE FUNCTION demandes_search_refresh()^;
+
+-- Marchandises : un seul UPDATE par instruction (tables de transition), pas un par ligne importée
+CREATE OR REPLACE FUNCTION marchandise_search_touch() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        UPDATE demandes d SET search_text = d.search_text
+        WHERE d.id IN (SELECT DISTINCT o.demande_id FROM old_rows o);
+    ELSE
+        UPDATE demandes d SET search_text = d.search_text
+        WHERE d.id IN (SELECT DISTINCT n.demande_id FROM new_rows n);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_marchandise_search_ins
+    AFTER INSERT ON marchandise REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION marchandise_search_touch()^;
+
+CREATE OR REPLACE TRIGGER trg_marchandise_search_upd
+    AFTER UPDATE ON marchandise REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION marchandise_search_touch()^;
+
+CREATE OR REPLACE TRIGGER trg_marchandise_search_del
+    AFTER DELETE ON marchandise REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION marchandise_search_touch()^;
+
+-- Importateur / bureau renommés : on rafraîchit seulement les demandes concernées
+CREATE OR REPLACE FUNCTION importateur_search_touch() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d SET search_text = d.search_text WHERE d.importateur_id = NEW.id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_importateur_search
+    AFTER UPDATE ON importateur
+    FOR EACH ROW
+    WHEN (OLD.ice IS DISTINCT FROM NEW.ice
+          OR OLD.societe IS DISTINCT FROM NEW.societe
+          OR OLD.nom_complet IS DISTINCT FROM NEW.nom_complet)
+    EXECUTE FUNCTION importateur_search_touch()^;
+
+CREATE OR REPLACE FUNCTION bureau_search_touch() RETURNS trigger AS $$
+BEGIN
+    UPDATE demandes d SET search_text = d.search_text WHERE d.bureau_douanier_id = NEW.id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_bureau_search
+    AFTER UPDATE ON bureau_douanier
+    FOR EACH ROW
+    WHEN (OLD.code IS DISTINCT FROM NEW.code OR OLD.description IS DISTINCT FROM NEW.description)
+    EXECUTE FUNCTION bureau_search_touch()^;
+
+-- Rattrapage des demandes créées avant l'index
+UPDATE demandes SET search_text = search_text WHERE search_vector IS NULL^;
+
+CREATE INDEX IF NOT EXISTS idx_demandes_search_vector ON demandes USING gin (search_vector)^;
+CREATE INDEX IF NOT EXISTS idx_demandes_search_text_trgm ON demandes USING gin (search_text gin_trgm_ops)^;
+CREATE INDEX IF NOT EXISTS idx_demandes_numero_trgm ON demandes USING gin (lower(numero_enregistrement) gin_trgm_ops)^;
@@ -0,0 +1,47 @@
+-- Journal du dispatch (cf. DispatchJournal) : une ligne par affectation, réaffectation, prise ou annulation.
+-- Ajout seul : les lignes ne sont jamais modifiées ni supprimées (trigger), et survivent à la demande
+-- (pas de clé étrangère). Écrit dans la transaction de dispatch, un INSERT par transaction ; les annulations,
+-- posées hors de l'application, sont journalisées par trigger. date_evenement = localtimestamp dans les deux cas.
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+CREATE TABLE IF NOT EXISTS dispatch_journal (
+    id              bigserial    PRIMARY KEY,
+    date_evenement  timestamp    NOT NULL,
+    evenement       varchar(20)  NOT NULL,
+    demande_id      bigint       NOT NULL,
+    ancien_agent_id bigint,
+    agent_id        bigint,
+    par             varchar(255),
+    motif           varchar(500)
+)^;
+
+-- pagination par clé (date_evenement, id) décroissante : sur la période, par agent (reçu ou cédé), par demande
+CREATE INDEX IF NOT EXISTS idx_dispatch_journal_date ON dispatch_journal (date_evenement, id)^;
+CREATE INDEX IF NOT EXISTS idx_dispatch_journal_agent ON dispatch_journal (agent_id, date_evenement, id)^;
+CREATE INDEX IF NOT EXISTS idx_dispatch_journal_ancien_agent
+    ON dispatch_journal (ancien_agent_id, date_evenement, id) WHERE ancien_agent_id IS NOT NULL^;
+CREATE INDEX IF NOT EXISTS idx_dispatch_journal_demande ON dispatch_journal (demande_id, date_evenement, id)^;
+
+CREATE OR REPLACE FUNCTION dispatch_journal_append_only() RETURNS trigger AS $$
+BEGIN
+    RAISE EXCEPTION 'dispatch_journal : ajout seul (% interdit)', TG_OP;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_dispatch_journal_append_only
+    BEFORE UPDATE OR DELETE ON dispatch_journal
+    FOR EACH ROW EXECUTE FUNCTION dispatch_journal_append_only()^;
+
+CREATE OR REPLACE FUNCTION task_assignments_journal_cancel() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO dispatch_journal (date_evenement, evenement, demande_id, ancien_agent_id, agent_id, par)
+    VALUES (localtimestamp, 'ANNULATION', NEW.demande_id, NEW.agent_id, NULL, session_user);
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_journal_cancel
+    AFTER UPDATE OF status ON task_assignments
+    FOR EACH ROW
+    WHEN (NEW.status = 'CANCELLED' AND OLD.status IS DISTINCT FROM 'CANCELLED')
+    EXECUTE FUNCTION task_assignments_journal_cancel()^;
@@ -0,0 +1,12 @@
+-- File de dispatch par échéance SLA (cf. SlaDispatchQueue) : une ligne par demande en attente non affectée.
+-- L'échéance est figée à l'entrée dans la file (un changement de pondération ne touche que les nouvelles
+-- demandes) ; la file mémoire est rechargée depuis cette table au démarrage.
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+CREATE TABLE IF NOT EXISTS dispatch_queue (
+    demande_id bigint    PRIMARY KEY REFERENCES demandes (id) ON DELETE CASCADE,
+    echeance   timestamp NOT NULL,
+    priorite   timestamp NOT NULL
+)^;
+
+CREATE INDEX IF NOT EXISTS idx_dispatch_queue_priorite ON dispatch_queue (priorite, demande_id)^;
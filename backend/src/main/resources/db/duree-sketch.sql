@@ -0,0 +1,127 @@
+-- Esquisses de quantiles des durées de traitement (cf. DureeSketch / ProcessingTimeSketchService) : une ligne par
+-- (jour de fin, agent, bureau, catégorie). compteurs[p] = nombre d'affectations terminées dont la durée en secondes
+-- (started_at, à défaut created_at → finished_at) tombe dans le seau p : seau 1 = 0 s, seau p >= 2 couvre
+-- ]γ^(p-3), γ^(p-2)] avec γ = 1.02 / 0.98 (erreur relative <= 2 %) ; environ 400 seaux pour 60 jours.
+-- Fusion sur une période = somme des compteurs seau à seau. γ doit rester celui de DureeSketch.
+-- Tenu à jour par trigger dans la transaction de l'affectation. Idempotent, séparateur ^; (cf. demande-search.sql).
+-- Reconstruction complète : ProcessingTimeSketchService.rebuild(), une fois au premier démarrage (cf. backfill.sql).
+
+CREATE TABLE IF NOT EXISTS duree_sketch_daily (
+    jour                date        NOT NULL,
+    agent_id            bigint      NOT NULL,
+    bureau_douanier_id  bigint      NOT NULL DEFAULT 0,   -- 0 = sans bureau
+    categorie           varchar(32) NOT NULL DEFAULT '',
+    nombre              bigint      NOT NULL DEFAULT 0,
+    somme_secondes      bigint      NOT NULL DEFAULT 0,
+    compteurs           integer[]   NOT NULL DEFAULT '{}',
+    PRIMARY KEY (jour, agent_id, bureau_douanier_id, categorie)
+)^;
+
+-- Clés de l'esquisse d'une affectation terminée, figées à sa fin (cf. task_assignments_duree_keys) : le retrait
+-- retombe sur l'esquisse qui l'a comptée même si la demande a changé de bureau ou de catégorie depuis.
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_attribute
+                   WHERE attrelid = 'task_assignments'::regclass AND attname = 'duree_categorie' AND NOT attisdropped) THEN
+        ALTER TABLE task_assignments ADD COLUMN IF NOT EXISTS duree_bureau_id bigint;
+        ALTER TABLE task_assignments ADD COLUMN IF NOT EXISTS duree_categorie varchar(32);
+    END IF;
+END
+$$^;
+
+CREATE OR REPLACE FUNCTION duree_sketch_index(p_secondes bigint) RETURNS integer AS $$
+    SELECT CASE WHEN p_secondes <= 0 THEN 1
+                ELSE 2 + ceil(ln(p_secondes) / ln(1.02 / 0.98))::integer END
+$$ LANGUAGE sql IMMUTABLE^;
+
+DROP FUNCTION IF EXISTS duree_sketch_add(bigint, bigint, timestamp, timestamp, timestamp, integer)^;
+
+-- p_bureau / p_categorie : clés figées de l'affectation ; NULL (historique pas encore rattrapé) = celles de la
+-- demande à cet instant
+CREATE OR REPLACE FUNCTION duree_sketch_add(p_demande bigint, p_agent bigint, p_bureau bigint, p_categorie varchar,
+                                            p_created timestamp, p_started timestamp, p_finished timestamp,
+                                            p_delta integer) RETURNS void AS $$
+DECLARE
+    v_bureau    bigint := p_bureau;
+    v_categorie varchar := p_categorie;
+    v_secondes  bigint;
+    v_p         integer;
+BEGIN
+    IF p_agent IS NULL OR p_finished IS NULL THEN
+        RETURN;
+    END IF;
+    IF v_categorie IS NULL THEN
+        SELECT d.bureau_douanier_id, d.categorie INTO v_bureau, v_categorie FROM demandes d WHERE d.id = p_demande;
+    END IF;
+    v_secondes := greatest(0, floor(EXTRACT(EPOCH FROM p_finished - coalesce(p_started, p_created)))::bigint);
+    v_p := duree_sketch_index(v_secondes);
+
+    IF p_delta < 0 THEN
+        -- retrait : seulement d'une esquisse existante (jamais de compteur négatif)
+        UPDATE duree_sketch_daily s
+        SET nombre = s.nombre + p_delta,
+            somme_secondes = s.somme_secondes + p_delta * v_secondes,
+            compteurs[v_p] = coalesce(s.compteurs[v_p], 0) + p_delta
+        WHERE s.jour = p_finished::date AND s.agent_id = p_agent
+          AND s.bureau_douanier_id = coalesce(v_bureau, 0) AND s.categorie = coalesce(v_categorie, '')
+          AND coalesce(s.compteurs[v_p], 0) > 0;
+    ELSE
+        INSERT INTO duree_sketch_daily AS s (jour, agent_id, bureau_douanier_id, categorie, nombre, somme_secondes,
+                                             compteurs)
+        VALUES (p_finished::date, p_agent, coalesce(v_bureau, 0), coalesce(v_categorie, ''), p_delta,
+                p_delta * v_secondes, array_fill(0, ARRAY[v_p - 1]) || p_delta)
+        ON CONFLICT (jour, agent_id, bureau_douanier_id, categorie) DO UPDATE
+            SET nombre = s.nombre + EXCLUDED.nombre,
+                somme_secondes = s.somme_secondes + EXCLUDED.somme_secondes,
+                compteurs[v_p] = coalesce(s.compteurs[v_p], 0) + p_delta;
+    END IF;
+END
+$$ LANGUAGE plpgsql^;
+
+-- fige les clés de l'esquisse quand l'affectation passe à DONE (ou change de demande une fois terminée)
+CREATE OR REPLACE FUNCTION task_assignments_duree_keys() RETURNS trigger AS $$
+BEGIN
+    IF NEW.status = 'DONE' AND (TG_OP = 'INSERT' OR OLD.status IS DISTINCT FROM 'DONE'
+                                OR OLD.demande_id IS DISTINCT FROM NEW.demande_id) THEN
+        SELECT coalesce(d.bureau_douanier_id, 0), coalesce(d.categorie, '')
+        INTO NEW.duree_bureau_id, NEW.duree_categorie
+        FROM demandes d WHERE d.id = NEW.demande_id;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_duree_keys
+    BEFORE INSERT OR UPDATE OF status, demande_id ON task_assignments
+    FOR EACH ROW EXECUTE FUNCTION task_assignments_duree_keys()^;
+
+CREATE OR REPLACE FUNCTION task_assignments_duree_sketch_maintain() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status = 'DONE' THEN
+        PERFORM duree_sketch_add(OLD.demande_id, OLD.agent_id, OLD.duree_bureau_id, OLD.duree_categorie,
+                                 OLD.created_at, OLD.started_at, OLD.finished_at, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status = 'DONE' THEN
+        PERFORM duree_sketch_add(NEW.demande_id, NEW.agent_id, NEW.duree_bureau_id, NEW.duree_categorie,
+                                 NEW.created_at, NEW.started_at, NEW.finished_at, 1);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_duree_sketch_ins_del
+    AFTER INSERT OR DELETE ON task_assignments
+    FOR EACH ROW EXECUTE FUNCTION task_assignments_duree_sketch_maintain()^;
+
+-- fin (ou reprise) d'une affectation, correction de ses dates, réaffectation
+CREATE OR REPLACE TRIGGER trg_task_assignments_duree_sketch_upd
+    AFTER UPDATE OF status, agent_id, demande_id, created_at, started_at, finished_at ON task_assignments
+    FOR EACH ROW
+    WHEN ((OLD.status = 'DONE' OR NEW.status = 'DONE')
+          AND (OLD.status IS DISTINCT FROM NEW.status
+               OR OLD.agent_id IS DISTINCT FROM NEW.agent_id
+               OR OLD.demande_id IS DISTINCT FROM NEW.demande_id
+               OR OLD.created_at IS DISTINCT FROM NEW.created_at
+               OR OLD.started_at IS DISTINCT FROM NEW.started_at
+               OR OLD.finished_at IS DISTINCT FROM NEW.finished_at))
+    EXECUTE FUNCTION task_assignments_duree_sketch_maintain()^;
@@ -0,0 +1,11 @@
+-- Séquence des ids de marchandise (Marchandise : GenerationType.SEQUENCE, allocationSize = 50, optimiseur pooled).
+-- L'INCREMENT BY doit rester égal à l'allocationSize. Recalée au-dessus des ids existants (anciennement IDENTITY).
+-- Idempotent, séparateur ^; (cf. demande-search.sql).
+
+CREATE SEQUENCE IF NOT EXISTS marchandise_seq START WITH 1 INCREMENT BY 50^;
+ALTER SEQUENCE marchandise_seq INCREMENT BY 50^;
+
+SELECT setval('marchandise_seq', m.max_id)
+FROM (SELECT max(id) AS max_id FROM marchandise) m
+WHERE m.max_id IS NOT NULL
+  AND m.max_id >= (SELECT last_value FROM marchandise_seq)^;
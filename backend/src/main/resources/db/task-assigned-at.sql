@@ -0,0 +1,36 @@
+-- Heure d'attribution d'une affectation à son agent actuel : sa création, puis chaque changement d'agent
+-- (réaffectation unitaire ou en lot, rééquilibrage, SQL manuel), posée par trigger quel que soit le chemin.
+-- Délai de grâce du rééquilibrage (cf. WorkStealingRebalancer) : un dossier qui vient d'être réaffecté est
+-- laissé à son nouvel agent. Non mappée par Hibernate. Idempotent, séparateur ^; (cf. demande-search.sql).
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_attribute
+                   WHERE attrelid = 'task_assignments'::regclass AND attname = 'assigned_at' AND NOT attisdropped) THEN
+        ALTER TABLE task_assignments ADD COLUMN IF NOT EXISTS assigned_at timestamp;
+        -- historique : l'heure de la dernière réaffectation est perdue, celle de création en tient lieu
+        UPDATE task_assignments SET assigned_at = created_at;
+    END IF;
+END
+$$^;
+
+CREATE OR REPLACE FUNCTION task_assignments_assigned_at() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        NEW.assigned_at := coalesce(NEW.assigned_at, NEW.created_at, localtimestamp);
+    ELSE
+        NEW.assigned_at := localtimestamp;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_assigned_at_ins
+    BEFORE INSERT ON task_assignments
+    FOR EACH ROW EXECUTE FUNCTION task_assignments_assigned_at()^;
+
+CREATE OR REPLACE TRIGGER trg_task_assignments_assigned_at_upd
+    BEFORE UPDATE OF agent_id ON task_assignments
+    FOR EACH ROW
+    WHEN (OLD.agent_id IS DISTINCT FROM NEW.agent_id)
+    EXECUTE FUNCTION task_assignments_assigned_at()^;
@@ -0,0 +1,83 @@
+package com.a.portnet_back.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Aiguillage lecture / écriture contre deux instances locales (compose-replica.yaml, profil “replica”).
+ * Lancement : docker compose -f compose-replica.yaml up -d
+ *             mvn test -Dtest=ReadReplicaRoutingTest -Dportnet.replica=true
+ */
+@SpringBootTest
+@ActiveProfiles("replica")
+@EnabledIfSystemProperty(named = "portnet.replica", matches = "true")
+class ReadReplicaRoutingTest {
+
+    // le port vu par le serveur identifie l'instance (5432 dans les deux conteneurs) : on lit donc le rôle
+    private static final String IS_REPLICA = "SELECT pg_is_in_recovery()";
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private HikariDataSource primaryDataSource;
+
+    @Test
+    void readOnlyGoesToReplicaAndWriteToPrimary() {
+        assertThat(inTx(true)).isTrue();
+        assertThat(inTx(false)).isFalse();
+    }
+
+    @Test
+    void readsArePinnedToPrimaryRightAfterAWrite() throws Exception {
+        // hors authentification l'épinglage est par thread : thread neuf pour ne pas dépendre des autres tests
+        AtomicReference<Boolean> lectureApresEcriture = new AtomicReference<>();
+        Thread t = new Thread(() -> {
+            inTx(false);
+            lectureApresEcriture.set(inTx(true));
+        });
+        t.start();
+        t.join();
+        assertThat(lectureApresEcriture.get()).isFalse();
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenReplicaIsDown() {
+        HikariDataSource down = new HikariDataSource();
+        down.setJdbcUrl("jdbc:postgresql://localhost:1/portnet");
+        down.setConnectionTimeout(250);
+        down.setInitializationFailTimeout(-1);
+        try {
+            ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, Map.of("down", down),
+                    new ReplicaRoutingDataSource.Settings(Duration.ZERO, Duration.ofSeconds(30), Duration.ofSeconds(10)));
+            DataSource ds = new LazyConnectionDataSourceProxy(routing);
+            TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+            tx.setReadOnly(true);
+
+            Boolean replica = tx.execute(s -> new JdbcTemplate(ds).queryForObject(IS_REPLICA, Boolean.class));
+            assertThat(replica).isFalse();
+        } finally {
+            down.close();
+        }
+    }
+
+    private Boolean inTx(boolean readOnly) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(readOnly);
+        return tx.execute(s -> jdbcTemplate.queryForObject(IS_REPLICA, Boolean.class));
+    }
+}
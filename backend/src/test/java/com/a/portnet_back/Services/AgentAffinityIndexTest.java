@@ -0,0 +1,112 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentAffinityIndexTest {
+
+    private static final long CASA = 100L;
+    private static final long TANGER = 200L;
+
+    private AgentAffinityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = loaded("generalistes");
+    }
+
+    private static AgentAffinityIndex loaded(String fallback) {
+        AgentAffinityIndex index = new AgentAffinityIndex(true, fallback);
+        Map<Long, String> bureaux = new LinkedHashMap<>();
+        bureaux.put(CASA, "CASA");
+        bureaux.put(TANGER, "Tanger Med");
+        index.load(bureaux, Map.of(
+                1L, "casa",                 // bureau
+                2L, "TANGER  MED / exp",    // bureau + catégorie
+                3L, "Contrôle",             // intitulé libre : généraliste
+                4L, "IMP"));                // catégorie
+        return index;
+    }
+
+    private static List<Long> members(LongPredicate tier) {
+        return LongStream.rangeClosed(1, 4).filter(tier).boxed().toList();
+    }
+
+    @Test
+    void specialistsAreTheIntersectionOfBureauAndCategorie() {
+        assertThat(members(index.tiers(CASA, Categorie.IMPORTATION).get(0))).containsExactly(1L, 4L);
+        assertThat(members(index.tiers(TANGER, Categorie.IMPORTATION).get(0))).containsExactly(4L);
+        assertThat(members(index.tiers(TANGER, Categorie.EXPORTATION).get(0))).containsExactly(2L);
+        assertThat(members(index.tiers(TANGER, Categorie.EXPORTATION).get(1))).containsExactly(3L);
+    }
+
+    @Test
+    void attenteKeepsDemandesForSpecialistsUnlessNobodyHasTheSkill() {
+        AgentAffinityIndex attente = loaded("attente");
+        assertThat(attente.tiers(CASA, Categorie.IMPORTATION)).hasSize(1);
+        assertThat(members(attente.tiers(CASA, Categorie.IMPORTATION).get(0))).containsExactly(1L, 4L);
+        // bureau inconnu, exportation : aucun spécialiste → généralistes
+        assertThat(members(attente.tiers(999L, Categorie.EXPORTATION).get(0))).containsExactly(3L);
+    }
+
+    @Test
+    void agentSideFilterFollowsTheSkills() {
+        assertThat(index.specialite(3L)).isNull();
+        assertThat(index.specialite(1L).test(CASA, Categorie.EXPORTATION)).isTrue();
+        assertThat(index.specialite(1L).test(TANGER, Categorie.EXPORTATION)).isFalse();
+        assertThat(index.specialite(2L).test(TANGER, Categorie.IMPORTATION)).isFalse();
+        assertThat(index.specialite(4L).test(null, Categorie.IMPORTATION)).isTrue();
+    }
+
+    @Test
+    void departementUpdateIsAppliedWithoutReload() {
+        index.agentUpdated(3L, "Casa");
+        assertThat(members(index.tiers(CASA, Categorie.IMPORTATION).get(0))).containsExactly(1L, 3L, 4L);
+
+        index.agentUpdated(3L, null);
+        assertThat(index.specialite(3L)).isNull();
+        assertThat(index.specialite(1L).test(CASA, null)).isTrue();
+    }
+
+    @Test
+    void busySpecialistsFallBackToGeneralists() {
+        AgentScoringIndex scoring = new AgentScoringIndex(Duration.ofMinutes(60), Duration.ofMinutes(60),
+                Duration.ofMinutes(180), () -> LocalDateTime.of(2025, 1, 15, 10, 0));
+        LongStream.rangeClosed(1, 4).forEach(scoring::agentActivated);
+        List<LongPredicate> tiers = index.tiers(TANGER, Categorie.EXPORTATION);
+
+        assertThat(scoring.bestAgentId(tiers.get(0))).contains(2L);
+
+        for (int i = 0; i < 10; i++) scoring.taskAssigned(2L);
+        assertThat(scoring.bestAgentId(tiers.get(0))).isEmpty();
+        assertThat(scoring.bestAgentId(tiers.get(1))).contains(3L);
+    }
+
+    @Test
+    void claimEligibilityFollowsTheDispatchTiers() {
+        // généralistes : le spécialiste CASA ne prend que CASA, le généraliste prend tout
+        assertThat(index.eligibilite(1L).test(CASA, Categorie.EXPORTATION)).isTrue();
+        assertThat(index.eligibilite(1L).test(TANGER, Categorie.EXPORTATION)).isFalse();
+        assertThat(index.eligibilite(3L).test(TANGER, Categorie.EXPORTATION)).isTrue();
+        assertThat(index.eligibilite(3L).test(999L, null)).isTrue();
+
+        // attente : le généraliste ne prend que ce que personne ne sait traiter
+        AgentAffinityIndex attente = loaded("attente");
+        assertThat(attente.eligibilite(3L).test(CASA, Categorie.IMPORTATION)).isFalse();
+        assertThat(attente.eligibilite(3L).test(999L, Categorie.EXPORTATION)).isTrue();
+        assertThat(attente.eligibilite(2L).test(999L, Categorie.EXPORTATION)).isFalse();
+
+        assertThat(loaded("tous").eligibilite(1L)).isNull();
+    }
+}
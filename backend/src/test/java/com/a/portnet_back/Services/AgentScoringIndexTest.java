@@ -0,0 +1,82 @@
+package com.a.portnet_back.Services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AgentScoringIndexTest {
+
+    private final AtomicReference<LocalDateTime> now = new AtomicReference<>(LocalDateTime.of(2025, 1, 15, 10, 0));
+    private AgentScoringIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new AgentScoringIndex(Duration.ofMinutes(60), Duration.ofMinutes(60), Duration.ofMinutes(180), now::get);
+        index.agentActivated(1L);
+        index.agentActivated(2L);
+    }
+
+    @Test
+    void picksLeastLoadedAgent() {
+        index.taskAssigned(1L);
+        assertThat(index.bestAgentId()).contains(2L);
+        index.taskAssigned(2L);
+        index.taskAssigned(2L);
+        assertThat(index.bestAgentId()).contains(1L);
+    }
+
+    @Test
+    void recencyBonusExpiresWithoutEvent() {
+        index.taskAssigned(1L);
+        index.activityLogged(1L, now.get());   // 9 + 2 > 10
+        assertThat(index.bestAgentId()).contains(1L);
+
+        now.set(now.get().plusMinutes(61));
+        assertThat(index.bestAgentId()).contains(2L);
+    }
+
+    @Test
+    void anomalyPenaltyDecaysByHalfLife() {
+        index.anomalyDetected(1L, "CRITICAL", now.get());
+        assertThat(index.scoreOf(1L)).isCloseTo(7.0, within(1e-9));
+        assertThat(index.hasRecentCriticalAnomaly(1L)).isTrue();
+
+        now.set(now.get().plusMinutes(60));
+        assertThat(index.scoreOf(1L)).isCloseTo(8.5, within(1e-9));
+
+        now.set(now.get().plusMinutes(121));
+        assertThat(index.hasRecentCriticalAnomaly(1L)).isFalse();
+    }
+
+    @Test
+    void ignoresAgentsNotActivated() {
+        index.taskAssigned(3L);
+        assertThat(index.scoreOf(3L)).isNaN();
+        index.taskAssigned(1L);
+        index.taskAssigned(2L);
+        assertThat(index.bestAgentId()).contains(1L);
+    }
+
+    @Test
+    void rolledBackAssignmentIsUndone() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.taskAssigned(1L);
+            index.taskAssigned(1L);
+            assertThat(index.bestAgentId()).contains(2L);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertThat(index.scoreOf(1L)).isEqualTo(index.scoreOf(2L));
+    }
+}
@@ -0,0 +1,122 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.AgentWorkloadDTO;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Agent;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Models.TaskAssignment;
+import com.a.portnet_back.Repositories.AgentRepository;
+import com.a.portnet_back.Repositories.TaskAssignmentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Charge des agents sur deux ans d'historique semé dans un schéma jetable (cf. ThrowawaySchemaTest) : requête
+ * groupée vs recalcul en Java à partir de toutes les affectations de chaque agent (ancien chemin).
+ * Lancement : mvn test -Dtest=AgentWorkloadBenchmarkTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class AgentWorkloadBenchmarkTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentWorkloadBenchmarkTest.class);
+
+    private static final List<TaskAssignment.Status> ALL = Arrays.asList(TaskAssignment.Status.values());
+    private static final int AGENTS = 8;
+    private static final int AFFECTATIONS = 2_000;
+
+    @Autowired private WorkloadService workloadService;
+    @Autowired private TaskAssignmentRepository taRepo;
+    @Autowired private DemandeService demandeService;
+    @Autowired private AgentRepository agentRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void groupedQueryMatchesThePerAgentComputation() {
+        seed();
+        LocalDate from = LocalDate.now().minusYears(2);
+        LocalDate to = LocalDate.now();
+
+        workloadService.computeAgentsWorkload(null, null, null, from, to); // chauffe
+        long t0 = System.nanoTime();
+        List<AgentWorkloadDTO> rows = workloadService.computeAgentsWorkload(null, null, null, from, to);
+        long sqlMs = (System.nanoTime() - t0) / 1_000_000;
+        assertThat(rows).hasSizeGreaterThanOrEqualTo(AGENTS);
+
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.atTime(23, 59, 59);
+        t0 = System.nanoTime();
+        for (AgentWorkloadDTO row : rows) {
+            List<TaskAssignment> tas = taRepo.findEagerByAgentIdAndStatusInOrderByCreatedAtAsc(row.getAgentId(), ALL)
+                    .stream()
+                    .filter(ta -> !ta.getCreatedAt().isBefore(start) && !ta.getCreatedAt().isAfter(end))
+                    .toList();
+            double moyenne = tas.stream().filter(ta -> ta.getFinishedAt() != null)
+                    .mapToLong(ta -> Duration.between(ta.getStartedAt() != null ? ta.getStartedAt() : ta.getCreatedAt(),
+                            ta.getFinishedAt()).toMinutes())
+                    .average().orElse(0);
+
+            assertThat(row.getDossiersTotal()).isEqualTo(tas.size());
+            assertThat(row.getEnCours()).isEqualTo((int) tas.stream()
+                    .filter(ta -> ta.getStatus() == TaskAssignment.Status.ASSIGNED
+                            || ta.getStatus() == TaskAssignment.Status.IN_PROGRESS).count());
+            assertThat(row.getTempsMoyenMin()).isEqualTo((int) Math.round(moyenne));
+        }
+        long javaMs = (System.nanoTime() - t0) / 1_000_000;
+
+        log.info("{} agents : requête groupée {} ms, recalcul par agent {} ms", rows.size(), sqlMs, javaMs);
+    }
+
+    /**
+     * Demandes puis agents (le dispatch automatique ne les affecte donc pas), puis une affectation par demande
+     * répartie sur deux ans, tous statuts confondus ; les terminées ont une durée de 5 à 120 minutes.
+     */
+    private void seed() {
+        Importateur importateur = importateur("Importateur charge", "Société charge");
+        BureauDouanier bureau = bureau("WLD", "Bureau charge");
+        Devise devise = devise("CAD", "Dollar canadien");
+
+        List<Long> demandeIds = new ArrayList<>(AFFECTATIONS);
+        for (int i = 0; i < AFFECTATIONS; i++) {
+            demandeIds.add(demandeService.createDemande(i % 2 == 0 ? Categorie.IMPORTATION : Categorie.EXPORTATION,
+                    importateur, bureau, devise).getId());
+        }
+        List<Long> agentIds = new ArrayList<>(AGENTS);
+        for (int i = 0; i < AGENTS; i++) {
+            Agent agent = new Agent("Agent charge " + i, "workload" + i + "@test.local", null, null);
+            agent.setActivated(true);
+            agentIds.add(agentRepository.save(agent).getId());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(AFFECTATIONS);
+        for (int i = 0; i < AFFECTATIONS; i++) {
+            TaskAssignment.Status status = ALL.get(i % ALL.size());
+            LocalDateTime created = now.minusHours(i * 8L + 1);
+            boolean done = status == TaskAssignment.Status.DONE;
+            rows.add(new Object[]{agentIds.get(i % AGENTS), demandeIds.get(i), status.name(), Timestamp.valueOf(created),
+                    done ? Timestamp.valueOf(created.plusMinutes(10)) : null,
+                    done ? Timestamp.valueOf(created.plusMinutes(15 + i % 116)) : null});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO task_assignments (agent_id, demande_id, status, created_at, started_at, finished_at)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """, rows);
+    }
+}
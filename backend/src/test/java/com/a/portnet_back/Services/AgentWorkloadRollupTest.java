@@ -0,0 +1,69 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Services.AgentWorkloadRollup.Counters;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tiers chaud seul : aucune période testée ne déborde sur la table (pas de JdbcTemplate). */
+class AgentWorkloadRollupTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 15, 12, 0);
+
+    private final AgentWorkloadRollup rollup = new AgentWorkloadRollup(null, null, true, 48, 48, () -> NOW);
+
+    private static long h(int hoursAgo) {
+        return AgentWorkloadRollup.hour(NOW.minusHours(hoursAgo));
+    }
+
+    private static Map<Long, TreeMap<Long, Counters>> buckets(long agentId, long hour, Counters c) {
+        Map<Long, TreeMap<Long, Counters>> m = new HashMap<>();
+        m.computeIfAbsent(agentId, k -> new TreeMap<>()).put(hour, c);
+        return m;
+    }
+
+    private void load() {
+        Map<Long, TreeMap<Long, Counters>> fresh = buckets(1L, h(1), new Counters(2, 1, 1, 0, 30, 1));
+        fresh.get(1L).put(h(3), new Counters(1, 0, 0, 1, 10, 1));
+        fresh.putAll(buckets(2L, h(2), new Counters(5, 5, 5, 0, 0, 0)));
+        rollup.replaceHot(fresh, h(48), 0);
+    }
+
+    @Test
+    void rangesSumTheirBuckets() {
+        load();
+
+        Map<Long, Counters> all = rollup.sum(NOW.minusHours(5), NOW);
+        assertThat(all.get(1L)).isEqualTo(new Counters(3, 1, 1, 1, 40, 2));
+        assertThat(all.get(1L).dureeMoyenneMin()).isEqualTo(20.0);
+        assertThat(all.get(2L).total()).isEqualTo(5);
+
+        // bornes arrondies à l'heure : [T-2h, T) exclut le seau de T-3h
+        Map<Long, Counters> recent = rollup.sum(NOW.minusHours(2).plusMinutes(30), NOW);
+        assertThat(recent.get(1L).total()).isEqualTo(2);
+        assertThat(rollup.sum(NOW, NOW)).isEmpty();
+    }
+
+    @Test
+    void syncReplacesBucketsAndEvictsOldHours() {
+        load();
+
+        rollup.apply(buckets(1L, h(1), new Counters(3, 2, 2, 0, 30, 1)), h(2), 1);
+
+        Map<Long, Counters> recent = rollup.sum(NOW.minusHours(2), NOW);
+        assertThat(recent.get(1L).total()).isEqualTo(3);
+        assertThat(recent.get(2L).total()).isEqualTo(5);
+
+        // rejouer la même ligne ne double pas le compteur
+        rollup.apply(buckets(1L, h(1), new Counters(3, 2, 2, 0, 30, 1)), h(2), 1);
+        assertThat(rollup.sum(NOW.minusHours(2), NOW).get(1L).total()).isEqualTo(3);
+
+        rollup.apply(Map.of(), h(0), 2);
+        assertThat(rollup.sum(NOW, NOW.plusHours(1))).isEmpty();
+    }
+}
@@ -0,0 +1,104 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeSoumiseEvent;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Marchandise;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.modulith.events.core.EventPublicationRepository;
+import org.springframework.modulith.events.core.TargetEventPublication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Auto-dispatch à la soumission via une publication durable Spring Modulith (table event_publication) : écrite
+ * dans la transaction de soumission, traitée seulement après son commit, laissée incomplète (donc republiable)
+ * quand le listener échoue. Aucun agent actif : le listener ne fait que lire la demande.
+ */
+class AutoDispatchListenerTest extends ThrowawaySchemaTest {
+
+    @Autowired private DemandeService demandeService;
+    @Autowired private EventPublicationRepository publications;
+    @Autowired private ApplicationEventPublisher events;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void submissionPublishesAnEventHandledOnlyAfterCommit() throws Exception {
+        Long id = demandeComplete().getId();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        tx.executeWithoutResult(status -> {
+            demandeService.soumetteDemande(id);
+            assertThat(incomplete(e -> id.equals(e.demandeId()))).hasSize(1);
+            pause(300);
+            // transaction encore ouverte : le listener n'a pas tourné, la publication est toujours en attente
+            assertThat(incomplete(e -> id.equals(e.demandeId()))).hasSize(1);
+        });
+
+        // après commit : traitée puis supprimée (spring.modulith.events.completion-mode=delete)
+        for (int i = 0; i < 100 && !incomplete(e -> id.equals(e.demandeId())).isEmpty(); i++) pause(50);
+        assertThat(incomplete(e -> id.equals(e.demandeId()))).isEmpty();
+    }
+
+    @Test
+    void rolledBackSubmissionLeavesNoPublication() {
+        Long id = demandeComplete().getId();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            demandeService.soumetteDemande(id);
+            status.setRollbackOnly();
+        });
+
+        pause(300);
+        assertThat(incomplete(e -> id.equals(e.demandeId()))).isEmpty();
+    }
+
+    @Test
+    void listenerFailureLeavesThePublicationIncomplete() {
+        // id null : findById lève une exception dans le listener
+        LocalDateTime soumiseLe = LocalDateTime.of(2001, 2, 3, 4, 5, 6);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                events.publishEvent(new DemandeSoumiseEvent(null, soumiseLe)));
+
+        pause(1_000);
+        List<TargetEventPublication> restantes = incomplete(e -> soumiseLe.equals(e.soumiseLe()));
+        try {
+            assertThat(restantes).hasSize(1);
+            assertThat(restantes.get(0).getTargetIdentifier().getValue()).contains("AutoDispatchListener");
+        } finally {
+            publications.deletePublications(restantes.stream().map(TargetEventPublication::getIdentifier).toList());
+        }
+    }
+
+    /** Demande prête à soumettre (au moins une marchandise). */
+    private Demande demandeComplete() {
+        Demande demande = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Importateur soumission", "Société soumission"),
+                bureau("SOU", "Bureau soumission"), devise("EUR", "Euro"));
+        demandeService.addMarchandise(demande.getId(), new Marchandise("Article", 1.0, 100.0, "8471300000"));
+        return demande;
+    }
+
+    private List<TargetEventPublication> incomplete(Predicate<DemandeSoumiseEvent> filter) {
+        return publications.findIncompletePublications().stream()
+                .filter(p -> p.getEvent() instanceof DemandeSoumiseEvent e && filter.test(e))
+                .toList();
+    }
+
+    private static void pause(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
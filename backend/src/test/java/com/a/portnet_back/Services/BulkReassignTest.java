@@ -0,0 +1,145 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.BulkReassignRequest;
+import com.a.portnet_back.DTO.BulkReassignResponse;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Agent;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.AgentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Réaffectation en masse dans un schéma jetable (cf. ThrowawaySchemaTest) : affectations existantes déplacées
+ * (UPDATE), manquantes créées (INSERT ... ON CONFLICT) et sorties de la file de dispatch, identifiants inconnus
+ * relevés (anti-jointure) ; une affectation créée par une autre transaction pendant le lot est déplacée, pas
+ * comptée comme créée.
+ */
+class BulkReassignTest extends ThrowawaySchemaTest {
+
+    @Autowired private WorkloadService workloadService;
+    @Autowired private DemandeService demandeService;
+    @Autowired private AgentRepository agentRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void movesExistingCreatesMissingAndReportsUnknown() {
+        List<Long> demandes = demandes(6);
+        Long origine = agent("origine");
+        Long cible = agent("cible");
+        for (Long id : demandes.subList(0, 3)) assign(origine, id);
+
+        List<String> ids = new ArrayList<>(demandes.stream().map(id -> "D-" + id).toList());
+        ids.add("inconnu");
+        ids.add("999999999999");
+        List<WorkloadService.ReassignProgress> lots = new ArrayList<>();
+        BulkReassignResponse res = workloadService.bulkReassign(request(ids, cible), lots::add);
+
+        assertThat(res.getUpdated()).isEqualTo(6);
+        assertThat(res.getInserted()).isEqualTo(3);
+        assertThat(res.getNotFound()).containsExactly("inconnu", "999999999999");
+        assertThat(lots).hasSize(res.getChunks());
+        assertThat(agentOf(demandes)).containsOnly(cible).hasSize(6);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM dispatch_queue WHERE demande_id = ANY (?::bigint[])",
+                Long.class, (Object) demandes.subList(3, 6).toArray(Long[]::new))).isZero();
+
+        // relancer la même demande ne crée rien de plus
+        BulkReassignResponse again = workloadService.bulkReassign(request(ids, cible));
+        assertThat(again.getUpdated()).isEqualTo(6);
+        assertThat(again.getInserted()).isZero();
+    }
+
+    @Test
+    void assignmentCreatedConcurrentlyIsMovedNotCounted() throws Exception {
+        Long demande = demandes(1).get(0);
+        Long origine = agent("concurrent");
+        Long cible = agent("cible lot");
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> concurrente = pool.submit(() -> tx.executeWithoutResult(status -> {
+                assign(origine, demande);
+                inserted.countDown();
+                await(commit);
+            }));
+            assertThat(inserted.await(10, TimeUnit.SECONDS)).isTrue();
+            // le lot lit avant la validation : son INSERT attend la ligne concurrente puis tombe en conflit
+            Future<BulkReassignResponse> lot = pool.submit(() ->
+                    workloadService.bulkReassign(request(List.of(demande.toString()), cible)));
+            Thread.sleep(300);
+            commit.countDown();
+            concurrente.get(10, TimeUnit.SECONDS);
+            BulkReassignResponse res = lot.get(10, TimeUnit.SECONDS);
+
+            assertThat(res.getUpdated()).isEqualTo(1);
+            assertThat(res.getInserted()).isZero();
+            assertThat(agentOf(List.of(demande))).containsExactly(cible);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Demandes d'abord, agents inactifs ensuite : le dispatch automatique n'y touche pas. */
+    private List<Long> demandes(int n) {
+        Importateur importateur = importateur("Importateur lot", "Société lot");
+        BureauDouanier bureau = bureau("BLK", "Bureau réaffectation");
+        Devise devise = devise("SEK", "Couronne suédoise");
+        List<Long> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise).getId());
+        }
+        return ids;
+    }
+
+    private Long agent(String nom) {
+        // inactif par défaut
+        return agentRepository.save(new Agent("Agent " + nom,
+                nom.replace(' ', '.') + "." + System.nanoTime() + "@test.local", null, null)).getId();
+    }
+
+    private void assign(Long agentId, Long demandeId) {
+        jdbcTemplate.update("INSERT INTO task_assignments (agent_id, demande_id, status, created_at) "
+                + "VALUES (?, ?, 'ASSIGNED', now())", agentId, demandeId);
+    }
+
+    private List<Long> agentOf(List<Long> demandes) {
+        return jdbcTemplate.queryForList("SELECT agent_id FROM task_assignments WHERE demande_id = ANY (?::bigint[])",
+                Long.class, (Object) demandes.toArray(Long[]::new));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static BulkReassignRequest request(List<String> ids, Long agentId) {
+        BulkReassignRequest req = new BulkReassignRequest();
+        req.setDossierIds(ids);
+        req.setTargetAgentId(agentId);
+        req.setReason("test");
+        return req;
+    }
+}
@@ -0,0 +1,72 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.DemandeRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Débit de createDemande sous charge parallèle, dans un schéma jetable (cf. ThrowawaySchemaTest).
+ * Lancement : mvn test -Dtest=CreateDemandeThroughputTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class CreateDemandeThroughputTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CreateDemandeThroughputTest.class);
+
+    @Autowired private DemandeService demandeService;
+    @Autowired private DemandeRepository demandeRepository;
+
+    @Test
+    void parallelCreatesDoNotCollide() throws Exception {
+        Importateur importateur = importateur("Importateur test", "Société test");
+        BureauDouanier bureau = bureau("300", "Bureau test");
+        Devise devise = devise("MAD", "Dirham");
+
+        int threads = 32;
+        int total = 2_000;
+        Set<Long> created = ConcurrentHashMap.newKeySet();
+        Set<String> numeros = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long t0 = System.nanoTime();
+        List<Future<Demande>> futures = IntStream.range(0, total)
+                .mapToObj(i -> pool.submit(() -> demandeService.createDemande(
+                        i % 2 == 0 ? Categorie.IMPORTATION : Categorie.EXPORTATION,
+                        importateur, bureau, devise)))
+                .toList();
+        try {
+            for (Future<Demande> f : futures) {
+                Demande d = f.get(2, TimeUnit.MINUTES);
+                created.add(d.getId());
+                numeros.add(d.getNumeroEnregistrement());
+            }
+            long elapsedNs = System.nanoTime() - t0;
+            log.info("createDemande: {} créations / {} threads en {} ms", total, threads, elapsedNs / 1_000_000);
+
+            assertThat(numeros).hasSize(total);
+        } finally {
+            pool.shutdownNow();
+            demandeRepository.deleteAllById(created);
+        }
+    }
+}
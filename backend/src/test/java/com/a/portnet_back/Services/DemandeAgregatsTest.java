@@ -0,0 +1,114 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Models.Marchandise;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Agrégats dénormalisés tenus par triggers d'instruction (cf. db/demande-agregats.sql) : après insertions unitaires
+ * et en lot, mises à jour, déplacement d'une ligne et suppressions, ils restent égaux à un recalcul sur marchandise /
+ * documents. Montants et poids entiers ou en demis : les sommes en double sont exactes quel que soit l'ordre.
+ */
+class DemandeAgregatsTest extends ThrowawaySchemaTest {
+
+    private static final String AGREGATS = """
+            SELECT montant_total, nombre_lignes, poids_net_total, poids_brut_total, nombre_documents
+            FROM demandes WHERE id = ?
+            """;
+
+    private static final String RECALCUL = """
+            SELECT (SELECT coalesce(sum(m.montant), 0) FROM marchandise m WHERE m.demande_id = d.id)::double precision
+                           AS montant_total,
+                   (SELECT count(*) FROM marchandise m WHERE m.demande_id = d.id)::integer AS nombre_lignes,
+                   (SELECT coalesce(sum(m.poids_net), 0) FROM marchandise m WHERE m.demande_id = d.id)::double precision
+                           AS poids_net_total,
+                   (SELECT coalesce(sum(m.poids_brut), 0) FROM marchandise m WHERE m.demande_id = d.id)::double precision
+                           AS poids_brut_total,
+                   (SELECT count(*) FROM documents doc WHERE doc.demande_id = d.id)::integer AS nombre_documents
+            FROM demandes d WHERE d.id = ?
+            """;
+
+    @Autowired private DemandeService demandeService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void agregatsFollowMarchandiseAndDocumentWrites() {
+        Importateur importateur = importateur("Importateur agrégats", "Société agrégats");
+        BureauDouanier bureau = bureau("AGR", "Bureau agrégats");
+        Devise devise = devise("CHF", "Franc suisse");
+        Demande a = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+        Demande b = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+        assertAgregats(a, 0.0, 0);
+
+        demandeService.addMarchandise(a.getId(), ligne(1));
+        assertAgregats(a, 100.0, 1);
+
+        demandeService.addMarchandises(a.getId(), IntStream.range(2, 6).mapToObj(DemandeAgregatsTest::ligne).toList());
+        assertAgregats(a, 100.0 + 200 + 300 + 400 + 500, 5);
+
+        // une seule instruction, plusieurs lignes sur deux demandes
+        jdbcTemplate.update("""
+                INSERT INTO marchandise (id, designation, montant, poids_net, poids_brut, demande_id)
+                SELECT nextval('marchandise_seq'), 'Ligne ' || g, g * 10, g * 0.5, g, CASE WHEN g % 2 = 0 THEN ? ELSE ? END
+                FROM generate_series(1, 20) g
+                """, a.getId(), b.getId());
+        assertCoherent(a, b);
+
+        jdbcTemplate.update("UPDATE marchandise SET montant = montant * 2, poids_brut = NULL WHERE demande_id = ?", b.getId());
+        assertCoherent(a, b);
+
+        Long deplacee = jdbcTemplate.queryForObject(
+                "SELECT min(id) FROM marchandise WHERE demande_id = ?", Long.class, a.getId());
+        jdbcTemplate.update("UPDATE marchandise SET demande_id = ? WHERE id = ?", b.getId(), deplacee);
+        assertCoherent(a, b);
+
+        jdbcTemplate.update("DELETE FROM marchandise WHERE demande_id IN (?, ?) AND montant >= 100", a.getId(), b.getId());
+        assertCoherent(a, b);
+
+        jdbcTemplate.update("""
+                INSERT INTO documents (nom_original, chemin_s3, date_upload, demande_id)
+                VALUES ('facture.pdf', 'a/facture.pdf', now(), ?), ('bl.pdf', 'a/bl.pdf', now(), ?),
+                       ('colisage.pdf', 'a/colisage.pdf', now(), ?), ('facture.pdf', 'b/facture.pdf', now(), ?)
+                """, a.getId(), a.getId(), a.getId(), b.getId());
+        assertCoherent(a, b);
+        assertThat(agregats(a).get("nombre_documents")).isEqualTo(3);
+
+        jdbcTemplate.update("DELETE FROM documents WHERE demande_id = ? AND nom_original = 'bl.pdf'", a.getId());
+        assertCoherent(a, b);
+        assertThat(agregats(a).get("nombre_documents")).isEqualTo(2);
+    }
+
+    private static Marchandise ligne(int i) {
+        Marchandise m = new Marchandise("Article " + i, 1.0, 100.0 * i, "8471300000");
+        m.setPoidsNet(1.5 * i);
+        m.setPoidsBrut(2.0 * i);
+        return m;
+    }
+
+    private void assertAgregats(Demande demande, double montant, int lignes) {
+        assertThat(agregats(demande)).containsEntry("montant_total", montant).containsEntry("nombre_lignes", lignes);
+        assertCoherent(demande);
+    }
+
+    private void assertCoherent(Demande... demandes) {
+        for (Demande demande : demandes) {
+            assertThat(agregats(demande)).isEqualTo(jdbcTemplate.queryForMap(RECALCUL, demande.getId()));
+        }
+    }
+
+    private Map<String, Object> agregats(Demande demande) {
+        return jdbcTemplate.queryForMap(AGREGATS, demande.getId());
+    }
+}
@@ -0,0 +1,127 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeDetail;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Document;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Models.Marchandise;
+import com.a.portnet_back.Repositories.DocumentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Lecture “mes demandes détaillées” : chargement par entités (JOIN FETCH) vs DemandeDetailAssembler.
+ * Compare le nombre de requêtes SQL, les octets alloués et le temps, sur des demandes semées dans un schéma
+ * jetable (cf. ThrowawaySchemaTest).
+ * Lancement : mvn test -Dtest=DemandeDetailReadBenchmarkTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class DemandeDetailReadBenchmarkTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DemandeDetailReadBenchmarkTest.class);
+
+    private static final int ROUNDS = 20;
+    private static final int DEMANDES = 50;
+    private static final int MARCHANDISES = 10;
+    private static final int DOCUMENTS = 2;
+
+    @Autowired private DemandeService demandeService;
+    @Autowired private DemandeDetailAssembler assembler;
+    @Autowired private DocumentRepository documentRepository;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void assemblerUsesConstantQueriesAndLessMemory() {
+        Long importateurId = seed();
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.setStatisticsEnabled(true);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+
+        // l'ancien chemin parcourt les collections dans la transaction, comme le faisait le contrôleur
+        Supplier<Double> entites = () -> tx.execute(s -> {
+            double total = 0;
+            for (Demande d : demandeService.getDemandesWithDetailsForImportateur(importateurId)) {
+                total += d.getMarchandises().stream().mapToDouble(m -> m.getMontant() != null ? m.getMontant() : 0).sum();
+                total += d.getDocuments().size();
+            }
+            return total;
+        });
+        Supplier<Double> vues = () -> {
+            double total = 0;
+            for (DemandeDetail d : assembler.findByImportateur(importateurId)) {
+                total += d.getMontantTotal() + d.getDocuments().size();
+            }
+            return total;
+        };
+
+        assertThat(vues.get()).isCloseTo(entites.get(), within(0.01));
+
+        Mesure avant = mesurer("entités", entites, stats);
+        Mesure apres = mesurer("assembler", vues, stats);
+
+        assertThat(apres.requetes()).isLessThanOrEqualTo(3);
+        assertThat(apres.requetes()).isLessThanOrEqualTo(avant.requetes());
+    }
+
+    private Mesure mesurer(String label, Supplier<Double> lecture, Statistics stats) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        lecture.get(); // chauffe
+        stats.clear();
+        long bytes0 = threads.getThreadAllocatedBytes(threadId);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            lecture.get();
+        }
+        long elapsedNs = System.nanoTime() - t0;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytes0;
+        long requetes = stats.getPrepareStatementCount() / ROUNDS;
+
+        log.info("{} : {} requêtes, {} Ko alloués, {} µs par lecture",
+                label, requetes, bytes / ROUNDS / 1024, elapsedNs / 1000 / ROUNDS);
+        return new Mesure(requetes, bytes / ROUNDS);
+    }
+
+    /** Un importateur, DEMANDES demandes avec MARCHANDISES marchandises et DOCUMENTS documents chacune. */
+    private Long seed() {
+        Importateur importateur = importateur("Importateur lecture", "Société lecture");
+        BureauDouanier bureau = bureau("RD1", "Bureau lecture");
+        Devise devise = devise("USD", "Dollar");
+
+        for (int i = 0; i < DEMANDES; i++) {
+            Demande d = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+            demandeService.addMarchandises(d.getId(), IntStream.range(0, MARCHANDISES)
+                    .mapToObj(m -> new Marchandise("Article " + m, 2.0, 100.0 + m, "8471300000"))
+                    .toList());
+            documentRepository.saveAll(IntStream.range(0, DOCUMENTS)
+                    .mapToObj(n -> new Document("piece-" + n + ".pdf", "test/" + d.getId() + "/" + n, "application/pdf", 1024L, d))
+                    .toList());
+        }
+        return importateur.getId();
+    }
+
+    private record Mesure(long requetes, long octets) {}
+}
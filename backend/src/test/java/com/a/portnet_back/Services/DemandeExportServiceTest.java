@@ -0,0 +1,60 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Export CSV d'un jeu semé, lu au fil du curseur (cf. DemandeListingService.forEachRow) : en-tête, une ligne par
+ * demande du filtre, plus récentes d'abord, champs échappés et formules neutralisées.
+ */
+class DemandeExportServiceTest extends ThrowawaySchemaTest {
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Autowired private DemandeExportService exportService;
+    @Autowired private DemandeService demandeService;
+    @Autowired private DemandeListingService listingService;
+
+    @Test
+    void csvStreamsSeededRowsWithFormulasNeutralized() throws Exception {
+        BureauDouanier bureau = bureau("XPT", "Bureau export");
+        Devise devise = devise("USD", "Dollar américain");
+        Demande formule = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Nom formule", "=HYPERLINK(\"http://x.test\")"), bureau, devise);
+        Demande telephone = demandeService.createDemande(Categorie.EXPORTATION,
+                importateur("Nom téléphone", "+212 Négoce"), bureau, devise);
+        Demande separateur = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Nom séparateur", "Dupont; Fils"), bureau, devise);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.exportCsv(DemandeListingService.Filter.of(null, null, "XPT"), out);
+        String csv = out.toString(StandardCharsets.UTF_8);
+
+        assertThat(csv).startsWith("\uFEFF");
+        List<String> lines = List.of(csv.substring(1).split("\r\n"));
+        assertThat(lines).containsExactly(
+                String.join(";", DemandeExportService.HEADERS),
+                line(separateur, "IMPORTATION", "\"Dupont; Fils\""),
+                line(telephone, "EXPORTATION", "'+212 Négoce"),
+                line(formule, "IMPORTATION", "\"'=HYPERLINK(\"\"http://x.test\"\")\""));
+    }
+
+    /** Ligne attendue : date telle que relue en base, sans agent ni ICE, montant nul. */
+    private String line(Demande demande, String categorie, String operateur) {
+        String date = listingService.listByIds(List.of(demande.getId())).get(0).getCreatedAt().format(DATE);
+        return String.join(";", demande.getNumeroEnregistrement(), categorie, "Bureau export", "EN_ATTENTE",
+                date, "-", operateur, "—", "0.0");
+    }
+}
@@ -0,0 +1,57 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeListItemDTO;
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Filtre q de la grille : numéro, importateur, bureau et catégorie, via search_text (cf. db/demande-search.sql). */
+class DemandeListingServiceTest extends ThrowawaySchemaTest {
+
+    @Autowired private DemandeListingService listingService;
+    @Autowired private DemandeService demandeService;
+
+    @Test
+    void qMatchesNumeroImportateurBureauAndCategorie() {
+        Importateur importateur = importateur("Nadia Amrani", "Atlas Négoce");
+        BureauDouanier bureau = bureau("LST", "Bureau listing");
+        Devise devise = devise("EUR", "Euro");
+
+        Demande imp = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+        Demande exp = demandeService.createDemande(Categorie.EXPORTATION, importateur, bureau, devise);
+
+        assertThat(numeros("Exportation")).containsExactly(exp.getNumeroEnregistrement());
+        assertThat(numeros(imp.getNumeroEnregistrement().toLowerCase())).containsExactly(imp.getNumeroEnregistrement());
+        assertThat(numeros("atlas")).hasSize(2);
+        assertThat(numeros("bureau listing")).hasSize(2);
+        assertThat(numeros("50%")).isEmpty();
+    }
+
+    @Test
+    void unknownStatutMatchesNothingInsteadOfFailing() {
+        Importateur importateur = importateur("Omar Tazi", "Tazi Export");
+        BureauDouanier bureau = bureau("ST1", "Bureau statut");
+        Devise devise = devise("EUR", "Euro");
+        demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+
+        assertThat(listingService.listAll(DemandeListingService.Filter.of(null, "en_attente", "ST1"))).hasSize(1);
+        assertThat(listingService.listAll(DemandeListingService.Filter.of(null, "ARCHIVEE", "ST1"))).isEmpty();
+        assertThat(listingService.listAll(DemandeListingService.Filter.of(null, " ", "ST1"))).hasSize(1);
+    }
+
+    /** Numéros des demandes du bureau LST retenues par q. */
+    private List<String> numeros(String q) {
+        return listingService.listAll(DemandeListingService.Filter.of(q, null, "LST")).stream()
+                .map(DemandeListItemDTO::getId)
+                .toList();
+    }
+}
@@ -0,0 +1,85 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Enum.StatusDemande;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Agrégat mensuel tenu par trigger (cf. db/demande-rollup.sql) : après créations, changements de statut et
+ * suppression, il reste égal au GROUP BY sur demandes, comme après une reconstruction complète.
+ */
+class DemandeRollupServiceTest extends ThrowawaySchemaTest {
+
+    private static final String ROLLUP = """
+            SELECT annee, mois, categorie, statut, nombre
+            FROM demande_monthly_rollup
+            WHERE bureau_douanier_id = ? AND nombre <> 0
+            ORDER BY 1, 2, 3, 4
+            """;
+
+    private static final String GROUP_BY = """
+            SELECT EXTRACT(YEAR FROM date_creation)::integer AS annee, EXTRACT(MONTH FROM date_creation)::integer AS mois,
+                   categorie, statut, count(*) AS nombre
+            FROM demandes
+            WHERE bureau_douanier_id = ?
+            GROUP BY 1, 2, 3, 4
+            ORDER BY 1, 2, 3, 4
+            """;
+
+    @Autowired private DemandeRollupService rollupService;
+    @Autowired private DemandeService demandeService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void triggerKeepsTheRollupEqualToAGroupBy() {
+        Importateur importateur = importateur("Importateur agrégat", "Société agrégat");
+        BureauDouanier bureau = bureau("RLU", "Bureau agrégat");
+        Devise devise = devise("EUR", "Euro");
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ids.add(demandeService.createDemande(i % 2 == 0 ? Categorie.IMPORTATION : Categorie.EXPORTATION,
+                    importateur, bureau, devise).getId());
+        }
+        assertThat(rollup(bureau)).isEqualTo(groupBy(bureau));
+
+        demandeService.updateStatut(ids.get(0), StatusDemande.ACCEPTEE, null);
+        demandeService.updateStatut(ids.get(1), StatusDemande.REFUSEE, "incomplet");
+        demandeService.updateStatut(ids.get(1), StatusDemande.ACCEPTEE, null);
+        demandeService.deleteDemande(ids.get(2));
+        jdbcTemplate.update("UPDATE demandes SET categorie = 'EXPORTATION' WHERE id = ?", ids.get(3));
+
+        List<Map<String, Object>> attendu = groupBy(bureau);
+        assertThat(attendu).extracting(r -> r.get("statut")).contains("ACCEPTEE", "EN_ATTENTE");
+        assertThat(rollup(bureau)).isEqualTo(attendu);
+
+        rollupService.rebuild();
+        assertThat(rollup(bureau)).isEqualTo(attendu);
+    }
+
+    @Test
+    void backfillIsMarkedDone() {
+        assertThat(jdbcTemplate.queryForObject("SELECT backfill_a_faire(?)", Boolean.class,
+                DemandeRollupService.BACKFILL)).isFalse();
+    }
+
+    private List<Map<String, Object>> rollup(BureauDouanier bureau) {
+        return jdbcTemplate.queryForList(ROLLUP, bureau.getId());
+    }
+
+    private List<Map<String, Object>> groupBy(BureauDouanier bureau) {
+        return jdbcTemplate.queryForList(GROUP_BY, bureau.getId());
+    }
+}
@@ -0,0 +1,78 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Marchandise;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Colonnes search_text / search_vector tenues par trigger (cf. db/demande-search.sql) : remplies à la création,
+ * recalculées quand l'importateur, le bureau, les marchandises ou la catégorie changent ; recherche par préfixe
+ * et classement par poids (importateur avant bureau).
+ */
+class DemandeSearchServiceTest extends ThrowawaySchemaTest {
+
+    @Autowired private DemandeSearchService searchService;
+    @Autowired private DemandeService demandeService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void searchColumnsFollowInsertsAndUpdates() {
+        BureauDouanier bureau = bureau("SR1", "Bureau Quillebeuf");
+        Devise devise = devise("EUR", "Euro");
+        Demande demande = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Nom Vernazza", "Société Vernazza"), bureau, devise);
+
+        assertThat(searchText(demande)).contains(demande.getNumeroEnregistrement().toLowerCase(),
+                "vernazza", "sr1", "quillebeuf", "importation");
+        assertThat(matches(demande, "vernazza:*")).isTrue();
+
+        jdbcTemplate.update("UPDATE importateur SET societe = 'Société Ombrellino' WHERE id = ?",
+                demande.getImportateur().getId());
+        assertThat(searchText(demande)).contains("ombrellino");
+        assertThat(matches(demande, "ombrellino")).isTrue();
+
+        jdbcTemplate.update("UPDATE bureau_douanier SET description = 'Bureau Fenouillet' WHERE id = ?", bureau.getId());
+        assertThat(searchText(demande)).contains("fenouillet").doesNotContain("quillebeuf");
+        assertThat(matches(demande, "fenouillet")).isTrue();
+
+        demandeService.addMarchandise(demande.getId(), new Marchandise("Café vert", 10.0, 250.0, "0901110077"));
+        assertThat(searchText(demande)).contains("0901110077");
+        assertThat(matches(demande, "0901110077")).isTrue();
+
+        jdbcTemplate.update("UPDATE demandes SET categorie = 'EXPORTATION' WHERE id = ?", demande.getId());
+        assertThat(searchText(demande)).contains("exportation").doesNotContain("importation");
+    }
+
+    @Test
+    void prefixesMatchAndImporterHitsRankAboveBureauHits() {
+        Devise devise = devise("EUR", "Euro");
+        Demande parBureau = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Nom quelconque", "Société quelconque"), bureau("SR2", "Bureau Tramontane"), devise);
+        Demande parImportateur = demandeService.createDemande(Categorie.IMPORTATION,
+                importateur("Nom Tramontane", "Tramontane Négoce"), bureau("SR3", "Bureau ordinaire"), devise);
+
+        assertThat(searchService.searchIds("tramont", null, 10))
+                .containsExactly(parImportateur.getId(), parBureau.getId());
+        assertThat(searchService.searchIds("tramontane négoce", null, 10))
+                .containsExactly(parImportateur.getId());
+        assertThat(searchService.searchIds("tramontanexyz", null, 10)).isEmpty();
+    }
+
+    private String searchText(Demande demande) {
+        return jdbcTemplate.queryForObject("SELECT search_text FROM demandes WHERE id = ?", String.class, demande.getId());
+    }
+
+    private boolean matches(Demande demande, String tsQuery) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT search_vector @@ to_tsquery('simple', ?) FROM demandes WHERE id = ?",
+                Boolean.class, tsQuery, demande.getId()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DemandeStatistiques;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Cache des statistiques hors transaction (invalidation immédiate) ; la requête est simulée. */
+class DemandeStatsServiceTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Supplier<DemandeStatistiques> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new DemandeStatistiques();
+        };
+    }
+
+    @Test
+    void servesFromMemoryUntilInvalidated() {
+        DemandeStatsService service = new DemandeStatsService(60_000, 10, nanos::get);
+
+        DemandeStatistiques first = service.cached("global", loader());
+        assertThat(service.cached("global", loader())).isSameAs(first);
+        assertThat(loads).hasValue(1);
+
+        service.invalidate();
+        assertThat(service.cached("global", loader())).isNotSameAs(first);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void resultComputedAcrossAnInvalidationIsNotKept() {
+        DemandeStatsService service = new DemandeStatsService(60_000, 10, nanos::get);
+
+        service.cached("global", () -> {
+            service.invalidate(); // commit concurrent pendant la lecture
+            return loader().get();
+        });
+        service.cached("global", loader());
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void entriesExpireAfterTtl() {
+        DemandeStatsService service = new DemandeStatsService(1_000, 10, nanos::get);
+        service.cached("bureau:1", loader());
+
+        nanos.addAndGet(999_000_000L);
+        service.cached("bureau:1", loader());
+        assertThat(loads).hasValue(1);
+
+        nanos.addAndGet(2_000_000L);
+        service.cached("bureau:1", loader());
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void keepsAtMostMaxEntriesScopes() {
+        DemandeStatsService service = new DemandeStatsService(60_000, 3, nanos::get);
+        for (long id = 1; id <= 10; id++) {
+            service.cached("importateur:" + id, loader());
+        }
+
+        assertThat(service.size()).isEqualTo(3);
+        service.cached("importateur:10", loader());
+        assertThat(loads).hasValue(10);
+    }
+}
@@ -0,0 +1,149 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.DTO.DispatchLogDTO;
+import com.a.portnet_back.Services.DispatchJournal.Evenement;
+import com.a.portnet_back.Services.DispatchJournal.Mouvement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Écriture dans la transaction du dispatch (synchronisation simulée) ; la base est simulée. */
+class DispatchJournalTest {
+
+    /** Exécute le PreparedStatementCreator sur une connexion factice et garde les tableaux de chaque INSERT. */
+    static class FakeJdbc extends JdbcTemplate {
+        final List<List<Object[]>> inserts = new ArrayList<>();
+
+        @Override
+        public int update(PreparedStatementCreator psc) {
+            List<Object[]> arrays = new ArrayList<>();
+            Connection con = proxy(Connection.class, (name, args) -> switch (name) {
+                case "createArrayOf" -> {
+                    arrays.add((Object[]) args[1]);
+                    yield proxy(Array.class, (n, a) -> null);
+                }
+                case "prepareStatement" -> proxy(PreparedStatement.class, (n, a) -> null);
+                default -> null;
+            });
+            try {
+                psc.createPreparedStatement(con);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            inserts.add(arrays);
+            return arrays.isEmpty() ? 0 : arrays.get(0).length;
+        }
+
+        interface Call {
+            Object invoke(String name, Object[] args);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, Call call) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (p, m, args) -> call.invoke(m.getName(), args));
+        }
+    }
+
+    private static List<Mouvement> mouvements(int n) {
+        return LongStream.rangeClosed(1, n).mapToObj(id -> new Mouvement(id, null, 7L)).toList();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void outsideATransactionEachRecordIsWrittenAtOnce() {
+        FakeJdbc jdbc = new FakeJdbc();
+        DispatchJournal journal = new DispatchJournal(jdbc, true);
+
+        journal.record(Evenement.AFFECTATION, "dispatch", mouvements(5));
+
+        assertThat(jdbc.inserts).hasSize(1);
+        assertThat(jdbc.inserts.get(0).get(1)).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void oneInsertPerTransactionBeforeCommit() {
+        FakeJdbc jdbc = new FakeJdbc();
+        DispatchJournal journal = new DispatchJournal(jdbc, true);
+        TransactionSynchronizationManager.initSynchronization();
+
+        journal.record(Evenement.PRISE, null, mouvements(2));
+        journal.record(Evenement.REAFFECTATION, "rééquilibrage", new Mouvement(9L, 7L, 8L));
+        assertThat(jdbc.inserts).isEmpty();
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(jdbc.inserts).hasSize(1);
+        assertThat(jdbc.inserts.get(0).get(0)).containsExactly("PRISE", "PRISE", "REAFFECTATION");
+        assertThat(TransactionSynchronizationManager.hasResource(journal)).isFalse();
+    }
+
+    @Test
+    void rolledBackTransactionWritesNothing() {
+        FakeJdbc jdbc = new FakeJdbc();
+        DispatchJournal journal = new DispatchJournal(jdbc, true);
+        TransactionSynchronizationManager.initSynchronization();
+
+        journal.record(Evenement.AFFECTATION, null, mouvements(3));
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(jdbc.inserts).isEmpty();
+        assertThat(TransactionSynchronizationManager.hasResource(journal)).isFalse();
+    }
+
+    @Test
+    void motifIsCutToTheColumnSize() {
+        FakeJdbc jdbc = new FakeJdbc();
+        DispatchJournal journal = new DispatchJournal(jdbc, true);
+
+        journal.record(Evenement.REAFFECTATION, "x".repeat(2_000), mouvements(1));
+
+        assertThat((String) jdbc.inserts.get(0).get(5)[0]).hasSize(DispatchJournal.MAX_MOTIF);
+        assertThat(DispatchJournal.truncate(null, 10)).isNull();
+        assertThat(DispatchJournal.truncate("court", 10)).isEqualTo("court");
+    }
+
+    @Test
+    void disabledJournalWritesNothing() {
+        FakeJdbc jdbc = new FakeJdbc();
+        new DispatchJournal(jdbc, false).record(Evenement.AFFECTATION, null, mouvements(3));
+        assertThat(jdbc.inserts).isEmpty();
+    }
+
+    @Test
+    void cursorRoundTripsAndRejectsGarbage() {
+        DispatchLogDTO last = new DispatchLogDTO();
+        last.setId(42L);
+        last.setDate(LocalDateTime.of(2025, 3, 1, 8, 30, 15, 123_456_000));
+
+        DispatchJournal.Cursor c = DispatchJournal.Cursor.decode(DispatchJournal.Cursor.encode(last));
+        assertThat(c).isEqualTo(new DispatchJournal.Cursor(last.getDate(), 42L));
+        assertThat(DispatchJournal.Cursor.decode(" ")).isNull();
+        assertThatThrownBy(() -> DispatchJournal.Cursor.decode("pas-un-curseur"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
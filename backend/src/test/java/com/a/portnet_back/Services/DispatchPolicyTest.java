@@ -0,0 +1,78 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchPolicyTest {
+
+    private static List<DispatchPolicy.PendingDemande> demandes(int n) {
+        LocalDateTime t0 = LocalDateTime.of(2025, 1, 15, 8, 0);
+        return LongStream.rangeClosed(1, n)
+                .mapToObj(i -> new DispatchPolicy.PendingDemande(i, t0.plusMinutes(i), 1L, Categorie.IMPORTATION))
+                .toList();
+    }
+
+    @Test
+    void leastLoadedEvensOutLoad() {
+        List<DispatchPolicy.AgentLoad> agents = List.of(
+                new DispatchPolicy.AgentLoad(10L, 3, 0),
+                new DispatchPolicy.AgentLoad(20L, 0, 0));
+
+        List<DispatchPolicy.Assignment> plan = new LeastLoadedDispatchPolicy().plan(demandes(5), agents);
+
+        assertThat(plan).extracting(DispatchPolicy.Assignment::agentId)
+                .containsExactly(20L, 20L, 20L, 10L, 20L);
+    }
+
+    @Test
+    void scoreFollowsIndexScoreAndLowersItPerAssignment() {
+        List<DispatchPolicy.AgentLoad> agents = List.of(
+                new DispatchPolicy.AgentLoad(10L, 0, 12.0),   // disponible et actif récemment
+                new DispatchPolicy.AgentLoad(20L, 0, 7.0));   // pénalisé
+
+        List<DispatchPolicy.Assignment> plan = new ScoreDispatchPolicy().plan(demandes(7), agents);
+
+        assertThat(plan).extracting(DispatchPolicy.Assignment::agentId)
+                .containsExactly(10L, 10L, 10L, 10L, 10L, 10L, 20L);
+    }
+
+    @Test
+    void affinityRestrictsCandidatesPerDemande() {
+        LocalDateTime t0 = LocalDateTime.of(2025, 1, 15, 8, 0);
+        List<DispatchPolicy.PendingDemande> demandes = List.of(
+                new DispatchPolicy.PendingDemande(1L, t0, 1L, Categorie.IMPORTATION),
+                new DispatchPolicy.PendingDemande(2L, t0.plusMinutes(1), 2L, Categorie.IMPORTATION),
+                new DispatchPolicy.PendingDemande(3L, t0.plusMinutes(2), 1L, Categorie.IMPORTATION),
+                new DispatchPolicy.PendingDemande(4L, t0.plusMinutes(3), 3L, Categorie.EXPORTATION));
+        // bureau 1 : spécialiste 10 puis généraliste 20 ; bureau 2 : pas de spécialiste, généraliste 20 ;
+        // bureau 3 : repli « attente », seul le spécialiste 30 (absent) convient
+        DispatchPolicy.Affinity affinity = d -> switch (d.bureauId().intValue()) {
+            case 1 -> List.<LongPredicate>of(id -> id == 10L, id -> id == 20L);
+            case 2 -> List.<LongPredicate>of(id -> false, id -> id == 20L);
+            default -> List.<LongPredicate>of(id -> id == 30L);
+        };
+        List<DispatchPolicy.AgentLoad> agents = List.of(
+                new DispatchPolicy.AgentLoad(10L, 5, 1.0),    // spécialiste chargé
+                new DispatchPolicy.AgentLoad(20L, 0, 12.0));  // généraliste libre
+
+        for (DispatchPolicy policy : List.of(new LeastLoadedDispatchPolicy(), new ScoreDispatchPolicy())) {
+            assertThat(policy.plan(demandes, agents, affinity)).as(policy.name()).containsExactly(
+                    new DispatchPolicy.Assignment(1L, 10L),
+                    new DispatchPolicy.Assignment(2L, 20L),
+                    new DispatchPolicy.Assignment(3L, 10L));
+        }
+    }
+
+    @Test
+    void noAgentLeavesEverythingPending() {
+        assertThat(new LeastLoadedDispatchPolicy().plan(demandes(3), List.of())).isEmpty();
+        assertThat(new ScoreDispatchPolicy().plan(demandes(3), List.of())).isEmpty();
+    }
+}
@@ -0,0 +1,111 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Agent;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.AgentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rejeu d'un historique semé dans un schéma jetable (cf. ThrowawaySchemaTest) à travers chaque politique de
+ * dispatch, en auto-dispatch et en passages périodiques : demandes, une partie déjà traitées (durées observées),
+ * agents et leurs présences.
+ * Lancement : mvn test -Dtest=DispatchReplayBenchmarkTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class DispatchReplayBenchmarkTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchReplayBenchmarkTest.class);
+
+    private static final int DEMANDES = 300;
+    private static final int AGENTS = 6;
+
+    @Autowired private DispatchReplayLoader loader;
+    @Autowired private List<DispatchPolicy> policies;
+    @Autowired private DemandeService demandeService;
+    @Autowired private AgentRepository agentRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void replayHistoryThroughEveryPolicy() {
+        LocalDateTime from = LocalDateTime.now().minusMinutes(1);
+        seed();
+        LocalDateTime to = LocalDateTime.now().plusMinutes(1);
+
+        DispatchSimulator.Workload w = loader.load(from, to);
+        assertThat(w.arrivals()).hasSizeGreaterThanOrEqualTo(DEMANDES);
+        assertThat(w.agentIds()).hasSizeGreaterThanOrEqualTo(AGENTS);
+
+        List<DispatchSimulator.Result> results = new ArrayList<>();
+        for (DispatchPolicy policy : policies) {
+            for (Duration interval : new Duration[]{null, Duration.ofSeconds(30)}) {
+                results.add(new DispatchSimulator(policy, DispatchSimulator.ScoreFunction.INDEX,
+                        new DispatchSimulator.Settings(interval, 10, 50, Duration.ofMinutes(60))).run(w));
+            }
+        }
+        log.info("{} demandes, {} agents, {} présences\n{}", w.arrivals().size(), w.agentIds().size(),
+                w.presences().size(), DispatchSimulator.table(results));
+
+        for (DispatchSimulator.Result r : results) {
+            assertThat(r.demandes()).isEqualTo(w.arrivals().size());
+        }
+    }
+
+    /**
+     * Demandes d'abord, puis agents activés (le dispatch automatique n'a donc personne à qui les confier) ;
+     * une demande sur trois est marquée traitée, avec une durée de 5 à 40 minutes ; chaque agent a une présence
+     * de huit heures.
+     */
+    private void seed() {
+        Importateur importateur = importateur("Importateur rejeu", "Société rejeu");
+        BureauDouanier bureau = bureau("RPL", "Bureau rejeu");
+        Devise devise = devise("JPY", "Yen");
+
+        List<Long> demandeIds = new ArrayList<>(DEMANDES);
+        for (int i = 0; i < DEMANDES; i++) {
+            Demande d = demandeService.createDemande(i % 3 == 0 ? Categorie.EXPORTATION : Categorie.IMPORTATION,
+                    importateur, bureau, devise);
+            demandeIds.add(d.getId());
+        }
+
+        List<Long> agentIds = new ArrayList<>(AGENTS);
+        for (int i = 0; i < AGENTS; i++) {
+            Agent agent = new Agent("Agent rejeu " + i, "replay" + i + "@test.local", null, null);
+            agent.setActivated(true);
+            agentIds.add(agentRepository.save(agent).getId());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < DEMANDES; i += 3) {
+            LocalDateTime started = now.minusMinutes(45);
+            jdbcTemplate.update("""
+                    INSERT INTO task_assignments (agent_id, demande_id, status, created_at, started_at, finished_at)
+                    VALUES (?, ?, 'DONE', ?, ?, ?)
+                    """, agentIds.get(i % AGENTS), demandeIds.get(i), Timestamp.valueOf(started),
+                    Timestamp.valueOf(started), Timestamp.valueOf(started.plusMinutes(5 + i % 36)));
+        }
+        for (Long agentId : agentIds) {
+            jdbcTemplate.update("""
+                    INSERT INTO agent_activity_logs (agent_id, activity_type, timestamp, success, duration_seconds)
+                    VALUES (?, 'LOGIN', ?, true, 28800)
+                    """, agentId, Timestamp.valueOf(now.minusMinutes(30)));
+        }
+    }
+}
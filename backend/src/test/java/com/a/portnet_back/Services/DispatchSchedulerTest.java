@@ -0,0 +1,34 @@
+package com.a.portnet_back.Services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchSchedulerTest {
+
+    // min 1 s, base 30 s, idle 60 s, lots de 50
+    private final DispatchScheduler scheduler = new DispatchScheduler(null, null, null, 1_000, 30_000, 60_000, 50);
+
+    @Test
+    void intervalShrinksWithTheBacklog() {
+        assertThat(scheduler.nextInterval(0, 50)).isEqualTo(60_000);      // file vide : repos
+        assertThat(scheduler.nextInterval(40, 50)).isEqualTo(30_000);     // moins d'un lot : base
+        assertThat(scheduler.nextInterval(300, 50)).isEqualTo(5_000);
+        assertThat(scheduler.nextInterval(100_000, 50)).isEqualTo(1_000); // file profonde : quasi continu
+    }
+
+    @Test
+    void noAssignmentBacksOffToBase() {
+        assertThat(scheduler.nextInterval(100_000, 0)).isEqualTo(30_000);
+    }
+
+    @Test
+    void readsAssignedCountFromBothModes() {
+        assertThat(DispatchScheduler.assigned(Map.of("assigned", 12))).isEqualTo(12);
+        assertThat(DispatchScheduler.assigned(Map.of("details", List.of(Map.of(), Map.of())))).isEqualTo(2);
+        assertThat(DispatchScheduler.assigned(Map.of("message", "ok"))).isEqualTo(-1);
+    }
+}
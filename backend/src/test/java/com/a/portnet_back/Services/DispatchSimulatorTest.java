@@ -0,0 +1,122 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchSimulatorTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DispatchSimulatorTest.class);
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 15, 8, 0);
+    private static final Duration DIX_MINUTES = Duration.ofMinutes(10);
+
+    private static DispatchSimulator.Arrival arrival(long id, LocalDateTime at) {
+        return new DispatchSimulator.Arrival(id, at, 1L, Categorie.IMPORTATION, DIX_MINUTES);
+    }
+
+    private static DispatchSimulator simulator(DispatchPolicy policy, Duration interval) {
+        return new DispatchSimulator(policy, DispatchSimulator.ScoreFunction.INDEX,
+                new DispatchSimulator.Settings(interval, 10, 50, Duration.ofMinutes(60)));
+    }
+
+    @Test
+    void agentsWorkTheirAssignmentsOneAtATime() {
+        DispatchSimulator.Workload w = new DispatchSimulator.Workload(List.of(1L, 2L),
+                List.of(arrival(1, T0), arrival(2, T0), arrival(3, T0), arrival(4, T0)), List.of());
+
+        DispatchSimulator.Result r = simulator(new LeastLoadedDispatchPolicy(), null).run(w);
+
+        assertThat(r.started()).isEqualTo(4);
+        assertThat(r.tasksPerAgent()).containsEntry(1L, 2).containsEntry(2L, 2);
+        assertThat(r.loadVariance()).isZero();
+        assertThat(r.waitP50Min()).isZero();
+        assertThat(r.waitMaxMin()).isEqualTo(10.0);
+        assertThat(r.assignP99Min()).isZero();
+        assertThat(r.dispatchCalls()).isEqualTo(4);
+    }
+
+    @Test
+    void demandesWaitForAnAgentToBePresent() {
+        DispatchSimulator.Workload w = new DispatchSimulator.Workload(List.of(1L),
+                List.of(arrival(1, T0)),
+                List.of(new DispatchSimulator.Presence(1L, T0.plusMinutes(30), T0.plusHours(2))));
+
+        DispatchSimulator.Result r = simulator(new ScoreDispatchPolicy(), null).run(w);
+
+        assertThat(r.started()).isEqualTo(1);
+        assertThat(r.assignP50Min()).isEqualTo(30.0);
+        assertThat(r.waitMaxMin()).isEqualTo(30.0);
+    }
+
+    @Test
+    void absentAgentsNeverStartAnything() {
+        DispatchSimulator.Workload w = new DispatchSimulator.Workload(List.of(1L),
+                List.of(arrival(1, T0.plusHours(3))),
+                List.of(new DispatchSimulator.Presence(1L, T0, T0.plusHours(1))));
+
+        DispatchSimulator.Result r = simulator(new ScoreDispatchPolicy(), Duration.ofMinutes(5)).run(w);
+
+        assertThat(r.started()).isZero();
+        assertThat(r.neverStarted()).isEqualTo(1);
+        assertThat(r.dispatchCalls()).isZero();
+    }
+
+    @Test
+    void periodicPassesDelayAssignment() {
+        DispatchSimulator.Workload w = new DispatchSimulator.Workload(List.of(1L, 2L),
+                List.of(arrival(1, T0), arrival(2, T0.plusMinutes(1))), List.of());
+
+        DispatchSimulator.Result r = simulator(new LeastLoadedDispatchPolicy(), Duration.ofMinutes(5)).run(w);
+
+        assertThat(r.started()).isEqualTo(2);
+        // 1 affectée au passage de T0, 2 à celui de T0+5
+        assertThat(r.assignP99Min()).isEqualTo(4.0);
+        assertThat(r.waitMaxMin()).isEqualTo(4.0);
+    }
+
+    @Test
+    void syntheticWorkloadIsReproducible() {
+        DispatchSimulator.Workload a = DispatchSimulator.synthetic(42, 200, 5, 20, Duration.ofMinutes(12), 3);
+        DispatchSimulator.Workload b = DispatchSimulator.synthetic(42, 200, 5, 20, Duration.ofMinutes(12), 3);
+
+        DispatchSimulator.Result ra = simulator(new ScoreDispatchPolicy(), null).run(a);
+        DispatchSimulator.Result rb = simulator(new ScoreDispatchPolicy(), null).run(b);
+
+        assertThat(ra.started()).isEqualTo(200);
+        assertThat(ra.tasksPerAgent()).isEqualTo(rb.tasksPerAgent());
+        assertThat(ra.waitP99Min()).isEqualTo(rb.waitP99Min());
+    }
+
+    /**
+     * Comparaison des politiques sur une charge synthétique chargée (≈ 85 % d'occupation).
+     * Lancement : mvn test -Dtest=DispatchSimulatorTest -Dportnet.bench=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+    void comparePoliciesOnSyntheticLoad() {
+        DispatchSimulator.Workload w = DispatchSimulator.synthetic(7, 50_000, 40, 170, Duration.ofMinutes(12), 12);
+
+        List<DispatchSimulator.Result> results = new ArrayList<>();
+        for (DispatchPolicy policy : List.of(new LeastLoadedDispatchPolicy(), new ScoreDispatchPolicy())) {
+            for (Duration interval : new Duration[]{null, Duration.ofSeconds(30)}) {
+                results.add(simulator(policy, interval).run(w));
+            }
+        }
+        log.info("Charge synthétique, 50 000 demandes\n{}", DispatchSimulator.table(results));
+
+        for (DispatchSimulator.Result r : results) {
+            assertThat(r.started()).isEqualTo(50_000);
+            assertThat(r.cpuMicrosPerDemande()).isLessThan(1_000);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.a.portnet_back.Services;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Dispatcher bouchon local (HttpServer du JDK) : réponses programmées appel par appel. */
+class DispatcherClientTest {
+
+    private record Reply(int status, long delayMs, String body) {}
+
+    private static final Reply OK = new Reply(200, 0, "{\"message\":\"2 demande(s) assignée(s) avec succès.\"}");
+    private static final Reply UNAVAILABLE = new Reply(503, 0, "indisponible");
+
+    private final ConcurrentLinkedQueue<Reply> script = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger unavailable = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private HttpServer stub;
+    private WebClient webClient;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.createContext("/dispatcher", exchange -> {
+            hits.incrementAndGet();
+            Reply r = script.isEmpty() ? OK : script.poll();
+            if (r.status() == 503) unavailable.incrementAndGet();
+            try {
+                Thread.sleep(r.delayMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = r.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", r.status() == 200 ? "application/json" : "text/plain");
+            exchange.sendResponseHeaders(r.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.start();
+        // une connexion par appel : une connexion gardée vivante que le bouchon ferme entre deux tests ou deux
+        // appels ferait échouer une tentative (erreur transitoire de plus, reprise non programmée)
+        webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(ConnectionProvider.newConnection())))
+                .baseUrl("http://127.0.0.1:" + stub.getAddress().getPort())
+                .build();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+    }
+
+    private DispatcherClient client(int maxRetries, int maxConcurrent, int failureThreshold) {
+        return new DispatcherClient(webClient, "/dispatcher", Duration.ofMillis(500), maxRetries, Duration.ofMillis(5),
+                maxConcurrent, new DispatcherClient.CircuitBreaker(failureThreshold, 10_000, now::get));
+    }
+
+    @Test
+    void successIsCountedWithItsLatency() {
+        DispatcherClient client = client(2, 2, 5);
+
+        Map<String, Object> res = client.run(50).block(Duration.ofSeconds(5));
+
+        assertThat(res).containsKey("message");
+        assertThat(client.metrics().count(DispatcherClient.Outcome.SUCCES)).isEqualTo(1);
+        assertThat(client.stats()).containsEntry("appels", 1L).containsEntry("circuit", "FERME");
+    }
+
+    @Test
+    void transientErrorsAreRetriedWithinTheBudget() {
+        DispatcherClient client = client(2, 2, 5);
+        script.add(UNAVAILABLE);
+        script.add(UNAVAILABLE);
+
+        assertThat(client.run(50).block(Duration.ofSeconds(5))).containsKey("message");
+        assertThat(unavailable.get()).isEqualTo(2);
+        assertThat(script).isEmpty();
+        assertThat(hits.get()).isEqualTo(3);
+        assertThat(client.stats()).containsEntry("reprises", 2L);
+
+        script.add(UNAVAILABLE);
+        script.add(UNAVAILABLE);
+        script.add(UNAVAILABLE);
+        assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)))
+                .isInstanceOf(DispatcherClient.DispatcherCallException.class);
+        assertThat(unavailable.get()).isEqualTo(5);
+        assertThat(script).isEmpty();
+        assertThat(hits.get()).isEqualTo(6);
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        DispatcherClient client = client(2, 2, 5);
+        script.add(new Reply(400, 0, "limit invalide"));
+
+        assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)))
+                .isInstanceOf(DispatcherClient.DispatcherCallException.class)
+                .hasMessageContaining("400");
+        assertThat(hits.get()).isEqualTo(1);
+        assertThat(client.metrics().count(DispatcherClient.Outcome.ERREUR_CLIENT)).isEqualTo(1);
+    }
+
+    @Test
+    void slowDispatcherTimesOutPerAttempt() {
+        DispatcherClient client = client(0, 2, 5);
+        script.add(new Reply(200, 2_000, "{}"));
+
+        long t0 = System.nanoTime();
+        assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)));
+        assertThat(Duration.ofNanos(System.nanoTime() - t0)).isLessThan(Duration.ofMillis(1_500));
+        assertThat(client.metrics().count(DispatcherClient.Outcome.ERREUR_TRANSITOIRE)).isEqualTo(1);
+    }
+
+    @Test
+    void breakerOpensThenLetsOneTrialThrough() {
+        DispatcherClient client = client(0, 2, 2);
+        script.add(UNAVAILABLE);
+        script.add(UNAVAILABLE);
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)));
+        }
+
+        assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)))
+                .isInstanceOf(DispatcherClient.DispatcherUnavailableException.class);
+        assertThat(hits.get()).isEqualTo(2);
+        assertThat(client.stats()).containsEntry("circuit", "OUVERT");
+
+        now.addAndGet(10_000);
+        assertThat(client.run(50).block(Duration.ofSeconds(5))).containsKey("message");
+        assertThat(client.stats()).containsEntry("circuit", "FERME");
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheLimit() throws Exception {
+        DispatcherClient client = client(0, 1, 5);
+        script.add(new Reply(200, 300, "{}"));
+
+        CountDownLatch done = new CountDownLatch(1);
+        Mono<Map<String, Object>> slow = client.run(50);
+        slow.subscribe(r -> done.countDown(), e -> done.countDown());
+
+        assertThatThrownBy(() -> client.run(50).block(Duration.ofSeconds(5)))
+                .isInstanceOf(DispatcherClient.DispatcherUnavailableException.class);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.metrics().count(DispatcherClient.Outcome.REFUS_BULKHEAD)).isEqualTo(1);
+        // place rendue juste après le signal de fin de l'appel lent (doFinally)
+        for (int i = 0; i < 100 && (int) client.stats().get("placesLibres") == 0; i++) Thread.sleep(10);
+        assertThat(client.run(50).block(Duration.ofSeconds(5))).isNotNull();
+    }
+}
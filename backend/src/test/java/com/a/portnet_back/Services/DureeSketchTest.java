@@ -0,0 +1,61 @@
+package com.a.portnet_back.Services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DureeSketchTest {
+
+    @Test
+    void everyBucketValueIsWithinAlphaOfItsDurations() {
+        for (long seconds : new long[]{1, 2, 59, 60, 61, 3_599, 3_600, 86_400, 5_184_000}) {
+            double estimate = DureeSketch.value(DureeSketch.index(seconds));
+            assertThat(Math.abs(estimate - seconds) / seconds).isLessThanOrEqualTo(DureeSketch.ALPHA + 1e-9);
+        }
+        assertThat(DureeSketch.value(DureeSketch.index(0))).isZero();
+    }
+
+    @Test
+    void quantilesMatchExactRanksWithinAlpha() {
+        Random random = new Random(11);
+        long[] values = new long[20_000];
+        DureeSketch sketch = new DureeSketch();
+        for (int i = 0; i < values.length; i++) {
+            // durées log-normales : de quelques minutes à quelques jours
+            values[i] = Math.round(Math.exp(7 + 1.5 * random.nextGaussian()));
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            assertThat(sketch.quantile(q)).isCloseTo(exact, within(exact * DureeSketch.ALPHA + 1));
+        }
+        assertThat(sketch.count()).isEqualTo(values.length);
+    }
+
+    @Test
+    void mergingDaysEqualsSketchingTheWholePeriod() {
+        Random random = new Random(3);
+        DureeSketch lundi = new DureeSketch();
+        DureeSketch mardi = new DureeSketch();
+        DureeSketch semaine = new DureeSketch();
+        for (int i = 0; i < 1_000; i++) {
+            long s = random.nextInt(7_200);
+            (i % 2 == 0 ? lundi : mardi).add(s);
+            semaine.add(s);
+        }
+
+        DureeSketch merged = new DureeSketch().merge(lundi).merge(mardi);
+
+        assertThat(merged.count()).isEqualTo(semaine.count());
+        assertThat(merged.meanSeconds()).isEqualTo(semaine.meanSeconds());
+        for (double q : new double[]{0.0, 0.5, 0.9, 0.99, 1.0}) {
+            assertThat(merged.quantile(q)).isEqualTo(semaine.quantile(q));
+        }
+    }
+}
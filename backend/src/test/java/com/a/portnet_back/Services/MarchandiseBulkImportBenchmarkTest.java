@@ -0,0 +1,69 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Demande;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Models.Marchandise;
+import com.a.portnet_back.Repositories.DemandeRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Import d'une facture de 5 000 lignes via addMarchandises (batch JDBC), dans un schéma jetable
+ * (cf. ThrowawaySchemaTest).
+ * Lancement : mvn test -Dtest=MarchandiseBulkImportBenchmarkTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class MarchandiseBulkImportBenchmarkTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MarchandiseBulkImportBenchmarkTest.class);
+
+    private static final int LIGNES = 5_000;
+
+    @Autowired private DemandeService demandeService;
+    @Autowired private DemandeRepository demandeRepository;
+
+    @Test
+    void importsFiveThousandLinesUnderOneSecond() {
+        Importateur importateur = importateur("Importateur import", "Société import");
+        BureauDouanier bureau = bureau("IMX", "Bureau import");
+        Devise devise = devise("GBP", "Livre sterling");
+
+        // chauffe (JIT, pool de connexions, séquence)
+        Demande warmup = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+        demandeService.addMarchandises(warmup.getId(), lignes(200));
+
+        Demande demande = demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise);
+        long t0 = System.nanoTime();
+        demandeService.addMarchandises(demande.getId(), lignes(LIGNES));
+        long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+        log.info("addMarchandises: {} lignes en {} ms", LIGNES, elapsedMs);
+
+        Demande relue = demandeRepository.findById(demande.getId()).orElseThrow();
+        assertThat(relue.getNombreMarchandises()).isEqualTo(LIGNES);
+        assertThat(elapsedMs).isLessThan(1_000);
+    }
+
+    private static List<Marchandise> lignes(int n) {
+        return IntStream.range(0, n)
+                .mapToObj(i -> {
+                    Marchandise m = new Marchandise("Article " + i, 1.0 + i % 10, 100.0 + i, "8471300000");
+                    m.setUniteMesure("unité");
+                    m.setPoidsNet(1.5);
+                    m.setPoidsBrut(2.0);
+                    return m;
+                })
+                .toList();
+    }
+}
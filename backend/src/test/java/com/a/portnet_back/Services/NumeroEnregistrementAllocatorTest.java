@@ -0,0 +1,123 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NumeroEnregistrementAllocatorTest {
+
+    /** Séquence en mémoire avec le même INCREMENT BY que demande_numero_*_seq. */
+    private static NumeroEnregistrementAllocator.BlockSource sequence(AtomicInteger nextvalCalls) {
+        AtomicLong imp = new AtomicLong(1);
+        AtomicLong exp = new AtomicLong(1);
+        return prefix -> {
+            nextvalCalls.incrementAndGet();
+            AtomicLong seq = "IMP".equals(prefix) ? imp : exp;
+            return seq.getAndAdd(NumeroEnregistrementAllocator.BLOCK_SIZE);
+        };
+    }
+
+    /** Horloge qui avance d'une seconde toutes les {@code callsPerSecond} lectures. */
+    private static Clock tickingClock(int callsPerSecond) {
+        AtomicLong calls = new AtomicLong();
+        Instant base = Instant.parse("2025-03-01T10:00:00Z");
+        return new Clock() {
+            @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+            @Override public Clock withZone(ZoneId zone) { return this; }
+            @Override public Instant instant() { return base.plusSeconds(calls.getAndIncrement() / callsPerSecond); }
+        };
+    }
+
+    @Test
+    void keepsTheExistingFormat() {
+        Clock fixed = Clock.fixed(Instant.parse("2025-03-01T10:15:30Z"), ZoneOffset.UTC);
+        var allocator = new NumeroEnregistrementAllocator(sequence(new AtomicInteger()), fixed,
+                NumeroEnregistrementAllocator.BLOCK_SIZE);
+
+        assertThat(allocator.next(Categorie.IMPORTATION)).isEqualTo("IMP20250301101530001");
+        assertThat(allocator.next(Categorie.IMPORTATION)).isEqualTo("IMP20250301101530002");
+        assertThat(allocator.next(Categorie.EXPORTATION)).isEqualTo("EXP20250301101530001");
+    }
+
+    @Test
+    void reservesOneBlockPerSequenceCall() {
+        AtomicInteger nextvalCalls = new AtomicInteger();
+        Clock fixed = Clock.fixed(Instant.parse("2025-03-01T10:15:30Z"), ZoneOffset.UTC);
+        var allocator = new NumeroEnregistrementAllocator(sequence(nextvalCalls), fixed,
+                NumeroEnregistrementAllocator.BLOCK_SIZE);
+
+        for (int i = 0; i < 100; i++) {
+            allocator.next(Categorie.IMPORTATION);
+        }
+        assertThat(nextvalCalls.get()).isEqualTo(100 / NumeroEnregistrementAllocator.BLOCK_SIZE);
+    }
+
+    @Test
+    void concurrentAllocationsNeverCollide() throws Exception {
+        int threads = 16;
+        int perThread = 5_000;
+        AtomicInteger nextvalCalls = new AtomicInteger();
+        var allocator = new NumeroEnregistrementAllocator(sequence(nextvalCalls), tickingClock(400),
+                NumeroEnregistrementAllocator.BLOCK_SIZE);
+
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Categorie categorie = t % 2 == 0 ? Categorie.IMPORTATION : Categorie.EXPORTATION;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    String numero = allocator.next(categorie);
+                    assertThat(seen.add(numero)).as("doublon %s", numero).isTrue();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        int total = threads * perThread;
+        assertThat(seen).hasSize(total);
+        assertThat(seen).allMatch(n -> n.matches("(IMP|EXP)\\d{14}\\d{3}"));
+        // au plus un bloc entamé abandonné par préfixe et par seconde (400 lectures d'horloge par seconde)
+        assertThat(nextvalCalls.get())
+                .isLessThanOrEqualTo(total / NumeroEnregistrementAllocator.BLOCK_SIZE + 2 * (total / 400 + 1));
+    }
+
+    @Test
+    void abandonedBlockIsReplacedByANewSequenceValue() {
+        AtomicInteger nextvalCalls = new AtomicInteger();
+        Clock fixed = Clock.fixed(Instant.parse("2025-03-01T10:15:30Z"), ZoneOffset.UTC);
+        var allocator = new NumeroEnregistrementAllocator(sequence(nextvalCalls), fixed,
+                NumeroEnregistrementAllocator.BLOCK_SIZE);
+
+        assertThat(allocator.next(Categorie.IMPORTATION)).isEqualTo("IMP20250301101530001");
+        allocator.abandonBlock(Categorie.IMPORTATION);
+
+        assertThat(allocator.next(Categorie.IMPORTATION)).isEqualTo("IMP20250301101530021");
+        assertThat(nextvalCalls.get()).isEqualTo(2);
+    }
+}
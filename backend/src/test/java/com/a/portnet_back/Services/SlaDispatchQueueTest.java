@@ -0,0 +1,158 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlaDispatchQueueTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SlaDispatchQueueTest.class);
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 15, 8, 0);
+
+    @Test
+    void weightsShortenTheSla() {
+        // exportation ×0.5, bureau 7 ×0.5, montant ≥ 10 000 ×0.5
+        SlaPolicy policy = new SlaPolicy(72, 1.0, 0.5, "7:0.5", 10_000, 0.5, 0.0);
+
+        assertThat(policy.slaHours(Categorie.IMPORTATION, 1L, 0)).isEqualTo(72.0);
+        assertThat(policy.slaHours(Categorie.EXPORTATION, 7L, 20_000)).isEqualTo(9.0);
+        assertThat(policy.echeance(T0, Categorie.EXPORTATION, null, 0)).isEqualTo(T0.plusHours(36));
+    }
+
+    @Test
+    void closestDeadlineFirstThenAgingTowardsFifo() {
+        SlaPolicy urgentFirst = new SlaPolicy(72, 1.0, 0.25, "", 0, 1.0, 0.0);
+        SlaPolicy fifo = new SlaPolicy(72, 1.0, 0.25, "", 0, 1.0, 1.0);
+
+        // 1 : importation créée à T0 (échéance T0+72h) ; 2 : exportation créée 10h plus tard (échéance T0+28h)
+        LocalDateTime e1 = urgentFirst.echeance(T0, Categorie.IMPORTATION, null, 0);
+        LocalDateTime e2 = urgentFirst.echeance(T0.plusHours(10), Categorie.EXPORTATION, null, 0);
+
+        SlaDispatchQueue queue = new SlaDispatchQueue(urgentFirst);
+        queue.offer(1L, urgentFirst.priorite(T0, e1));
+        queue.offer(2L, urgentFirst.priorite(T0.plusHours(10), e2));
+        assertThat(queue.peek(2)).containsExactly(2L, 1L);
+
+        queue = new SlaDispatchQueue(fifo);
+        queue.offer(1L, fifo.priorite(T0, e1));
+        queue.offer(2L, fifo.priorite(T0.plusHours(10), e2));
+        assertThat(queue.peek(2)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void reofferRepositionsInsteadOfDuplicating() {
+        SlaDispatchQueue queue = new SlaDispatchQueue(new SlaPolicy(72, 1, 1, "", 0, 1, 0));
+        queue.offer(1L, T0.plusHours(5));
+        queue.offer(2L, T0.plusHours(3));
+        queue.offer(1L, T0.plusHours(1));
+
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.poll()).contains(1L);
+        assertThat(queue.poll()).contains(2L);
+        assertThat(queue.poll()).isEmpty();
+    }
+
+    /** Lancement : mvn test -Dtest=SlaDispatchQueueTest -Dportnet.bench=true */
+    @Test
+    @EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+    void dequeueStaysUnderAMillisecondWith100kPending() {
+        int n = 100_000;
+        SlaDispatchQueue queue = new SlaDispatchQueue(new SlaPolicy(72, 1, 1, "", 0, 1, 0));
+        Random random = new Random(42);
+        for (long id = 1; id <= n; id++) {
+            queue.offer(id, T0.plusSeconds(random.nextInt(30 * 24 * 3600)));
+        }
+
+        // échauffement JIT
+        for (int i = 0; i < 10_000; i++) queue.peek(32);
+
+        long peekNanos = 0;
+        long pollNanos = 0;
+        long pire = 0;
+        for (int i = 0; i < n; i++) {
+            long t = System.nanoTime();
+            queue.peek(32);
+            long t1 = System.nanoTime();
+            queue.poll();
+            long t2 = System.nanoTime();
+            peekNanos += t1 - t;
+            pollNanos += t2 - t1;
+            pire = Math.max(pire, t2 - t);
+        }
+
+        log.info(String.format("%d demandes : peek(32) %.2f µs, poll %.2f µs en moyenne, pire %.1f µs",
+                n, peekNanos / 1_000.0 / n, pollNanos / 1_000.0 / n, pire / 1_000.0));
+        assertThat(queue.size()).isZero();
+        assertThat((peekNanos + pollNanos) / n).isLessThan(1_000_000);
+    }
+
+    @Test
+    void rebuildKeepsMovesAppliedWhileTheTableWasRead() {
+        SlaPolicy policy = new SlaPolicy(72, 1, 1, "", 0, 1, 0);
+        // la table lue contient encore 1 et 2 ; pendant la lecture, 1 est réclamée et 3 entre dans la file
+        QueueTable table = new QueueTable(List.of(1L, 2L));
+        SlaDispatchQueue queue = new SlaDispatchQueue(policy, table);
+        table.duringRead = () -> {
+            queue.removeAfterCommit(List.of(1L));
+            queue.offer(3L, T0);
+        };
+
+        queue.rebuild();
+
+        assertThat(queue.peek(10)).containsExactly(3L, 2L);
+    }
+
+    /** Table dispatch_queue simulée : rien à compléter ni à retirer, lignes (id, T0 + id heures) relues. */
+    static class QueueTable extends JdbcTemplate {
+        private final List<Long> ids;
+        Runnable duringRead = () -> {};
+
+        QueueTable(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper) {
+            return List.of();
+        }
+
+        @Override
+        public int update(String sql) {
+            return 0;
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            duringRead.run();
+            try {
+                for (Long id : ids) rch.processRow(row(id));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static ResultSet row(long id) {
+            Object[] cols = {id, Timestamp.valueOf(T0.plusHours(id)), null, null};
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "getLong", "getTimestamp", "getString", "getObject" -> cols[(Integer) args[0] - 1];
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
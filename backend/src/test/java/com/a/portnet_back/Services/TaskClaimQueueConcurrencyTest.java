@@ -0,0 +1,111 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Agent;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.AgentRepository;
+import com.a.portnet_back.Repositories.TaskAssignmentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Réclamations simultanées dans un schéma jetable (cf. ThrowawaySchemaTest) : aucune demande prise deux fois,
+ * aucune erreur d'unicité. Chaque transaction est annulée à la fin (les verrous sont tenus jusque-là, comme en
+ * production). Les agents semés restent inactifs pour que le dispatch automatique ne prenne rien avant eux.
+ * Lancement : mvn test -Dtest=TaskClaimQueueConcurrencyTest -Dportnet.bench=true
+ */
+@EnabledIfSystemProperty(named = "portnet.bench", matches = "true")
+class TaskClaimQueueConcurrencyTest extends ThrowawaySchemaTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskClaimQueueConcurrencyTest.class);
+
+    private static final int AGENTS = 8;
+    private static final int PAR_AGENT = 3;
+    // moins que AGENTS * PAR_AGENT : les réclamations se disputent réellement les mêmes lignes
+    private static final int DEMANDES = 20;
+
+    @Autowired private TaskClaimQueue claimQueue;
+    @Autowired private DemandeService demandeService;
+    @Autowired private AgentRepository agentRepository;
+    @Autowired private TaskAssignmentRepository assignmentRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentClaimsNeverOverlap() throws Exception {
+        List<Long> agentIds = seed();
+
+        CyclicBarrier depart = new CyclicBarrier(AGENTS);
+        CyclicBarrier fin = new CyclicBarrier(AGENTS);
+        ExecutorService pool = Executors.newFixedThreadPool(AGENTS);
+        try {
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (Long agentId : agentIds) {
+                results.add(pool.submit(() -> new TransactionTemplate(transactionManager).execute(status -> {
+                    try {
+                        depart.await(10, TimeUnit.SECONDS);
+                        List<Long> demandes = claimQueue.claimNext(agentId, PAR_AGENT).stream()
+                                .map(id -> assignmentRepository.findByIdEager(id).orElseThrow().getDemande().getId())
+                                .toList();
+                        fin.await(10, TimeUnit.SECONDS);
+                        return demandes;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        status.setRollbackOnly();
+                    }
+                })));
+            }
+
+            Set<Long> vues = new HashSet<>();
+            int total = 0;
+            for (Future<List<Long>> f : results) {
+                List<Long> demandes = f.get(30, TimeUnit.SECONDS);
+                total += demandes.size();
+                vues.addAll(demandes);
+            }
+            log.info("{} agents : {} demandes réclamées sur {}", AGENTS, total, DEMANDES);
+            assertThat(vues).hasSize(total);
+            // le schéma est partagé avec les autres tests : il peut rester d'autres demandes en attente
+            assertThat(total).isGreaterThanOrEqualTo(DEMANDES);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Demandes en attente puis agents (inactifs) ; renvoie les ids des agents. */
+    private List<Long> seed() {
+        Importateur importateur = importateur("Importateur réclamation", "Société réclamation");
+        BureauDouanier bureau = bureau("CLM", "Bureau réclamation");
+        Devise devise = devise("CHF", "Franc suisse");
+        for (int i = 0; i < DEMANDES; i++) {
+            demandeService.createDemande(i % 2 == 0 ? Categorie.IMPORTATION : Categorie.EXPORTATION,
+                    importateur, bureau, devise);
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < AGENTS; i++) {
+            ids.add(agentRepository.save(new Agent("Agent " + i, "claim" + i + "@test.local", null, null)).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,67 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import com.a.portnet_back.Models.Agent;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.AgentRepository;
+import com.a.portnet_back.ThrowawaySchemaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Délai de grâce du rééquilibrage compté depuis l'attribution à l'agent actuel (assigned_at, cf.
+ * db/task-assigned-at.sql), pas depuis la création : une affectation ancienne tout juste réaffectée reste en place.
+ */
+class WorkStealingRebalancerGraceTest extends ThrowawaySchemaTest {
+
+    @Autowired private WorkStealingRebalancer rebalancer;
+    @Autowired private DemandeService demandeService;
+    @Autowired private AgentRepository agentRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void freshlyReassignedTaskIsLeftAlone() {
+        Long ancienne = demande();
+        Long reaffectee = demande();
+        Long donneur = agent("donneur");
+        Long precedent = agent("précédent");
+        Long vieille = assignHourAgo(donneur, ancienne);
+        Long recente = assignHourAgo(precedent, reaffectee);
+
+        jdbcTemplate.update("UPDATE task_assignments SET agent_id = ? WHERE id = ?", donneur, recente);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT assigned_at = created_at FROM task_assignments WHERE id = ?",
+                Boolean.class, vieille)).isTrue();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT assigned_at > localtimestamp - interval '1 minute' FROM task_assignments WHERE id = ?",
+                Boolean.class, recente)).isTrue();
+        assertThat(rebalancer.candidates(Set.of(donneur)))
+                .extracting(WorkStealingRebalancer.Candidate::assignmentId)
+                .containsExactly(vieille);
+    }
+
+    /** Demandes d'abord, agents inactifs ensuite : le dispatch automatique n'y touche pas. */
+    private Long demande() {
+        Importateur importateur = importateur("Importateur grâce", "Société grâce");
+        BureauDouanier bureau = bureau("GRC", "Bureau rééquilibrage");
+        Devise devise = devise("CAD", "Dollar canadien");
+        return demandeService.createDemande(Categorie.IMPORTATION, importateur, bureau, devise).getId();
+    }
+
+    private Long agent(String nom) {
+        return agentRepository.save(new Agent("Agent " + nom,
+                "grace." + System.nanoTime() + "@test.local", null, null)).getId();
+    }
+
+    private Long assignHourAgo(Long agentId, Long demandeId) {
+        return jdbcTemplate.queryForObject("INSERT INTO task_assignments (agent_id, demande_id, status, created_at) "
+                + "VALUES (?, ?, 'ASSIGNED', localtimestamp - interval '1 hour') RETURNING id", Long.class, agentId, demandeId);
+    }
+}
@@ -0,0 +1,64 @@
+package com.a.portnet_back.Services;
+
+import com.a.portnet_back.Enum.Categorie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.LongPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkStealingRebalancerTest {
+
+    private static final long CASA = 100L;
+    private static final long TANGER = 200L;
+
+    // 2 : spécialiste CASA, 4 : spécialiste TANGER, 3 : généraliste
+    private static final BiFunction<Long, Categorie, List<LongPredicate>> TIERS = (bureau, categorie) ->
+            List.of(id -> id == (bureau == CASA ? 2L : 4L), id -> id == 3L);
+
+    private static WorkStealingRebalancer.Candidate candidate(long id, long agent, long bureau) {
+        return new WorkStealingRebalancer.Candidate(id, agent, bureau, Categorie.IMPORTATION);
+    }
+
+    private static AgentScoringIndex.Load receiver(long id, long load) {
+        return new AgentScoringIndex.Load(id, load, true, false);
+    }
+
+    @Test
+    void oldestFirstToSpecialistsWithinTheSurplus() {
+        List<WorkStealingRebalancer.Move> moves = WorkStealingRebalancer.plan(
+                List.of(candidate(10, 1, CASA), candidate(11, 1, TANGER), candidate(12, 1, CASA)),
+                Map.of(1L, 2L),
+                List.of(receiver(2, 0), receiver(3, 1), receiver(4, 0)),
+                3, 100, TIERS);
+
+        assertThat(moves).containsExactly(
+                new WorkStealingRebalancer.Move(10, 1, 2),
+                new WorkStealingRebalancer.Move(11, 1, 4));
+    }
+
+    @Test
+    void fullSpecialistFallsBackToNextTierNeverToAnotherBureau() {
+        List<WorkStealingRebalancer.Move> moves = WorkStealingRebalancer.plan(
+                List.of(candidate(10, 1, CASA), candidate(11, 1, CASA), candidate(12, 1, CASA), candidate(13, 1, CASA)),
+                Map.of(1L, 10L),
+                List.of(receiver(2, 2), receiver(3, 1), receiver(4, 0)),
+                3, 100, TIERS);
+
+        assertThat(moves).extracting(WorkStealingRebalancer.Move::toAgentId).containsExactly(2L, 3L, 3L);
+    }
+
+    @Test
+    void maxMovesBoundsAPass() {
+        List<WorkStealingRebalancer.Move> moves = WorkStealingRebalancer.plan(
+                List.of(candidate(10, 1, CASA), candidate(11, 1, CASA)),
+                Map.of(1L, 5L),
+                List.of(receiver(3, 0)),
+                3, 1, (b, c) -> List.of());
+
+        assertThat(moves).hasSize(1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.a.portnet_back;
+
+import com.a.portnet_back.Enum.StatusDemande;
+import com.a.portnet_back.Models.BureauDouanier;
+import com.a.portnet_back.Models.Devise;
+import com.a.portnet_back.Models.Importateur;
+import com.a.portnet_back.Repositories.BureauDouanierRepository;
+import com.a.portnet_back.Repositories.DeviseRepository;
+import com.a.portnet_back.Repositories.ImportateurRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Base des tests qui écrivent en base : le contexte travaille dans un schéma jetable de la base configurée,
+ * créé à la première connexion (tables Hibernate + scripts db/*.sql) et supprimé à la fermeture du contexte.
+ * Rien n'est lu ni écrit dans le schéma de l'application ; chaque test amène ses propres données.
+ * <p>
+ * public reste dans le search_path pour les extensions (pg_trgm). Le dispatch périodique et le rééquilibrage
+ * sont coupés pour ne pas toucher aux données semées. Les sous-classes n'ajoutent pas de configuration
+ * propre : elles partagent ainsi un seul contexte, donc un seul schéma.
+ */
+@SpringBootTest
+@Import(ThrowawaySchemaTest.DropSchema.class)
+public abstract class ThrowawaySchemaTest {
+
+    protected static final String SCHEMA = "portnet_test_" + Long.toString(ProcessHandle.current().pid(), 36)
+            + "_" + Long.toString(System.currentTimeMillis(), 36);
+
+    @DynamicPropertySource
+    static void throwawaySchema(DynamicPropertyRegistry registry) {
+        // plusieurs connexions du pool peuvent ouvrir en même temps : la création concurrente est tolérée
+        registry.add("spring.datasource.hikari.connection-init-sql", () -> """
+                DO $$ BEGIN CREATE SCHEMA IF NOT EXISTS %1$s;
+                EXCEPTION WHEN duplicate_schema OR unique_violation THEN NULL; END $$;
+                SET search_path TO %1$s, public""".formatted(SCHEMA));
+        registry.add("spring.jpa.properties.hibernate.default_schema", () -> SCHEMA);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+        registry.add("dispatch.scheduler.tick-ms", () -> "3600000");
+        registry.add("dispatch.rebalance.enabled", () -> "false");
+    }
+
+    @Autowired private ImportateurRepository importateurRepository;
+    @Autowired private BureauDouanierRepository bureauRepository;
+    @Autowired private DeviseRepository deviseRepository;
+
+    /** Importateur semé (sans utilisateur ni ICE). */
+    protected Importateur importateur(String nom, String societe) {
+        return importateurRepository.save(new Importateur(nom, societe, null, null));
+    }
+
+    /** Bureau douanier de ce code, créé au premier appel : le schéma est partagé entre les classes de test. */
+    protected BureauDouanier bureau(String code, String description) {
+        return bureauRepository.findByCode(code).orElseGet(() -> {
+            BureauDouanier bureau = new BureauDouanier();
+            bureau.setCode(code);
+            bureau.setDescription(description);
+            return bureauRepository.save(bureau);
+        });
+    }
+
+    /** Devise acceptée de ce code, créée au premier appel. */
+    protected Devise devise(String code, String description) {
+        return deviseRepository.findByCode(code).orElseGet(() -> {
+            Devise devise = new Devise();
+            devise.setCode(code);
+            devise.setDescription(description);
+            devise.setStatus(StatusDemande.ACCEPTEE);
+            return deviseRepository.save(devise);
+        });
+    }
+
+    /** Ferme le pool puis supprime le schéma : aucune connexion ne peut plus retomber sur public ensuite. */
+    static class DropSchema implements DisposableBean {
+
+        private final DataSource dataSource;
+
+        DropSchema(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public void destroy() throws SQLException {
+            HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+            pool.close();
+            try (Connection c = DriverManager.getConnection(pool.getJdbcUrl(), pool.getUsername(), pool.getPassword());
+                 Statement st = c.createStatement()) {
+                st.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            }
+        }
+    }
+}
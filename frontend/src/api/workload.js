@@ -85,6 +85,10 @@ export async function getDispatchJournal(filters = {}) {
                 categorie: filters.categorie || undefined,
                 from: ymd(from),
                 to: ymd(to),
+                agentId: filters.agentId || undefined,
+                evenement: filters.evenement || undefined,
+                cursor: filters.cursor || undefined,
+                size: filters.size || undefined,
             },
         });
 
@@ -97,12 +101,19 @@ export async function getDispatchJournal(filters = {}) {
             toAgent: it.toAgent ?? it.to ?? it.newAgent ?? it.assignee ?? '—',
             by: it.by ?? it.user ?? it.triggeredBy ?? it.performedBy ?? '—',
             motif: it.motif ?? it.reason ?? it.cause ?? '—',
+            evenement: it.evenement ?? it.type ?? '—',
         }));
 
-        return { items, total: data?.total ?? data?.totalElements ?? items.length };
+        // page "keyset" : nextCursor à renvoyer en filters.cursor pour la page suivante
+        return {
+            items,
+            total: data?.total ?? data?.totalElements ?? items.length,
+            nextCursor: data?.nextCursor ?? null,
+            hasMore: Boolean(data?.hasMore),
+        };
     } catch (e) {
         console.warn('[workload] GET /api/dispatch/journal → KO, retour vide', e?.response?.status, e?.message);
-        return { items: [], total: 0 };
+        return { items: [], total: 0, nextCursor: null, hasMore: false };
     }
 }
 